@@ -42,10 +42,14 @@ struct Chunk {
   void* con = nullptr;
   /// A pointer to RDMA memory_region
   fid_mr* mr = nullptr;
+  /// The slab this chunk is carved from, nullptr if it owns its own buffer
   void* ptr = nullptr;
+  /// Time the chunk was put back into free list, in milliseconds
+  uint64_t free_time = 0;
   /// Libfabric context in chunk lifetime
   fi_context2 ctx{};
-  /// Peer endpoint's address when sending message
+  /// Peer endpoint's address when sending message, or the source address of
+  /// a received message, FI_ADDR_NOTAVAIL if the provider can't tell
   fi_addr_t peer_addr{};
   /// A pointer to a piece of contiguous memory.
   /// Chunk class won't handle the lifetime of data
@@ -53,6 +57,15 @@ struct Chunk {
   char data[0];
 };
 
+/// Contiguous memory region backing a group of chunks, registered once
+struct Slab {
+  char* memory = nullptr;
+  uint64_t size = 0;
+  fid_mr* mr = nullptr;
+  int buffer_num = 0;
+  bool mapped = false;
+};
+
 /// Chunk manger is to manage free buffer list
 /// All the function is not thread safe. That means, user application need to
 /// handle the race condition.
@@ -136,12 +149,27 @@ class ExternalChunkMgr : public ChunkMgr {
   Chunk* get(Connection* con) override;
   int free_size() override;
 
+  /// Allocate one region for buffer_num chunks of buffer_size bytes, register
+  /// it once when domain is given and put all the chunks into free list.
+  /// \return the region address, or nullptr on failure
+  char* alloc_slab(fid_domain* domain, int buffer_size, int buffer_num,
+                   int first_buffer_id, bool huge_page);
+
+  /// Release free chunks that have been idle for at least idle_ms while more
+  /// than keep_num chunks are free. Chunks carved from a slab are released
+  /// only together with the whole slab.
+  /// \param ids receives the buffer id of every released chunk
+  /// \return the number of released chunks
+  int evict(int keep_num, uint64_t idle_ms, std::vector<int>& ids);
+
  protected:
   uint32_t get_id();
+  void free_slab(Slab* slab);
 
  private:
   std::mutex mtx;
   std::vector<Chunk*> bufs;
+  std::vector<Slab*> slabs;
   std::map<int, Chunk*> buf_map;
   int buffer_num;
   int buffer_size;
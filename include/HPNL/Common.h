@@ -19,6 +19,7 @@
 #define HPNL_COMMON_H_
 
 #define MAX_WORKERS 10
+#define HUGE_PAGE_SIZE (2 * 1024 * 1024)
 
 // If you want to test more cases with ctest or make test, please define your
 // target IP and PORT #define LOCAL_IP ("172.168.2.106") #define LOCAL_PORT
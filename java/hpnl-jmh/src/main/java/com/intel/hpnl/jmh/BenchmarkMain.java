@@ -0,0 +1,55 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+
+package com.intel.hpnl.jmh;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Same command line as org.openjdk.jmh.Main. The stub libhpnl.so is
+// unpacked from the jar and put on java.library.path of the forked vms.
+public class BenchmarkMain {
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions cmdOptions = new CommandLineOptions(args);
+    File libDir = extractStub();
+    new Runner(new OptionsBuilder()
+      .parent(cmdOptions)
+      .jvmArgsAppend("-Djava.library.path=" + libDir.getAbsolutePath())
+      .build()).run();
+  }
+
+  private static File extractStub() throws Exception {
+    File libDir = Files.createTempDirectory("hpnl-jmh").toFile();
+    libDir.deleteOnExit();
+    File lib = new File(libDir, "libhpnl.so");
+    lib.deleteOnExit();
+    try (InputStream in = BenchmarkMain.class.getResourceAsStream("/native/libhpnl.so")) {
+      if (in == null) {
+        throw new IllegalStateException("stub libhpnl.so is missing from the classpath");
+      }
+      Files.copy(in, lib.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    return libDir;
+  }
+}
@@ -0,0 +1,116 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+
+package com.intel.hpnl.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.intel.hpnl.core.Connection;
+import com.intel.hpnl.core.EqService;
+import com.intel.hpnl.core.EventType;
+import com.intel.hpnl.core.Handler;
+import com.intel.hpnl.core.HpnlBuffer;
+
+// What a worker does per completion: find the connection of the event
+// queue, then dispatch the event to the user callback.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+  @Param({"16", "1024"})
+  public int connectionNum;
+
+  @Setup
+  public void setup() {
+    int bufferNum = connectionNum+1;
+    fabric = new StubFabric(1, bufferNum, BUFFER_SIZE);
+    eqService = fabric.getEqService();
+    Random random = new Random(0);
+    eqs = new long[EQ_NUM];
+    long threadId = Thread.currentThread().getId();
+    for (int i = 0; i < connectionNum; i++) {
+      // native event queue handles are spread out pointers
+      long eq = EQ_BASE+random.nextInt(1 << 20)*64L;
+      while (eqService.getConnection(eq) != null) {
+        eq += 64;
+      }
+      Connection connection = fabric.connect(eq, 0, threadId, i, 1);
+      connection.setRecvCallback(new Handler() {
+        public void handle(Connection con, int bufferId, int blockBufferSize) {
+          sink += con.getRecvBuffer(bufferId).get(blockBufferSize).remaining();
+        }
+      });
+      eqs[i % EQ_NUM] = eq;
+    }
+    for (int i = connectionNum; i < EQ_NUM; i++) {
+      eqs[i] = eqs[random.nextInt(connectionNum)];
+    }
+    recvBufferId = connectionNum;
+    HpnlBuffer recvBuffer = eqService.getRecvBuffer(recvBufferId);
+    recvBuffer.put(ByteBuffer.allocateDirect(PAYLOAD_SIZE), (byte)0, 0);
+    frameSize = recvBuffer.size();
+  }
+
+  @TearDown
+  public void tearDown() {
+    fabric.shutdown();
+  }
+
+  @Benchmark
+  public Connection getConnection() {
+    return eqService.getConnection(eqs[next++ & (EQ_NUM-1)]);
+  }
+
+  @Benchmark
+  public long recvCallback() {
+    Connection connection = eqService.getConnection(eqs[next++ & (EQ_NUM-1)]);
+    connection.handleCallback(EventType.RECV_EVENT, recvBufferId, frameSize);
+    return sink;
+  }
+
+  private StubFabric fabric;
+  private EqService eqService;
+  private long[] eqs;
+  private int next;
+  private int recvBufferId;
+  private int frameSize;
+  private long sink;
+
+  private static final int BUFFER_SIZE = 4096;
+  private static final int PAYLOAD_SIZE = 64;
+  private static final int EQ_NUM = 1024;
+  private static final long EQ_BASE = 0x7f0000000000L;
+}
@@ -0,0 +1,93 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+
+package com.intel.hpnl.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.intel.hpnl.core.HpnlBuffer;
+
+// Framing of a message into a send buffer and parsing it out of a recv buffer.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HpnlBufferBenchmark {
+  @Param({"64", "4096"})
+  public int payloadSize;
+
+  @Setup
+  public void setup() {
+    this.payload = ByteBuffer.allocateDirect(payloadSize);
+    this.sendBuffer = new HpnlBuffer(0, ByteBuffer.allocateDirect(payloadSize+FRAME_OVERHEAD));
+    this.recvBuffer = new HpnlBuffer(1, ByteBuffer.allocateDirect(payloadSize+FRAME_OVERHEAD));
+    this.recvBuffer.put(payload, (byte)0, 0);
+    this.frameSize = this.recvBuffer.size();
+    this.reliableBuffer = new HpnlBuffer(2, ByteBuffer.allocateDirect(payloadSize+FRAME_OVERHEAD));
+    this.reliableBuffer.put(payload, (byte)0, 0, 0);
+    this.reliableFrameSize = this.reliableBuffer.size();
+  }
+
+  @Benchmark
+  public int put() {
+    sendBuffer.put(payload, (byte)0, seq++);
+    return sendBuffer.size();
+  }
+
+  @Benchmark
+  public int putReliable() {
+    sendBuffer.put(payload, (byte)0, seq, seq++);
+    return sendBuffer.size();
+  }
+
+  @Benchmark
+  public ByteBuffer get() {
+    return recvBuffer.get(frameSize);
+  }
+
+  @Benchmark
+  public ByteBuffer getReliable() {
+    return reliableBuffer.get(reliableFrameSize);
+  }
+
+  private ByteBuffer payload;
+  private HpnlBuffer sendBuffer;
+  private HpnlBuffer recvBuffer;
+  private HpnlBuffer reliableBuffer;
+  private int frameSize;
+  private int reliableFrameSize;
+  private long seq;
+
+  // metadata of a RELIABLE frame, the largest one
+  private static final int FRAME_OVERHEAD = 18;
+}
@@ -0,0 +1,87 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+
+package com.intel.hpnl.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.intel.hpnl.core.HpnlBuffer;
+import com.intel.hpnl.core.MemPool;
+import com.intel.hpnl.core.MemoryService;
+
+// Buffer id to HpnlBuffer lookup done for every completion.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MemPoolBenchmark {
+  @Param({"64", "4096"})
+  public int bufferNum;
+
+  @Setup
+  public void setup() {
+    this.pool = new MemPool(new MemoryService() {
+      public void setBuffer(ByteBuffer byteBuffer, int bufferSize, int bufferId) {}
+
+      public ByteBuffer allocSlab(int bufferSize, int bufferNum, int firstBufferId, boolean hugePage) {
+        return null;
+      }
+
+      public int[] evictBuffer(int keepBufferNum, long idleMillis) {
+        return null;
+      }
+
+      public int getFreeBufferNum() {
+        return 0;
+      }
+    }, bufferNum, BUFFER_SIZE, bufferNum);
+    Random random = new Random(0);
+    this.bufferIds = new int[ID_NUM];
+    for (int i = 0; i < ID_NUM; i++) {
+      this.bufferIds[i] = random.nextInt(bufferNum);
+    }
+  }
+
+  @Benchmark
+  public HpnlBuffer getBuffer() {
+    return pool.getBuffer(bufferIds[next++ & (ID_NUM-1)]);
+  }
+
+  private MemPool pool;
+  private int[] bufferIds;
+  private int next;
+
+  private static final int BUFFER_SIZE = 4096;
+  private static final int ID_NUM = 1024;
+}
@@ -0,0 +1,131 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+
+package com.intel.hpnl.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.intel.hpnl.core.Connection;
+import com.intel.hpnl.core.EventType;
+import com.intel.hpnl.core.ExternalHandler;
+
+// Connection.send plus the completion that returns its send buffer. On the
+// owning worker thread the send is posted directly, from any other thread
+// it is handed to the worker as an ExternalHandler and the op completes
+// when the worker has run it.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SendBenchmark {
+  @State(Scope.Thread)
+  public static class SameThread {
+    @Param({"64", "4096"})
+    public int payloadSize;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      fabric = new StubFabric(1, SEND_BUFFER_NUM, BUFFER_SIZE);
+      connection = fabric.connect(1, 0, Thread.currentThread().getId(), 0, SEND_BUFFER_NUM);
+      payload = ByteBuffer.allocateDirect(payloadSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      fabric.shutdown();
+    }
+
+    StubFabric fabric;
+    Connection connection;
+    ByteBuffer payload;
+    long seq;
+  }
+
+  @State(Scope.Thread)
+  public static class CrossThread {
+    @Param({"64", "4096"})
+    public int payloadSize;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      fabric = new StubFabric(1, SEND_BUFFER_NUM, BUFFER_SIZE);
+      fabric.start();
+      connection = fabric.connect(1, 0, fabric.getCqService().getThreadId(0), 0, SEND_BUFFER_NUM);
+      payload = ByteBuffer.allocateDirect(payloadSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      fabric.shutdown();
+    }
+
+    StubFabric fabric;
+    Connection connection;
+    ByteBuffer payload;
+    long seq;
+    volatile long completedNum;
+  }
+
+  @Benchmark
+  public int sameThread(SameThread state) {
+    long seq = state.seq++;
+    int res = state.connection.send(state.payload, (byte)0, seq);
+    // send buffers cycle through the free list in order
+    state.connection.handleCallback(EventType.SEND_EVENT, (int)(seq % SEND_BUFFER_NUM), 0);
+    return res;
+  }
+
+  @Benchmark
+  public int crossThread(final CrossThread state) {
+    final long seq = state.seq++;
+    int res = state.connection.send(state.payload, (byte)0, seq);
+    state.fabric.getCqService().addExternalEvent(0, new ExternalHandler() {
+      public void handle() {
+        state.connection.handleCallback(EventType.SEND_EVENT, (int)(seq % SEND_BUFFER_NUM), 0);
+        state.completedNum = seq+1;
+      }
+    });
+    for (int spin = 0; state.completedNum <= seq; spin++) {
+      if (spin >= MAX_SPIN) {
+        // lets the worker in when it shares the cpu with this thread
+        Thread.yield();
+      }
+    }
+    return res;
+  }
+
+  private static final int SEND_BUFFER_NUM = 64;
+  private static final int BUFFER_SIZE = 8192;
+  private static final int MAX_SPIN = 1000;
+}
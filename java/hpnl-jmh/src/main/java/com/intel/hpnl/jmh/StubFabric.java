@@ -0,0 +1,80 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+
+package com.intel.hpnl.jmh;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+import com.intel.hpnl.core.Connection;
+import com.intel.hpnl.core.CqService;
+import com.intel.hpnl.core.EqService;
+
+// EqService and CqService on top of the stub libhpnl, nothing is posted to
+// a fabric. Connections are registered the way the native event queue
+// does it, completions are fed in through Connection.handleCallback.
+public class StubFabric {
+  public StubFabric(int workerNum, int bufferNum, int bufferSize) {
+    this.eqService = new EqService(workerNum, bufferNum, false);
+    this.cqService = new CqService(this.eqService);
+    this.eqService.initBufferPool(bufferNum, bufferSize, bufferNum);
+  }
+
+  // the workers spin on the stub completion queue and run handed off work
+  public void start() {
+    this.cqService.start();
+    this.started = true;
+  }
+
+  public void shutdown() {
+    if (started) {
+      this.cqService.shutdown();
+      this.cqService.join();
+    }
+  }
+
+  // send buffers get the ids [firstBufferId, firstBufferId+sendBufferNum)
+  @SuppressWarnings("unchecked")
+  public Connection connect(long eq, int index, long threadId, int firstBufferId, int sendBufferNum) {
+    Connection connection = new Connection(eq, eq, index, threadId, this.eqService, this.cqService);
+    connection.setAddrInfo("stub", (int)eq, "stub", 0);
+    try {
+      Field field = EqService.class.getDeclaredField("conMap");
+      field.setAccessible(true);
+      ((Map<Long, Connection>)field.get(this.eqService)).put(eq, connection);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+    for (int i = 0; i < sendBufferNum; i++) {
+      this.eqService.pushSendBuffer(eq, firstBufferId+i);
+    }
+    return connection;
+  }
+
+  public EqService getEqService() {
+    return this.eqService;
+  }
+
+  public CqService getCqService() {
+    return this.cqService;
+  }
+
+  private EqService eqService;
+  private CqService cqService;
+  private boolean started;
+}
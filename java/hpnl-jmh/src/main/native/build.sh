@@ -0,0 +1,16 @@
+#!/bin/sh
+# Builds the stub libhpnl.so used by the benchmarks.
+# usage: build.sh <java.home> <output dir>
+set -e
+JAVA_HOME_DIR=$1
+if [ ! -d "$JAVA_HOME_DIR/include" ]; then
+  # java.home points at the jre of a java 8 jdk
+  JAVA_HOME_DIR=$JAVA_HOME_DIR/..
+fi
+OUT_DIR=$2
+SRC_DIR=$(cd "$(dirname "$0")" && pwd)
+mkdir -p "$OUT_DIR"
+${CXX:-g++} -std=c++11 -O2 -shared -fPIC \
+  -I"$JAVA_HOME_DIR/include" -I"$JAVA_HOME_DIR/include/linux" \
+  -I"$SRC_DIR/../../../../native" \
+  -o "$OUT_DIR/libhpnl.so" "$SRC_DIR/hpnl_stub.cc"
@@ -0,0 +1,142 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+
+// No-op stand-ins for the JNI entry points of libhpnl, built as libhpnl.so
+// so the Java hot paths can be benchmarked on a host without a fabric.
+// Posting always succeeds and no completion is ever reported, the
+// benchmarks feed completions in through Connection.handleCallback.
+
+#include "com_intel_hpnl_core_EqService.h"
+#include "com_intel_hpnl_core_Connection.h"
+#include "com_intel_hpnl_core_CqService.h"
+#include "com_intel_hpnl_core_Utils.h"
+
+#include <sched.h>
+
+JNIEXPORT void JNICALL Java_com_intel_hpnl_core_EqService_shutdown1(JNIEnv*, jobject, jlong, jlong) {}
+
+JNIEXPORT jlong JNICALL Java_com_intel_hpnl_core_EqService_native_1connect(JNIEnv*, jobject, jstring, jstring, jlong) {
+  return 0;
+}
+
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_EqService_wait_1eq_1event1(JNIEnv*, jobject, jlong) {
+  return 0;
+}
+
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_EqService_add_1eq_1event(JNIEnv*, jobject, jlong, jlong) {
+  return 0;
+}
+
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_EqService_delete_1eq_1event1(JNIEnv*, jobject, jlong, jlong) {
+  return 0;
+}
+
+JNIEXPORT void JNICALL Java_com_intel_hpnl_core_EqService_set_1buffer1(JNIEnv*, jobject, jobject, jlong, jint, jlong) {}
+
+JNIEXPORT jobject JNICALL Java_com_intel_hpnl_core_EqService_alloc_1slab1(JNIEnv*, jobject, jint, jint, jint, jboolean, jlong) {
+  // MemPool falls back to one direct buffer per id
+  return nullptr;
+}
+
+JNIEXPORT jintArray JNICALL Java_com_intel_hpnl_core_EqService_evict_1buffer1(JNIEnv*, jobject, jint, jlong, jlong) {
+  return nullptr;
+}
+
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_EqService_free_1buffer_1num1(JNIEnv*, jobject, jlong) {
+  return 0;
+}
+
+JNIEXPORT void JNICALL Java_com_intel_hpnl_core_EqService_set_1selective_1completion1(JNIEnv*, jobject, jboolean, jlong) {}
+
+JNIEXPORT jlong JNICALL Java_com_intel_hpnl_core_EqService_reg_1rma_1buffer(JNIEnv*, jobject, jobject, jlong, jint, jlong) {
+  return 0;
+}
+
+JNIEXPORT jlong JNICALL Java_com_intel_hpnl_core_EqService_reg_1rma_1buffer_1by_1address(JNIEnv*, jobject, jlong, jlong, jint, jlong) {
+  return 0;
+}
+
+JNIEXPORT void JNICALL Java_com_intel_hpnl_core_EqService_unreg_1rma_1buffer(JNIEnv*, jobject, jint, jlong) {}
+
+JNIEXPORT jlong JNICALL Java_com_intel_hpnl_core_EqService_get_1buffer_1address(JNIEnv* env, jobject, jobject buffer, jlong) {
+  return (jlong)env->GetDirectBufferAddress(buffer);
+}
+
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_EqService_init(JNIEnv*, jobject, jint, jint, jboolean) {
+  return 0;
+}
+
+JNIEXPORT void JNICALL Java_com_intel_hpnl_core_EqService_free(JNIEnv*, jobject, jlong) {}
+
+JNIEXPORT void JNICALL Java_com_intel_hpnl_core_EqService_finalize(JNIEnv*, jobject) {}
+
+JNIEXPORT void JNICALL Java_com_intel_hpnl_core_Connection_recv(JNIEnv*, jobject, jobject, jint, jlong) {}
+
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_Connection_send(JNIEnv*, jobject, jint, jint, jboolean, jlong) {
+  return 0;
+}
+
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_Connection_read(JNIEnv*, jobject, jint, jint, jlong, jlong, jlong, jlong) {
+  return 0;
+}
+
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_Connection_write(JNIEnv*, jobject, jint, jint, jlong, jlong, jlong, jlong) {
+  return 0;
+}
+
+JNIEXPORT void JNICALL Java_com_intel_hpnl_core_Connection_init(JNIEnv*, jobject, jlong) {}
+
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_Connection_get_1pending_1num(JNIEnv*, jobject, jlong) {
+  return 0;
+}
+
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_Connection_get_1max_1pending_1num(JNIEnv*, jobject, jlong) {
+  return 0;
+}
+
+JNIEXPORT jlong JNICALL Java_com_intel_hpnl_core_Connection_get_1retry_1num(JNIEnv*, jobject, jlong) {
+  return 0;
+}
+
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_Connection_inject(JNIEnv*, jobject, jobject, jint, jlong) {
+  return 0;
+}
+
+JNIEXPORT void JNICALL Java_com_intel_hpnl_core_Connection_finalize(JNIEnv*, jobject) {}
+
+JNIEXPORT void JNICALL Java_com_intel_hpnl_core_Connection_free(JNIEnv*, jobject, jlong) {}
+
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_CqService_wait_1cq_1event(JNIEnv*, jobject, jint, jint, jlong) {
+  // nothing ever completes, give the cpu away like an idle epoll_wait would
+  sched_yield();
+  return 0;
+}
+
+JNIEXPORT jlong JNICALL Java_com_intel_hpnl_core_CqService_get_1epoll_1num(JNIEnv*, jobject, jint, jlong) {
+  return 0;
+}
+
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_CqService_init(JNIEnv*, jobject, jlong) {
+  return 0;
+}
+
+JNIEXPORT void JNICALL Java_com_intel_hpnl_core_CqService_finalize(JNIEnv*, jobject) {}
+
+JNIEXPORT void JNICALL Java_com_intel_hpnl_core_CqService_free(JNIEnv*, jobject, jlong) {}
+
+JNIEXPORT void JNICALL Java_com_intel_hpnl_core_Utils_set_1affinity(JNIEnv*, jclass, jlong) {}
@@ -0,0 +1,89 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.netty;
+
+import java.nio.ByteBuffer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledUnsafeDirectByteBuf;
+
+import com.intel.hpnl.core.HpnlBuffer;
+
+public class HpnlByteBuf extends UnpooledUnsafeDirectByteBuf {
+  HpnlByteBuf(HpnlByteBufAllocator alloc, HpnlByteBufAllocator.Slot slot, int initialCapacity, int maxCapacity) {
+    super(alloc, slot.view(initialCapacity), maxCapacity);
+    this.allocator = alloc;
+    this.slot = slot;
+    // the wrapping constructor marks the whole view as readable
+    setIndex(0, 0);
+  }
+
+  public int getRmaBufferId() {
+    return slot.region.getBufferId();
+  }
+
+  public int getRmaOffset() {
+    return slot.offset;
+  }
+
+  public long getRKey() {
+    return slot.region.getRKey();
+  }
+
+  public long getAddress() {
+    return slot.region.getAddress() + slot.offset;
+  }
+
+  public HpnlBuffer getRegion() {
+    return slot.region;
+  }
+
+  @Override
+  public ByteBuf capacity(int newCapacity) {
+    HpnlByteBufAllocator.Slot oldSlot = slot;
+    super.capacity(newCapacity);
+    // the old slot is released only after its content was copied
+    if (slot != oldSlot) {
+      allocator.release(oldSlot);
+    }
+    return this;
+  }
+
+  @Override
+  protected ByteBuffer allocateDirect(int initialCapacity) {
+    // growing past the slot moves the buffer to a larger slot, so the RMA
+    // region and offset change with it
+    if (initialCapacity > slot.size) {
+      slot = allocator.allocate(initialCapacity);
+    }
+    return slot.view(initialCapacity);
+  }
+
+  @Override
+  protected void freeDirect(ByteBuffer buffer) {
+  }
+
+  @Override
+  protected void deallocate() {
+    super.deallocate();
+    allocator.release(slot);
+  }
+
+  private final HpnlByteBufAllocator allocator;
+  private HpnlByteBufAllocator.Slot slot;
+}
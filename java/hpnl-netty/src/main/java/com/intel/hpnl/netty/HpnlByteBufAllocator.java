@@ -0,0 +1,202 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.netty;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import io.netty.buffer.AbstractByteBufAllocator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledHeapByteBuf;
+
+import com.intel.hpnl.core.EqService;
+import com.intel.hpnl.core.HpnlBuffer;
+
+public class HpnlByteBufAllocator extends AbstractByteBufAllocator {
+  public HpnlByteBufAllocator(EqService eqService) {
+    this(eqService, DEFAULT_CHUNK_SIZE, DEFAULT_PAGE_SIZE);
+  }
+
+  public HpnlByteBufAllocator(EqService eqService, int chunkSize, int pageSize) {
+    super(true);
+    if (pageSize <= 0 || Integer.bitCount(pageSize) != 1) {
+      throw new IllegalArgumentException("pageSize must be a power of two: " + pageSize);
+    }
+    if (chunkSize < pageSize || chunkSize % pageSize != 0) {
+      throw new IllegalArgumentException("chunkSize must be a multiple of pageSize: " + chunkSize);
+    }
+    this.eqService = eqService;
+    this.chunkSize = chunkSize;
+    this.pageSize = pageSize;
+    this.regions = new ArrayList<>();
+    int arenaNum = 0;
+    for (int size = pageSize; size <= chunkSize; size <<= 1) {
+      arenaNum++;
+    }
+    this.arenas = new Arena[arenaNum];
+    for (int i = 0, size = pageSize; i < arenaNum; i++, size <<= 1) {
+      this.arenas[i] = new Arena(size);
+    }
+  }
+
+  @Override
+  protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+    return new UnpooledHeapByteBuf(this, initialCapacity, maxCapacity);
+  }
+
+  @Override
+  protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+    return new HpnlByteBuf(this, allocate(initialCapacity), initialCapacity, maxCapacity);
+  }
+
+  @Override
+  public boolean isDirectBufferPooled() {
+    return true;
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  public int getRegisteredRegionNum() {
+    synchronized (regions) {
+      return regions.size();
+    }
+  }
+
+  public void close() {
+    synchronized (regions) {
+      for (HpnlBuffer region : regions) {
+        unregisterRegion(region);
+      }
+      regions.clear();
+    }
+    for (Arena arena : arenas) {
+      arena.freeSlots.clear();
+    }
+  }
+
+  Slot allocate(int capacity) {
+    if (capacity > chunkSize) {
+      return new Slot(register(capacity), 0, capacity, null);
+    }
+    return arenaFor(capacity).take();
+  }
+
+  void release(Slot slot) {
+    if (slot.arena == null) {
+      synchronized (regions) {
+        regions.remove(slot.region);
+      }
+      unregisterRegion(slot.region);
+    } else {
+      slot.arena.freeSlots.offer(slot);
+    }
+  }
+
+  private Arena arenaFor(int capacity) {
+    int size = Math.max(capacity, pageSize);
+    int index = 32 - Integer.numberOfLeadingZeros(size - 1) - Integer.numberOfTrailingZeros(pageSize);
+    return arenas[index];
+  }
+
+  HpnlBuffer registerRegion(int size) {
+    return eqService.getRmaBuffer(size);
+  }
+
+  void unregisterRegion(HpnlBuffer region) {
+    eqService.unregRmaBuffer(region.getBufferId());
+  }
+
+  private HpnlBuffer register(int size) {
+    HpnlBuffer region = registerRegion(size);
+    if (region == null) {
+      throw new IllegalStateException("failed to register " + size + " bytes of RMA memory");
+    }
+    synchronized (regions) {
+      regions.add(region);
+    }
+    return region;
+  }
+
+  final class Arena {
+    Arena(int slotSize) {
+      this.slotSize = slotSize;
+      this.freeSlots = new ConcurrentLinkedQueue<>();
+    }
+
+    Slot take() {
+      Slot slot = freeSlots.poll();
+      while (slot == null) {
+        grow();
+        slot = freeSlots.poll();
+      }
+      return slot;
+    }
+
+    private synchronized void grow() {
+      if (!freeSlots.isEmpty()) {
+        return;
+      }
+      HpnlBuffer region = register(chunkSize);
+      for (int offset = 0; offset + slotSize <= chunkSize; offset += slotSize) {
+        freeSlots.offer(new Slot(region, offset, slotSize, this));
+      }
+    }
+
+    private final int slotSize;
+    private final ConcurrentLinkedQueue<Slot> freeSlots;
+  }
+
+  static final class Slot {
+    Slot(HpnlBuffer region, int offset, int size, Arena arena) {
+      this.region = region;
+      this.offset = offset;
+      this.size = size;
+      this.arena = arena;
+    }
+
+    ByteBuffer view(int capacity) {
+      ByteBuffer view = region.getRawBuffer().duplicate();
+      view.clear();
+      view.position(offset);
+      view.limit(offset + capacity);
+      return view.slice();
+    }
+
+    final HpnlBuffer region;
+    final int offset;
+    final int size;
+    final Arena arena;
+  }
+
+  public static final int DEFAULT_CHUNK_SIZE = 4*1024*1024;
+  public static final int DEFAULT_PAGE_SIZE = 8192;
+
+  private final EqService eqService;
+  private final int chunkSize;
+  private final int pageSize;
+  private final Arena[] arenas;
+  private final List<HpnlBuffer> regions;
+}
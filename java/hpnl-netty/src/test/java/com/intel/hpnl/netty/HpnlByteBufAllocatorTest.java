@@ -0,0 +1,155 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+
+package com.intel.hpnl.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import io.netty.buffer.ByteBuf;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.intel.hpnl.core.HpnlBuffer;
+
+public class HpnlByteBufAllocatorTest {
+  @Before
+  public void setUp() {
+    allocator = new TestAllocator();
+  }
+
+  @After
+  public void tearDown() {
+    allocator.close();
+    assertEquals(0, allocator.getRegisteredRegionNum());
+  }
+
+  @Test
+  public void newBufferIsEmpty() {
+    ByteBuf buf = allocator.directBuffer(100);
+    assertTrue(buf instanceof HpnlByteBuf);
+    assertEquals(0, buf.readerIndex());
+    assertEquals(0, buf.writerIndex());
+    assertEquals(100, buf.capacity());
+    assertEquals(Integer.MAX_VALUE, buf.maxCapacity());
+    buf.release();
+  }
+
+  @Test
+  public void buffersShareRegisteredChunk() {
+    HpnlByteBuf first = (HpnlByteBuf)allocator.directBuffer(PAGE_SIZE);
+    HpnlByteBuf second = (HpnlByteBuf)allocator.directBuffer(PAGE_SIZE);
+    assertSame(first.getRegion(), second.getRegion());
+    assertEquals(PAGE_SIZE, Math.abs(first.getRmaOffset() - second.getRmaOffset()));
+    assertEquals(1, allocator.getRegisteredRegionNum());
+    first.release();
+    second.release();
+  }
+
+  @Test
+  public void releasedSlotIsReused() {
+    HpnlByteBuf[] bufs = new HpnlByteBuf[CHUNK_SIZE/PAGE_SIZE];
+    for (int i = 0; i < bufs.length; i++) {
+      bufs[i] = (HpnlByteBuf)allocator.directBuffer(PAGE_SIZE);
+    }
+    int offset = bufs[3].getRmaOffset();
+    bufs[3].release();
+    bufs[3] = (HpnlByteBuf)allocator.directBuffer(PAGE_SIZE);
+    assertEquals(offset, bufs[3].getRmaOffset());
+    assertEquals(1, allocator.getRegisteredRegionNum());
+    for (HpnlByteBuf buf : bufs) {
+      buf.release();
+    }
+  }
+
+  @Test
+  public void growPastSlotMovesToLargerSlot() {
+    HpnlByteBuf buf = (HpnlByteBuf)allocator.directBuffer(PAGE_SIZE);
+    HpnlBuffer region = buf.getRegion();
+    for (int i = 0; i < PAGE_SIZE; i++) {
+      buf.writeByte(i);
+    }
+    buf.writeInt(42);
+    assertTrue(buf.capacity() > PAGE_SIZE);
+    for (int i = 0; i < PAGE_SIZE; i++) {
+      assertEquals((byte)i, buf.readByte());
+    }
+    assertEquals(42, buf.readInt());
+    assertNotSame(region, buf.getRegion());
+    buf.release();
+  }
+
+  @Test
+  public void growPastChunkUsesDedicatedRegion() {
+    ByteBuf buf = allocator.directBuffer(PAGE_SIZE);
+    buf.writerIndex(PAGE_SIZE - 1);
+    buf.setByte(0, 7);
+    buf.ensureWritable(CHUNK_SIZE);
+    assertTrue(buf.capacity() > CHUNK_SIZE);
+    assertEquals(7, buf.getByte(0));
+    int regionNum = allocator.getRegisteredRegionNum();
+    buf.release();
+    assertEquals(regionNum - 1, allocator.getRegisteredRegionNum());
+  }
+
+  @Test
+  public void largeBufferUsesDedicatedRegion() {
+    ByteBuf buf = allocator.directBuffer(CHUNK_SIZE + 1);
+    assertEquals(CHUNK_SIZE + 1, buf.capacity());
+    assertEquals(1, allocator.getRegisteredRegionNum());
+    buf.release();
+    assertEquals(0, allocator.getRegisteredRegionNum());
+  }
+
+  @Test
+  public void maxCapacityIsHonoured() {
+    ByteBuf buf = allocator.directBuffer(16, 32);
+    assertEquals(32, buf.maxCapacity());
+    buf.writeZero(32);
+    assertEquals(32, buf.capacity());
+    buf.release();
+  }
+
+  private static class TestAllocator extends HpnlByteBufAllocator {
+    TestAllocator() {
+      super(null, CHUNK_SIZE, PAGE_SIZE);
+    }
+
+    @Override
+    HpnlBuffer registerRegion(int size) {
+      return new HpnlBuffer(bufferId++, ByteBuffer.allocateDirect(size));
+    }
+
+    @Override
+    void unregisterRegion(HpnlBuffer region) {
+    }
+
+    private int bufferId;
+  }
+
+  private static final int PAGE_SIZE = 1024;
+  private static final int CHUNK_SIZE = 16*1024;
+
+  private TestAllocator allocator;
+}
@@ -0,0 +1,140 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+
+package com.intel.hpnl.bench;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import picocli.CommandLine;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Command;
+
+// Collects loopback and JMH output into a run file with the environment,
+// and compares a run with a baseline. Exits with 1 on a regression.
+@Command(mixinStandardHelpOptions = true, version = "auto help demo - picocli 3.0")
+public class BenchResults implements Callable<Integer> {
+
+  @Option(names = {"-l", "--loopback"}, required = false, split = ",", description = "JSON lines of LoopbackBench or OpenLoopBench")
+  File[] loopbackFiles = null;
+
+  @Option(names = {"-j", "--jmh"}, required = false, split = ",", description = "JMH results written with -rf json")
+  File[] jmhFiles = null;
+
+  @Option(names = {"-i", "--input"}, required = false, description = "run file to compare instead of collecting one")
+  File input = null;
+
+  @Option(names = {"-o", "--output"}, required = false, description = "write the collected run here")
+  File output = null;
+
+  @Option(names = {"-b", "--baseline"}, required = false, description = "run file to compare with")
+  File baseline = null;
+
+  @Option(names = {"-L", "--label"}, required = false, description = "name of this run, e.g. the version")
+  String label = null;
+
+  @Option(names = {"-P", "--provider"}, required = false, description = "fabric provider libhpnl was built for")
+  String provider = "sockets";
+
+  @Option(names = {"-w", "--worker_number"}, required = false, description = "worker numbers of the run")
+  String workNbr = null;
+
+  @Option(names = {"-f", "--affinity"}, required = false, description = "HPNL thread affinity of the run")
+  String affinities = null;
+
+  @Option(names = {"-n", "--buffer_number"}, required = false, description = "buffer number of the run")
+  String bufferNbr = null;
+
+  @Option(names = {"-s", "--buffer_size"}, required = false, description = "buffer size of the run")
+  String bufferSize = null;
+
+  @Option(names = {"--throughput_threshold"}, required = false, description = "relative throughput drop to flag")
+  double throughputThreshold = 0.05;
+
+  @Option(names = {"--latency_threshold"}, required = false, description = "relative latency rise to flag")
+  double latencyThreshold = 0.10;
+
+  @Option(names = {"--alloc_threshold"}, required = false, description = "relative allocation rise to flag")
+  double allocThreshold = 0.10;
+
+  @Option(names = {"--alloc_bytes_threshold"}, required = false, description = "B/op rise to flag over an allocation free baseline")
+  double allocBytesThreshold = 1.0;
+
+  public Integer call() throws Exception {
+    BenchmarkRun run;
+    if (input != null) {
+      run = BenchmarkRun.load(input);
+    } else {
+      run = collect();
+    }
+    if (output != null) {
+      run.save(output);
+      System.out.println("wrote " + run.getCases().size() + " cases to " + output);
+    }
+    if (baseline == null) {
+      return 0;
+    }
+    BenchmarkRun base = BenchmarkRun.load(baseline);
+    RegressionComparator comparator = new RegressionComparator();
+    comparator.setThreshold(BenchmarkRun.THROUGHPUT, throughputThreshold);
+    comparator.setThreshold(BenchmarkRun.LATENCY, latencyThreshold);
+    comparator.setThreshold(BenchmarkRun.ALLOCATION, allocThreshold);
+    comparator.setAbsoluteThreshold(BenchmarkRun.ALLOCATION, allocBytesThreshold);
+    List<RegressionComparator.Finding> findings = comparator.compare(base, run);
+    System.out.println(comparator.report(base, run, findings));
+    return RegressionComparator.hasRegression(findings) ? 1 : 0;
+  }
+
+  private BenchmarkRun collect() throws Exception {
+    BenchmarkRun run = BenchmarkRun.capture(label);
+    run.putEnvironment("provider", provider);
+    putIfSet(run, "workerNum", workNbr);
+    putIfSet(run, "affinities", affinities);
+    putIfSet(run, "bufferNum", bufferNbr);
+    putIfSet(run, "bufferSize", bufferSize);
+    if (loopbackFiles != null) {
+      for (File file : loopbackFiles) {
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+          if (!line.trim().isEmpty()) {
+            run.addLoopbackResult(line);
+          }
+        }
+      }
+    }
+    if (jmhFiles != null) {
+      for (File file : jmhFiles) {
+        run.addJmhResults(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+      }
+    }
+    return run;
+  }
+
+  private static void putIfSet(BenchmarkRun run, String key, String value) {
+    if (value != null) {
+      run.putEnvironment(key, value);
+    }
+  }
+
+  public static void main(String... args) {
+    Integer res = CommandLine.call(new BenchResults(), args);
+    System.exit(res == null ? 2 : res);
+  }
+}
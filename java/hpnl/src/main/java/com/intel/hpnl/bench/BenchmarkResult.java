@@ -0,0 +1,181 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+
+package com.intel.hpnl.bench;
+
+import java.util.Locale;
+
+import com.intel.hpnl.metrics.LatencyHistogram;
+
+// Outcome of one loopback run, latencies in nanoseconds.
+public class BenchmarkResult {
+  public BenchmarkResult(String mode, int messageSize, int workerNum, int connectionNum, int window,
+      long elapsedNanos, long opNum, LatencyHistogram.Snapshot latency) {
+    this(mode, messageSize, workerNum, connectionNum, window, elapsedNanos, opNum, latency, 0, false);
+  }
+
+  // an open loop step, targetOpsPerSec is the offered load
+  public BenchmarkResult(String mode, int messageSize, int workerNum, int connectionNum, int window,
+      long elapsedNanos, long opNum, LatencyHistogram.Snapshot latency, long targetOpsPerSec, boolean saturated) {
+    this.mode = mode;
+    this.messageSize = messageSize;
+    this.workerNum = workerNum;
+    this.connectionNum = connectionNum;
+    this.window = window;
+    this.elapsedNanos = elapsedNanos;
+    this.opNum = opNum;
+    this.p50 = latency.getP50();
+    this.p90 = latency.getValueAtPercentile(90);
+    this.p99 = latency.getP99();
+    this.p999 = latency.getP999();
+    this.max = latency.getMax();
+    this.mean = latency.getMean();
+    this.targetOpsPerSec = targetOpsPerSec;
+    this.saturated = saturated;
+  }
+
+  public String getMode() {
+    return mode;
+  }
+
+  public int getMessageSize() {
+    return messageSize;
+  }
+
+  public int getWorkerNum() {
+    return workerNum;
+  }
+
+  public int getConnectionNum() {
+    return connectionNum;
+  }
+
+  public int getWindow() {
+    return window;
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  public long getOpNum() {
+    return opNum;
+  }
+
+  public double getOpsPerSec() {
+    return elapsedNanos == 0 ? 0 : opNum*1e9/elapsedNanos;
+  }
+
+  public double getMBPerSec() {
+    return getOpsPerSec()*messageSize/(1024*1024);
+  }
+
+  // 0 for a closed loop run
+  public long getTargetOpsPerSec() {
+    return targetOpsPerSec;
+  }
+
+  // the offered load was not sustained
+  public boolean isSaturated() {
+    return saturated;
+  }
+
+  // recorded with the result, not part of the workload
+  public void setBuffers(int bufferNum, int bufferSize) {
+    this.bufferNum = bufferNum;
+    this.bufferSize = bufferSize;
+  }
+
+  public int getBufferNum() {
+    return bufferNum;
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  // bytes allocated by all threads of the process while measuring, -1 if unknown
+  public void setAllocatedBytes(long allocatedBytes) {
+    this.allocatedBytes = allocatedBytes;
+  }
+
+  public double getAllocBytesPerOp() {
+    return allocatedBytes < 0 || opNum == 0 ? -1 : (double)allocatedBytes/opNum;
+  }
+
+  public long getP50() {
+    return p50;
+  }
+
+  public long getP90() {
+    return p90;
+  }
+
+  public long getP99() {
+    return p99;
+  }
+
+  public long getP999() {
+    return p999;
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  public double getMean() {
+    return mean;
+  }
+
+  // one line of JSON
+  public String toJson() {
+    return String.format(Locale.ROOT, "{\"mode\":\"%s\",\"messageSize\":%d,\"workerNum\":%d,\"connectionNum\":%d,\"window\":%d," +
+        "\"elapsedNanos\":%d,\"opNum\":%d,\"opsPerSec\":%.1f,\"mbPerSec\":%.2f," +
+        "\"targetOpsPerSec\":%d,\"saturated\":%b,\"bufferNum\":%d,\"bufferSize\":%d,\"allocBytesPerOp\":%.1f," +
+        "\"p50Nanos\":%d,\"p90Nanos\":%d,\"p99Nanos\":%d,\"p999Nanos\":%d,\"maxNanos\":%d,\"meanNanos\":%.1f}",
+        mode, messageSize, workerNum, connectionNum, window, elapsedNanos, opNum, getOpsPerSec(), getMBPerSec(),
+        targetOpsPerSec, saturated, bufferNum, bufferSize, getAllocBytesPerOp(), p50, p90, p99, p999, max, mean);
+  }
+
+  public String toString() {
+    String target = targetOpsPerSec == 0 ? "" : "target " + targetOpsPerSec + " ops/s" + (saturated ? " (saturated)" : "") + ", ";
+    return target + String.format("%s %d bytes, %d workers, %d connections, window %d: %.0f ops/s, %.2f MB/s, " +
+        "p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us",
+        mode, messageSize, workerNum, connectionNum, window, getOpsPerSec(), getMBPerSec(),
+        p50/1000.0, p99/1000.0, p999/1000.0, max/1000.0);
+  }
+
+  private final String mode;
+  private final int messageSize;
+  private final int workerNum;
+  private final int connectionNum;
+  private final int window;
+  private final long elapsedNanos;
+  private final long opNum;
+  private final long p50;
+  private final long p90;
+  private final long p99;
+  private final long p999;
+  private final long max;
+  private final double mean;
+  private final long targetOpsPerSec;
+  private final boolean saturated;
+  private int bufferNum;
+  private int bufferSize;
+  private long allocatedBytes = -1;
+}
@@ -0,0 +1,330 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+
+package com.intel.hpnl.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Results of one benchmark session, loopback and JMH alike, together with
+// the environment they were taken in. Repeated cases are merged, their
+// spread is the noise the comparison has to see through.
+public class BenchmarkRun {
+  public BenchmarkRun() {
+    this.environment = new LinkedHashMap<>();
+    this.cases = new LinkedHashMap<>();
+  }
+
+  // host, os, cpus, jvm and start time, the caller adds provider and settings
+  public static BenchmarkRun capture(String label) {
+    BenchmarkRun run = new BenchmarkRun();
+    if (label != null) {
+      run.putEnvironment("label", label);
+    }
+    run.putEnvironment("time", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date()));
+    try {
+      run.putEnvironment("host", InetAddress.getLocalHost().getHostName());
+    } catch (IOException e) {
+      run.putEnvironment("host", "unknown");
+    }
+    run.putEnvironment("os", System.getProperty("os.name") + " " + System.getProperty("os.version"));
+    run.putEnvironment("arch", System.getProperty("os.arch"));
+    run.putEnvironment("cpus", String.valueOf(Runtime.getRuntime().availableProcessors()));
+    run.putEnvironment("java", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+    return run;
+  }
+
+  public void putEnvironment(String key, String value) {
+    environment.put(key, value);
+  }
+
+  public Map<String, String> getEnvironment() {
+    return environment;
+  }
+
+  public Case getCase(String name) {
+    return cases.get(name);
+  }
+
+  public Collection<Case> getCases() {
+    return cases.values();
+  }
+
+  public void addResult(BenchmarkResult result) {
+    addLoopbackResult(result.toJson());
+  }
+
+  // a line written by LoopbackBench or OpenLoopBench
+  @SuppressWarnings("unchecked")
+  public void addLoopbackResult(String jsonLine) {
+    Map<String, Object> result = (Map<String, Object>)Json.parse(jsonLine);
+    StringBuilder name = new StringBuilder("loopback ").append(result.get("mode"));
+    for (String param : LOOPBACK_PARAMS) {
+      long value = (long)Json.toDouble(result.get(param));
+      if (value != 0 || !"targetOpsPerSec".equals(param)) {
+        name.append(' ').append(param).append('=').append(value);
+      }
+    }
+    Case c = getOrAddCase(name.toString());
+    for (String key : LOOPBACK_CONFIG) {
+      if (result.containsKey(key)) {
+        c.config.put(key, text(result.get(key)));
+      }
+    }
+    c.addSample("opsPerSec", THROUGHPUT, Json.toDouble(result.get("opsPerSec")), Double.NaN);
+    c.addSample("p50Nanos", LATENCY, Json.toDouble(result.get("p50Nanos")), Double.NaN);
+    c.addSample("p99Nanos", LATENCY, Json.toDouble(result.get("p99Nanos")), Double.NaN);
+    c.addSample("p999Nanos", LATENCY, Json.toDouble(result.get("p999Nanos")), Double.NaN);
+    double allocBytesPerOp = Json.toDouble(result.get("allocBytesPerOp"));
+    if (allocBytesPerOp >= 0) {
+      c.addSample("allocBytesPerOp", ALLOCATION, allocBytesPerOp, Double.NaN);
+    }
+  }
+
+  // the file written by JMH with -rf json, run with -prof gc to get allocations
+  @SuppressWarnings("unchecked")
+  public void addJmhResults(String json) {
+    for (Object item : (List<Object>)Json.parse(json)) {
+      Map<String, Object> result = (Map<String, Object>)item;
+      StringBuilder name = new StringBuilder("jmh ").append(result.get("benchmark"));
+      Object params = result.get("params");
+      if (params != null) {
+        for (Map.Entry<String, Object> param : new TreeMap<>((Map<String, Object>)params).entrySet()) {
+          name.append(' ').append(param.getKey()).append('=').append(param.getValue());
+        }
+      }
+      Case c = getOrAddCase(name.toString());
+      String mode = String.valueOf(result.get("mode"));
+      Map<String, Object> primary = (Map<String, Object>)result.get("primaryMetric");
+      c.config.put("mode", mode);
+      c.config.put("unit", String.valueOf(primary.get("scoreUnit")));
+      c.config.put("threads", text(result.get("threads")));
+      c.config.put("forks", text(result.get("forks")));
+      c.addSample("score", "thrpt".equals(mode) ? THROUGHPUT : LATENCY,
+          Json.toDouble(primary.get("score")), Json.toDouble(primary.get("scoreError")));
+      Object secondary = result.get("secondaryMetrics");
+      if (secondary != null) {
+        for (Map.Entry<String, Object> metric : ((Map<String, Object>)secondary).entrySet()) {
+          if (metric.getKey().endsWith("gc.alloc.rate.norm")) {
+            Map<String, Object> alloc = (Map<String, Object>)metric.getValue();
+            c.addSample("allocBytesPerOp", ALLOCATION,
+                Json.toDouble(alloc.get("score")), Json.toDouble(alloc.get("scoreError")));
+          }
+        }
+      }
+    }
+  }
+
+  public String toJson() {
+    StringBuilder sb = new StringBuilder("{\n  \"environment\": {");
+    appendStrings(sb, environment);
+    sb.append("},\n  \"cases\": [");
+    boolean first = true;
+    for (Case c : cases.values()) {
+      sb.append(first ? "\n" : ",\n");
+      first = false;
+      sb.append("    {\"name\": ").append(Json.quote(c.name)).append(", \"config\": {");
+      appendStrings(sb, c.config);
+      sb.append("}, \"metrics\": {");
+      boolean firstMetric = true;
+      for (Map.Entry<String, Metric> entry : c.metrics.entrySet()) {
+        Metric metric = entry.getValue();
+        sb.append(firstMetric ? "" : ", ");
+        firstMetric = false;
+        sb.append(Json.quote(entry.getKey())).append(": {\"kind\": ").append(Json.quote(metric.kind))
+          .append(", \"values\": [");
+        for (int i = 0; i < metric.values.size(); i++) {
+          sb.append(i == 0 ? "" : ", ").append(number(metric.values.get(i)));
+        }
+        sb.append("], \"error\": ").append(number(metric.reportedError)).append('}');
+      }
+      sb.append("}}");
+    }
+    return sb.append("\n  ]\n}\n").toString();
+  }
+
+  @SuppressWarnings("unchecked")
+  public static BenchmarkRun fromJson(String json) {
+    Map<String, Object> root = (Map<String, Object>)Json.parse(json);
+    BenchmarkRun run = new BenchmarkRun();
+    for (Map.Entry<String, Object> entry : ((Map<String, Object>)root.get("environment")).entrySet()) {
+      run.putEnvironment(entry.getKey(), String.valueOf(entry.getValue()));
+    }
+    for (Object item : (List<Object>)root.get("cases")) {
+      Map<String, Object> caseMap = (Map<String, Object>)item;
+      Case c = run.getOrAddCase((String)caseMap.get("name"));
+      for (Map.Entry<String, Object> entry : ((Map<String, Object>)caseMap.get("config")).entrySet()) {
+        c.config.put(entry.getKey(), String.valueOf(entry.getValue()));
+      }
+      for (Map.Entry<String, Object> entry : ((Map<String, Object>)caseMap.get("metrics")).entrySet()) {
+        Map<String, Object> metricMap = (Map<String, Object>)entry.getValue();
+        double error = Json.toDouble(metricMap.get("error"));
+        for (Object value : (List<Object>)metricMap.get("values")) {
+          c.addSample(entry.getKey(), (String)metricMap.get("kind"), Json.toDouble(value), error);
+        }
+      }
+    }
+    return run;
+  }
+
+  public void save(File file) throws IOException {
+    Files.write(file.toPath(), toJson().getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static BenchmarkRun load(File file) throws IOException {
+    return fromJson(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+  }
+
+  private Case getOrAddCase(String name) {
+    Case c = cases.get(name);
+    if (c == null) {
+      c = new Case(name);
+      cases.put(name, c);
+    }
+    return c;
+  }
+
+  private static void appendStrings(StringBuilder sb, Map<String, String> map) {
+    boolean first = true;
+    for (Map.Entry<String, String> entry : map.entrySet()) {
+      sb.append(first ? "" : ", ").append(Json.quote(entry.getKey())).append(": ").append(Json.quote(entry.getValue()));
+      first = false;
+    }
+  }
+
+  // numbers come back from Json as doubles
+  private static String text(Object value) {
+    if (value instanceof Double && (Double)value == Math.rint((Double)value)) {
+      return String.valueOf(((Double)value).longValue());
+    }
+    return String.valueOf(value);
+  }
+
+  private static String number(double value) {
+    return Double.isNaN(value) || Double.isInfinite(value) ? "null" : String.valueOf(value);
+  }
+
+  public static class Case {
+    Case(String name) {
+      this.name = name;
+      this.config = new LinkedHashMap<>();
+      this.metrics = new LinkedHashMap<>();
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    // settings the case ran with that are not part of its name
+    public Map<String, String> getConfig() {
+      return config;
+    }
+
+    public Map<String, Metric> getMetrics() {
+      return metrics;
+    }
+
+    void addSample(String metricName, String kind, double value, double error) {
+      if (Double.isNaN(value)) {
+        return;
+      }
+      Metric metric = metrics.get(metricName);
+      if (metric == null) {
+        metric = new Metric(kind);
+        metrics.put(metricName, metric);
+      }
+      metric.values.add(value);
+      if (!Double.isNaN(error)) {
+        metric.reportedError = Double.isNaN(metric.reportedError) ? error : Math.max(metric.reportedError, error);
+      }
+    }
+
+    private final String name;
+    private final Map<String, String> config;
+    private final Map<String, Metric> metrics;
+  }
+
+  public static class Metric {
+    Metric(String kind) {
+      this.kind = kind;
+      this.values = new ArrayList<>();
+    }
+
+    public String getKind() {
+      return kind;
+    }
+
+    public boolean isHigherBetter() {
+      return THROUGHPUT.equals(kind);
+    }
+
+    public List<Double> getValues() {
+      return values;
+    }
+
+    public double getMean() {
+      double sum = 0;
+      for (double value : values) {
+        sum += value;
+      }
+      return values.isEmpty() ? 0 : sum/values.size();
+    }
+
+    // Half width of the confidence interval of the mean: the error JMH
+    // reported, or twice the standard error of repeated samples, whichever
+    // is larger. 0 for a single sample without a reported error.
+    public double getError() {
+      double error = Double.isNaN(reportedError) ? 0 : reportedError;
+      int n = values.size();
+      if (n < 2) {
+        return error;
+      }
+      double mean = getMean();
+      double squares = 0;
+      for (double value : values) {
+        squares += (value-mean)*(value-mean);
+      }
+      double stdDev = Math.sqrt(squares/(n-1));
+      return Math.max(error, 2*stdDev/Math.sqrt(n));
+    }
+
+    private final String kind;
+    private final List<Double> values;
+    private double reportedError = Double.NaN;
+  }
+
+  private final Map<String, String> environment;
+  private final Map<String, Case> cases;
+
+  public static final String THROUGHPUT = "throughput";
+  public static final String LATENCY = "latency";
+  public static final String ALLOCATION = "allocation";
+  private static final String[] LOOPBACK_PARAMS = {"messageSize", "workerNum", "connectionNum", "window", "targetOpsPerSec"};
+  private static final String[] LOOPBACK_CONFIG = {"bufferNum", "bufferSize", "saturated"};
+}
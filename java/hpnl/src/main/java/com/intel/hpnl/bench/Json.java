@@ -0,0 +1,215 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+
+package com.intel.hpnl.bench;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Just enough JSON for result files: objects become LinkedHashMaps, arrays
+// ArrayLists, numbers Doubles.
+public class Json {
+  public static Object parse(String text) {
+    Json json = new Json(text);
+    json.skipSpace();
+    Object value = json.readValue();
+    json.skipSpace();
+    if (json.pos != text.length()) {
+      throw json.error("trailing characters");
+    }
+    return value;
+  }
+
+  public static String quote(String value) {
+    StringBuilder sb = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < 0x20) {
+        sb.append(String.format("\\u%04x", (int)c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  // JMH writes "NaN" for an unknown error
+  public static double toDouble(Object value) {
+    if (value instanceof Double) {
+      return (Double)value;
+    }
+    if (value instanceof String) {
+      try {
+        return Double.parseDouble((String)value);
+      } catch (NumberFormatException e) {
+        return Double.NaN;
+      }
+    }
+    return Double.NaN;
+  }
+
+  private Json(String text) {
+    this.text = text;
+  }
+
+  private Object readValue() {
+    if (pos >= text.length()) {
+      throw error("unexpected end");
+    }
+    char c = text.charAt(pos);
+    if (c == '{') {
+      return readObject();
+    } else if (c == '[') {
+      return readArray();
+    } else if (c == '"') {
+      return readString();
+    } else if (text.startsWith("true", pos)) {
+      pos += 4;
+      return Boolean.TRUE;
+    } else if (text.startsWith("false", pos)) {
+      pos += 5;
+      return Boolean.FALSE;
+    } else if (text.startsWith("null", pos)) {
+      pos += 4;
+      return null;
+    }
+    return readNumber();
+  }
+
+  private Map<String, Object> readObject() {
+    Map<String, Object> object = new LinkedHashMap<>();
+    pos++;
+    skipSpace();
+    if (peek() == '}') {
+      pos++;
+      return object;
+    }
+    while (true) {
+      skipSpace();
+      if (peek() != '"') {
+        throw error("expected a key");
+      }
+      String key = readString();
+      skipSpace();
+      expect(':');
+      skipSpace();
+      object.put(key, readValue());
+      skipSpace();
+      if (peek() == ',') {
+        pos++;
+      } else {
+        expect('}');
+        return object;
+      }
+    }
+  }
+
+  private List<Object> readArray() {
+    List<Object> array = new ArrayList<>();
+    pos++;
+    skipSpace();
+    if (peek() == ']') {
+      pos++;
+      return array;
+    }
+    while (true) {
+      skipSpace();
+      array.add(readValue());
+      skipSpace();
+      if (peek() == ',') {
+        pos++;
+      } else {
+        expect(']');
+        return array;
+      }
+    }
+  }
+
+  private String readString() {
+    StringBuilder sb = new StringBuilder();
+    pos++;
+    while (true) {
+      if (pos >= text.length()) {
+        throw error("unterminated string");
+      }
+      char c = text.charAt(pos++);
+      if (c == '"') {
+        return sb.toString();
+      }
+      if (c != '\\') {
+        sb.append(c);
+        continue;
+      }
+      char escaped = text.charAt(pos++);
+      switch (escaped) {
+        case 'b': sb.append('\b'); break;
+        case 'f': sb.append('\f'); break;
+        case 'n': sb.append('\n'); break;
+        case 'r': sb.append('\r'); break;
+        case 't': sb.append('\t'); break;
+        case 'u':
+          sb.append((char)Integer.parseInt(text.substring(pos, pos+4), 16));
+          pos += 4;
+          break;
+        default: sb.append(escaped);
+      }
+    }
+  }
+
+  private Double readNumber() {
+    int start = pos;
+    while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+      pos++;
+    }
+    if (start == pos) {
+      throw error("unexpected character");
+    }
+    return Double.valueOf(text.substring(start, pos));
+  }
+
+  private void skipSpace() {
+    while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+      pos++;
+    }
+  }
+
+  private char peek() {
+    if (pos >= text.length()) {
+      throw error("unexpected end");
+    }
+    return text.charAt(pos);
+  }
+
+  private void expect(char c) {
+    if (peek() != c) {
+      throw error("expected '" + c + "'");
+    }
+    pos++;
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException("malformed json at " + pos + ": " + message);
+  }
+
+  private final String text;
+  private int pos = 0;
+}
@@ -0,0 +1,124 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+
+package com.intel.hpnl.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import picocli.CommandLine;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Command;
+
+// Sweeps LoopbackBenchmark over every combination of the given settings,
+// one JSON line per run.
+@Command(mixinStandardHelpOptions = true, version = "auto help demo - picocli 3.0")
+public class LoopbackBench implements Runnable {
+
+  @Option(names = {"-a", "--address"}, required = false, description = "local address to listen on")
+  String addr = "127.0.0.1";
+
+  @Option(names = {"-p", "--port"}, required = false, description = "first port, every run listens on the next one")
+  int port = 12345;
+
+  @Option(names = {"-t", "--modes"}, required = false, split = ",", description = "msg, rma and/or rdm")
+  String[] modes = {LoopbackBenchmark.MSG, LoopbackBenchmark.RMA, LoopbackBenchmark.RDM};
+
+  @Option(names = {"-m", "--message_sizes"}, required = false, split = ",", description = "message sizes")
+  int[] msgSizes = {64, 4096, 65536};
+
+  @Option(names = {"-w", "--worker_numbers"}, required = false, split = ",", description = "worker numbers")
+  int[] workNbrs = {1, 2};
+
+  @Option(names = {"-c", "--connection_numbers"}, required = false, split = ",", description = "connection numbers")
+  int[] conNbrs = {1, 4};
+
+  @Option(names = {"-o", "--windows"}, required = false, split = ",", description = "outstanding operations per connection")
+  int[] windows = {1, 16};
+
+  @Option(names = {"-d", "--duration"}, required = false, description = "measured seconds per run")
+  int duration = 5;
+
+  @Option(names = {"-u", "--warmup"}, required = false, description = "warmup seconds per run")
+  int warmup = 2;
+
+  @Option(names = {"-f", "--affinity"}, required = false, split = ",", description = "HPNL thread affinity")
+  int[] affinities = null;
+
+  @Option(names = {"-r", "--result_file"}, required = false, description = "append results to this file instead of stdout")
+  String resultFile = null;
+
+  @Option(names = {"-n", "--repeat"}, required = false, description = "runs per combination, repeats show the noise")
+  int repeat = 1;
+
+  @Option(names = {"--run_file"}, required = false, description = "also write the results with the environment, see BenchResults")
+  File runFile = null;
+
+  @Option(names = {"--label"}, required = false, description = "name of this run in the run file")
+  String label = null;
+
+  @Option(names = {"--provider"}, required = false, description = "fabric provider libhpnl was built for")
+  String provider = "sockets";
+
+  public void run() {
+    PrintWriter out = null;
+    BenchmarkRun run = BenchmarkRun.capture(label);
+    run.putEnvironment("provider", provider);
+    run.putEnvironment("affinities", Arrays.toString(affinities));
+    try {
+      out = resultFile == null ? new PrintWriter(System.out, true) : new PrintWriter(new FileWriter(resultFile, true), true);
+      int runNum = 0;
+      for (String mode : modes) {
+        for (int msgSize : msgSizes) {
+          for (int workNbr : workNbrs) {
+            for (int conNbr : conNbrs) {
+              for (int window : windows) {
+                for (int i = 0; i < repeat; i++) {
+                  LoopbackBenchmark benchmark = new LoopbackBenchmark(mode, msgSize, workNbr, conNbr, window);
+                  benchmark.setAddress(addr, String.valueOf(port+runNum++));
+                  benchmark.setDuration(warmup*1000L, duration*1000L);
+                  benchmark.setAffinities(affinities);
+                  BenchmarkResult result = benchmark.run();
+                  System.err.println(result);
+                  out.println(result.toJson());
+                  run.addResult(result);
+                }
+              }
+            }
+          }
+        }
+      }
+      if (runFile != null) {
+        run.save(runFile);
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    } finally {
+      if (out != null && resultFile != null) {
+        out.close();
+      }
+    }
+  }
+
+  public static void main(String... args) {
+    CommandLine.run(new LoopbackBench(), args);
+  }
+}
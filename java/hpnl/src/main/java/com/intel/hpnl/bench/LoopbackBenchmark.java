@@ -0,0 +1,353 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+
+package com.intel.hpnl.bench;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.intel.hpnl.core.Connection;
+import com.intel.hpnl.core.Handler;
+import com.intel.hpnl.core.HpnlBuffer;
+import com.intel.hpnl.core.PeerHandle;
+import com.intel.hpnl.core.RdmConnection;
+import com.intel.hpnl.core.RdmHandler;
+import com.intel.hpnl.core.RdmService;
+import com.intel.hpnl.metrics.LatencyHistogram;
+import com.intel.hpnl.metrics.StripedCounter;
+import com.intel.hpnl.metrics.StripedHistogram;
+import com.intel.hpnl.service.Client;
+import com.intel.hpnl.service.Server;
+
+// Runs server and client in this process over the local provider. Every
+// connection keeps window operations outstanding, a completed operation is
+// reposted at once from the completion callback.
+//   msg: the server echoes, latency is the round trip of a message
+//   rma: the client reads messageSize bytes from a server buffer
+//   rdm: like msg on RdmService
+public class LoopbackBenchmark {
+  public LoopbackBenchmark(String mode, int messageSize, int workerNum, int connectionNum, int window) {
+    if (!MSG.equals(mode) && !RMA.equals(mode) && !RDM.equals(mode)) {
+      throw new IllegalArgumentException("unknown mode " + mode);
+    }
+    if (messageSize < TIMESTAMP_SIZE) {
+      throw new IllegalArgumentException("message size must be at least " + TIMESTAMP_SIZE);
+    }
+    this.mode = mode;
+    this.messageSize = messageSize;
+    this.workerNum = workerNum;
+    this.connectionNum = connectionNum;
+    this.window = window;
+    this.bufferSize = Math.max(messageSize+FRAME_OVERHEAD, MIN_BUFFER_SIZE);
+    this.bufferNum = Math.max(window*2, MIN_BUFFER_NUM);
+  }
+
+  public void setAddress(String addr, String port) {
+    this.addr = addr;
+    this.port = port;
+  }
+
+  public void setDuration(long warmupMillis, long durationMillis) {
+    this.warmupMillis = warmupMillis;
+    this.durationMillis = durationMillis;
+  }
+
+  public void setAffinities(int[] affinities) {
+    this.affinities = affinities;
+  }
+
+  // pins the client workers apart from the server ones, by default they
+  // share the affinities
+  public void setClientAffinities(int[] clientAffinities) {
+    this.clientAffinities = clientAffinities;
+  }
+
+  public void setBuffers(int bufferNum, int bufferSize) {
+    this.bufferNum = bufferNum;
+    this.bufferSize = bufferSize;
+  }
+
+  public BenchmarkResult run() {
+    this.latency = new StripedHistogram(workerNum);
+    this.opNum = new StripedCounter(workerNum);
+    this.running = true;
+    if (MSG.equals(mode)) {
+      return runMsg();
+    } else if (RMA.equals(mode)) {
+      return runRma();
+    } else {
+      return runRdm();
+    }
+  }
+
+  private BenchmarkResult runMsg() {
+    Server server = new Server(workerNum, bufferNum);
+    server.setAffinities(affinities);
+    server.setRecvCallback(new Handler() {
+      public void handle(Connection con, int bufferId, int blockBufferSize) {
+        con.send(con.getRecvBuffer(bufferId).get(blockBufferSize), (byte)0, 0);
+      }
+    });
+    server.initBufferPool(poolBufferNum(), bufferSize, poolBufferNum());
+    server.start();
+    server.listen(addr, port);
+
+    Client client = new Client(workerNum, bufferNum);
+    client.setAffinities(clientAffinities == null ? affinities : clientAffinities);
+    client.setRecvCallback(new Handler() {
+      public void handle(Connection con, int bufferId, int blockBufferSize) {
+        ByteBuffer message = con.getRecvBuffer(bufferId).get(blockBufferSize);
+        complete(con.getIndex(), message.getLong(0));
+        if (running) {
+          message.putLong(0, System.nanoTime());
+          con.send(message, (byte)0, 0);
+        }
+      }
+    });
+    client.initBufferPool(poolBufferNum(), bufferSize, poolBufferNum());
+    client.start();
+
+    for (int i = 0; i < connectionNum; i++) {
+      Connection con = connect(client);
+      for (int j = 0; j < window; j++) {
+        con.send(newMessage(), (byte)0, 0);
+      }
+    }
+    BenchmarkResult result = measure();
+    client.shutdown(DRAIN_MILLIS);
+    server.shutdown(DRAIN_MILLIS);
+    return result;
+  }
+
+  private BenchmarkResult runRma() {
+    Server server = new Server(workerNum, bufferNum);
+    server.setAffinities(affinities);
+    server.initBufferPool(poolBufferNum(), bufferSize, poolBufferNum());
+    final HpnlBuffer remoteBuffer = server.getRmaBuffer(messageSize);
+    if (remoteBuffer == null) {
+      throw new IllegalStateException("failed to register a " + messageSize + " bytes rma buffer");
+    }
+    // any message asks for the address and key of the buffer to read
+    server.setRecvCallback(new Handler() {
+      public void handle(Connection con, int bufferId, int blockBufferSize) {
+        ByteBuffer reply = ByteBuffer.allocate(16);
+        reply.putLong(remoteBuffer.getAddress());
+        reply.putLong(remoteBuffer.getRKey());
+        reply.flip();
+        con.send(reply, (byte)0, 0);
+      }
+    });
+    server.start();
+    server.listen(addr, port);
+
+    Client client = new Client(workerNum, bufferNum);
+    client.setAffinities(clientAffinities == null ? affinities : clientAffinities);
+    client.initBufferPool(poolBufferNum(), bufferSize, poolBufferNum());
+    // one local buffer per outstanding read
+    HpnlBuffer[][] buffers = new HpnlBuffer[connectionNum][window];
+    int maxBufferId = 0;
+    for (int i = 0; i < connectionNum; i++) {
+      for (int j = 0; j < window; j++) {
+        buffers[i][j] = client.getRmaBuffer(messageSize);
+        if (buffers[i][j] == null) {
+          throw new IllegalStateException("failed to register a " + messageSize + " bytes rma buffer");
+        }
+        maxBufferId = Math.max(maxBufferId, buffers[i][j].getBufferId());
+      }
+    }
+    // indexed by local rma buffer id
+    final Map<Connection, HpnlBuffer[]> localBuffers = new ConcurrentHashMap<>();
+    final long[] postNanos = new long[maxBufferId+1];
+    final long[] remoteAddrs = new long[maxBufferId+1];
+    final long[] remoteKeys = new long[maxBufferId+1];
+    client.setRecvCallback(new Handler() {
+      public void handle(Connection con, int bufferId, int blockBufferSize) {
+        ByteBuffer reply = con.getRecvBuffer(bufferId).get(blockBufferSize);
+        long remoteAddr = reply.getLong();
+        long remoteKey = reply.getLong();
+        for (HpnlBuffer buffer : localBuffers.get(con)) {
+          int id = buffer.getBufferId();
+          remoteAddrs[id] = remoteAddr;
+          remoteKeys[id] = remoteKey;
+          postNanos[id] = System.nanoTime();
+          con.read(id, 0, messageSize, remoteAddr, remoteKey);
+        }
+      }
+    });
+    client.setReadCallback(new Handler() {
+      public void handle(Connection con, int bufferId, int blockBufferSize) {
+        complete(con.getIndex(), postNanos[bufferId]);
+        if (running) {
+          postNanos[bufferId] = System.nanoTime();
+          con.read(bufferId, 0, messageSize, remoteAddrs[bufferId], remoteKeys[bufferId]);
+        }
+      }
+    });
+    client.start();
+
+    for (int i = 0; i < connectionNum; i++) {
+      Connection con = connect(client);
+      localBuffers.put(con, buffers[i]);
+      con.send(newMessage(), (byte)0, 0);
+    }
+    BenchmarkResult result = measure();
+    client.shutdown(DRAIN_MILLIS);
+    server.shutdown(DRAIN_MILLIS);
+    return result;
+  }
+
+  private BenchmarkResult runRdm() {
+    RdmService server = new RdmService(workerNum, bufferNum, true);
+    server.setAffinities(affinities);
+    server = server.init();
+    if (server == null) {
+      throw new IllegalStateException("failed to init rdm server");
+    }
+    server.setRecvCallback(new RdmHandler() {
+      public void handle(RdmConnection con, int bufferId, int blockBufferSize) {
+        HpnlBuffer recvBuffer = con.getRecvBuffer(bufferId);
+        ByteBuffer message = recvBuffer.get(blockBufferSize);
+        PeerHandle peer = recvBuffer.getPeer();
+        if (peer == null) {
+          peer = con.resolvePeer(recvBuffer.getName());
+        }
+        con.sendTo(message, (byte)0, 0, peer);
+      }
+    });
+    server.initBufferPool(poolBufferNum(), bufferSize, poolBufferNum());
+    server.listen(addr, port);
+
+    RdmService client = new RdmService(workerNum, bufferNum, false);
+    client.setAffinities(clientAffinities == null ? affinities : clientAffinities);
+    client = client.init();
+    if (client == null) {
+      server.shutdown();
+      server.join();
+      throw new IllegalStateException("failed to init rdm client");
+    }
+    client.setRecvCallback(new RdmHandler() {
+      public void handle(RdmConnection con, int bufferId, int blockBufferSize) {
+        ByteBuffer message = con.getRecvBuffer(bufferId).get(blockBufferSize);
+        complete(con.getIndex(), message.getLong(0));
+        if (running) {
+          message.putLong(0, System.nanoTime());
+          con.send(message, (byte)0, 0);
+        }
+      }
+    });
+    client.initBufferPool(poolBufferNum(), bufferSize, poolBufferNum());
+
+    for (int i = 0; i < connectionNum; i++) {
+      RdmConnection con = client.getConnection(addr, port);
+      if (con == null) {
+        throw new IllegalStateException("failed to connect to " + addr + ":" + port);
+      }
+      for (int j = 0; j < window; j++) {
+        con.send(newMessage(), (byte)0, 0);
+      }
+    }
+    BenchmarkResult result = measure();
+    sleep(DRAIN_MILLIS);
+    client.shutdown();
+    client.join();
+    server.shutdown();
+    server.join();
+    return result;
+  }
+
+  private Connection connect(Client client) {
+    Connection con = client.connect(addr, port, CONNECT_TIMEOUT_MILLIS);
+    if (con == null) {
+      throw new IllegalStateException("failed to connect to " + addr + ":" + port);
+    }
+    return con;
+  }
+
+  private ByteBuffer newMessage() {
+    ByteBuffer message = ByteBuffer.allocate(messageSize);
+    message.putLong(0, System.nanoTime());
+    return message;
+  }
+
+  // called on the worker thread of stripe
+  private void complete(int stripe, long postNanos) {
+    latency.record(stripe, System.nanoTime()-postNanos);
+    opNum.increment(stripe);
+  }
+
+  private BenchmarkResult measure() {
+    sleep(warmupMillis);
+    LatencyHistogram.Snapshot startLatency = latency.snapshot();
+    long startOpNum = opNum.sum();
+    long startBytes = AllocationMeter.allocatedBytes();
+    long startNanos = System.nanoTime();
+    sleep(durationMillis);
+    LatencyHistogram.Snapshot endLatency = latency.snapshot();
+    long endOpNum = opNum.sum();
+    long endBytes = AllocationMeter.allocatedBytes();
+    long elapsedNanos = System.nanoTime()-startNanos;
+    running = false;
+    BenchmarkResult result = new BenchmarkResult(mode, messageSize, workerNum, connectionNum, window,
+        elapsedNanos, endOpNum-startOpNum, endLatency.minus(startLatency));
+    result.setBuffers(bufferNum, bufferSize);
+    result.setAllocatedBytes(startBytes < 0 || endBytes < 0 ? -1 : endBytes-startBytes);
+    return result;
+  }
+
+  private int poolBufferNum() {
+    return bufferNum*2*connectionNum;
+  }
+
+  private void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private final String mode;
+  private final int messageSize;
+  private final int workerNum;
+  private final int connectionNum;
+  private final int window;
+  private int bufferSize;
+  private int bufferNum;
+  private String addr = "127.0.0.1";
+  private String port = "12345";
+  private long warmupMillis = 2000;
+  private long durationMillis = 5000;
+  private int[] affinities = null;
+  private int[] clientAffinities = null;
+
+  private StripedHistogram latency;
+  private StripedCounter opNum;
+  private volatile boolean running;
+
+  public static final String MSG = "msg";
+  public static final String RMA = "rma";
+  public static final String RDM = "rdm";
+  private static final int TIMESTAMP_SIZE = 8;
+  // RDM frames carry the sender's name in front of the payload
+  private static final int FRAME_OVERHEAD = 128;
+  private static final int MIN_BUFFER_SIZE = 4096;
+  private static final int MIN_BUFFER_NUM = 32;
+  private static final int CONNECT_TIMEOUT_MILLIS = 3000;
+  private static final long DRAIN_MILLIS = 1000;
+}
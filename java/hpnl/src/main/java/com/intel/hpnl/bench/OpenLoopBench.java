@@ -0,0 +1,121 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+
+package com.intel.hpnl.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import picocli.CommandLine;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Command;
+
+// Throughput versus latency curve of OpenLoopBenchmark, one JSON line per
+// offered rate.
+@Command(mixinStandardHelpOptions = true, version = "auto help demo - picocli 3.0")
+public class OpenLoopBench implements Runnable {
+
+  @Option(names = {"-a", "--address"}, required = false, description = "local address to listen on")
+  String addr = "127.0.0.1";
+
+  @Option(names = {"-p", "--port"}, required = false, description = "server port")
+  String port = "12345";
+
+  @Option(names = {"-m", "--message_size"}, required = false, description = "message size")
+  int msgSize = 4096;
+
+  @Option(names = {"-w", "--worker_number"}, required = false, description = "worker numbers")
+  int workNbr = 1;
+
+  @Option(names = {"-c", "--connection_number"}, required = false, description = "connection numbers")
+  int conNbr = 16;
+
+  @Option(names = {"-g", "--generator_number"}, required = false, description = "load generator threads")
+  int threadNbr = 2;
+
+  @Option(names = {"-R", "--rates"}, required = false, split = ",", description = "offered ops/s, overrides the ramp")
+  long[] rates = null;
+
+  @Option(names = {"-s", "--start_rate"}, required = false, description = "first offered ops/s of the ramp")
+  long startRate = 1000;
+
+  @Option(names = {"-x", "--rate_factor"}, required = false, description = "ramp factor between steps")
+  double rateFactor = 2;
+
+  @Option(names = {"-M", "--max_rate"}, required = false, description = "last offered ops/s of the ramp")
+  long maxRate = 10000000;
+
+  @Option(names = {"-d", "--duration"}, required = false, description = "measured seconds per step")
+  int duration = 5;
+
+  @Option(names = {"-u", "--warmup"}, required = false, description = "warmup seconds per step")
+  int warmup = 2;
+
+  @Option(names = {"-f", "--affinity"}, required = false, split = ",", description = "HPNL thread affinity")
+  int[] affinities = null;
+
+  @Option(names = {"-r", "--result_file"}, required = false, description = "append results to this file instead of stdout")
+  String resultFile = null;
+
+  @Option(names = {"--run_file"}, required = false, description = "also write the results with the environment, see BenchResults")
+  File runFile = null;
+
+  @Option(names = {"--label"}, required = false, description = "name of this run in the run file")
+  String label = null;
+
+  @Option(names = {"--provider"}, required = false, description = "fabric provider libhpnl was built for")
+  String provider = "sockets";
+
+  public void run() {
+    OpenLoopBenchmark benchmark = new OpenLoopBenchmark(msgSize, workNbr, conNbr, threadNbr);
+    benchmark.setAddress(addr, port);
+    benchmark.setDuration(warmup*1000L, duration*1000L);
+    benchmark.setAffinities(affinities);
+    List<BenchmarkResult> results = rates != null ? benchmark.run(rates) : benchmark.ramp(startRate, rateFactor, maxRate);
+
+    PrintWriter out = null;
+    try {
+      out = resultFile == null ? new PrintWriter(System.out, true) : new PrintWriter(new FileWriter(resultFile, true), true);
+      BenchmarkRun run = BenchmarkRun.capture(label);
+      run.putEnvironment("provider", provider);
+      run.putEnvironment("affinities", Arrays.toString(affinities));
+      run.putEnvironment("generatorNum", String.valueOf(threadNbr));
+      for (BenchmarkResult result : results) {
+        out.println(result.toJson());
+        run.addResult(result);
+      }
+      if (runFile != null) {
+        run.save(runFile);
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    } finally {
+      if (out != null && resultFile != null) {
+        out.close();
+      }
+    }
+  }
+
+  public static void main(String... args) {
+    CommandLine.run(new OpenLoopBench(), args);
+  }
+}
@@ -0,0 +1,308 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+
+package com.intel.hpnl.bench;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import com.intel.hpnl.core.Connection;
+import com.intel.hpnl.core.Handler;
+import com.intel.hpnl.metrics.LatencyHistogram;
+import com.intel.hpnl.metrics.StripedCounter;
+import com.intel.hpnl.metrics.StripedHistogram;
+import com.intel.hpnl.service.Client;
+import com.intel.hpnl.service.Server;
+
+// Offers a fixed request rate to an echo server in this process, no matter
+// how fast replies come back. Generator threads send round robin over the
+// connections on a schedule, every message carries the time it was meant
+// to be sent and latency is taken from there. A generator that falls behind
+// sends the missed messages at once, so stalls show up in the latency
+// instead of silently lowering the load.
+public class OpenLoopBenchmark {
+  public OpenLoopBenchmark(int messageSize, int workerNum, int connectionNum, int threadNum) {
+    if (messageSize < TIMESTAMP_SIZE) {
+      throw new IllegalArgumentException("message size must be at least " + TIMESTAMP_SIZE);
+    }
+    if (connectionNum < threadNum) {
+      throw new IllegalArgumentException("every generator thread needs a connection");
+    }
+    this.messageSize = messageSize;
+    this.workerNum = workerNum;
+    this.connectionNum = connectionNum;
+    this.threadNum = threadNum;
+    this.sentNums = new long[threadNum];
+    this.bufferSize = Math.max(messageSize+FRAME_OVERHEAD, MIN_BUFFER_SIZE);
+  }
+
+  public void setAddress(String addr, String port) {
+    this.addr = addr;
+    this.port = port;
+  }
+
+  // per rate step
+  public void setDuration(long warmupMillis, long durationMillis) {
+    this.warmupMillis = warmupMillis;
+    this.durationMillis = durationMillis;
+  }
+
+  public void setAffinities(int[] affinities) {
+    this.affinities = affinities;
+  }
+
+  public void setBuffers(int bufferNum, int bufferSize) {
+    this.bufferNum = bufferNum;
+    this.bufferSize = bufferSize;
+  }
+
+  // Runs the rates in order and stops after the first step that could not
+  // keep up, that one is still reported.
+  public List<BenchmarkResult> run(long[] targetRates) {
+    List<BenchmarkResult> results = new ArrayList<>();
+    start();
+    try {
+      for (long targetRate : targetRates) {
+        BenchmarkResult result = step(targetRate);
+        results.add(result);
+        System.err.println(result);
+        if (result.isSaturated()) {
+          break;
+        }
+      }
+    } finally {
+      stop();
+    }
+    return results;
+  }
+
+  // startRate, startRate*factor, ... up to maxRate or saturation
+  public List<BenchmarkResult> ramp(long startRate, double factor, long maxRate) {
+    if (startRate <= 0 || factor <= 1) {
+      throw new IllegalArgumentException("ramp needs a positive start rate and a factor above 1");
+    }
+    List<Long> rates = new ArrayList<>();
+    for (double rate = startRate; rate <= maxRate; rate *= factor) {
+      rates.add((long)rate);
+    }
+    long[] targetRates = new long[rates.size()];
+    for (int i = 0; i < targetRates.length; i++) {
+      targetRates[i] = rates.get(i);
+    }
+    return run(targetRates);
+  }
+
+  private void start() {
+    this.latency = new StripedHistogram(workerNum);
+    this.opNum = new StripedCounter(workerNum);
+
+    server = new Server(workerNum, bufferNum);
+    server.setAffinities(affinities);
+    server.setRecvCallback(new Handler() {
+      public void handle(Connection con, int bufferId, int blockBufferSize) {
+        con.send(con.getRecvBuffer(bufferId).get(blockBufferSize), (byte)0, 0);
+      }
+    });
+    server.initBufferPool(bufferNum*2*connectionNum, bufferSize, bufferNum*2*connectionNum);
+    server.start();
+    server.listen(addr, port);
+
+    client = new Client(workerNum, bufferNum);
+    client.setAffinities(affinities);
+    client.setRecvCallback(new Handler() {
+      public void handle(Connection con, int bufferId, int blockBufferSize) {
+        ByteBuffer message = con.getRecvBuffer(bufferId).get(blockBufferSize);
+        latency.record(con.getIndex(), System.nanoTime()-message.getLong(0));
+        opNum.increment(con.getIndex());
+      }
+    });
+    client.initBufferPool(bufferNum*2*connectionNum, bufferSize, bufferNum*2*connectionNum);
+    client.start();
+
+    connections = new Connection[connectionNum];
+    for (int i = 0; i < connectionNum; i++) {
+      connections[i] = client.connect(addr, port, CONNECT_TIMEOUT_MILLIS);
+      if (connections[i] == null) {
+        stop();
+        throw new IllegalStateException("failed to connect to " + addr + ":" + port);
+      }
+    }
+  }
+
+  private void stop() {
+    if (client != null) {
+      client.shutdown(DRAIN_MILLIS);
+      client = null;
+    }
+    if (server != null) {
+      server.shutdown(DRAIN_MILLIS);
+      server = null;
+    }
+  }
+
+  private BenchmarkResult step(long targetRate) {
+    Generator[] generators = new Generator[threadNum];
+    for (int i = 0; i < threadNum; i++) {
+      generators[i] = new Generator(i, targetRate);
+      generators[i].start();
+    }
+    sleep(warmupMillis);
+    LatencyHistogram.Snapshot startLatency = latency.snapshot();
+    long startOpNum = opNum.sum();
+    long startBytes = AllocationMeter.allocatedBytes();
+    long startNanos = System.nanoTime();
+    sleep(durationMillis);
+    LatencyHistogram.Snapshot endLatency = latency.snapshot();
+    long endOpNum = opNum.sum();
+    long endBytes = AllocationMeter.allocatedBytes();
+    long elapsedNanos = System.nanoTime()-startNanos;
+
+    boolean overflowed = false;
+    for (Generator generator : generators) {
+      generator.shutdown();
+    }
+    for (Generator generator : generators) {
+      try {
+        generator.join();
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+      }
+      overflowed |= generator.isOverflowed();
+    }
+    long completedOpNum = endOpNum-startOpNum;
+    boolean saturated = overflowed || completedOpNum*1e9/elapsedNanos < targetRate*SATURATION_RATIO;
+    // replies of this step must not count into the next one
+    saturated |= !drain(totalSentNum());
+    BenchmarkResult result = new BenchmarkResult("open", messageSize, workerNum, connectionNum, 0, elapsedNanos,
+        completedOpNum, endLatency.minus(startLatency), targetRate, saturated);
+    result.setBuffers(bufferNum, bufferSize);
+    result.setAllocatedBytes(startBytes < 0 || endBytes < 0 ? -1 : endBytes-startBytes);
+    return result;
+  }
+
+  private boolean drain(long sentNum) {
+    long deadline = System.currentTimeMillis()+DRAIN_MILLIS;
+    while (opNum.sum() < sentNum) {
+      if (System.currentTimeMillis() > deadline) {
+        return false;
+      }
+      sleep(1);
+    }
+    return true;
+  }
+
+  private long totalSentNum() {
+    long sum = 0;
+    for (long num : sentNums) {
+      sum += num;
+    }
+    return sum;
+  }
+
+  private void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private class Generator extends Thread {
+    Generator(int index, long targetRate) {
+      this.index = index;
+      this.intervalNanos = Math.max(1, (long)(1e9*threadNum/targetRate));
+      this.setDaemon(true);
+    }
+
+    public void run() {
+      // connections index, index+threadNum, ... belong to this generator
+      int next = index;
+      long intendedNanos = System.nanoTime();
+      long sentNum = sentNums[index];
+      while (running) {
+        long now = System.nanoTime();
+        if (now < intendedNanos) {
+          if (intendedNanos-now > SPIN_NANOS) {
+            LockSupport.parkNanos(intendedNanos-now-SPIN_NANOS);
+          }
+          continue;
+        }
+        ByteBuffer message = ByteBuffer.allocate(messageSize);
+        message.putLong(0, intendedNanos);
+        connections[next].send(message, (byte)0, 0);
+        next += threadNum;
+        if (next >= connectionNum) {
+          next = index;
+        }
+        intendedNanos += intervalNanos;
+        sentNums[index] = ++sentNum;
+        if ((sentNum & (CHECK_INTERVAL-1)) == 0 && totalSentNum()-opNum.sum() > MAX_OUTSTANDING_PER_CONNECTION*connectionNum) {
+          // far past saturation, the backlog would only grow
+          overflowed = true;
+          break;
+        }
+      }
+    }
+
+    public void shutdown() {
+      running = false;
+    }
+
+    public boolean isOverflowed() {
+      return overflowed;
+    }
+
+    private final int index;
+    private final long intervalNanos;
+    private volatile boolean running = true;
+    private volatile boolean overflowed = false;
+  }
+
+  private final int messageSize;
+  private final int workerNum;
+  private final int connectionNum;
+  private final int threadNum;
+  private int bufferSize;
+  private int bufferNum = MIN_BUFFER_NUM;
+  private String addr = "127.0.0.1";
+  private String port = "12345";
+  private long warmupMillis = 2000;
+  private long durationMillis = 5000;
+  private int[] affinities = null;
+
+  private Server server;
+  private Client client;
+  private Connection[] connections;
+  private StripedHistogram latency;
+  private StripedCounter opNum;
+  // written by generator i only
+  private final long[] sentNums;
+
+  private static final int TIMESTAMP_SIZE = 8;
+  private static final int FRAME_OVERHEAD = 128;
+  private static final int MIN_BUFFER_SIZE = 4096;
+  private static final int MIN_BUFFER_NUM = 32;
+  private static final int CONNECT_TIMEOUT_MILLIS = 3000;
+  private static final long DRAIN_MILLIS = 3000;
+  private static final long SPIN_NANOS = 50000;
+  private static final int CHECK_INTERVAL = 64;
+  private static final long MAX_OUTSTANDING_PER_CONNECTION = 4096;
+  private static final double SATURATION_RATIO = 0.95;
+}
@@ -0,0 +1,238 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+
+package com.intel.hpnl.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compares a run against a baseline metric by metric. A change counts
+// only when it is beyond the threshold of its kind and beyond the noise of
+// both runs, otherwise it is reported as noisy or unchanged.
+public class RegressionComparator {
+  public RegressionComparator() {
+    this.thresholds = new HashMap<>();
+    this.thresholds.put(BenchmarkRun.THROUGHPUT, 0.05);
+    this.thresholds.put(BenchmarkRun.LATENCY, 0.10);
+    this.thresholds.put(BenchmarkRun.ALLOCATION, 0.10);
+    this.absoluteThresholds = new HashMap<>();
+    this.absoluteThresholds.put(BenchmarkRun.ALLOCATION, 1.0);
+  }
+
+  // relative change, 0.05 is 5%
+  public void setThreshold(String kind, double threshold) {
+    thresholds.put(kind, threshold);
+  }
+
+  // change in the unit of the metric, used when the baseline is 0 and a
+  // relative change is undefined, e.g. 1.0 B/op for an allocation free case
+  public void setAbsoluteThreshold(String kind, double threshold) {
+    absoluteThresholds.put(kind, threshold);
+  }
+
+  public List<Finding> compare(BenchmarkRun baseline, BenchmarkRun current) {
+    List<Finding> findings = new ArrayList<>();
+    for (BenchmarkRun.Case baseCase : baseline.getCases()) {
+      BenchmarkRun.Case currentCase = current.getCase(baseCase.getName());
+      for (Map.Entry<String, BenchmarkRun.Metric> entry : baseCase.getMetrics().entrySet()) {
+        BenchmarkRun.Metric base = entry.getValue();
+        BenchmarkRun.Metric cur = currentCase == null ? null : currentCase.getMetrics().get(entry.getKey());
+        findings.add(compare(baseCase.getName(), entry.getKey(), base, cur));
+      }
+    }
+    for (BenchmarkRun.Case currentCase : current.getCases()) {
+      if (baseline.getCase(currentCase.getName()) == null) {
+        for (Map.Entry<String, BenchmarkRun.Metric> entry : currentCase.getMetrics().entrySet()) {
+          findings.add(new Finding(currentCase.getName(), entry.getKey(), entry.getValue().getKind(),
+              Double.NaN, entry.getValue().getMean(), 0, 0, Status.NEW));
+        }
+      }
+    }
+    return findings;
+  }
+
+  // environment entries that differ, the time and label of a run always do
+  public List<String> environmentDiffs(BenchmarkRun baseline, BenchmarkRun current) {
+    List<String> diffs = new ArrayList<>();
+    Map<String, String> base = baseline.getEnvironment();
+    Map<String, String> cur = current.getEnvironment();
+    for (Map.Entry<String, String> entry : base.entrySet()) {
+      String key = entry.getKey();
+      if ("time".equals(key) || "label".equals(key)) {
+        continue;
+      }
+      if (!entry.getValue().equals(cur.get(key))) {
+        diffs.add(key + ": " + entry.getValue() + " -> " + cur.get(key));
+      }
+    }
+    for (String key : cur.keySet()) {
+      if (!base.containsKey(key) && !"label".equals(key)) {
+        diffs.add(key + ": null -> " + cur.get(key));
+      }
+    }
+    return diffs;
+  }
+
+  public static boolean hasRegression(List<Finding> findings) {
+    for (Finding finding : findings) {
+      if (finding.getStatus() == Status.REGRESSED) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public String report(BenchmarkRun baseline, BenchmarkRun current, List<Finding> findings) {
+    StringBuilder sb = new StringBuilder();
+    List<String> diffs = environmentDiffs(baseline, current);
+    if (!diffs.isEmpty()) {
+      sb.append("environment differs from the baseline:\n");
+      for (String diff : diffs) {
+        sb.append("  ").append(diff).append('\n');
+      }
+    }
+    int[] counts = new int[Status.values().length];
+    for (Finding finding : findings) {
+      counts[finding.getStatus().ordinal()]++;
+      if (finding.getStatus() != Status.UNCHANGED) {
+        sb.append(finding).append('\n');
+      }
+    }
+    sb.append(String.format("%d regressed, %d improved, %d noisy, %d unchanged, %d missing, %d new",
+        counts[Status.REGRESSED.ordinal()], counts[Status.IMPROVED.ordinal()], counts[Status.NOISY.ordinal()],
+        counts[Status.UNCHANGED.ordinal()], counts[Status.MISSING.ordinal()], counts[Status.NEW.ordinal()]));
+    return sb.toString();
+  }
+
+  private Finding compare(String caseName, String metricName, BenchmarkRun.Metric base, BenchmarkRun.Metric cur) {
+    double baseMean = base.getMean();
+    if (cur == null) {
+      return new Finding(caseName, metricName, base.getKind(), baseMean, Double.NaN, 0, 0, Status.MISSING);
+    }
+    double curMean = cur.getMean();
+    double error = Math.sqrt(base.getError()*base.getError()+cur.getError()*cur.getError());
+    if (baseMean == 0) {
+      return compareAbsolute(caseName, metricName, base, curMean, error);
+    }
+    // positive is worse in either direction of the metric
+    double change = (curMean-baseMean)/Math.abs(baseMean);
+    double worse = base.isHigherBetter() ? -change : change;
+    double noise = error/Math.abs(baseMean);
+    Double threshold = thresholds.get(base.getKind());
+    Status status;
+    if (Math.abs(worse) <= (threshold == null ? 0 : threshold)) {
+      status = Status.UNCHANGED;
+    } else if (Math.abs(worse) <= noise) {
+      status = Status.NOISY;
+    } else {
+      status = worse > 0 ? Status.REGRESSED : Status.IMPROVED;
+    }
+    return new Finding(caseName, metricName, base.getKind(), baseMean, curMean, change, noise, status);
+  }
+
+  private Finding compareAbsolute(String caseName, String metricName, BenchmarkRun.Metric base,
+      double curMean, double error) {
+    double delta = curMean-base.getMean();
+    double worse = base.isHigherBetter() ? -delta : delta;
+    Double threshold = absoluteThresholds.get(base.getKind());
+    Status status;
+    if (Math.abs(worse) <= (threshold == null ? 0 : threshold)) {
+      status = Status.UNCHANGED;
+    } else if (Math.abs(worse) <= error) {
+      status = Status.NOISY;
+    } else {
+      status = worse > 0 ? Status.REGRESSED : Status.IMPROVED;
+    }
+    double change = delta == 0 ? 0 : Math.copySign(Double.POSITIVE_INFINITY, delta);
+    return new Finding(caseName, metricName, base.getKind(), base.getMean(), curMean, change, 0, status);
+  }
+
+  public enum Status {
+    REGRESSED, IMPROVED, NOISY, UNCHANGED, MISSING, NEW
+  }
+
+  public static class Finding {
+    Finding(String caseName, String metric, String kind, double baseline, double current,
+        double change, double noise, Status status) {
+      this.caseName = caseName;
+      this.metric = metric;
+      this.kind = kind;
+      this.baseline = baseline;
+      this.current = current;
+      this.change = change;
+      this.noise = noise;
+      this.status = status;
+    }
+
+    public String getCaseName() {
+      return caseName;
+    }
+
+    public String getMetric() {
+      return metric;
+    }
+
+    public String getKind() {
+      return kind;
+    }
+
+    public double getBaseline() {
+      return baseline;
+    }
+
+    public double getCurrent() {
+      return current;
+    }
+
+    // relative, signed as measured
+    public double getChange() {
+      return change;
+    }
+
+    public double getNoise() {
+      return noise;
+    }
+
+    public Status getStatus() {
+      return status;
+    }
+
+    public String toString() {
+      if (baseline == 0) {
+        return String.format("%-9s %s %s: %.4g -> %.4g (%+.4g absolute)",
+            status, caseName, metric, baseline, current, current-baseline);
+      }
+      return String.format("%-9s %s %s: %.4g -> %.4g (%+.1f%%, noise %.1f%%)",
+          status, caseName, metric, baseline, current, change*100, noise*100);
+    }
+
+    private final String caseName;
+    private final String metric;
+    private final String kind;
+    private final double baseline;
+    private final double current;
+    private final double change;
+    private final double noise;
+    private final Status status;
+  }
+
+  private final Map<String, Double> thresholds;
+  private final Map<String, Double> absoluteThresholds;
+}
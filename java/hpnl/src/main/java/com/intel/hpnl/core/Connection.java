@@ -17,18 +17,29 @@
 
 package com.intel.hpnl.core;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashSet;
 import java.util.concurrent.LinkedBlockingQueue;
 
+import com.intel.hpnl.jfr.HpnlEvents;
+import com.intel.hpnl.metrics.BufferLeakDetector;
+import com.intel.hpnl.metrics.ConnectionMetrics;
+import com.intel.hpnl.metrics.LoopProfiler;
+
 public class Connection {
 
   public Connection(long nativeEq, long nativeCon, int index, long threadId,  EqService eqService, CqService cqService) {
     this.eqService = eqService;
     this.cqService = cqService;
     this.sendBufferList = new LinkedBlockingQueue<HpnlBuffer>();
+    this.inflightSendBuffers = new ArrayDeque<HpnlBuffer>();
+    this.sendSignalInterval = eqService.getSendSignalInterval();
     this.nativeEq = nativeEq;
     this.index = index;
     this.threadId = threadId;
+    this.metrics = new ConnectionMetrics(this, index, eqService.getMetrics());
     init(nativeCon);
     connected = true;
   }
@@ -41,9 +52,14 @@ public class Connection {
       if(!connected){
         return;
       }
+      if (keepaliveTimer != null) {
+        keepaliveTimer.cancel();
+      }
+      Object jfrEvent = HpnlEvents.beginShutdown();
       this.eqService.shutdown(nativeEq);
       this.eqService.delete_eq_event(nativeEq);
       this.eqService.closeConnection(nativeEq);
+      HpnlEvents.endShutdown(jfrEvent, destAddr, destPort);
       if (shutdownCallback != null) {
         shutdownCallback.handle(this, 0, 0);
       }
@@ -56,37 +72,328 @@ public class Connection {
   }
 
   public int send(ByteBuffer buffer, byte b, long seq) {
+    return send(buffer, b, seq, false);
+  }
+
+  public int send(ByteBuffer buffer, byte b, long seq, boolean signaled) {
+    if (draining) {
+      eqService.rejectOp();
+      return -1;
+    }
+    return send(buffer, b, seq, signaled, -1);
+  }
+
+  // the peer acknowledges RELIABLE frames by message id, see setAckCallback
+  public int sendReliable(ByteBuffer buffer, byte b, long seq, long msgId) {
+    if (draining) {
+      eqService.rejectOp();
+      return -1;
+    }
+    return send(buffer, b, seq, false, msgId);
+  }
+
+  private int send(ByteBuffer buffer, byte b, long seq, boolean signaled, long msgId) {
     if (Thread.currentThread().getId() != this.threadId) {
       this.cqService.addExternalEvent(this.index, new ExternalHandler() {
         public void handle() {
-          send(buffer, b, seq);
+          send(buffer, b, seq, signaled, msgId);
         } 
       });
       return 0;
-    } else {
+    }
+    // a send never overtakes a starved one, RELIABLE frames rely on it
+    if (!starvedSends.isEmpty()) {
+      starvedSends.offer(new StarvedSend(buffer, b, seq, signaled, msgId));
+      starvedSendNum++;
+      return 0;
+    }
+    HpnlBuffer hpnlBuffer = takeSendBuffer();
+    if (hpnlBuffer == null) {
+      starvedSends.offer(new StarvedSend(buffer, b, seq, signaled, msgId));
+      starvedSendNum++;
+      starve();
+      return 0;
+    }
+    return postSend(hpnlBuffer, buffer, b, seq, signaled, msgId);
+  }
+
+  private void starve() {
+    metrics.sendStarvation();
+    if (starvedNum++ == 0) {
+      starvationEvent = HpnlEvents.beginSendStarvation();
+    }
+    this.cqService.addExternalEvent(this.index, this.starvedSendHandler);
+  }
+
+  private void retryStarvedSends() {
+    StarvedSend starved;
+    while ((starved = starvedSends.peek()) != null) {
       HpnlBuffer hpnlBuffer = takeSendBuffer();
       if (hpnlBuffer == null) {
-        this.cqService.addExternalEvent(this.index, new ExternalHandler() {
-          public void handle() {
-            send(buffer, b, seq);
-          } 
-        });
-      } else {
+        starve();
+        return;
+      }
+      starvedSends.poll();
+      starvedSendNum--;
+      postSend(hpnlBuffer, starved.buffer, starved.type, starved.seq, starved.signaled, starved.msgId);
+    }
+  }
+
+  private int postSend(HpnlBuffer hpnlBuffer, ByteBuffer buffer, byte b, long seq, boolean signaled, long msgId) {
+    try {
+      if (msgId < 0) {
         hpnlBuffer.put(buffer, b, seq);
-        return send(hpnlBuffer.size(), hpnlBuffer.getBufferId(), this.nativeHandle);
+      } else {
+        hpnlBuffer.put(buffer, b, seq, msgId);
       }
+    } catch (BufferOverflowException e) {
+      pushSendBuffer(hpnlBuffer);
+      metrics.opFailure();
+      return -1;
     }
-    return 0;
+    boolean signal = signaled || needSignal();
+    hpnlBuffer.setPostNanos(System.nanoTime());
+    int res = send(hpnlBuffer.size(), hpnlBuffer.getBufferId(), signal, this.nativeHandle);
+    if (starvedNum > 0) {
+      HpnlEvents.endSendStarvation(starvationEvent, destAddr, destPort, starvedNum);
+      starvationEvent = null;
+      starvedNum = 0;
+    }
+    if (res == 0) {
+      postedSendNum++;
+      metrics.send(hpnlBuffer.size());
+      inflightSendBuffers.offer(hpnlBuffer);
+      unsignaledSendNum = signal ? 0 : unsignaledSendNum+1;
+      if (!signal) {
+        scheduleSendFlush();
+      }
+    } else {
+      pushSendBuffer(hpnlBuffer);
+    }
+    return res;
   }
 
   public int read(int bufferId, int localOffset, long len, long remoteAddr, long remoteMr) {
+    if (draining) {
+      eqService.rejectOp();
+      return -1;
+    }
+    return postRead(bufferId, localOffset, len, remoteAddr, remoteMr);
+  }
+
+  private int postRead(int bufferId, int localOffset, long len, long remoteAddr, long remoteMr) {
+    if (Thread.currentThread().getId() != this.threadId) {
+      this.cqService.addExternalEvent(this.index, new ExternalHandler() {
+        public void handle() {
+          postRead(bufferId, localOffset, len, remoteAddr, remoteMr);
+        }
+      });
+      return 0;
+    }
+    // operations pushed back by the provider are parked and reposted natively
+    long postNanos = System.nanoTime();
     int res = read(bufferId, localOffset, len, remoteAddr, remoteMr, this.nativeHandle);
-    if (res != 0 && res != -11) {
+    if (res != 0) {
       System.out.println("message read error");
+    } else {
+      postedReadNum++;
+      readPostTimes.add(bufferId, postNanos);
+    }
+    return res;
+  }
+
+  public int write(int bufferId, int localOffset, long len, long remoteAddr, long remoteMr) {
+    if (draining) {
+      eqService.rejectOp();
+      return -1;
+    }
+    return postWrite(bufferId, localOffset, len, remoteAddr, remoteMr);
+  }
+
+  private int postWrite(int bufferId, int localOffset, long len, long remoteAddr, long remoteMr) {
+    if (Thread.currentThread().getId() != this.threadId) {
+      this.cqService.addExternalEvent(this.index, new ExternalHandler() {
+        public void handle() {
+          postWrite(bufferId, localOffset, len, remoteAddr, remoteMr);
+        }
+      });
+      return 0;
+    }
+    long postNanos = System.nanoTime();
+    int res = write(bufferId, localOffset, len, remoteAddr, remoteMr, this.nativeHandle);
+    if (res != 0) {
+      System.out.println("message write error");
+    } else {
+      postedWriteNum++;
+      writePostTimes.add(bufferId, postNanos);
     }
     return res;
   }
 
+  // refuse new sends and reads, work already accepted still completes
+  public void setDraining() {
+    this.draining = true;
+    // unsignaled sends only complete behind a signaled one, post it right away
+    this.cqService.addExternalEvent(this.index, new ExternalHandler() {
+      public void handle() {
+        flushSends();
+      }
+    });
+  }
+
+  public boolean isDraining() {
+    return this.draining;
+  }
+
+  // sends waiting for a free buffer plus posted sends and reads that have not
+  // completed yet, unsignaled sends are completed by the signaled NOOP flushed
+  // behind them once the connection idles
+  public long getOutstandingOpNum() {
+    return (postedSendNum-completedSendNum)+starvedSendNum+(postedReadNum-completedReadNum)+
+      (postedWriteNum-completedWriteNum);
+  }
+
+  // the task runs on the worker thread owning this connection
+  public TimingWheel.Timeout schedule(Runnable task, long delayMillis) {
+    return this.cqService.schedule(this.index, task, delayMillis);
+  }
+
+  public void schedule(TimingWheel.Timeout timeout, long delayMillis) {
+    this.cqService.getTimingWheel(this.index).schedule(timeout, delayMillis);
+  }
+
+  // ping the peer after intervalMillis of silence, reap the connection after timeoutMillis
+  public void setKeepalive(long intervalMillis, long timeoutMillis) {
+    this.keepaliveInterval = intervalMillis;
+    this.keepaliveTimeout = timeoutMillis;
+    if (this.keepaliveTimer == null) {
+      this.keepaliveTimer = new KeepaliveTimeout();
+    }
+    schedule(this.keepaliveTimer, intervalMillis);
+  }
+
+  private boolean handleControlFrame(ByteBuffer rawBuffer) {
+    byte frameType = rawBuffer.get(0);
+    if (frameType == HpnlBuffer.Type.KEEPALIVE) {
+      inject(KEEPALIVE_ACK_FRAME, 1, this.nativeHandle);
+      return true;
+    } else if (frameType == HpnlBuffer.Type.RELIABLE_ACK) {
+      if (ackCallback != null) {
+        try {
+          ackCallback.handle(this, rawBuffer.getLong(1));
+        } catch (Exception e) {
+          e.printStackTrace();
+        }
+      }
+      return true;
+    }
+    return frameType == HpnlBuffer.Type.KEEPALIVE_ACK || frameType == HpnlBuffer.Type.NOOP;
+  }
+
+  public void setAckCallback(AckHandler callback) {
+    this.ackCallback = callback;
+  }
+
+  private void recvReliable(long msgId) {
+    if (!reliableStarted) {
+      // the sender replays from its oldest unacknowledged message
+      reliableStarted = true;
+      lastRecvMsgId = msgId-1;
+      lastAckedMsgId = msgId-1;
+    }
+    if (msgId == lastRecvMsgId+1) {
+      lastRecvMsgId = msgId;
+      while (reorderedMsgIds.remove(lastRecvMsgId+1)) {
+        lastRecvMsgId++;
+      }
+    } else if (msgId > lastRecvMsgId) {
+      // acks are cumulative, hold it back until the gap before it is filled
+      reorderedMsgIds.add(msgId);
+      return;
+    }
+    // acks are cumulative, batch them and flush the tail shortly after
+    if (lastRecvMsgId-lastAckedMsgId >= ACK_BATCH_NUM) {
+      sendAck();
+    } else if (ackTimer == null) {
+      ackTimer = new TimingWheel.Timeout() {
+        protected void run() {
+          sendAck();
+        }
+      };
+      schedule(ackTimer, ACK_DELAY_MILLIS);
+    } else if (!ackTimerPending) {
+      schedule(ackTimer, ACK_DELAY_MILLIS);
+    }
+    ackTimerPending = true;
+  }
+
+  private void sendAck() {
+    ackTimerPending = false;
+    if (lastAckedMsgId == lastRecvMsgId || !connected) {
+      return;
+    }
+    if (ackFrame == null) {
+      ackFrame = ByteBuffer.allocateDirect(HpnlBuffer.CONTROL_FRAME_MAX_SIZE);
+      ackFrame.put(0, HpnlBuffer.Type.RELIABLE_ACK);
+    }
+    ackFrame.putLong(1, lastRecvMsgId);
+    if (inject(ackFrame, HpnlBuffer.CONTROL_FRAME_MAX_SIZE, this.nativeHandle) == 0) {
+      lastAckedMsgId = lastRecvMsgId;
+    } else {
+      schedule(ackTimer, ACK_DELAY_MILLIS);
+      ackTimerPending = true;
+    }
+  }
+
+  private class KeepaliveTimeout extends TimingWheel.Timeout {
+    protected void run() {
+      if (!connected) {
+        return;
+      }
+      if (recvNum != keepaliveRecvNum) {
+        keepaliveRecvNum = recvNum;
+        silentMillis = 0;
+      } else {
+        silentMillis += keepaliveInterval;
+        if (silentMillis >= keepaliveTimeout) {
+          keepaliveExpired = true;
+          metrics.keepaliveTimeout();
+          eqService.reapIdleConnection(Connection.this);
+          return;
+        }
+        inject(KEEPALIVE_FRAME, 1, nativeHandle);
+      }
+      schedule(this, keepaliveInterval);
+    }
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  public ConnectionMetrics getMetrics() {
+    return metrics;
+  }
+
+  public int getPendingOpNum() {
+    return get_pending_num(this.nativeHandle);
+  }
+
+  public int getMaxPendingOpNum() {
+    return get_max_pending_num(this.nativeHandle);
+  }
+
+  public long getRetryNum() {
+    return get_retry_num(this.nativeHandle);
+  }
+
+  // for periodic reporters, returns the retries since the previous call
+  public synchronized long swapReportedRetryNum(long retryNum) {
+    long delta = retryNum-reportedRetryNum;
+    reportedRetryNum = retryNum;
+    return delta;
+  }
+
   public void delCon() {
     this.cqService.addExternalEvent(this.index, new ExternalHandler() {
       public void handle() {
@@ -123,6 +430,10 @@ public class Connection {
     readCallback = callback; 
   }
 
+  public void setWriteCallback(Handler callback) {
+    writeCallback = callback;
+  }
+
   public Handler getShutdownCallback() {
     return shutdownCallback; 
   }
@@ -131,7 +442,32 @@ public class Connection {
     shutdownCallback = callback; 
   }
 
+  // false once shutdown() has run its shutdown callback
+  public synchronized boolean isConnected() {
+    return connected;
+  }
+
+  // true once the connection was reaped for staying silent past the keepalive
+  // timeout, lets the shutdown callback tell a dead peer from a local close
+  public boolean isKeepaliveExpired() {
+    return keepaliveExpired;
+  }
+
+  public Handler getErrorCallback() {
+    return errorCallback;
+  }
+
+  // called with the buffer id and the event type of an operation that failed
+  public void setErrorCallback(Handler callback) {
+    errorCallback = callback;
+  }
+
   public void pushSendBuffer(HpnlBuffer buffer) {
+    BufferLeakDetector.Record leakRecord = buffer.getLeakRecord();
+    if (leakRecord != null) {
+      leakRecord.release();
+      buffer.setLeakRecord(null);
+    }
     try {
       sendBufferList.put(buffer);
     } catch (InterruptedException e) {
@@ -140,7 +476,134 @@ public class Connection {
   }
 
   private HpnlBuffer takeSendBuffer() {
-    return sendBufferList.poll();
+    HpnlBuffer buffer = sendBufferList.poll();
+    BufferLeakDetector leakDetector = eqService.getLeakDetector();
+    if (buffer != null && leakDetector != null) {
+      buffer.setLeakRecord(leakDetector.track(BufferLeakDetector.SEND_BUFFER, buffer.getBufferId(), this));
+    }
+    return buffer;
+  }
+
+  public int getFreeSendBufferNum() {
+    return sendBufferList.size();
+  }
+
+  // posted and not yet completed, so not back in the free list
+  public int getInflightSendBufferNum() {
+    return (int)(postedSendNum-completedSendNum);
+  }
+
+  public String toString() {
+    return "Connection " + destAddr + ":" + destPort;
+  }
+
+  private boolean needSignal() {
+    if (sendSignalInterval == 1 || sendBufferList.isEmpty()) {
+      // always ask for a completion before running out of send buffers
+      return true;
+    }
+    return sendSignalInterval > 1 && unsignaledSendNum+1 >= sendSignalInterval;
+  }
+
+  // unsignaled sends are only reclaimed by a later signaled completion, so once
+  // the connection stops sending a signaled NOOP frame is posted behind them
+  private void scheduleSendFlush() {
+    if (sendFlushPending) {
+      return;
+    }
+    if (sendFlushTimer == null) {
+      sendFlushTimer = new TimingWheel.Timeout() {
+        protected void run() {
+          sendFlushPending = false;
+          if (postedSendNum != sendFlushPostedNum) {
+            // still sending, check again once the connection is idle
+            scheduleSendFlush();
+          } else {
+            flushSends();
+          }
+        }
+      };
+    }
+    sendFlushPending = true;
+    sendFlushPostedNum = postedSendNum;
+    schedule(sendFlushTimer, SEND_FLUSH_DELAY_MILLIS);
+  }
+
+  private void flushSends() {
+    if (unsignaledSendNum == 0 || !connected) {
+      return;
+    }
+    // the send that emptied the free list asked for a completion already
+    HpnlBuffer hpnlBuffer = takeSendBuffer();
+    if (hpnlBuffer == null) {
+      return;
+    }
+    hpnlBuffer.putControl(HpnlBuffer.Type.NOOP);
+    hpnlBuffer.setPostNanos(System.nanoTime());
+    if (send(hpnlBuffer.size(), hpnlBuffer.getBufferId(), true, this.nativeHandle) == 0) {
+      postedSendNum++;
+      flushNum++;
+      inflightSendBuffers.offer(hpnlBuffer);
+      unsignaledSendNum = 0;
+    } else {
+      pushSendBuffer(hpnlBuffer);
+    }
+  }
+
+  private boolean isFlushBuffer(int bufferId) {
+    if (flushNum == 0 || getSendBuffer(bufferId).getRawBuffer().get(0) != HpnlBuffer.Type.NOOP) {
+      return false;
+    }
+    flushNum--;
+    return true;
+  }
+
+  private void dropSendBuffer(int bufferId) {
+    for (HpnlBuffer buffer : inflightSendBuffers) {
+      if (buffer.getBufferId() == bufferId) {
+        inflightSendBuffers.remove(buffer);
+        pushSendBuffer(buffer);
+        completedSendNum++;
+        // the failed send may have been the one to reclaim the sends before it
+        if (!inflightSendBuffers.isEmpty()) {
+          unsignaledSendNum = Math.max(unsignaledSendNum, 1);
+          scheduleSendFlush();
+        }
+        return;
+      }
+    }
+    // otherwise a later completion has released it already
+  }
+
+  private void releaseSendBuffer(int bufferId) {
+    HpnlBuffer buffer = null;
+    for (HpnlBuffer inflight : inflightSendBuffers) {
+      if (inflight.getBufferId() == bufferId) {
+        buffer = inflight;
+        break;
+      }
+    }
+    if (buffer == null) {
+      metrics.strayCompletion();
+      return;
+    }
+    // completions are ordered, so a signaled send also completes all earlier sends
+    long now = System.nanoTime();
+    boolean recording = HpnlEvents.isRecording();
+    HpnlBuffer released;
+    do {
+      released = inflightSendBuffers.poll();
+      metrics.sendLatency(now-released.getPostNanos());
+      if (recording) {
+        HpnlEvents.completion(EventType.SEND_EVENT, now-released.getPostNanos(), released.size());
+      }
+      pushSendBuffer(released);
+      completedSendNum++;
+    } while (released != buffer);
+  }
+
+  public long getCompletedSendNum() {
+    return completedSendNum;
   }
 
   public HpnlBuffer getSendBuffer(int bufferId){
@@ -180,36 +643,98 @@ public class Connection {
 
   public void handleCallback(int eventType, int bufferId, int blockBufferSize) {
     Exception e = null;
-    if (eventType == EventType.CONNECTED_EVENT) {
-      e = executeCallback(connectedCallback, bufferId, 0);
+    if ((eventType & EventType.ERROR_EVENT) != 0) {
+      e = handleFailedOp(eventType & ~EventType.ERROR_EVENT, bufferId);
+    } else if (eventType == EventType.CONNECTED_EVENT) {
+      metrics.connected();
+      e = executeCallback(connectedCallback, EventType.CONNECTED_EVENT, bufferId, 0);
     } else if (eventType == EventType.RECV_EVENT) {
-      e = executeCallback(recvCallback, bufferId, blockBufferSize);
+      recvNum++;
+      ByteBuffer rawBuffer = getRecvBuffer(bufferId).getRawBuffer();
+      if (blockBufferSize <= HpnlBuffer.CONTROL_FRAME_MAX_SIZE && handleControlFrame(rawBuffer)) {
+        metrics.controlFrame();
+        return;
+      }
+      metrics.recv(blockBufferSize);
+      if (rawBuffer.get(0) == HpnlBuffer.Type.RELIABLE) {
+        recvReliable(rawBuffer.getLong(10));
+      }
+      e = executeCallback(recvCallback, EventType.RECV_EVENT, bufferId, blockBufferSize);
     } else if (eventType == EventType.SEND_EVENT) {
-      e = executeCallback(sendCallback, bufferId, blockBufferSize);
-      pushSendBuffer(eqService.getSendBuffer(bufferId));
+      metrics.sendCompletion();
+      if (!isFlushBuffer(bufferId)) {
+        e = executeCallback(sendCallback, EventType.SEND_EVENT, bufferId, blockBufferSize);
+      }
+      releaseSendBuffer(bufferId);
     } else if (eventType == EventType.READ_EVENT) {
-      e = executeCallback(readCallback, bufferId, blockBufferSize);
+      completedReadNum++;
+      metrics.readCompletion();
+      long postNanos = readPostTimes.remove(bufferId);
+      if (postNanos != 0) {
+        long latency = System.nanoTime()-postNanos;
+        metrics.readLatency(latency);
+        HpnlEvents.completion(EventType.READ_EVENT, latency, blockBufferSize);
+      }
+      e = executeCallback(readCallback, EventType.READ_EVENT, bufferId, blockBufferSize);
+    } else if (eventType == EventType.WRITE_EVENT) {
+      completedWriteNum++;
+      metrics.writeCompletion();
+      long postNanos = writePostTimes.remove(bufferId);
+      if (postNanos != 0) {
+        long latency = System.nanoTime()-postNanos;
+        metrics.writeLatency(latency);
+        HpnlEvents.completion(EventType.WRITE_EVENT, latency, blockBufferSize);
+      }
+      e = executeCallback(writeCallback, EventType.WRITE_EVENT, bufferId, blockBufferSize);
     }
     if(e != null){
       e.printStackTrace();
     }
   }
 
-  private Exception executeCallback(Handler handler, int bufferId, int blockBufferSize){
+  // a parked operation the provider rejected for good when it was reposted
+  private Exception handleFailedOp(int eventType, int bufferId) {
+    metrics.opFailure();
+    if (eventType == EventType.SEND_EVENT) {
+      dropSendBuffer(bufferId);
+    } else if (eventType == EventType.READ_EVENT) {
+      completedReadNum++;
+      readPostTimes.remove(bufferId);
+    } else if (eventType == EventType.WRITE_EVENT) {
+      completedWriteNum++;
+      writePostTimes.remove(bufferId);
+    }
+    return executeCallback(errorCallback, EventType.ERROR_EVENT, bufferId, eventType);
+  }
+
+  private Exception executeCallback(Handler handler, int eventType, int bufferId, int blockBufferSize){
     if(handler == null){
       return null;
     }
+    LoopProfiler profiler = cqService.getLoopProfiler(index);
+    long start = profiler == null ? 0 : System.nanoTime();
+    Object jfrEvent = HpnlEvents.beginCallback();
     try{
       handler.handle(this, bufferId, blockBufferSize);
     }catch(Exception e){
       return e;
+    }finally{
+      if (profiler != null) {
+        profiler.callback(handler, eventType, System.nanoTime()-start);
+      }
+      HpnlEvents.endCallback(jfrEvent, handler, eventType);
     }
     return null;
   }
 
   private native void recv(ByteBuffer buffer, int id, long nativeHandle);
-  private native int send(int blockBufferSize, int bufferId, long nativeHandle);
+  private native int send(int blockBufferSize, int bufferId, boolean signaled, long nativeHandle);
   private native int read(int bufferId, int localOffset, long len, long remoteAddr, long remoteMr, long nativeHandle);
+  private native int write(int bufferId, int localOffset, long len, long remoteAddr, long remoteMr, long nativeHandle);
+  private native int get_pending_num(long nativeHandle);
+  private native int get_max_pending_num(long nativeHandle);
+  private native long get_retry_num(long nativeHandle);
+  private native int inject(ByteBuffer buffer, int bufferSize, long nativeHandle);
   private native void init(long eq);
   private native void free(long nativeHandle);
   public native void finalize();
@@ -218,6 +743,37 @@ public class Connection {
   private CqService cqService;
  
   private LinkedBlockingQueue<HpnlBuffer> sendBufferList;
+  private ArrayDeque<HpnlBuffer> inflightSendBuffers;
+  private int sendSignalInterval;
+  private int unsignaledSendNum;
+  private TimingWheel.Timeout sendFlushTimer = null;
+  private boolean sendFlushPending = false;
+  private long sendFlushPostedNum;
+  // NOOP flush frames posted and not yet completed
+  private int flushNum;
+  private volatile long completedSendNum;
+  private volatile long postedSendNum;
+  private volatile long postedReadNum;
+  private volatile long completedReadNum;
+  private volatile long postedWriteNum;
+  private volatile long completedWriteNum;
+  private final PostTimes readPostTimes = new PostTimes(RMA_POST_TIMES_NUM);
+  private final PostTimes writePostTimes = new PostTimes(RMA_POST_TIMES_NUM);
+  private volatile boolean draining = false;
+  private final ConnectionMetrics metrics;
+  private long reportedRetryNum;
+  // a flight recorder event spanning a run of sends without a free buffer
+  private Object starvationEvent = null;
+  private long starvedNum = 0;
+  // sends waiting for a free buffer, in post order, only touched by the worker thread
+  private final ArrayDeque<StarvedSend> starvedSends = new ArrayDeque<StarvedSend>();
+  // starvedSends.size() for threads other than the worker, e.g. a drain
+  private volatile int starvedSendNum = 0;
+  private final ExternalHandler starvedSendHandler = new ExternalHandler() {
+    public void handle() {
+      retryStarvedSends();
+    }
+  };
 
   private String destAddr;
   private int destPort;
@@ -226,14 +782,57 @@ public class Connection {
 
   private boolean connected;
 
+  // only touched by the worker thread
+  private long recvNum;
+  private long keepaliveRecvNum;
+  private long silentMillis;
+  private long keepaliveInterval;
+  private long keepaliveTimeout;
+  private volatile boolean keepaliveExpired = false;
+  private KeepaliveTimeout keepaliveTimer = null;
+  // highest message id received with every id before it
+  private long lastRecvMsgId = -1;
+  private boolean reliableStarted = false;
+  private final HashSet<Long> reorderedMsgIds = new HashSet<Long>();
+  private long lastAckedMsgId = -1;
+  private ByteBuffer ackFrame = null;
+  private TimingWheel.Timeout ackTimer = null;
+  private boolean ackTimerPending = false;
+  private AckHandler ackCallback = null;
+
   private Handler connectedCallback = null;
   private Handler recvCallback = null;
   private Handler sendCallback = null;
   private Handler readCallback = null;
+  private Handler writeCallback = null;
   private Handler shutdownCallback = null;
+  private Handler errorCallback = null;
 
   private long nativeHandle;
   private final long nativeEq;
   private int index;
   private long threadId;
+
+  private static class StarvedSend {
+    StarvedSend(ByteBuffer buffer, byte type, long seq, boolean signaled, long msgId) {
+      this.buffer = buffer;
+      this.type = type;
+      this.seq = seq;
+      this.signaled = signaled;
+      this.msgId = msgId;
+    }
+
+    final ByteBuffer buffer;
+    final byte type;
+    final long seq;
+    final boolean signaled;
+    final long msgId;
+  }
+
+  private static final int ACK_BATCH_NUM = 16;
+  private static final int RMA_POST_TIMES_NUM = 256;
+  private static final long ACK_DELAY_MILLIS = 1;
+  private static final long SEND_FLUSH_DELAY_MILLIS = 1;
+  private static final ByteBuffer KEEPALIVE_FRAME = ByteBuffer.allocateDirect(1).put(0, HpnlBuffer.Type.KEEPALIVE);
+  private static final ByteBuffer KEEPALIVE_ACK_FRAME = ByteBuffer.allocateDirect(1).put(0, HpnlBuffer.Type.KEEPALIVE_ACK);
 }
@@ -22,6 +22,10 @@ import java.util.ArrayList;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.function.LongSupplier;
+
+import com.intel.hpnl.metrics.LoopProfiler;
+import com.intel.hpnl.metrics.ServiceMetrics;
 
 public class CqService {
   public CqService(EqService service) {
@@ -30,6 +34,8 @@ public class CqService {
     this.cqThreads = new ArrayList<>();
     this.indexMap = new HashMap<>();
     this.externalHandlers = new ArrayList<>();
+    this.timingWheels = new ArrayList<>();
+    this.metrics = service.getMetrics();
 
     this.eqService.setCqService(this);
   }
@@ -48,6 +54,9 @@ public class CqService {
           cqThreads.add(cqThread);
           this.indexMap.put(i, cqThread.getId());
         this.externalHandlers.add(new LinkedBlockingDeque<>());
+        TimingWheel timingWheel = new TimingWheel(tickMillis, wheelSize);
+        timingWheel.setOwnerThread(cqThread.getId());
+        this.timingWheels.add(timingWheel);
       }
     } catch (ArrayIndexOutOfBoundsException ex) {
       System.out.println("try to set thread affinity.");
@@ -81,13 +90,72 @@ public class CqService {
     this.affinities = affinities; 
   }
 
+  // must be called before start()
+  public void setTimingWheel(long tickMillis, int wheelSize) {
+    this.tickMillis = tickMillis;
+    this.wheelSize = wheelSize;
+  }
+
+  public TimingWheel getTimingWheel(int index) {
+    return this.timingWheels.get(index);
+  }
+
+  // the task runs on the worker thread of index
+  public TimingWheel.Timeout schedule(int index, Runnable task, long delayMillis) {
+    return this.timingWheels.get(index).schedule(task, delayMillis);
+  }
+
   private void handleCqCallback(long eq, int eventType, int bufferId, int block_buffer_size) {
     Connection connection = eqService.getConnection(eq);
     if (connection != null) {
-      connection.handleCallback(eventType, bufferId, block_buffer_size);
+      LoopProfiler[] profilers = this.loopProfilers;
+      if (profilers == null) {
+        connection.handleCallback(eventType, bufferId, block_buffer_size);
+      } else {
+        long start = System.nanoTime();
+        connection.handleCallback(eventType, bufferId, block_buffer_size);
+        profilers[connection.getIndex()].dispatch(System.nanoTime()-start);
+      }
     }
   }
 
+  // Times every phase of the worker loops. Can be switched at runtime,
+  // turning it on again starts from zero.
+  public void setLoopProfiling(boolean enabled) {
+    if (!enabled) {
+      this.loopProfilers = null;
+      return;
+    }
+    int workerNum = this.eqService.getWorkerNum();
+    LoopProfiler[] profilers = new LoopProfiler[workerNum];
+    for (int i = 0; i < workerNum; i++) {
+      final int index = i;
+      profilers[i] = new LoopProfiler(i, new LongSupplier() {
+        public long getAsLong() {
+          return get_epoll_num(index, nativeHandle);
+        }
+      });
+    }
+    this.loopProfilers = profilers;
+  }
+
+  public LoopProfiler getLoopProfiler(int index) {
+    LoopProfiler[] profilers = this.loopProfilers;
+    return profilers == null ? null : profilers[index];
+  }
+
+  public String dumpLoopProfiles() {
+    LoopProfiler[] profilers = this.loopProfilers;
+    if (profilers == null) {
+      return "loop profiling is disabled";
+    }
+    StringBuilder sb = new StringBuilder();
+    for (LoopProfiler profiler : profilers) {
+      sb.append(profiler.dump());
+    }
+    return sb.toString();
+  }
+
   public long getThreadId(int index) {
     return this.indexMap.get(index);
   }
@@ -96,19 +164,60 @@ public class CqService {
     this.externalHandlers.get(index).add(externalHandler);
   }
 
+  // handed off work not yet picked up by the workers
+  public int getExternalEventNum(int index) {
+    return this.externalHandlers.get(index).size();
+  }
+
+  public int getExternalEventNum() {
+    int num = 0;
+    for (LinkedBlockingDeque<ExternalHandler> externalHandlerQueue : this.externalHandlers) {
+      num += externalHandlerQueue.size();
+    }
+    return num;
+  }
+
   private int waitExternalEvent(int index) {
     LinkedBlockingDeque<ExternalHandler> externalHandlerQueue = this.externalHandlers.get(index);
     if (!externalHandlerQueue.isEmpty()) {
       externalHandlerQueue.poll().handle();
+      metrics.externalEventNum.increment(index);
+      return 1;
     }
     return 0;
   }
 
   public int wait_event(int index) {
-    if (wait_cq_event(index, nativeHandle) < 0) {
+    LoopProfiler profiler = getLoopProfiler(index);
+    if (profiler != null) {
+      return waitEventProfiled(index, profiler);
+    }
+    TimingWheel timingWheel = this.timingWheels.get(index);
+    int waitMillis = (int)timingWheel.getWaitMillis(MAX_WAIT_MILLIS);
+    if (wait_cq_event(index, waitMillis, nativeHandle) < 0) {
       return -1;
     }
+    metrics.loopNum.increment(index);
     waitExternalEvent(index);
+    timingWheel.advance(System.currentTimeMillis());
+    return 0;
+  }
+
+  private int waitEventProfiled(int index, LoopProfiler profiler) {
+    TimingWheel timingWheel = this.timingWheels.get(index);
+    int waitMillis = (int)timingWheel.getWaitMillis(MAX_WAIT_MILLIS);
+    long start = System.nanoTime();
+    int ret = wait_cq_event(index, waitMillis, nativeHandle);
+    if (ret < 0) {
+      return -1;
+    }
+    long waitEnd = System.nanoTime();
+    metrics.loopNum.increment(index);
+    int externalNum = waitExternalEvent(index);
+    long externalEnd = System.nanoTime();
+    timingWheel.advance(System.currentTimeMillis());
+    long timerEnd = System.nanoTime();
+    profiler.loop(waitEnd-start, ret > 0, externalEnd-waitEnd, externalNum > 0, timerEnd-externalEnd);
     return 0;
   }
 
@@ -118,7 +227,8 @@ public class CqService {
     }
   }
 
-  private native int wait_cq_event(int index, long nativeHandle);
+  private native int wait_cq_event(int index, int waitMillis, long nativeHandle);
+  private native long get_epoll_num(int index, long nativeHandle);
   private native int init(long Service);
   public native void finalize();
   private native void free(long nativeHandle);
@@ -129,4 +239,11 @@ public class CqService {
   private ArrayList<LinkedBlockingDeque<ExternalHandler>> externalHandlers;
   private int[] affinities = null;
   private Map<Integer, Long> indexMap;
+  private ArrayList<TimingWheel> timingWheels;
+  private ServiceMetrics metrics;
+  private volatile LoopProfiler[] loopProfilers = null;
+  private long tickMillis = 1;
+  private int wheelSize = 1024;
+
+  private static final int MAX_WAIT_MILLIS = 200;
 }
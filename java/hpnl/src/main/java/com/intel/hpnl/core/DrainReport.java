@@ -0,0 +1,83 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Progress of EqService.drain(), updated while the drain runs so another
+// thread can watch it.
+public class DrainReport {
+  public int getConnectionNum() {
+    return connectionNum;
+  }
+
+  public long getInitialOpNum() {
+    return initialOpNum;
+  }
+
+  public long getOutstandingOpNum() {
+    return outstandingOpNum;
+  }
+
+  public long getDrainedOpNum() {
+    return Math.max(0, initialOpNum-outstandingOpNum);
+  }
+
+  // operations still outstanding when the deadline passed
+  public long getDroppedOpNum() {
+    return done ? outstandingOpNum : 0;
+  }
+
+  // sends and reads refused because they were issued during the drain
+  public long getRejectedOpNum() {
+    return rejectedOpNum.get();
+  }
+
+  public int getLeasedRmaBufferNum() {
+    return leasedRmaBufferNum;
+  }
+
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  public boolean isTimedOut() {
+    return timedOut;
+  }
+
+  public boolean isDone() {
+    return done;
+  }
+
+  public String toString() {
+    return "drain " + (done ? (timedOut ? "timed out" : "completed") : "in progress") +
+      " after " + elapsedMillis + " ms: connections " + connectionNum +
+      ", ops drained " + getDrainedOpNum() + "/" + initialOpNum +
+      ", dropped " + getDroppedOpNum() + ", rejected " + getRejectedOpNum() +
+      ", leased rma buffers " + leasedRmaBufferNum;
+  }
+
+  volatile int connectionNum;
+  volatile long initialOpNum;
+  volatile long outstandingOpNum;
+  volatile int leasedRmaBufferNum;
+  volatile long elapsedMillis;
+  volatile boolean timedOut;
+  volatile boolean done;
+  final AtomicLong rejectedOpNum = new AtomicLong(0);
+}
@@ -17,14 +17,27 @@
 
 package com.intel.hpnl.core;
 
-import java.util.HashMap;
 import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.ObjectName;
+
+import com.intel.hpnl.jfr.HpnlEvents;
+import com.intel.hpnl.metrics.BufferLeakDetector;
+import com.intel.hpnl.metrics.ConnectionMetrics;
+import com.intel.hpnl.metrics.MemPoolMetrics;
+import com.intel.hpnl.metrics.MetricsRegistry;
+import com.intel.hpnl.metrics.RmaRegistryMetrics;
+import com.intel.hpnl.metrics.ServiceMetrics;
+import com.intel.hpnl.metrics.WorkerMetrics;
 
 public class EqService implements MemoryService {
   static {
@@ -35,13 +48,14 @@ public class EqService implements MemoryService {
     this.worker_num = worker_num;
     this.buffer_num = buffer_num;
     this.is_server = is_server;
-    this.curCon = null;
     this.rmaBufferId = new AtomicInteger(0);
 
-    this.conMap = new HashMap<Long, Connection>();
+    this.conMap = new ConcurrentHashMap<Long, Connection>();
     this.reapCons = new LinkedBlockingQueue<Connection>();
     this.rmaBufferMap = new ConcurrentHashMap<Integer, ByteBuffer>();
-    this.connectLatchMap = new ConcurrentHashMap<Long, CountDownLatch>();
+    this.connectFutureMap = new ConcurrentHashMap<Long, CompletableFuture<Connection>>();
+    this.metrics = new ServiceMetrics(worker_num);
+    this.mbeanNames = new ConcurrentHashMap<Long, ObjectName>();
   }
 
   public EqService init() {
@@ -49,35 +63,58 @@ public class EqService implements MemoryService {
       return null;
     this.eqThread = new EqThread(this);
     this.eqThread.start();
+    HpnlEvents.addService(this);
     return this;
   }
 
   public Connection connect(String ip, String port, long timeout) {
-    synchronized (EqService.class) {
-      localEq = native_connect(ip, port, nativeHandle);
-      if (localEq == -1) {
-        return null;
-      }
-      connectLatchMap.put(localEq, new CountDownLatch(1));
-      add_eq_event(localEq, nativeHandle);
-      try {
-        CountDownLatch latch = this.connectLatchMap.get(localEq);
-        assert(latch != null);
-        if (timeout == 0) {
-          latch.await();
-          return curCon;
-        } else {
-          if (!latch.await(timeout, TimeUnit.MILLISECONDS)) {
-            return null;
-          }
-        }
-      } catch (InterruptedException e) {
-        e.printStackTrace();
+    CompletableFuture<Connection> future = connectAsync(ip, port);
+    try {
+      if (timeout == 0) {
+        return future.get();
       }
+      return future.get(timeout, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      // a connection established meanwhile is kept, a later one is reaped
+      return future.cancel(false) ? null : future.getNow(null);
+    } catch (InterruptedException | ExecutionException e) {
+      e.printStackTrace();
     }
     return null;
   }
 
+  // Completes with the connection once it is established, with null if it
+  // can't be started. Only starting the connect is serialized, so a peer
+  // that is slow to answer doesn't hold back connects to other peers.
+  // Cancel the future to give up, a connection established later is reaped.
+  public CompletableFuture<Connection> connectAsync(String ip, String port) {
+    CompletableFuture<Connection> future = new CompletableFuture<Connection>();
+    if (drainReport != null) {
+      future.complete(null);
+      return future;
+    }
+    long startNanos = System.nanoTime();
+    Object jfrEvent = HpnlEvents.beginConnect();
+    synchronized (EqService.class) {
+      long eq = native_connect(ip, port, nativeHandle);
+      if (eq == -1) {
+        HpnlEvents.endConnect(jfrEvent, ip, port, false);
+        future.complete(null);
+        return future;
+      }
+      localEq = eq;
+      connectFutureMap.put(eq, future);
+      add_eq_event(eq, nativeHandle);
+    }
+    future.whenComplete((con, e) -> {
+      if (con != null) {
+        metrics.connectLatency.record(System.nanoTime()-startNanos);
+      }
+      HpnlEvents.endConnect(jfrEvent, ip, port, con != null);
+    });
+    return future;
+  }
+
   public int listen(String ip, String port) {
     localEq = native_connect(ip, port, nativeHandle);
     if (localEq == -1) {
@@ -94,9 +131,121 @@ public class EqService implements MemoryService {
     synchronized(EqService.class) {
       eqThread.shutdown();
     }
+    // nothing completes pending connects once the eq thread is gone
+    for (CompletableFuture<Connection> future : connectFutureMap.values()) {
+      future.complete(null);
+    }
     delete_eq_event(localEq);
   }
 
+  // Stops new sends, reads and client connects, then waits up to timeoutMillis
+  // for the outstanding ones to complete. Connections are then shut down while
+  // the workers are still running, so their endpoints are actually freed.
+  // Call this before stopping the CqService.
+  public DrainReport drain(long timeoutMillis) {
+    DrainReport report = new DrainReport();
+    this.drainReport = report;
+    long start = System.currentTimeMillis();
+    long deadline = start+timeoutMillis;
+    for (Connection con : conMap.values()) {
+      con.setDraining();
+    }
+    report.connectionNum = conMap.size();
+    report.initialOpNum = getOutstandingOpNum();
+    report.outstandingOpNum = report.initialOpNum;
+    while (report.outstandingOpNum > 0 && System.currentTimeMillis() < deadline) {
+      try {
+        Thread.sleep(DRAIN_POLL_MILLIS);
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+        break;
+      }
+      report.outstandingOpNum = getOutstandingOpNum();
+      report.elapsedMillis = System.currentTimeMillis()-start;
+    }
+    report.timedOut = report.outstandingOpNum > 0;
+
+    for (Connection con : conMap.values()) {
+      addReapConnection(con);
+    }
+    // the eq thread reaps, then the workers free the endpoints
+    long reapDeadline = System.currentTimeMillis()+REAP_TIMEOUT_MILLIS;
+    while ((!conMap.isEmpty() || cqService.getExternalEventNum() > 0) &&
+           System.currentTimeMillis() < reapDeadline) {
+      try {
+        Thread.sleep(DRAIN_POLL_MILLIS);
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+        break;
+      }
+    }
+    report.leasedRmaBufferNum = rmaBufferMap.size();
+    report.elapsedMillis = System.currentTimeMillis()-start;
+    report.done = true;
+    return report;
+  }
+
+  public ServiceMetrics getMetrics() {
+    return this.metrics;
+  }
+
+  // Publishes per worker, buffer pool and per connection MBeans under
+  // serviceName. Counters are always collected, only publishing is opt-in.
+  public void enableJmx(String serviceName) {
+    this.jmxName = serviceName;
+    for (int i = 0; i < worker_num; i++) {
+      MetricsRegistry.register(new WorkerMetrics(cqService, metrics, i), serviceName, "Worker", String.valueOf(i));
+    }
+    if (bufferPool != null) {
+      MetricsRegistry.register(new MemPoolMetrics(bufferPool), serviceName, "MemPool", "0");
+    }
+    MetricsRegistry.register(rmaRegistry, serviceName, "RmaRegistry", "0");
+    if (leakDetector != null) {
+      MetricsRegistry.register(leakDetector, serviceName, "BufferLeakDetector", "0");
+    }
+    for (Long eq : conMap.keySet()) {
+      Connection con = conMap.get(eq);
+      if (con != null) {
+        registerConnection(eq, con);
+      }
+    }
+  }
+
+  private void registerConnection(long eq, Connection con) {
+    ConnectionMetrics conMetrics = con.getMetrics();
+    ObjectName name = MetricsRegistry.register(conMetrics, jmxName, "Connection", String.valueOf(conMetrics.getId()));
+    if (name != null) {
+      mbeanNames.put(eq, name);
+    }
+  }
+
+  // largest payload a RELIABLE frame fits in a send buffer of the pool
+  public int getMaxReliablePayload() {
+    if (bufferPool == null) {
+      return 0;
+    }
+    return Math.max(bufferPool.getBufferSize()-HpnlBuffer.RELIABLE_METADATA_SIZE, 0);
+  }
+
+  public DrainReport getDrainReport() {
+    return drainReport;
+  }
+
+  void rejectOp() {
+    DrainReport report = drainReport;
+    if (report != null) {
+      report.rejectedOpNum.incrementAndGet();
+    }
+  }
+
+  private long getOutstandingOpNum() {
+    long num = cqService.getExternalEventNum();
+    for (Connection con : conMap.values()) {
+      num += con.getOutstandingOpNum();
+    }
+    return num;
+  }
+
   public void join() {
     try {
       eqThread.join();
@@ -117,6 +266,10 @@ public class EqService implements MemoryService {
     if (con != null) {
       con.delCon();
       conMap.remove(eq);
+      ObjectName name = mbeanNames.remove(eq);
+      if (name != null) {
+        MetricsRegistry.unregister(name);
+      }
     }
   }
 
@@ -131,17 +284,34 @@ public class EqService implements MemoryService {
       connection.setRecvCallback(recvCallback);
       connection.setSendCallback(sendCallback);
       connection.setReadCallback(readCallback);
+      connection.setWriteCallback(writeCallback);
       connection.setShutdownCallback(shutdownCallback);
+      connection.setErrorCallback(errorCallback);
+      if (keepaliveInterval > 0) {
+        connection.setKeepalive(keepaliveInterval, keepaliveTimeout);
+      }
+      if (jmxName != null) {
+        registerConnection(eq, connection);
+      }
+      if (is_server) {
+        HpnlEvents.accept(connection.getDestAddr(), connection.getDestPort(), connection.getSrcAddr(), connection.getSrcPort());
+      }
+      if (drainReport != null) {
+        // accepted while draining, nothing to wait for
+        connection.setDraining();
+        addReapConnection(connection);
+      }
     }
     connection.handleCallback(eventType, 0, 0);
     if (!is_server && eventType == EventType.CONNECTED_EVENT) {
-      curCon = connection;
-      CountDownLatch latch = this.connectLatchMap.get(eq);
-      if (latch == null) {
+      CompletableFuture<Connection> future = this.connectFutureMap.remove(eq);
+      if (future == null) {
         throw new NullPointerException("connection is NULL when handle " + eventType + " event.");
       }
-      latch.countDown();
-      this.connectLatchMap.remove(eq);
+      if (!future.complete(connection)) {
+        // the caller gave up on it
+        addReapConnection(connection);
+      }
     }
   }
 
@@ -161,20 +331,64 @@ public class EqService implements MemoryService {
     readCallback = callback; 
   }
 
+  public void setWriteCallback(Handler callback) {
+    writeCallback = callback;
+  }
+
   public void setShutdownCallback(Handler callback) {
     shutdownCallback = callback;
   }
 
+  public void setErrorCallback(Handler callback) {
+    errorCallback = callback;
+  }
+
+  public Collection<Connection> getConnections() {
+    return conMap.values();
+  }
+
   public Connection getConnection(long eq) {
     return conMap.get(eq);
   }
 
   public void initBufferPool(int initBufferNum, int bufferSize, int nextBufferNum) {
-    this.bufferPool = new MemPool(this, initBufferNum, bufferSize, nextBufferNum);
+    this.bufferPool = new MemPool(this, initBufferNum, bufferSize, nextBufferNum, false, false, memoryBudget);
+    this.bufferPool.setEviction(highWatermark, idleMillis);
   }
 
-  public void reallocBufferPool() {
-    this.bufferPool.realloc();
+  public void initSlabBufferPool(int initBufferNum, int bufferSize, int nextBufferNum, boolean hugePage) {
+    this.bufferPool = new MemPool(this, initBufferNum, bufferSize, nextBufferNum, true, hugePage, memoryBudget);
+    this.bufferPool.setEviction(highWatermark, idleMillis);
+  }
+
+  public boolean reallocBufferPool() {
+    return this.bufferPool.realloc();
+  }
+
+  public void setMemoryBudget(long memoryBudget) {
+    this.memoryBudget = memoryBudget;
+    if (this.bufferPool != null) {
+      this.bufferPool.setMemoryBudget(memoryBudget);
+    }
+  }
+
+  public void setBufferEviction(int highWatermark, long idleMillis) {
+    this.highWatermark = highWatermark;
+    this.idleMillis = idleMillis;
+    if (this.bufferPool != null) {
+      this.bufferPool.setEviction(highWatermark, idleMillis);
+    }
+  }
+
+  public int trimBufferPool() {
+    if (this.bufferPool == null) {
+      return 0;
+    }
+    return this.bufferPool.trim();
+  }
+
+  public MemPool getBufferPool() {
+    return this.bufferPool;
   }
 
   public void pushSendBuffer(long eq, int bufferId) {
@@ -194,10 +408,14 @@ public class EqService implements MemoryService {
   public HpnlBuffer regRmaBuffer(ByteBuffer byteBuffer, int bufferSize) {
     int bufferId = this.rmaBufferId.getAndIncrement();
     rmaBufferMap.put(bufferId, byteBuffer);
+    Object jfrEvent = HpnlEvents.beginRmaRegister();
     long rkey = reg_rma_buffer(byteBuffer, bufferSize, bufferId, nativeHandle);
+    HpnlEvents.endRmaRegister(jfrEvent, bufferId, bufferSize, rkey >= 0);
     if (rkey < 0) {
+      rmaRegistry.registerFailed();
       return null;
     }
+    rmaRegistered(bufferId, bufferSize);
     HpnlBuffer buffer = new HpnlBuffer(bufferId, byteBuffer, rkey);
     return buffer;
   }
@@ -207,16 +425,77 @@ public class EqService implements MemoryService {
     if (byteBuffer != null) {
       rmaBufferMap.put(bufferId, byteBuffer);
     }
+    Object jfrEvent = HpnlEvents.beginRmaRegister();
     long rkey = reg_rma_buffer_by_address(address, bufferSize, bufferId, nativeHandle);
+    HpnlEvents.endRmaRegister(jfrEvent, bufferId, bufferSize, rkey >= 0);
     if (rkey < 0) {
+      rmaRegistry.registerFailed();
       return null;
     }
+    rmaRegistered(bufferId, bufferSize);
     HpnlBuffer buffer = new HpnlBuffer(bufferId, byteBuffer, rkey);
     return buffer;
   }
 
   public void unregRmaBuffer(int bufferId) {
     unreg_rma_buffer(bufferId, nativeHandle);
+    rmaBufferMap.remove(bufferId);
+    Long size = rmaBufferSizes.remove(bufferId);
+    if (size != null) {
+      rmaRegistry.unregister(size);
+    }
+    BufferLeakDetector.Record leakRecord = rmaLeakRecords.remove(bufferId);
+    if (leakRecord != null) {
+      leakRecord.release();
+    }
+    HpnlEvents.rmaUnregister(bufferId);
+  }
+
+  private void rmaRegistered(int bufferId, long size) {
+    rmaBufferSizes.put(bufferId, size);
+    rmaRegistry.register(size);
+    BufferLeakDetector detector = leakDetector;
+    if (detector != null) {
+      BufferLeakDetector.Record leakRecord = detector.track(BufferLeakDetector.RMA_BUFFER, bufferId, "rma registry");
+      if (leakRecord != null) {
+        rmaLeakRecords.put(bufferId, leakRecord);
+      }
+    }
+  }
+
+  public RmaRegistryMetrics getRmaRegistryMetrics() {
+    return rmaRegistry;
+  }
+
+  // Samples one in sampleInterval send and RMA buffers and reports those held
+  // longer than thresholdMillis, a sampleInterval of 0 turns it off.
+  public void setLeakDetection(int sampleInterval, long thresholdMillis) {
+    if (sampleInterval <= 0) {
+      leakDetector = null;
+      return;
+    }
+    leakDetector = new BufferLeakDetector(sampleInterval, thresholdMillis);
+    if (jmxName != null) {
+      MetricsRegistry.register(leakDetector, jmxName, "BufferLeakDetector", "0");
+    }
+  }
+
+  public BufferLeakDetector getLeakDetector() {
+    return leakDetector;
+  }
+
+  // called from the eq thread loop
+  public void checkLeaks() {
+    BufferLeakDetector detector = leakDetector;
+    if (detector == null) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    if (now-lastLeakCheckMillis < LEAK_CHECK_INTERVAL) {
+      return;
+    }
+    lastLeakCheckMillis = now;
+    detector.check();
   }
 
   public HpnlBuffer getRmaBuffer(int bufferSize) {
@@ -228,10 +507,14 @@ public class EqService implements MemoryService {
       return null;  
     }
     rmaBufferMap.put(bufferId, byteBuffer);
+    Object jfrEvent = HpnlEvents.beginRmaRegister();
     long rkey = reg_rma_buffer(byteBuffer, bufferSize, bufferId, nativeHandle);
+    HpnlEvents.endRmaRegister(jfrEvent, bufferId, bufferSize, rkey >= 0);
     if (rkey < 0) {
+      rmaRegistry.registerFailed();
       return null;
     }
+    rmaRegistered(bufferId, bufferSize);
     HpnlBuffer buffer = new HpnlBuffer(bufferId, byteBuffer, rkey, address);
     return buffer; 
   }
@@ -248,6 +531,20 @@ public class EqService implements MemoryService {
     return reapCons.size() > 0; 
   }
 
+  public void setKeepalive(long intervalMillis, long timeoutMillis) {
+    this.keepaliveInterval = intervalMillis;
+    this.keepaliveTimeout = timeoutMillis;
+  }
+
+  public void reapIdleConnection(Connection con) {
+    keepaliveReapNum.incrementAndGet();
+    addReapConnection(con);
+  }
+
+  public long getKeepaliveReapNum() {
+    return keepaliveReapNum.get();
+  }
+
   public void pendingReap() {
     while (needReap()) {
       Connection con = reapCons.poll();
@@ -255,6 +552,15 @@ public class EqService implements MemoryService {
     }
   }
 
+  public void setSendSignalInterval(int sendSignalInterval) {
+    this.sendSignalInterval = sendSignalInterval;
+    set_selective_completion1(sendSignalInterval != 1, this.nativeHandle);
+  }
+
+  public int getSendSignalInterval() {
+    return this.sendSignalInterval;
+  }
+
   public int getWorkerNum() {
     return this.worker_num;
   }
@@ -264,6 +570,7 @@ public class EqService implements MemoryService {
   }
 
   public void free() {
+    HpnlEvents.removeService(this);
     free(this.nativeHandle);
   }
 
@@ -272,6 +579,21 @@ public class EqService implements MemoryService {
     set_buffer1(byteBuffer, bufferSize, bufferId, this.nativeHandle);
   }
 
+  @Override
+  public ByteBuffer allocSlab(int bufferSize, int bufferNum, int firstBufferId, boolean hugePage) {
+    return alloc_slab1(bufferSize, bufferNum, firstBufferId, hugePage, this.nativeHandle);
+  }
+
+  @Override
+  public int[] evictBuffer(int keepBufferNum, long idleMillis) {
+    return evict_buffer1(keepBufferNum, idleMillis, this.nativeHandle);
+  }
+
+  @Override
+  public int getFreeBufferNum() {
+    return free_buffer_num1(this.nativeHandle);
+  }
+
   public int wait_eq_event() {
     return wait_eq_event1(this.nativeHandle); 
   }
@@ -291,6 +613,10 @@ public class EqService implements MemoryService {
   private native int add_eq_event(long eq, long nativeHandle);
   private native int delete_eq_event1(long eq, long nativeHandle);
   private native void set_buffer1(ByteBuffer buffer, long size, int bufferId, long nativeHandle);
+  private native ByteBuffer alloc_slab1(int bufferSize, int bufferNum, int firstBufferId, boolean hugePage, long nativeHandle);
+  private native int[] evict_buffer1(int keepBufferNum, long idleMillis, long nativeHandle);
+  private native int free_buffer_num1(long nativeHandle);
+  private native void set_selective_completion1(boolean selectiveCompletion, long nativeHandle);
   private native long reg_rma_buffer(ByteBuffer buffer, long size, int bufferId, long nativeHandle);
   private native long reg_rma_buffer_by_address(long address, long size, int bufferId, long nativeHandle);
   private native void unreg_rma_buffer(int bufferId, long nativeHandle);
@@ -319,15 +645,30 @@ public class EqService implements MemoryService {
   private String port;
   private int worker_num;
   private int buffer_num;
+  private int sendSignalInterval = 1;
   public boolean is_server;
-  private Connection curCon;
-  private ConcurrentHashMap<Long, CountDownLatch> connectLatchMap;
-  private HashMap<Long, Connection> conMap;
+  private ConcurrentHashMap<Long, CompletableFuture<Connection>> connectFutureMap;
+  private ConcurrentHashMap<Long, Connection> conMap;
   private LinkedBlockingQueue<Connection> reapCons;
+  private long keepaliveInterval = 0;
+  private long keepaliveTimeout = 0;
+  private AtomicLong keepaliveReapNum = new AtomicLong(0);
+  private volatile DrainReport drainReport = null;
+  private RmaRegistryMetrics rmaRegistry = new RmaRegistryMetrics();
+  private ConcurrentHashMap<Integer, Long> rmaBufferSizes = new ConcurrentHashMap<Integer, Long>();
+  private ConcurrentHashMap<Integer, BufferLeakDetector.Record> rmaLeakRecords = new ConcurrentHashMap<Integer, BufferLeakDetector.Record>();
+  private volatile BufferLeakDetector leakDetector = null;
+  private long lastLeakCheckMillis;
+  private ServiceMetrics metrics;
+  private volatile String jmxName = null;
+  private ConcurrentHashMap<Long, ObjectName> mbeanNames;
 
   private ConcurrentHashMap<Integer, ByteBuffer> rmaBufferMap;
 
   private MemPool bufferPool;
+  private long memoryBudget;
+  private int highWatermark = -1;
+  private long idleMillis;
 
   AtomicInteger rmaBufferId;
 
@@ -335,11 +676,17 @@ public class EqService implements MemoryService {
   private Handler recvCallback;
   private Handler sendCallback;
   private Handler readCallback;
+  private Handler writeCallback;
   private Handler shutdownCallback;
+  private Handler errorCallback;
 
   private EqThread eqThread;
   private final AtomicBoolean needReap = new AtomicBoolean(false);
   private boolean needStop = false;
 
+  private static final long DRAIN_POLL_MILLIS = 1;
+  private static final long REAP_TIMEOUT_MILLIS = 1000;
+  private static final long LEAK_CHECK_INTERVAL = 1000;
+
 
 }
@@ -32,6 +32,8 @@ public class EqThread extends Thread {
         shutdown();
       }
       this.eqService.pendingReap();
+      this.eqService.trimBufferPool();
+      this.eqService.checkLeaks();
     }
     this.eqService.free();
   }
@@ -17,8 +17,11 @@
 
 package com.intel.hpnl.core;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 
+import com.intel.hpnl.metrics.BufferLeakDetector;
+
 public class HpnlBuffer {
   public HpnlBuffer(int bufferId, ByteBuffer byteBuffer) {
     this.bufferId = bufferId;
@@ -41,6 +44,19 @@ public class HpnlBuffer {
   public class Type {
     public final static byte MSG = 0;
     public final static byte RDM = 1;
+    // 1 byte -> RDM_ID, 4 bytes -> receiver peer id, 4 bytes -> sender peer id
+    public final static byte RDM_ID = 2;
+    // 1 byte -> RDM_PEER, 4 bytes -> sender peer id, 4 bytes -> address length, N bytes -> address
+    public final static byte RDM_PEER = 3;
+    // 1 byte frames injected by keepalive, never handed to the recv callback
+    public final static byte KEEPALIVE = 4;
+    public final static byte KEEPALIVE_ACK = 5;
+    // 1 byte -> RELIABLE, 1 byte -> type, 8 bytes -> seq id, 8 bytes -> message id
+    public final static byte RELIABLE = 6;
+    // 1 byte -> RELIABLE_ACK, 8 bytes -> highest message id received
+    public final static byte RELIABLE_ACK = 7;
+    // 1 byte frame posted signaled to reclaim earlier unsignaled sends, dropped by the receiver
+    public final static byte NOOP = 8;
   }
 
   public int getBufferId() {
@@ -55,6 +71,27 @@ public class HpnlBuffer {
     return this.seq; 
   }
 
+  BufferLeakDetector.Record getLeakRecord() {
+    return this.leakRecord;
+  }
+
+  void setLeakRecord(BufferLeakDetector.Record leakRecord) {
+    this.leakRecord = leakRecord;
+  }
+
+  void setPostNanos(long postNanos) {
+    this.postNanos = postNanos;
+  }
+
+  long getPostNanos() {
+    return this.postNanos;
+  }
+
+  // -1 unless the last frame read was RELIABLE
+  public long getMsgId() {
+    return this.msgId;
+  }
+
   public ByteBuffer getRawBuffer() {
     return this.byteBuffer;
   }
@@ -68,17 +105,28 @@ public class HpnlBuffer {
   }
 
   public ByteBuffer getName() {
+    if (this.frameType == Type.RDM_ID) {
+      return peer == null ? null : peer.getName();
+    }
     return name.slice(); 
   }
 
+  public PeerHandle getPeer() {
+    return peer;
+  }
+
+  void setPeer(PeerHandle peer) {
+    this.peer = peer;
+  }
+
   public int size() {
     return this.byteBuffer.remaining();
   }
 
   private void putMetadata(int srcSize, byte type, long seq) {
     byteBuffer.rewind();
-    if (METADATA_SIZE+srcSize > size()) {
-      throw new ArithmeticException(); 
+    if (METADATA_SIZE+srcSize > byteBuffer.capacity()) {
+      throw new BufferOverflowException();
     }
     byteBuffer.limit(METADATA_SIZE+srcSize);
     byteBuffer.put(Type.MSG);
@@ -88,8 +136,8 @@ public class HpnlBuffer {
 
   private void putMetadata(int srcSize, int nameLength, ByteBuffer name, byte type, long seq) {
     byteBuffer.rewind();
-    if (METADATA_SIZE+srcSize+nameLength+4 > size()) {
-      throw new ArithmeticException(); 
+    if (METADATA_SIZE+srcSize+nameLength+4 > byteBuffer.capacity()) {
+      throw new BufferOverflowException();
     }
     byteBuffer.limit(METADATA_SIZE+srcSize+nameLength+4);
     byteBuffer.put(Type.RDM);
@@ -99,34 +147,99 @@ public class HpnlBuffer {
     byteBuffer.putLong(seq);
   }
 
-  public void put(ByteBuffer src, byte type, long seq) {
-    try {
-      putMetadata(src.remaining(), type, seq);
-    } catch (ArithmeticException e) {
-      e.printStackTrace(); 
+  private void putMetadata(int srcSize, PeerHandle peer, int nameLength, ByteBuffer name, byte type, long seq) {
+    int remoteId = peer.getRemoteId();
+    if (remoteId < 0 || peer.needsAnnounce()) {
+      byteBuffer.rewind();
+      if (METADATA_SIZE+srcSize+nameLength+8 > byteBuffer.capacity()) {
+        throw new BufferOverflowException();
+      }
+      byteBuffer.limit(METADATA_SIZE+srcSize+nameLength+8);
+      byteBuffer.put(Type.RDM_PEER);
+      byteBuffer.putInt(peer.getId());
+      byteBuffer.putInt(nameLength);
+      byteBuffer.put(name.slice());
+    } else {
+      byteBuffer.rewind();
+      if (METADATA_SIZE+srcSize+8 > byteBuffer.capacity()) {
+        throw new BufferOverflowException();
+      }
+      byteBuffer.limit(METADATA_SIZE+srcSize+8);
+      byteBuffer.put(Type.RDM_ID);
+      byteBuffer.putInt(remoteId);
+      byteBuffer.putInt(peer.getId());
     }
+    byteBuffer.put(type);
+    byteBuffer.putLong(seq);
+  }
+
+  private void putMetadata(int srcSize, byte type, long seq, long msgId) {
+    byteBuffer.rewind();
+    if (RELIABLE_METADATA_SIZE+srcSize > byteBuffer.capacity()) {
+      throw new BufferOverflowException();
+    }
+    byteBuffer.limit(RELIABLE_METADATA_SIZE+srcSize);
+    byteBuffer.put(Type.RELIABLE);
+    byteBuffer.put(type);
+    byteBuffer.putLong(seq);
+    byteBuffer.putLong(msgId);
+  }
+
+  // the put methods throw BufferOverflowException when the frame doesn't fit
+  public void put(ByteBuffer src, byte type, long seq, long msgId) {
+    putMetadata(src.remaining(), type, seq, msgId);
+    byteBuffer.put(src.slice());
+    byteBuffer.flip();
+  }
+
+  public void put(ByteBuffer src, byte type, long seq) {
+    putMetadata(src.remaining(), type, seq);
     byteBuffer.put(src.slice());
     byteBuffer.flip();
   }
 
   public void put(ByteBuffer src, int nameLength, ByteBuffer name, byte type, long seq) {
-    try {
-      putMetadata(src.remaining(), nameLength, name, type, seq);
-    } catch (ArithmeticException e) {
-      e.printStackTrace(); 
-    }
+    putMetadata(src.remaining(), nameLength, name, type, seq);
+    byteBuffer.put(src.slice());
+    byteBuffer.flip();
+  }
+
+  public void put(ByteBuffer src, PeerHandle peer, int nameLength, ByteBuffer name, byte type, long seq) {
+    putMetadata(src.remaining(), peer, nameLength, name, type, seq);
     byteBuffer.put(src.slice());
     byteBuffer.flip();
   }
 
+  void putControl(byte frameType) {
+    byteBuffer.rewind();
+    byteBuffer.limit(1);
+    byteBuffer.put(frameType);
+    byteBuffer.flip();
+  }
+
   public ByteBuffer get(int blockBufferSize) {
     byteBuffer.position(0); 
     byteBuffer.limit(blockBufferSize);
-    if (byteBuffer.get() == Type.MSG) {
+    this.frameType = byteBuffer.get();
+    this.msgId = -1;
+    if (this.frameType == Type.MSG) {
+      this.type = byteBuffer.get();
+      this.seq = byteBuffer.getLong();
+      return byteBuffer.slice();
+    } else if (this.frameType == Type.RELIABLE) {
+      this.type = byteBuffer.get();
+      this.seq = byteBuffer.getLong();
+      this.msgId = byteBuffer.getLong();
+      return byteBuffer.slice();
+    } else if (this.frameType == Type.RDM_ID) {
+      byteBuffer.position(9);
       this.type = byteBuffer.get();
       this.seq = byteBuffer.getLong();
       return byteBuffer.slice();
     } else {
+      if (this.frameType == Type.RDM_PEER) {
+        byteBuffer.getInt();
+      }
       this.nameLength = byteBuffer.getInt();
       byte[] nameTmp = new byte[this.nameLength];
       byteBuffer.get(nameTmp, 0, this.nameLength);
@@ -145,14 +258,27 @@ public class HpnlBuffer {
     return this.byteBuffer.capacity() - METADATA_SIZE;
   }
 
+  public int getReliableWritableBytes() {
+    return this.byteBuffer.capacity() - RELIABLE_METADATA_SIZE;
+  }
+
   private int bufferId;
+  private byte frameType;
   private byte type;
   private long seq;
+  private long msgId = -1;
+  private long postNanos;
+  private BufferLeakDetector.Record leakRecord;
   private int nameLength;
   private ByteBuffer name;
+  private PeerHandle peer;
   private ByteBuffer byteBuffer;
   private long rkey;
   private long address;
 
   private static int METADATA_SIZE = 10;
+  // RELIABLE frames carry the message id on top of the MSG metadata
+  static final int RELIABLE_METADATA_SIZE = 18;
+  // keepalive and ack frames are shorter than any metadata carrying frame
+  static final int CONTROL_FRAME_MAX_SIZE = 9;
 }
@@ -17,31 +17,155 @@
 
 package com.intel.hpnl.core;
 
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.nio.ByteBuffer;
 
+import com.intel.hpnl.jfr.HpnlEvents;
+
 public class MemPool {
   public MemPool(MemoryService service, int initBufferNum, int bufferSize, int nextBufferNum) {
+    this(service, initBufferNum, bufferSize, nextBufferNum, false, false);
+  }
+
+  public MemPool(MemoryService service, int initBufferNum, int bufferSize, int nextBufferNum, boolean slab, boolean hugePage) {
+    this(service, initBufferNum, bufferSize, nextBufferNum, slab, hugePage, 0);
+  }
+
+  public MemPool(MemoryService service, int initBufferNum, int bufferSize, int nextBufferNum, boolean slab, boolean hugePage, long memoryBudget) {
     this.service = service;
     this.initBufferNum = initBufferNum;
     this.bufferSize = bufferSize;
     this.nextBufferNum = nextBufferNum;
+    this.slab = slab;
+    this.hugePage = hugePage;
+    this.memoryBudget = memoryBudget;
+    this.highWatermark = -1;
     this.bufferMap = new ConcurrentHashMap<>();
+    this.slabIds = ConcurrentHashMap.newKeySet();
     this.seqId = new AtomicInteger(0);
-    for (int i = 0; i < this.initBufferNum; i++) {
-      alloc();
+    this.evictedBufferNum = new AtomicLong(0);
+    grow(this.initBufferNum);
+  }
+
+  public boolean realloc() {
+    Object jfrEvent = HpnlEvents.beginPoolGrow();
+    boolean success = grow(this.nextBufferNum);
+    HpnlEvents.endPoolGrow(jfrEvent, this.nextBufferNum, this.bufferSize, getTotalBufferNum(), success);
+    return success;
+  }
+
+  public HpnlBuffer getBuffer(int bufferId) {
+    return bufferMap.get(bufferId); 
+  }
+
+  public void setMemoryBudget(long memoryBudget) {
+    this.memoryBudget = memoryBudget;
+  }
+
+  public void setEviction(int highWatermark, long idleMillis) {
+    this.idleMillis = idleMillis;
+    this.highWatermark = highWatermark;
+  }
+
+  public int trim() {
+    if (highWatermark < 0) {
+      return 0;
     }
+    long now = System.currentTimeMillis();
+    if (now - lastTrimTime < Math.min(idleMillis, MAX_TRIM_INTERVAL)) {
+      return 0;
+    }
+    lastTrimTime = now;
+    int[] bufferIds = service.evictBuffer(highWatermark, idleMillis);
+    for (int bufferId : bufferIds) {
+      bufferMap.remove(bufferId);
+      slabIds.remove(bufferId);
+    }
+    evictedBufferNum.addAndGet(bufferIds.length);
+    return bufferIds.length;
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  public int getTotalBufferNum() {
+    return bufferMap.size();
   }
 
-  public void realloc() {
-    for (int i = 0; i < this.nextBufferNum; i++) {
+  public int getFreeBufferNum() {
+    return service.getFreeBufferNum();
+  }
+
+  public int getInUseBufferNum() {
+    return Math.max(getTotalBufferNum()-getFreeBufferNum(), 0);
+  }
+
+  public long getAllocatedBytes() {
+    return (long)getTotalBufferNum()*bufferSize;
+  }
+
+  public long getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  public long getEvictedBufferNum() {
+    return evictedBufferNum.get();
+  }
+
+  public long getGrowNum() {
+    return growNum.get();
+  }
+
+  public long getGrowFailNum() {
+    return growFailNum.get();
+  }
+
+  public int getSlabNum() {
+    return slabIds.size();
+  }
+
+  private boolean grow(int bufferNum) {
+    if (memoryBudget > 0) {
+      long availableBufferNum = memoryBudget/bufferSize-getTotalBufferNum();
+      if (availableBufferNum <= 0) {
+        growFailNum.incrementAndGet();
+        return false;
+      }
+      bufferNum = (int)Math.min(bufferNum, availableBufferNum);
+    }
+    if (bufferNum <= 0) {
+      return false;
+    }
+    growNum.incrementAndGet();
+    if (slab && allocSlab(bufferNum)) {
+      return true;
+    }
+    for (int i = 0; i < bufferNum; i++) {
       alloc();
     }
+    return true;
   }
 
-  public HpnlBuffer getBuffer(int bufferId) {
-    return bufferMap.get(bufferId); 
+  private boolean allocSlab(int bufferNum) {
+    int firstBufferId = seqId.getAndAdd(bufferNum);
+    ByteBuffer slabBuffer = service.allocSlab(bufferSize, bufferNum, firstBufferId, hugePage);
+    if (slabBuffer == null) {
+      // ids are left unused, fall back to one allocation per buffer
+      return false;
+    }
+    for (int i = 0; i < bufferNum; i++) {
+      slabBuffer.limit((i+1)*bufferSize).position(i*bufferSize);
+      ByteBuffer byteBuffer = slabBuffer.slice();
+      int bufferId = firstBufferId+i;
+      bufferMap.put(bufferId, new HpnlBuffer(bufferId, byteBuffer));
+    }
+    // a slab is evicted as a whole, so its first id stands for the slab
+    slabIds.add(firstBufferId);
+    return true;
   }
 
   private void alloc() {
@@ -52,10 +176,22 @@ public class MemPool {
     service.setBuffer(byteBuffer, bufferSize, bufferId);
   }
 
+  private static final long MAX_TRIM_INTERVAL = 1000;
+
   private MemoryService service;
   private int initBufferNum;
   private int bufferSize;
   private int nextBufferNum;
+  private boolean slab;
+  private boolean hugePage;
+  private volatile long memoryBudget;
+  private volatile int highWatermark;
+  private volatile long idleMillis;
+  private long lastTrimTime;
   private ConcurrentHashMap<Integer, HpnlBuffer> bufferMap;
+  private Set<Integer> slabIds;
   private AtomicInteger seqId;
+  private AtomicLong evictedBufferNum;
+  private final AtomicLong growNum = new AtomicLong(0);
+  private final AtomicLong growFailNum = new AtomicLong(0);
 }
@@ -4,4 +4,7 @@ import java.nio.ByteBuffer;
 
 public interface MemoryService {
     void setBuffer(ByteBuffer byteBuffer, int bufferSize, int bufferId);
+    ByteBuffer allocSlab(int bufferSize, int bufferNum, int firstBufferId, boolean hugePage);
+    int[] evictBuffer(int keepBufferNum, long idleMillis);
+    int getFreeBufferNum();
 }
@@ -0,0 +1,72 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.core;
+
+import java.nio.ByteBuffer;
+
+public class PeerHandle {
+  public PeerHandle(int id, ByteBuffer name, long address) {
+    this.id = id;
+    this.name = name;
+    this.address = address;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public ByteBuffer getName() {
+    return name.slice();
+  }
+
+  public long getAddress() {
+    return address;
+  }
+
+  public int getRemoteId() {
+    return remoteId;
+  }
+
+  // id the peer uses for us, learned from its frames
+  void setRemoteId(int remoteId) {
+    this.remoteId = remoteId;
+  }
+
+  // frames carry our name until the peer knows our id, and again now and then
+  // in case the peer restarted and lost it
+  boolean needsAnnounce() {
+    long now = System.nanoTime();
+    if (remoteId >= 0 && announced && now-announceNanos < ANNOUNCE_INTERVAL_NANOS) {
+      return false;
+    }
+    announced = true;
+    announceNanos = now;
+    return true;
+  }
+
+  private int id;
+  private ByteBuffer name;
+  private long address;
+  private volatile int remoteId = -1;
+  private volatile boolean announced = false;
+  private volatile long announceNanos;
+
+  // a source address the provider can't tell
+  public static final long NO_ADDRESS = -1;
+  private static final long ANNOUNCE_INTERVAL_NANOS = 1000000000L;
+}
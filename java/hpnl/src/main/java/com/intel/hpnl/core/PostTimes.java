@@ -0,0 +1,60 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.core;
+
+// Post timestamps of in-flight operations, matched to completions by buffer
+// id in posting order. Fixed size, operations posted while it is full are
+// simply not timed. Only touched by the worker owning the connection.
+class PostTimes {
+  PostTimes(int capacity) {
+    this.ids = new int[capacity];
+    this.nanos = new long[capacity];
+  }
+
+  void add(int id, long postNanos) {
+    if (tail-head == ids.length) {
+      return;
+    }
+    int i = (int)(tail++ % ids.length);
+    ids[i] = id;
+    nanos[i] = postNanos;
+  }
+
+  // returns 0 if the operation was not timed
+  long remove(int id) {
+    for (long seq = head; seq < tail; seq++) {
+      int i = (int)(seq % ids.length);
+      if (ids[i] == id) {
+        long postNanos = nanos[i];
+        ids[i] = CONSUMED;
+        while (head < tail && ids[(int)(head % ids.length)] == CONSUMED) {
+          head++;
+        }
+        return postNanos;
+      }
+    }
+    return 0;
+  }
+
+  private final int[] ids;
+  private final long[] nanos;
+  private long head = 0;
+  private long tail = 0;
+
+  private static final int CONSUMED = Integer.MIN_VALUE;
+}
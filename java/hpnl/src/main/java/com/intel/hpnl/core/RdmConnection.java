@@ -17,14 +17,29 @@
 
 package com.intel.hpnl.core;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.intel.hpnl.metrics.BufferLeakDetector;
 
 public class RdmConnection {
-  public RdmConnection(long nativeHandle, RdmService rdmService) {
+  public RdmConnection(long nativeHandle, RdmService rdmService, int index) {
     this.nativeHandle = nativeHandle;
     this.rdmService = rdmService;
+    this.index = index;
+    this.threadId = rdmService.getThreadId(index);
     this.sendBufferList = new LinkedBlockingQueue<HpnlBuffer>();
+    this.peerMap = new ConcurrentHashMap<ByteBuffer, PeerHandle>();
+    this.peers = new CopyOnWriteArrayList<PeerHandle>();
+    this.pendingSends = new ConcurrentLinkedDeque<PendingSend>();
+    this.maxPendingSendNum = rdmService.getMaxPendingSendNum();
     this.localNameLength = get_local_name_length(this.nativeHandle);
     this.localName = ByteBuffer.allocateDirect(localNameLength);
     get_local_name(this.localName, this.nativeHandle);
@@ -49,12 +64,27 @@ public class RdmConnection {
   }
 
   public void handleCallback(int eventType, int bufferId, int blockBufferSize) {
+    handleCallback(eventType, bufferId, blockBufferSize, PeerHandle.NO_ADDRESS);
+  }
+
+  public void handleCallback(int eventType, int bufferId, int blockBufferSize, long srcAddress) {
     Exception e = null;
     if (eventType == EventType.RECV_EVENT) {
+      bindPeer(getRecvBuffer(bufferId), srcAddress);
       e = executeCallback(recvCallback, bufferId, blockBufferSize);
     } else if (eventType == EventType.SEND_EVENT) {
       e = executeCallback(sendCallback, bufferId, blockBufferSize);
+      FanoutSend fanoutSend = this.fanoutSends.remove(bufferId);
+      if (fanoutSend != null && fanoutSend.handler != null) {
+        try {
+          // blockBufferSize carries the failed peer number of a fan-out
+          fanoutSend.handler.handle(this, fanoutSend.peerNum, blockBufferSize);
+        } catch (Exception ex) {
+          e = ex;
+        }
+      }
       pushSendBuffer(rdmService.getSendBuffer(bufferId));
+      drainPendingSends();
     } else {
     }
     if(e != null){
@@ -63,6 +93,11 @@ public class RdmConnection {
   }
 
   public void pushSendBuffer(HpnlBuffer buffer) {
+    BufferLeakDetector.Record leakRecord = buffer.getLeakRecord();
+    if (leakRecord != null) {
+      leakRecord.release();
+      buffer.setLeakRecord(null);
+    }
     try {
       sendBufferList.put(buffer);
     } catch (InterruptedException e) {
@@ -72,9 +107,92 @@ public class RdmConnection {
 
   private HpnlBuffer takeSendBuffer() {
     HpnlBuffer buf = sendBufferList.poll();
+    BufferLeakDetector leakDetector = rdmService.getLeakDetector();
+    if (buf != null && leakDetector != null) {
+      buf.setLeakRecord(leakDetector.track(BufferLeakDetector.SEND_BUFFER, buf.getBufferId(), this));
+    }
     return buf;
   }
 
+  public PeerHandle resolvePeer(ByteBuffer peerName) {
+    if (peerName == null) {
+      return null;
+    }
+    PeerHandle peer = this.peerMap.get(peerName);
+    if (peer != null) {
+      return peer;
+    }
+    synchronized (this.peers) {
+      peer = this.peerMap.get(peerName);
+      if (peer != null) {
+        return peer;
+      }
+      ByteBuffer name = ByteBuffer.allocateDirect(peerName.remaining());
+      name.put(peerName.slice());
+      name.flip();
+      long address = resolve_peer(name, this.nativeHandle);
+      if (address == -1) {
+        return null;
+      }
+      peer = new PeerHandle(this.peers.size(), name, address);
+      this.peers.add(peer);
+      this.peerMap.put(name, peer);
+      this.addressMap.put(address, peer);
+      return peer;
+    }
+  }
+
+  public PeerHandle getPeer(int id) {
+    if (id < 0 || id >= this.peers.size()) {
+      return null;
+    }
+    return this.peers.get(id);
+  }
+
+  private void bindPeer(HpnlBuffer buffer, long srcAddress) {
+    ByteBuffer rawBuffer = buffer.getRawBuffer();
+    byte frameType = rawBuffer.get(0);
+    PeerHandle peer = null;
+    if (frameType == HpnlBuffer.Type.RDM_ID) {
+      int senderId = rawBuffer.getInt(5);
+      peer = getPeer(rawBuffer.getInt(1));
+      // ids go stale when either side restarts, only trust one the sender matches
+      if (peer != null && !isSender(peer, senderId, srcAddress)) {
+        peer = null;
+      }
+      if (peer == null && srcAddress != PeerHandle.NO_ADDRESS) {
+        peer = this.addressMap.get(srcAddress);
+      }
+      if (peer == null) {
+        // the sender announces its name again shortly
+        this.unknownPeerFrameNum++;
+      } else {
+        peer.setRemoteId(senderId);
+      }
+    } else if (frameType == HpnlBuffer.Type.RDM_PEER) {
+      ByteBuffer name = rawBuffer.duplicate();
+      name.limit(9+rawBuffer.getInt(5));
+      name.position(9);
+      peer = resolvePeer(name);
+      if (peer != null) {
+        peer.setRemoteId(rawBuffer.getInt(1));
+      }
+    }
+    buffer.setPeer(peer);
+  }
+
+  private boolean isSender(PeerHandle peer, int senderId, long srcAddress) {
+    if (srcAddress != PeerHandle.NO_ADDRESS) {
+      return peer.getAddress() == srcAddress;
+    }
+    return peer.getRemoteId() == senderId;
+  }
+
+  // RDM_ID frames whose sender could not be identified
+  public long getUnknownPeerFrameNum() {
+    return this.unknownPeerFrameNum;
+  }
+
   public HpnlBuffer getRecvBuffer(int bufferId) {
     return this.rdmService.getRecvBuffer(bufferId);
   }
@@ -92,15 +210,252 @@ public class RdmConnection {
   }
 
   public void send(ByteBuffer buffer, byte b, long seq) {
-    HpnlBuffer hpnlBuffer = takeSendBuffer();
-    hpnlBuffer.put(buffer, localNameLength, localName, b, seq);
-    send(hpnlBuffer.size(), hpnlBuffer.getBufferId(), this.nativeHandle);
+    send(buffer, b, seq, null, null, null, null, true);
   }
 
   public void sendTo(ByteBuffer buffer, byte b, long seq, ByteBuffer peerName) {
-    HpnlBuffer hpnlBuffer = takeSendBuffer();
-    hpnlBuffer.put(buffer, localNameLength, localName, b, seq);
-    sendTo(hpnlBuffer.size(), hpnlBuffer.getBufferId(), peerName, this.nativeHandle);
+    send(buffer, b, seq, null, peerName, null, null, true);
+  }
+
+  public void sendTo(ByteBuffer buffer, byte b, long seq, PeerHandle peer) {
+    send(buffer, b, seq, peer, null, null, null, true);
+  }
+
+  public boolean trySend(ByteBuffer buffer, byte b, long seq) {
+    return send(buffer, b, seq, null, null, null, null, false);
+  }
+
+  public boolean trySendTo(ByteBuffer buffer, byte b, long seq, ByteBuffer peerName) {
+    return send(buffer, b, seq, null, peerName, null, null, false);
+  }
+
+  public boolean trySendTo(ByteBuffer buffer, byte b, long seq, PeerHandle peer) {
+    return send(buffer, b, seq, peer, null, null, null, false);
+  }
+
+  public void sendToAll(ByteBuffer buffer, byte b, long seq, PeerHandle[] peers, RdmFanoutHandler handler) {
+    send(buffer, b, seq, null, null, peers, handler, true);
+  }
+
+  public boolean trySendToAll(ByteBuffer buffer, byte b, long seq, PeerHandle[] peers, RdmFanoutHandler handler) {
+    return send(buffer, b, seq, null, null, peers, handler, false);
+  }
+
+  private boolean send(ByteBuffer buffer, byte b, long seq, PeerHandle peer, ByteBuffer peerName,
+      PeerHandle[] peers, RdmFanoutHandler fanoutHandler, boolean wait) {
+    boolean inWorker = Thread.currentThread().getId() == this.threadId;
+    if (inWorker && this.pendingSends.isEmpty()) {
+      HpnlBuffer hpnlBuffer = takeSendBuffer();
+      // a failed post goes through the queue, which retries or drops it
+      if (hpnlBuffer != null && postSend(hpnlBuffer, buffer, b, seq, peer, peerName, peers, fanoutHandler) == 0) {
+        return true;
+      }
+    }
+    if (!reservePendingSend()) {
+      setWritable(false);
+      if (!wait) {
+        return false;
+      }
+      // the worker drains the queue, it can only go over the bound
+      if (inWorker) {
+        this.pendingSendNum.incrementAndGet();
+      } else if (!awaitPendingSend()) {
+        return false;
+      }
+    }
+    this.pendingSends.offer(new PendingSend(buffer, b, seq, peer, peerName, peers, fanoutHandler));
+    if (inWorker) {
+      drainPendingSends();
+    } else if (this.drainScheduled.compareAndSet(false, true)) {
+      this.rdmService.addExternalEvent(this.index, this.drainHandler);
+    }
+    return true;
+  }
+
+  private boolean reservePendingSend() {
+    int pendingSendNum;
+    do {
+      pendingSendNum = this.pendingSendNum.get();
+      if (pendingSendNum >= this.maxPendingSendNum) {
+        return false;
+      }
+    } while (!this.pendingSendNum.compareAndSet(pendingSendNum, pendingSendNum+1));
+    return true;
+  }
+
+  private boolean awaitPendingSend() {
+    synchronized (this.writableLock) {
+      this.writableWaiters++;
+      try {
+        while (!reservePendingSend()) {
+          this.writableLock.wait(100);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      } finally {
+        this.writableWaiters--;
+      }
+    }
+    return true;
+  }
+
+  private void drainPendingSends() {
+    this.drainScheduled.set(false);
+    int pendingSendNum = this.pendingSendNum.get();
+    if (pendingSendNum > this.peakPendingSendNum) {
+      this.peakPendingSendNum = pendingSendNum;
+    }
+    PendingSend pendingSend;
+    while ((pendingSend = this.pendingSends.peek()) != null) {
+      HpnlBuffer hpnlBuffer = takeSendBuffer();
+      if (hpnlBuffer == null) {
+        break;
+      }
+      int res = postSend(hpnlBuffer, pendingSend.buffer, pendingSend.type, pendingSend.seq, pendingSend.peer,
+          pendingSend.peerName, pendingSend.peers, pendingSend.fanoutHandler);
+      if (res == EAGAIN) {
+        // no send completion may be on its way to drain again, retry on the next worker loop
+        if (this.drainScheduled.compareAndSet(false, true)) {
+          this.rdmService.addExternalEvent(this.index, this.drainHandler);
+        }
+        break;
+      }
+      this.pendingSends.poll();
+      this.pendingSendNum.decrementAndGet();
+      if (res != 0) {
+        dropPendingSend(pendingSend);
+        continue;
+      }
+      this.queuedSendNum++;
+      long waitNanos = System.nanoTime()-pendingSend.enqueueTime;
+      this.sendWaitNanos += waitNanos;
+      if (waitNanos > this.maxSendWaitNanos) {
+        this.maxSendWaitNanos = waitNanos;
+      }
+    }
+    if (!this.writable && this.pendingSendNum.get() <= this.maxPendingSendNum/2) {
+      setWritable(true);
+    }
+  }
+
+  private void dropPendingSend(PendingSend pendingSend) {
+    this.failedSendNum++;
+    if (pendingSend.fanoutHandler != null) {
+      try {
+        pendingSend.fanoutHandler.handle(this, pendingSend.peers.length, pendingSend.peers.length);
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  private int postSend(HpnlBuffer hpnlBuffer, ByteBuffer buffer, byte b, long seq, PeerHandle peer,
+      ByteBuffer peerName, PeerHandle[] peers, RdmFanoutHandler fanoutHandler) {
+    try {
+      return postFrame(hpnlBuffer, buffer, b, seq, peer, peerName, peers, fanoutHandler);
+    } catch (BufferOverflowException e) {
+      // the frame can never fit, fail it for good
+      pushSendBuffer(hpnlBuffer);
+      return -1;
+    }
+  }
+
+  private int postFrame(HpnlBuffer hpnlBuffer, ByteBuffer buffer, byte b, long seq, PeerHandle peer,
+      ByteBuffer peerName, PeerHandle[] peers, RdmFanoutHandler fanoutHandler) {
+    int res;
+    if (peers != null) {
+      // same frame for every peer, so one copy serves the whole fan-out
+      hpnlBuffer.put(buffer, localNameLength, localName, b, seq);
+      long[] peerAddresses = new long[peers.length];
+      for (int i = 0; i < peers.length; i++) {
+        peerAddresses[i] = peers[i].getAddress();
+      }
+      int postedNum = sendToAll(hpnlBuffer.size(), hpnlBuffer.getBufferId(), peerAddresses, peers.length, this.nativeHandle);
+      if (postedNum <= 0) {
+        pushSendBuffer(hpnlBuffer);
+        return postedNum < 0 ? postedNum : -1;
+      }
+      this.fanoutSends.put(hpnlBuffer.getBufferId(), new FanoutSend(peers.length, fanoutHandler));
+      return 0;
+    } else if (peer != null) {
+      hpnlBuffer.put(buffer, peer, localNameLength, localName, b, seq);
+      res = sendToPeer(hpnlBuffer.size(), hpnlBuffer.getBufferId(), peer.getAddress(), this.nativeHandle);
+    } else {
+      hpnlBuffer.put(buffer, localNameLength, localName, b, seq);
+      if (peerName != null) {
+        res = sendTo(hpnlBuffer.size(), hpnlBuffer.getBufferId(), peerName, this.nativeHandle);
+      } else {
+        res = send(hpnlBuffer.size(), hpnlBuffer.getBufferId(), this.nativeHandle);
+      }
+    }
+    if (res != 0) {
+      pushSendBuffer(hpnlBuffer);
+    }
+    return res;
+  }
+
+  private void setWritable(boolean writable) {
+    synchronized (this.writableLock) {
+      if (this.writable == writable) {
+        return;
+      }
+      this.writable = writable;
+      if (writable && this.writableWaiters > 0) {
+        this.writableLock.notifyAll();
+      }
+    }
+    if (this.writabilityCallback != null) {
+      try {
+        this.writabilityCallback.handle(this, writable);
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  public boolean isWritable() {
+    return this.writable;
+  }
+
+  public void setWritabilityCallback(RdmWritabilityHandler callback) {
+    this.writabilityCallback = callback;
+  }
+
+  public void setMaxPendingSendNum(int maxPendingSendNum) {
+    this.maxPendingSendNum = maxPendingSendNum;
+  }
+
+  public int getMaxPendingSendNum() {
+    return this.maxPendingSendNum;
+  }
+
+  public int getPendingSendNum() {
+    return this.pendingSendNum.get();
+  }
+
+  public int getPeakPendingSendNum() {
+    return this.peakPendingSendNum;
+  }
+
+  public long getQueuedSendNum() {
+    return this.queuedSendNum;
+  }
+
+  public long getFailedSendNum() {
+    return this.failedSendNum;
+  }
+
+  public long getSendWaitNanos() {
+    return this.sendWaitNanos;
+  }
+
+  public long getMaxSendWaitNanos() {
+    return this.maxSendWaitNanos;
+  }
+
+  public int getIndex() {
+    return index;
   }
 
   private native void init(long nativeHandle);
@@ -108,6 +463,9 @@ public class RdmConnection {
   private native int get_local_name_length(long nativeHandle);
   private native int send(int blockBufferSize, int bufferId, long nativeHandle);
   private native int sendTo(int blockBufferSize, int bufferId, ByteBuffer peerName, long nativeHandle);
+  private native long resolve_peer(ByteBuffer peerName, long nativeHandle);
+  private native int sendToPeer(int blockBufferSize, int bufferId, long peerAddress, long nativeHandle);
+  private native int sendToAll(int blockBufferSize, int bufferId, long[] peerAddresses, int peerNum, long nativeHandle);
   // 1 byte -> 0(connection) or 1(nonconnection)
   // 4 bytes -> address length
   // N bytes -> address
@@ -121,8 +479,80 @@ public class RdmConnection {
   ByteBuffer localName;
   int localNameLength;
   private LinkedBlockingQueue<HpnlBuffer> sendBufferList;
+  private ConcurrentHashMap<ByteBuffer, PeerHandle> peerMap;
+  private CopyOnWriteArrayList<PeerHandle> peers;
+  private ConcurrentHashMap<Long, PeerHandle> addressMap = new ConcurrentHashMap<Long, PeerHandle>();
   private RdmHandler recvCallback = null;
   private RdmHandler sendCallback = null;
 
+  private ConcurrentLinkedDeque<PendingSend> pendingSends;
+  private HashMap<Integer, FanoutSend> fanoutSends = new HashMap<Integer, FanoutSend>();
+  private AtomicInteger pendingSendNum = new AtomicInteger(0);
+  private AtomicBoolean drainScheduled = new AtomicBoolean(false);
+  private int maxPendingSendNum;
+  private volatile boolean writable = true;
+  private final Object writableLock = new Object();
+  private int writableWaiters = 0;
+  private RdmWritabilityHandler writabilityCallback = null;
+  private final ExternalHandler drainHandler = new ExternalHandler() {
+    public void handle() {
+      drainPendingSends();
+    }
+  };
+
+  // below metrics are only updated by the worker thread
+  private volatile int peakPendingSendNum = 0;
+  private volatile long queuedSendNum = 0;
+  private volatile long sendWaitNanos = 0;
+  private volatile long maxSendWaitNanos = 0;
+  private volatile long unknownPeerFrameNum = 0;
+  private volatile long failedSendNum = 0;
+
   private long nativeHandle;
+  private int index;
+  private long threadId;
+
+  // -FI_EAGAIN as returned by the provider, anything else fails the send for good
+  private static final int EAGAIN = -11;
+
+  private static class PendingSend {
+    PendingSend(ByteBuffer buffer, byte type, long seq, PeerHandle peer, ByteBuffer peerName,
+        PeerHandle[] peers, RdmFanoutHandler fanoutHandler) {
+      // callers may reuse their buffers once send returns
+      this.buffer = copy(buffer);
+      this.type = type;
+      this.seq = seq;
+      this.peer = peer;
+      this.peerName = peerName == null ? null : copy(peerName);
+      this.peers = peers;
+      this.fanoutHandler = fanoutHandler;
+      this.enqueueTime = System.nanoTime();
+    }
+
+    private static ByteBuffer copy(ByteBuffer src) {
+      ByteBuffer dst = ByteBuffer.allocateDirect(src.remaining());
+      dst.put(src.slice());
+      dst.flip();
+      return dst;
+    }
+
+    ByteBuffer buffer;
+    byte type;
+    long seq;
+    PeerHandle peer;
+    ByteBuffer peerName;
+    PeerHandle[] peers;
+    RdmFanoutHandler fanoutHandler;
+    long enqueueTime;
+  }
+
+  private static class FanoutSend {
+    FanoutSend(int peerNum, RdmFanoutHandler handler) {
+      this.peerNum = peerNum;
+      this.handler = handler;
+    }
+
+    int peerNum;
+    RdmFanoutHandler handler;
+  }
 }
@@ -18,7 +18,12 @@
 package com.intel.hpnl.core;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.intel.hpnl.metrics.BufferLeakDetector;
 
 public class RdmService implements MemoryService {
   static {
@@ -26,6 +31,11 @@ public class RdmService implements MemoryService {
   }
 
   public RdmService(int buffer_num, boolean is_server) {
+    this(1, buffer_num, is_server);
+  }
+
+  public RdmService(int worker_num, int buffer_num, boolean is_server) {
+    this.worker_num = worker_num;
     this.buffer_num = buffer_num;
     this.is_server = is_server;
 
@@ -33,21 +43,38 @@ public class RdmService implements MemoryService {
   }
 
   public RdmService init() {
-    int res = init(buffer_num, is_server);
+    int res = init(worker_num, buffer_num, is_server);
     if (res < 0)
       return null;
-    this.worker = new RdmThread(this);
-    this.worker.start();
+    this.workers = new RdmThread[worker_num];
+    this.externalHandlers = new ArrayList<>(worker_num);
+    this.pendingHandlerNums = new AtomicInteger[worker_num];
+    this.liveWorkerNum = new AtomicInteger(worker_num);
+    for (int i = 0; i < worker_num; i++) {
+      long affinity = affinities != null && i < affinities.length ? 1L<<affinities[i] : -1;
+      this.workers[i] = new RdmThread(this, i, affinity);
+      this.externalHandlers.add(new ConcurrentLinkedQueue<>());
+      this.pendingHandlerNums[i] = new AtomicInteger(0);
+    }
+    for (RdmThread worker : this.workers) {
+      worker.start();
+    }
     return this;
   }
 
+  public void setAffinities(int[] affinities) {
+    this.affinities = affinities;
+  }
+
   public int listen(String ip, String port) {
     return listen(ip, port, nativeHandle);
   }
 
   public void join() {
     try {
-      this.worker.join(); 
+      for (RdmThread worker : this.workers) {
+        worker.join();
+      }
     } catch (InterruptedException e) {
       e.printStackTrace();
     } finally {
@@ -55,42 +82,148 @@ public class RdmService implements MemoryService {
   }
 
   public void shutdown() {
-    this.worker.shutdown();
+    for (RdmThread worker : this.workers) {
+      worker.shutdown();
+      wakeup(worker.getIndex(), this.nativeHandle);
+    }
   }
 
   public RdmConnection getConnection(String ip, String port) {
     return conMap.get(get_con(ip, port, nativeHandle));
   }
 
-  public int waitEvent() {
-    return wait_event(this.nativeHandle);
+  public int waitEvent(int index) {
+    int res = wait_event(index, this.nativeHandle);
+    processExternalEvent(index);
+    return res;
   }
 
-  private void handleCallback(long handle, int eventType, int blockId, int blockSize) {
+  public void setMaxPendingSendNum(int maxPendingSendNum) {
+    this.maxPendingSendNum = maxPendingSendNum;
+  }
+
+  public int getMaxPendingSendNum() {
+    return this.maxPendingSendNum;
+  }
+
+  public int getWorkerNum() {
+    return this.worker_num;
+  }
+
+  public long getThreadId(int index) {
+    return this.workers[index].getId();
+  }
+
+  public void addExternalEvent(int index, ExternalHandler externalHandler) {
+    this.externalHandlers.get(index).offer(externalHandler);
+    // only the first pending handler needs to wake up an idle worker
+    if (this.pendingHandlerNums[index].getAndIncrement() == 0) {
+      wakeup(index, this.nativeHandle);
+    }
+  }
+
+  private void processExternalEvent(int index) {
+    AtomicInteger pendingHandlerNum = this.pendingHandlerNums[index];
+    int handlerNum = pendingHandlerNum.get();
+    if (handlerNum == 0) {
+      return;
+    }
+    ConcurrentLinkedQueue<ExternalHandler> externalHandlerQueue = this.externalHandlers.get(index);
+    for (int i = 0; i < handlerNum; i++) {
+      externalHandlerQueue.poll().handle();
+    }
+    // handlers added meanwhile didn't wake the worker, keep it from blocking
+    if (pendingHandlerNum.addAndGet(-handlerNum) > 0) {
+      wakeup(index, this.nativeHandle);
+    }
+  }
+
+  public void workerExit() {
+    // the last exiting worker releases the native service
+    if (this.liveWorkerNum.decrementAndGet() == 0) {
+      free();
+    }
+  }
+
+  private void handleCallback(long handle, int eventType, int blockId, int blockSize, long srcAddress) {
     RdmConnection connection = conMap.get(handle);
     if (connection == null) {
       throw new NullPointerException("connection is NULL when handling " + eventType + " event.");
     }
-    connection.handleCallback(eventType, blockId, blockSize);
+    connection.handleCallback(eventType, blockId, blockSize, srcAddress);
   }
 
   public void free() {
     free(this.nativeHandle);
   }
 
-  private void establishConnection(long con_handle) {
-    RdmConnection con = new RdmConnection(con_handle, this);
+  private void establishConnection(long con_handle, int index) {
+    RdmConnection con = new RdmConnection(con_handle, this, index);
     con.setRecvCallback(recvCallback);
     con.setSendCallback(sendCallback);
     conMap.put(con_handle, con);
   }
 
   public void initBufferPool(int initBufferNum, int bufferSize, int nextBufferNum) {
-    this.bufferPool = new MemPool(this, initBufferNum, bufferSize, nextBufferNum);
+    this.bufferPool = new MemPool(this, initBufferNum, bufferSize, nextBufferNum, false, false, memoryBudget);
+    this.bufferPool.setEviction(highWatermark, idleMillis);
+  }
+
+  public void initSlabBufferPool(int initBufferNum, int bufferSize, int nextBufferNum, boolean hugePage) {
+    this.bufferPool = new MemPool(this, initBufferNum, bufferSize, nextBufferNum, true, hugePage, memoryBudget);
+    this.bufferPool.setEviction(highWatermark, idleMillis);
   }
 
-  public void reallocBufferPool() {
-    this.bufferPool.realloc();
+  public boolean reallocBufferPool() {
+    return this.bufferPool.realloc();
+  }
+
+  public void setMemoryBudget(long memoryBudget) {
+    this.memoryBudget = memoryBudget;
+    if (this.bufferPool != null) {
+      this.bufferPool.setMemoryBudget(memoryBudget);
+    }
+  }
+
+  public void setBufferEviction(int highWatermark, long idleMillis) {
+    this.highWatermark = highWatermark;
+    this.idleMillis = idleMillis;
+    if (this.bufferPool != null) {
+      this.bufferPool.setEviction(highWatermark, idleMillis);
+    }
+  }
+
+  // see EqService.setLeakDetection, covers send buffers of all shards
+  public void setLeakDetection(int sampleInterval, long thresholdMillis) {
+    leakDetector = sampleInterval <= 0 ? null : new BufferLeakDetector(sampleInterval, thresholdMillis);
+  }
+
+  public BufferLeakDetector getLeakDetector() {
+    return leakDetector;
+  }
+
+  public void checkLeaks() {
+    BufferLeakDetector detector = leakDetector;
+    if (detector == null) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    if (now-lastLeakCheckMillis < LEAK_CHECK_INTERVAL) {
+      return;
+    }
+    lastLeakCheckMillis = now;
+    detector.check();
+  }
+
+  public int trimBufferPool() {
+    if (this.bufferPool == null) {
+      return 0;
+    }
+    return this.bufferPool.trim();
+  }
+
+  public MemPool getBufferPool() {
+    return this.bufferPool;
   }
 
   public void setRecvCallback(RdmHandler callback) {
@@ -122,22 +255,54 @@ public class RdmService implements MemoryService {
     set_buffer1(byteBuffer, bufferSize, bufferId, this.nativeHandle);
   }
 
-  private native int init(int buffer_num, boolean is_server);
+  @Override
+  public ByteBuffer allocSlab(int bufferSize, int bufferNum, int firstBufferId, boolean hugePage) {
+    return alloc_slab1(bufferSize, bufferNum, firstBufferId, hugePage, this.nativeHandle);
+  }
+
+  @Override
+  public int[] evictBuffer(int keepBufferNum, long idleMillis) {
+    return evict_buffer1(keepBufferNum, idleMillis, this.nativeHandle);
+  }
+
+  @Override
+  public int getFreeBufferNum() {
+    return free_buffer_num1(this.nativeHandle);
+  }
+
+  private native int init(int worker_num, int buffer_num, boolean is_server);
   private native int listen(String ip, String port, long nativeHandle);
   private native long get_con(String ip, String port, long nativeHandle);
-  private native int wait_event(long nativeHandle);
+  private native int wait_event(int index, long nativeHandle);
+  private native void wakeup(int index, long nativeHandle);
   private native void set_buffer1(ByteBuffer buffer, long size, int bufferId, long nativeHandle);
+  private native ByteBuffer alloc_slab1(int bufferSize, int bufferNum, int firstBufferId, boolean hugePage, long nativeHandle);
+  private native int[] evict_buffer1(int keepBufferNum, long idleMillis, long nativeHandle);
+  private native int free_buffer_num1(long nativeHandle);
   private native void free(long nativeHandle);
 
   private String addr;
   private int port;
+  private int worker_num;
   private int buffer_num;
   private boolean is_server;
-  private RdmThread worker;
+  private int[] affinities = null;
+  private RdmThread[] workers;
+  private ArrayList<ConcurrentLinkedQueue<ExternalHandler>> externalHandlers;
+  private AtomicInteger[] pendingHandlerNums;
+  private AtomicInteger liveWorkerNum;
+  private int maxPendingSendNum = 1024;
   private ConcurrentHashMap<Long, RdmConnection> conMap;
   private RdmHandler recvCallback;
   private RdmHandler sendCallback;
   private MemPool bufferPool;
+  private volatile BufferLeakDetector leakDetector = null;
+  private long lastLeakCheckMillis;
+  private long memoryBudget;
+  private int highWatermark = -1;
+  private long idleMillis;
 
   private long nativeHandle;
+
+  private static final long LEAK_CHECK_INTERVAL = 1000;
 }
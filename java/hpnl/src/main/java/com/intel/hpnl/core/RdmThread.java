@@ -20,19 +20,31 @@ package com.intel.hpnl.core;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class RdmThread extends Thread {
-  public RdmThread(RdmService rdmService) {
+  public RdmThread(RdmService rdmService, int index, long affinity) {
     this.rdmService = rdmService;
+    this.index = index;
+    this.affinity = affinity;
     running.set(true);
     this.setDaemon(true);
   }
 
   public void run() {
+    if (this.affinity != -1)
+      Utils.setAffinity(this.affinity);
     while (running.get()) {
-      if (this.rdmService.waitEvent() == -1) {
+      if (this.rdmService.waitEvent(index) == -1) {
         shutdown();
       }
+      if (index == 0) {
+        this.rdmService.trimBufferPool();
+        this.rdmService.checkLeaks();
+      }
     }
-    this.rdmService.free();
+    this.rdmService.workerExit();
+  }
+
+  public int getIndex() {
+    return index;
   }
 
   public void shutdown() {
@@ -40,5 +52,7 @@ public class RdmThread extends Thread {
   }
 
   private RdmService rdmService;
+  private int index;
+  private long affinity;
   private final AtomicBoolean running = new AtomicBoolean(false);
 }
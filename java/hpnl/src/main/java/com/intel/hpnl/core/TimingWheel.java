@@ -0,0 +1,285 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.core;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+// Hashed timing wheel with intrusive timeouts. On the owner thread (the one
+// driving advance()) schedule and cancel are O(1) and rescheduling the same
+// Timeout allocates nothing. Other threads may schedule and cancel any
+// timeout of this wheel, they are picked up, moved or dropped on the next
+// advance().
+public class TimingWheel {
+  public TimingWheel(long tickMillis, int wheelSize) {
+    int size = 1;
+    while (size < wheelSize) {
+      size <<= 1;
+    }
+    this.tickMillis = tickMillis;
+    this.mask = size-1;
+    this.buckets = new Timeout[size];
+    for (int i = 0; i < size; i++) {
+      Timeout head = new Timeout();
+      head.prev = head;
+      head.next = head;
+      this.buckets[i] = head;
+    }
+    this.inbox = new ConcurrentLinkedQueue<Timeout>();
+    this.startMillis = System.currentTimeMillis();
+  }
+
+  public void setOwnerThread(long ownerThreadId) {
+    this.ownerThreadId = ownerThreadId;
+  }
+
+  public Timeout schedule(Runnable task, long delayMillis) {
+    Timeout timeout = new Timeout(task);
+    schedule(timeout, delayMillis);
+    return timeout;
+  }
+
+  public void schedule(Timeout timeout, long delayMillis) {
+    long deadline = System.currentTimeMillis()-startMillis+Math.max(delayMillis, 0);
+    long deadlineTick = (deadline+tickMillis-1)/tickMillis;
+    if (inOwner()) {
+      if (timeout.linked) {
+        timeout.wheel.unlink(timeout);
+      }
+      timeout.wheel = this;
+      timeout.deadlineTick = deadlineTick;
+      timeout.state = Timeout.PENDING;
+      link(timeout);
+    } else {
+      if (timeout.linked && timeout.wheel != this) {
+        throw new IllegalStateException("timeout is pending on another wheel");
+      }
+      // a linked timeout is moved to its new deadline by advance()
+      timeout.wheel = this;
+      timeout.deadlineTick = deadlineTick;
+      timeout.state = Timeout.PENDING;
+      inboxNum.incrementAndGet();
+      inbox.offer(timeout);
+    }
+  }
+
+  public int advance(long nowMillis) {
+    if (ownerThreadId == -1) {
+      ownerThreadId = Thread.currentThread().getId();
+    }
+    Timeout timeout;
+    while ((timeout = inbox.poll()) != null) {
+      inboxNum.decrementAndGet();
+      if (timeout.state == Timeout.PENDING) {
+        if (timeout.linked) {
+          unlink(timeout);
+        }
+        link(timeout);
+      }
+    }
+    long targetTick = (nowMillis-startMillis)/tickMillis;
+    if (linkedNum == 0) {
+      currentTick = Math.max(currentTick, targetTick+1);
+      nextDeadlineTick = Long.MAX_VALUE;
+      return 0;
+    }
+    int expiredNum = 0;
+    while (currentTick <= targetTick) {
+      Timeout head = buckets[(int)(currentTick & mask)];
+      Timeout expired = null;
+      Timeout next;
+      for (timeout = head.next; timeout != head; timeout = next) {
+        next = timeout.next;
+        if (timeout.state != Timeout.PENDING) {
+          unlink(timeout);
+        } else if (timeout.remainingRounds > 0) {
+          timeout.remainingRounds--;
+        } else {
+          unlink(timeout);
+          timeout.nextExpired = expired;
+          expired = timeout;
+        }
+      }
+      currentTick++;
+      // tasks run after the scan since they may schedule or cancel timeouts
+      for (timeout = expired; timeout != null; timeout = next) {
+        next = timeout.nextExpired;
+        timeout.nextExpired = null;
+        if (!timeout.linked && timeout.expire()) {
+          expiredNum++;
+        }
+      }
+    }
+    return expiredNum;
+  }
+
+  // wait bound for an idle owner thread so that pending timeouts fire in time,
+  // only called by the owner thread
+  public long getWaitMillis(long maxWaitMillis) {
+    if (inboxNum.get() > 0) {
+      // deadlines handed off by other threads are only known after advance()
+      return Math.min(tickMillis, maxWaitMillis);
+    }
+    if (linkedNum == 0) {
+      return maxWaitMillis;
+    }
+    long maxWaitTicks = maxWaitMillis/tickMillis+1;
+    if (nextDeadlineTick < currentTick) {
+      // the cached deadline has passed, look for the next one only once
+      nextDeadlineTick = findNextDeadlineTick(maxWaitTicks);
+    }
+    if (nextDeadlineTick-currentTick > maxWaitTicks) {
+      return maxWaitMillis;
+    }
+    long waitMillis = nextDeadlineTick*tickMillis-(System.currentTimeMillis()-startMillis);
+    return Math.max(0, Math.min(waitMillis, maxWaitMillis));
+  }
+
+  // scans no further than the wait bound, or one round of the wheel
+  private long findNextDeadlineTick(long maxWaitTicks) {
+    long lastTick = currentTick+Math.min(maxWaitTicks, buckets.length);
+    for (long tick = currentTick; tick < lastTick; tick++) {
+      if (hasExpiring(buckets[(int)(tick & mask)])) {
+        return tick;
+      }
+    }
+    // nothing expires before lastTick, a later link lowers the bound again
+    return lastTick;
+  }
+
+  public long getTickMillis() {
+    return tickMillis;
+  }
+
+  public int getPendingNum() {
+    return linkedNum+inboxNum.get();
+  }
+
+  private boolean inOwner() {
+    return Thread.currentThread().getId() == ownerThreadId;
+  }
+
+  // whether a timeout in the bucket expires on its next visit
+  private boolean hasExpiring(Timeout head) {
+    for (Timeout timeout = head.next; timeout != head; timeout = timeout.next) {
+      if (timeout.state == Timeout.PENDING && timeout.remainingRounds == 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void link(Timeout timeout) {
+    long tick = Math.max(timeout.deadlineTick, currentTick);
+    timeout.remainingRounds = (tick-currentTick)/buckets.length;
+    Timeout head = buckets[(int)(tick & mask)];
+    timeout.prev = head.prev;
+    timeout.next = head;
+    head.prev.next = timeout;
+    head.prev = timeout;
+    timeout.linked = true;
+    linkedNum++;
+    if (tick < nextDeadlineTick) {
+      nextDeadlineTick = tick;
+    }
+  }
+
+  private void unlink(Timeout timeout) {
+    timeout.prev.next = timeout.next;
+    timeout.next.prev = timeout.prev;
+    timeout.prev = null;
+    timeout.next = null;
+    timeout.linked = false;
+    linkedNum--;
+  }
+
+  public static class Timeout {
+    // subclasses overriding run() can be rescheduled without any allocation
+    public Timeout() {
+    }
+
+    public Timeout(Runnable task) {
+      this.task = task;
+    }
+
+    protected void run() {
+      task.run();
+    }
+
+    public boolean cancel() {
+      if (!STATE.compareAndSet(this, PENDING, CANCELLED)) {
+        return false;
+      }
+      TimingWheel wheel = this.wheel;
+      if (wheel != null && linked && wheel.inOwner()) {
+        wheel.unlink(this);
+      }
+      return true;
+    }
+
+    public boolean isCancelled() {
+      return state == CANCELLED;
+    }
+
+    public boolean isExpired() {
+      return state == EXPIRED;
+    }
+
+    boolean expire() {
+      if (!STATE.compareAndSet(this, PENDING, EXPIRED)) {
+        return false;
+      }
+      try {
+        run();
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+      return true;
+    }
+
+    private Runnable task;
+    private TimingWheel wheel;
+    private Timeout prev;
+    private Timeout next;
+    private Timeout nextExpired;
+    private boolean linked;
+    private long deadlineTick;
+    private long remainingRounds;
+    private volatile int state = EXPIRED;
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+    private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+      AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+  }
+
+  private long tickMillis;
+  private int mask;
+  private Timeout[] buckets;
+  private ConcurrentLinkedQueue<Timeout> inbox;
+  private AtomicInteger inboxNum = new AtomicInteger(0);
+  private int linkedNum = 0;
+  private volatile long ownerThreadId = -1;
+  private long startMillis;
+  private long currentTick = 0;
+  // lower bound of the earliest linked deadline, cancels don't raise it, so a
+  // wait may end early and findNextDeadlineTick refreshes it once it passed
+  private long nextDeadlineTick = Long.MAX_VALUE;
+}
@@ -0,0 +1,48 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("com.intel.hpnl.Completion")
+@Label("HPNL Completion")
+@Category({"HPNL", "Worker"})
+@Description("Post to completion latency, slow completions and a sample of the rest")
+@StackTrace(false)
+class CompletionEvent extends Event {
+  @Label("Event Type")
+  String eventType;
+
+  @Label("Latency")
+  @Timespan
+  long latency;
+
+  @Label("Bytes")
+  @DataAmount
+  int bytes;
+
+  @Label("Sampled")
+  boolean sampled;
+}
@@ -0,0 +1,158 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.jfr;
+
+import com.intel.hpnl.core.EqService;
+
+// Entry point for HPNL's Flight Recorder events. Nothing here touches jdk.jfr
+// unless the JVM has it, and callers on hot paths check isRecording() first so
+// an idle recorder costs one volatile read.
+public class HpnlEvents {
+  public static boolean isRecording() {
+    return recording;
+  }
+
+  static void setRecording(boolean recording) {
+    HpnlEvents.recording = recording;
+  }
+
+  // completions slower than thresholdNanos are always recorded, faster ones
+  // only one in sampleInterval
+  public static void setCompletionSampling(long thresholdNanos, int sampleInterval) {
+    completionThresholdNanos = thresholdNanos;
+    completionSampleInterval = Math.max(sampleInterval, 1);
+  }
+
+  public static void addService(EqService eqService) {
+    if (AVAILABLE) {
+      JfrSupport.addService(eqService);
+    }
+  }
+
+  public static void removeService(EqService eqService) {
+    if (AVAILABLE) {
+      JfrSupport.removeService(eqService);
+    }
+  }
+
+  // the begin methods return an event to hand to the matching end method,
+  // or null when nothing is recorded
+  public static Object beginConnect() {
+    return recording ? JfrSupport.beginConnect() : null;
+  }
+
+  public static void endConnect(Object event, String host, String port, boolean success) {
+    if (event != null) {
+      JfrSupport.endConnect(event, host, port, success);
+    }
+  }
+
+  public static void accept(String destAddr, int destPort, String srcAddr, int srcPort) {
+    if (recording) {
+      JfrSupport.accept(destAddr, destPort, srcAddr, srcPort);
+    }
+  }
+
+  public static Object beginShutdown() {
+    return recording ? JfrSupport.beginShutdown() : null;
+  }
+
+  public static void endShutdown(Object event, String destAddr, int destPort) {
+    if (event != null) {
+      JfrSupport.endShutdown(event, destAddr, destPort);
+    }
+  }
+
+  public static Object beginPoolGrow() {
+    return recording ? JfrSupport.beginPoolGrow() : null;
+  }
+
+  public static void endPoolGrow(Object event, int bufferNum, int bufferSize, int totalBufferNum, boolean success) {
+    if (event != null) {
+      JfrSupport.endPoolGrow(event, bufferNum, bufferSize, totalBufferNum, success);
+    }
+  }
+
+  public static Object beginRmaRegister() {
+    return recording ? JfrSupport.beginRmaRegister() : null;
+  }
+
+  public static void endRmaRegister(Object event, int bufferId, long size, boolean success) {
+    if (event != null) {
+      JfrSupport.endRmaRegister(event, bufferId, size, success);
+    }
+  }
+
+  public static void rmaUnregister(int bufferId) {
+    if (recording) {
+      JfrSupport.rmaUnregister(bufferId);
+    }
+  }
+
+  public static Object beginSendStarvation() {
+    return recording ? JfrSupport.beginSendStarvation() : null;
+  }
+
+  public static void endSendStarvation(Object event, String destAddr, int destPort, long starvedNum) {
+    if (event != null) {
+      JfrSupport.endSendStarvation(event, destAddr, destPort, starvedNum);
+    }
+  }
+
+  public static Object beginCallback() {
+    return recording ? JfrSupport.beginCallback() : null;
+  }
+
+  public static void endCallback(Object event, Object handler, int eventType) {
+    if (event != null) {
+      JfrSupport.endCallback(event, handler, eventType);
+    }
+  }
+
+  public static void completion(int eventType, long latencyNanos, int bytes) {
+    if (!recording) {
+      return;
+    }
+    // a racy counter is good enough for sampling
+    if (latencyNanos >= completionThresholdNanos || ++completionNum % completionSampleInterval == 0) {
+      JfrSupport.completion(eventType, latencyNanos, bytes, latencyNanos >= completionThresholdNanos);
+    }
+  }
+
+  private static boolean isAvailable() {
+    try {
+      Class.forName("jdk.jfr.FlightRecorder");
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  private static volatile boolean recording = false;
+  private static volatile long completionThresholdNanos = 100000;
+  private static volatile int completionSampleInterval = 1024;
+  private static long completionNum = 0;
+
+  private static final boolean AVAILABLE = isAvailable();
+
+  static {
+    if (AVAILABLE) {
+      JfrSupport.init();
+    }
+  }
+}
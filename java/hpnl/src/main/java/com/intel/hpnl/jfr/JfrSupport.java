@@ -0,0 +1,231 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.jfr;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+import com.intel.hpnl.core.Connection;
+import com.intel.hpnl.core.EqService;
+import com.intel.hpnl.core.EventType;
+
+// The only class besides the events that links against jdk.jfr.
+class JfrSupport {
+  static void init() {
+    FlightRecorder.addListener(new FlightRecorderListener() {
+      public void recorderInitialized(FlightRecorder recorder) {
+        update(recorder);
+      }
+
+      public void recordingStateChanged(Recording recording) {
+        update(FlightRecorder.getFlightRecorder());
+      }
+    });
+    FlightRecorder.addPeriodicEvent(RetryEvent.class, new Runnable() {
+      public void run() {
+        emitRetryEvents();
+      }
+    });
+  }
+
+  private static void update(FlightRecorder recorder) {
+    boolean running = false;
+    for (Recording recording : recorder.getRecordings()) {
+      if (recording.getState() == RecordingState.RUNNING) {
+        running = true;
+      }
+    }
+    HpnlEvents.setRecording(running);
+  }
+
+  static void addService(EqService eqService) {
+    services.addIfAbsent(eqService);
+  }
+
+  static void removeService(EqService eqService) {
+    services.remove(eqService);
+  }
+
+  private static void emitRetryEvents() {
+    for (EqService eqService : services) {
+      for (Connection con : eqService.getConnections()) {
+        long retryNum = con.getRetryNum();
+        long delta = con.swapReportedRetryNum(retryNum);
+        int parkedNum = con.getPendingOpNum();
+        if (delta == 0 && parkedNum == 0) {
+          continue;
+        }
+        RetryEvent event = new RetryEvent();
+        event.destAddr = con.getDestAddr();
+        event.destPort = con.getDestPort();
+        event.retryNum = delta;
+        event.parkedNum = parkedNum;
+        event.commit();
+      }
+    }
+  }
+
+  static Object beginConnect() {
+    ConnectEvent event = new ConnectEvent();
+    event.begin();
+    return event;
+  }
+
+  static void endConnect(Object e, String host, String port, boolean success) {
+    ConnectEvent event = (ConnectEvent)e;
+    event.end();
+    if (event.shouldCommit()) {
+      event.host = host;
+      event.port = port;
+      event.success = success;
+      event.commit();
+    }
+  }
+
+  static void accept(String destAddr, int destPort, String srcAddr, int srcPort) {
+    AcceptEvent event = new AcceptEvent();
+    if (event.shouldCommit()) {
+      event.destAddr = destAddr;
+      event.destPort = destPort;
+      event.srcAddr = srcAddr;
+      event.srcPort = srcPort;
+      event.commit();
+    }
+  }
+
+  static Object beginShutdown() {
+    ShutdownEvent event = new ShutdownEvent();
+    event.begin();
+    return event;
+  }
+
+  static void endShutdown(Object e, String destAddr, int destPort) {
+    ShutdownEvent event = (ShutdownEvent)e;
+    event.end();
+    if (event.shouldCommit()) {
+      event.destAddr = destAddr;
+      event.destPort = destPort;
+      event.commit();
+    }
+  }
+
+  static Object beginPoolGrow() {
+    PoolGrowEvent event = new PoolGrowEvent();
+    event.begin();
+    return event;
+  }
+
+  static void endPoolGrow(Object e, int bufferNum, int bufferSize, int totalBufferNum, boolean success) {
+    PoolGrowEvent event = (PoolGrowEvent)e;
+    event.end();
+    if (event.shouldCommit()) {
+      event.bufferNum = bufferNum;
+      event.bufferSize = bufferSize;
+      event.totalBufferNum = totalBufferNum;
+      event.success = success;
+      event.commit();
+    }
+  }
+
+  static Object beginRmaRegister() {
+    RmaRegisterEvent event = new RmaRegisterEvent();
+    event.begin();
+    return event;
+  }
+
+  static void endRmaRegister(Object e, int bufferId, long size, boolean success) {
+    RmaRegisterEvent event = (RmaRegisterEvent)e;
+    event.end();
+    if (event.shouldCommit()) {
+      event.bufferId = bufferId;
+      event.size = size;
+      event.success = success;
+      event.commit();
+    }
+  }
+
+  static void rmaUnregister(int bufferId) {
+    RmaUnregisterEvent event = new RmaUnregisterEvent();
+    if (event.shouldCommit()) {
+      event.bufferId = bufferId;
+      event.commit();
+    }
+  }
+
+  static Object beginSendStarvation() {
+    SendStarvationEvent event = new SendStarvationEvent();
+    event.begin();
+    return event;
+  }
+
+  static void endSendStarvation(Object e, String destAddr, int destPort, long starvedNum) {
+    SendStarvationEvent event = (SendStarvationEvent)e;
+    event.end();
+    if (event.shouldCommit()) {
+      event.destAddr = destAddr;
+      event.destPort = destPort;
+      event.starvedNum = starvedNum;
+      event.commit();
+    }
+  }
+
+  static Object beginCallback() {
+    SlowCallbackEvent event = new SlowCallbackEvent();
+    event.begin();
+    return event;
+  }
+
+  static void endCallback(Object e, Object handler, int eventType) {
+    SlowCallbackEvent event = (SlowCallbackEvent)e;
+    event.end();
+    // the threshold is applied by shouldCommit
+    if (event.shouldCommit()) {
+      event.handlerClass = handler.getClass();
+      event.eventType = eventName(eventType);
+      event.commit();
+    }
+  }
+
+  static void completion(int eventType, long latencyNanos, int bytes, boolean slow) {
+    CompletionEvent event = new CompletionEvent();
+    if (event.shouldCommit()) {
+      event.eventType = eventName(eventType);
+      event.latency = latencyNanos;
+      event.bytes = bytes;
+      event.sampled = !slow;
+      event.commit();
+    }
+  }
+
+  private static String eventName(int eventType) {
+    switch (eventType) {
+      case EventType.CONNECTED_EVENT: return "CONNECTED";
+      case EventType.RECV_EVENT: return "RECV";
+      case EventType.SEND_EVENT: return "SEND";
+      case EventType.READ_EVENT: return "READ";
+      case EventType.WRITE_EVENT: return "WRITE";
+      default: return String.valueOf(eventType);
+    }
+  }
+
+  private static final CopyOnWriteArrayList<EqService> services = new CopyOnWriteArrayList<EqService>();
+}
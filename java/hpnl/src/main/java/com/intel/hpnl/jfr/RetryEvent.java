@@ -0,0 +1,46 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+@Name("com.intel.hpnl.Retry")
+@Label("HPNL Provider Retries")
+@Category({"HPNL", "Connection"})
+@Description("Operations the provider pushed back with EAGAIN since the previous period")
+@Period("1 s")
+@StackTrace(false)
+class RetryEvent extends Event {
+  @Label("Destination Address")
+  String destAddr;
+
+  @Label("Destination Port")
+  int destPort;
+
+  @Label("Retry Num")
+  long retryNum;
+
+  @Label("Parked Num")
+  int parkedNum;
+}
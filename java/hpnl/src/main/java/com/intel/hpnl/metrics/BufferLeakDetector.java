@@ -0,0 +1,210 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.metrics;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Records where one in sampleInterval buffers was acquired and reports the
+// ones still held after thresholdMillis. Unsampled buffers cost a counter
+// increment, sampled ones a stack capture.
+public class BufferLeakDetector implements BufferLeakDetectorMBean {
+  public BufferLeakDetector(int sampleInterval, long thresholdMillis) {
+    this.sampleInterval = Math.max(sampleInterval, 1);
+    this.thresholdMillis = thresholdMillis;
+    this.records = ConcurrentHashMap.newKeySet();
+  }
+
+  // called on the thread running check() or releasing the buffer
+  public void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
+  // returns null if this acquisition is not sampled
+  public Record track(String kind, int bufferId, Object owner) {
+    // a racy counter is good enough for sampling
+    if (++acquireNum % sampleInterval != 0) {
+      return null;
+    }
+    Record record = new Record(this, kind, bufferId, String.valueOf(owner));
+    records.add(record);
+    trackedNum.incrementAndGet();
+    return record;
+  }
+
+  // reports leaks not reported before, returns how many there are in total
+  public int check() {
+    long now = System.currentTimeMillis();
+    int num = 0;
+    for (Record record : records) {
+      if (now-record.acquireMillis < thresholdMillis) {
+        continue;
+      }
+      num++;
+      if (!record.reported) {
+        record.reported = true;
+        leakNum.incrementAndGet();
+        Listener listener = this.listener;
+        if (listener != null) {
+          try {
+            listener.leaked(record);
+          } catch (Exception e) {
+            e.printStackTrace();
+          }
+        }
+      }
+    }
+    return num;
+  }
+
+  public List<Record> getLeaks() {
+    long now = System.currentTimeMillis();
+    List<Record> leaks = new ArrayList<>();
+    for (Record record : records) {
+      if (now-record.acquireMillis >= thresholdMillis) {
+        leaks.add(record);
+      }
+    }
+    return leaks;
+  }
+
+  public String getReport() {
+    long now = System.currentTimeMillis();
+    StringBuilder sb = new StringBuilder();
+    for (Record record : getLeaks()) {
+      sb.append(record.describe(now)).append("\n");
+    }
+    return sb.toString();
+  }
+
+  public int getSampleInterval() {
+    return sampleInterval;
+  }
+
+  public long getThresholdMillis() {
+    return thresholdMillis;
+  }
+
+  public long getTrackedNum() {
+    return trackedNum.get();
+  }
+
+  public int getOutstandingNum() {
+    return records.size();
+  }
+
+  public long getLeakNum() {
+    return leakNum.get();
+  }
+
+  public int getCurrentLeakNum() {
+    return getLeaks().size();
+  }
+
+  // buffers reported as leaked that were released afterwards
+  public long getLateReleaseNum() {
+    return lateReleaseNum.get();
+  }
+
+  public interface Listener {
+    // held past thresholdMillis, reported once
+    void leaked(Record record);
+    // a reported buffer was released after all
+    void released(Record record, long heldMillis);
+  }
+
+  public static class Record {
+    Record(BufferLeakDetector detector, String kind, int bufferId, String owner) {
+      this.detector = detector;
+      this.kind = kind;
+      this.bufferId = bufferId;
+      this.owner = owner;
+      this.threadName = Thread.currentThread().getName();
+      this.acquireMillis = System.currentTimeMillis();
+      this.site = new Throwable("acquired here");
+    }
+
+    public void release() {
+      if (detector.records.remove(this) && reported) {
+        detector.lateReleaseNum.incrementAndGet();
+        Listener listener = detector.listener;
+        if (listener != null) {
+          try {
+            listener.released(this, System.currentTimeMillis()-acquireMillis);
+          } catch (Exception e) {
+            e.printStackTrace();
+          }
+        }
+      }
+    }
+
+    public String getKind() {
+      return kind;
+    }
+
+    public int getBufferId() {
+      return bufferId;
+    }
+
+    public String getOwner() {
+      return owner;
+    }
+
+    public long getAcquireMillis() {
+      return acquireMillis;
+    }
+
+    public Throwable getSite() {
+      return site;
+    }
+
+    // kind, owner, hold time and acquisition stack
+    public String describe(long now) {
+      StringWriter sw = new StringWriter();
+      site.printStackTrace(new PrintWriter(sw));
+      return kind + " buffer " + bufferId + " held by " + owner + " for " + (now-acquireMillis) +
+        " ms, acquired on " + threadName + "\n" + sw;
+    }
+
+    private final BufferLeakDetector detector;
+    private final String kind;
+    private final int bufferId;
+    private final String owner;
+    private final String threadName;
+    private final long acquireMillis;
+    private final Throwable site;
+    private volatile boolean reported = false;
+  }
+
+  private final int sampleInterval;
+  private final long thresholdMillis;
+  private final Set<Record> records;
+  private final AtomicLong trackedNum = new AtomicLong(0);
+  private final AtomicLong leakNum = new AtomicLong(0);
+  private final AtomicLong lateReleaseNum = new AtomicLong(0);
+  private volatile Listener listener = null;
+  private long acquireNum = 0;
+
+  public static final String SEND_BUFFER = "send";
+  public static final String RMA_BUFFER = "rma";
+}
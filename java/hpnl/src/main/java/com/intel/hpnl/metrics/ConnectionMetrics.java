@@ -0,0 +1,244 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.intel.hpnl.core.Connection;
+
+// Counters of one connection. They are only written by the worker owning the
+// connection, which also adds the same amounts to its stripe of ServiceMetrics.
+public class ConnectionMetrics implements ConnectionMetricsMBean {
+  public ConnectionMetrics(Connection con, int index, ServiceMetrics service) {
+    this.con = con;
+    this.index = index;
+    this.service = service;
+    this.id = SEQ_ID.getAndIncrement();
+    this.sendLatency = new LatencyHistogram();
+  }
+
+  public void recv(int bytes) {
+    recvMsgNum++;
+    recvBytes += bytes;
+    service.recvMsgNum.increment(index);
+    service.recvBytes.add(index, bytes);
+  }
+
+  public void send(int bytes) {
+    sendMsgNum++;
+    sendBytes += bytes;
+    service.sendMsgNum.increment(index);
+    service.sendBytes.add(index, bytes);
+  }
+
+  public void sendCompletion() {
+    sendCompletionNum++;
+    service.sendCompletionNum.increment(index);
+  }
+
+  public void readCompletion() {
+    readCompletionNum++;
+    service.readCompletionNum.increment(index);
+  }
+
+  public void writeCompletion() {
+    writeCompletionNum++;
+  }
+
+  public void sendLatency(long nanos) {
+    sendLatency.record(nanos);
+    service.sendLatency.record(index, nanos);
+  }
+
+  // rma histograms are only allocated for connections doing rma
+  public void readLatency(long nanos) {
+    if (readLatency == null) {
+      readLatency = new LatencyHistogram();
+    }
+    readLatency.record(nanos);
+    service.readLatency.record(index, nanos);
+  }
+
+  public void writeLatency(long nanos) {
+    if (writeLatency == null) {
+      writeLatency = new LatencyHistogram();
+    }
+    writeLatency.record(nanos);
+    service.writeLatency.record(index, nanos);
+  }
+
+  public void connected() {
+    service.connectedNum.increment(index);
+  }
+
+  public void controlFrame() {
+    controlFrameNum++;
+    service.controlFrameNum.increment(index);
+  }
+
+  public void sendStarvation() {
+    sendStarvationNum++;
+    service.sendStarvationNum.increment(index);
+  }
+
+  public void opFailure() {
+    failedOpNum++;
+    service.failedOpNum.increment(index);
+  }
+
+  public void strayCompletion() {
+    strayCompletionNum++;
+    service.strayCompletionNum.increment(index);
+  }
+
+  public void keepaliveTimeout() {
+    keepaliveTimeoutNum++;
+    service.keepaliveTimeoutNum.increment(index);
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public String getDestAddr() {
+    return con.getDestAddr() + ":" + con.getDestPort();
+  }
+
+  public int getWorkerIndex() {
+    return index;
+  }
+
+  public long getRecvMsgNum() {
+    return recvMsgNum;
+  }
+
+  public long getRecvBytes() {
+    return recvBytes;
+  }
+
+  public long getSendMsgNum() {
+    return sendMsgNum;
+  }
+
+  public long getSendBytes() {
+    return sendBytes;
+  }
+
+  public long getSendCompletionNum() {
+    return sendCompletionNum;
+  }
+
+  public long getReadCompletionNum() {
+    return readCompletionNum;
+  }
+
+  public long getWriteCompletionNum() {
+    return writeCompletionNum;
+  }
+
+  public LatencyHistogram getSendLatencyHistogram() {
+    return sendLatency;
+  }
+
+  public LatencyHistogram getReadLatencyHistogram() {
+    return readLatency;
+  }
+
+  public LatencyHistogram getWriteLatencyHistogram() {
+    return writeLatency;
+  }
+
+  public String getSendLatency() {
+    return sendLatency.snapshot().toString();
+  }
+
+  public String getReadLatency() {
+    LatencyHistogram histogram = readLatency;
+    return histogram == null ? "" : histogram.snapshot().toString();
+  }
+
+  public String getWriteLatency() {
+    LatencyHistogram histogram = writeLatency;
+    return histogram == null ? "" : histogram.snapshot().toString();
+  }
+
+  public long getControlFrameNum() {
+    return controlFrameNum;
+  }
+
+  public long getSendStarvationNum() {
+    return sendStarvationNum;
+  }
+
+  public long getFailedOpNum() {
+    return failedOpNum;
+  }
+
+  public long getStrayCompletionNum() {
+    return strayCompletionNum;
+  }
+
+  public long getKeepaliveTimeoutNum() {
+    return keepaliveTimeoutNum;
+  }
+
+  public long getRetryNum() {
+    return con.getRetryNum();
+  }
+
+  public int getPendingOpNum() {
+    return con.getPendingOpNum();
+  }
+
+  public int getFreeSendBufferNum() {
+    return con.getFreeSendBufferNum();
+  }
+
+  public int getInflightSendBufferNum() {
+    return con.getInflightSendBufferNum();
+  }
+
+  public long getOutstandingOpNum() {
+    return con.getOutstandingOpNum();
+  }
+
+  private final Connection con;
+  private final int index;
+  private final ServiceMetrics service;
+  private final long id;
+
+  // plain fields, single writer, readers tolerate a stale value
+  private long recvMsgNum;
+  private long recvBytes;
+  private long sendMsgNum;
+  private long sendBytes;
+  private long sendCompletionNum;
+  private long readCompletionNum;
+  private long controlFrameNum;
+  private long sendStarvationNum;
+  private long failedOpNum;
+  private long keepaliveTimeoutNum;
+  private long strayCompletionNum;
+  private long writeCompletionNum;
+
+  private final LatencyHistogram sendLatency;
+  private volatile LatencyHistogram readLatency = null;
+  private volatile LatencyHistogram writeLatency = null;
+
+  private static final AtomicLong SEQ_ID = new AtomicLong(0);
+}
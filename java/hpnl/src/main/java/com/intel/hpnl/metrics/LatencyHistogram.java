@@ -0,0 +1,183 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Log-linear histogram of nanosecond latencies in fixed memory. Values are
+// grouped by power of two and every power of two is split into 32 linear
+// sub-buckets, so a reported value is within ~3% of the recorded one.
+// Values above MAX_VALUE (about 18 minutes) are clamped.
+public class LatencyHistogram {
+  public LatencyHistogram() {
+    this.counts = new AtomicLongArray(BUCKET_NUM);
+  }
+
+  // single writer, like a StripedCounter stripe
+  public void record(long nanos) {
+    long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+    int i = index(value);
+    counts.lazySet(i, counts.get(i)+1);
+    if (value > max) {
+      max = value;
+    }
+  }
+
+  // the recording thread is never stopped, so a snapshot taken while it
+  // records may be off by the few values recorded during the copy
+  public Snapshot snapshot() {
+    long[] copy = new long[BUCKET_NUM];
+    for (int i = 0; i < BUCKET_NUM; i++) {
+      copy[i] = counts.get(i);
+    }
+    return new Snapshot(copy, max);
+  }
+
+  // what was recorded since the previous call
+  public synchronized Snapshot intervalSnapshot() {
+    Snapshot current = snapshot();
+    Snapshot interval = lastSnapshot == null ? current : current.minus(lastSnapshot);
+    lastSnapshot = current;
+    return interval;
+  }
+
+  static int index(long value) {
+    if (value < SUB_BUCKET_NUM) {
+      return (int)value;
+    }
+    int shift = 63-Long.numberOfLeadingZeros(value)-SUB_BUCKET_BITS;
+    return shift*SUB_BUCKET_NUM+(int)(value >>> shift);
+  }
+
+  static long highestValue(int index) {
+    if (index < SUB_BUCKET_NUM) {
+      return index;
+    }
+    int shift = index/SUB_BUCKET_NUM-1;
+    long sub = index-(long)shift*SUB_BUCKET_NUM;
+    return ((sub+1) << shift)-1;
+  }
+
+  static long lowestValue(int index) {
+    if (index < SUB_BUCKET_NUM) {
+      return index;
+    }
+    int shift = index/SUB_BUCKET_NUM-1;
+    long sub = index-(long)shift*SUB_BUCKET_NUM;
+    return sub << shift;
+  }
+
+  public static class Snapshot {
+    Snapshot(long[] counts, long max) {
+      this.counts = counts;
+      long totalCount = 0;
+      for (long count : counts) {
+        totalCount += count;
+      }
+      this.totalCount = totalCount;
+      this.max = totalCount == 0 ? 0 : max;
+    }
+
+    public long getCount() {
+      return totalCount;
+    }
+
+    public long getMax() {
+      return max;
+    }
+
+    public long getP50() {
+      return getValueAtPercentile(50);
+    }
+
+    public long getP99() {
+      return getValueAtPercentile(99);
+    }
+
+    public long getP999() {
+      return getValueAtPercentile(99.9);
+    }
+
+    public long getValueAtPercentile(double percentile) {
+      if (totalCount == 0) {
+        return 0;
+      }
+      long target = Math.max(1, (long)Math.ceil(percentile/100*totalCount));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= target) {
+          return Math.min(highestValue(i), max);
+        }
+      }
+      return max;
+    }
+
+    public double getMean() {
+      if (totalCount == 0) {
+        return 0;
+      }
+      double sum = 0;
+      for (int i = 0; i < counts.length; i++) {
+        if (counts[i] != 0) {
+          sum += (double)counts[i]*(lowestValue(i)+highestValue(i))/2;
+        }
+      }
+      return sum/totalCount;
+    }
+
+    public Snapshot add(Snapshot other) {
+      long[] sum = new long[counts.length];
+      for (int i = 0; i < counts.length; i++) {
+        sum[i] = counts[i]+other.counts[i];
+      }
+      return new Snapshot(sum, Math.max(max, other.max));
+    }
+
+    // the max of an interval is only known to bucket precision
+    public Snapshot minus(Snapshot earlier) {
+      long[] diff = new long[counts.length];
+      long intervalMax = 0;
+      for (int i = 0; i < counts.length; i++) {
+        diff[i] = Math.max(counts[i]-earlier.counts[i], 0);
+        if (diff[i] != 0) {
+          intervalMax = Math.min(highestValue(i), max);
+        }
+      }
+      return new Snapshot(diff, intervalMax);
+    }
+
+    public String toString() {
+      return String.format("count %d, p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us",
+          totalCount, getP50()/1000.0, getP99()/1000.0, getP999()/1000.0, max/1000.0);
+    }
+
+    private final long[] counts;
+    private final long totalCount;
+    private final long max;
+  }
+
+  private final AtomicLongArray counts;
+  private volatile long max;
+  private Snapshot lastSnapshot = null;
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKET_NUM = 1 << SUB_BUCKET_BITS;
+  public static final long MAX_VALUE = (1L << 40)-1;
+  private static final int BUCKET_NUM = index(MAX_VALUE)+1;
+}
@@ -0,0 +1,232 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.metrics;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import com.intel.hpnl.core.EventType;
+
+// Where one worker loop spends its time: sleeping or polling in native code,
+// dispatching completions, inside user handlers, draining handed off work or
+// firing timers. Only the worker writes, readers see slightly stale values.
+public class LoopProfiler {
+  public LoopProfiler(int index, LongSupplier epollNum) {
+    this.index = index;
+    this.epollNum = epollNum;
+    this.slowCallbacks = new SlowCallback[SLOW_CALLBACK_NUM];
+  }
+
+  // one iteration of the worker loop, dispatch time is taken out of the wait
+  public void loop(long waitNanos, boolean busy, long externalNanos, boolean external, long timerNanos) {
+    loopNum++;
+    if (busy) {
+      busyPollNum++;
+    } else {
+      idlePollNum++;
+    }
+    this.waitNanos += waitNanos-loopDispatchNanos;
+    loopDispatchNanos = 0;
+    if (external) {
+      externalNum++;
+      this.externalNanos += externalNanos;
+    }
+    this.timerNanos += timerNanos;
+  }
+
+  public void dispatch(long nanos) {
+    dispatchNum++;
+    dispatchNanos += nanos;
+    loopDispatchNanos += nanos;
+  }
+
+  public void callback(Object handler, int eventType, long nanos) {
+    callbackNum++;
+    callbackNanos += nanos;
+    if (nanos > slowThreshold) {
+      recordSlowCallback(handler, eventType, nanos);
+    }
+  }
+
+  private synchronized void recordSlowCallback(Object handler, int eventType, long nanos) {
+    // replace the fastest of the slow ones
+    int min = 0;
+    for (int i = 0; i < slowCallbacks.length; i++) {
+      if (slowCallbacks[i] == null) {
+        min = i;
+        break;
+      }
+      if (slowCallbacks[i].nanos < slowCallbacks[min].nanos) {
+        min = i;
+      }
+    }
+    slowCallbacks[min] = new SlowCallback(handler.getClass().getName(), eventType, nanos, System.currentTimeMillis());
+    long threshold = Long.MAX_VALUE;
+    for (SlowCallback slowCallback : slowCallbacks) {
+      threshold = Math.min(threshold, slowCallback == null ? 0 : slowCallback.nanos);
+    }
+    slowThreshold = threshold;
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  public long getLoopNum() {
+    return loopNum;
+  }
+
+  public long getBusyPollNum() {
+    return busyPollNum;
+  }
+
+  public long getIdlePollNum() {
+    return idlePollNum;
+  }
+
+  public long getEpollNum() {
+    return epollNum.getAsLong();
+  }
+
+  public long getWaitNanos() {
+    return waitNanos;
+  }
+
+  public long getDispatchNum() {
+    return dispatchNum;
+  }
+
+  public long getDispatchNanos() {
+    return dispatchNanos;
+  }
+
+  public long getCallbackNum() {
+    return callbackNum;
+  }
+
+  public long getCallbackNanos() {
+    return callbackNanos;
+  }
+
+  public long getExternalNum() {
+    return externalNum;
+  }
+
+  public long getExternalNanos() {
+    return externalNanos;
+  }
+
+  public long getTimerNanos() {
+    return timerNanos;
+  }
+
+  public synchronized String dump() {
+    long wait = waitNanos;
+    long dispatch = dispatchNanos;
+    long callback = callbackNanos;
+    long external = externalNanos;
+    long timer = timerNanos;
+    long total = Math.max(wait+dispatch+external+timer, 1);
+    StringBuilder sb = new StringBuilder();
+    sb.append("worker ").append(index).append(": loops ").append(loopNum)
+      .append(" (busy ").append(busyPollNum).append(", idle ").append(idlePollNum)
+      .append("), epoll ").append(getEpollNum()).append("\n");
+    appendPhase(sb, "native wait", wait, total, -1);
+    appendPhase(sb, "dispatch", dispatch-callback, total, dispatchNum);
+    appendPhase(sb, "handlers", callback, total, callbackNum);
+    appendPhase(sb, "external", external, total, externalNum);
+    appendPhase(sb, "timers", timer, total, -1);
+    sb.append("  slowest handlers:\n");
+    List<SlowCallback> sorted = new ArrayList<>();
+    for (SlowCallback slowCallback : slowCallbacks) {
+      if (slowCallback != null) {
+        sorted.add(slowCallback);
+      }
+    }
+    Collections.sort(sorted, new Comparator<SlowCallback>() {
+      public int compare(SlowCallback a, SlowCallback b) {
+        return Long.compare(b.nanos, a.nanos);
+      }
+    });
+    SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+    for (SlowCallback slowCallback : sorted) {
+      sb.append(String.format("    %10.1f us  %s  %s  at %s%n", slowCallback.nanos/1000.0,
+          slowCallback.handlerClass, eventName(slowCallback.eventType), format.format(new Date(slowCallback.timeMillis))));
+    }
+    return sb.toString();
+  }
+
+  private static void appendPhase(StringBuilder sb, String name, long nanos, long total, long num) {
+    sb.append(String.format("  %-12s %12.3f ms %5.1f%%", name, nanos/1e6, nanos*100.0/total));
+    if (num > 0) {
+      sb.append(String.format("  %d calls, avg %.1f us", num, nanos/1000.0/num));
+    }
+    sb.append("\n");
+  }
+
+  private static String eventName(int eventType) {
+    switch (eventType) {
+      case EventType.CONNECTED_EVENT: return "CONNECTED";
+      case EventType.RECV_EVENT: return "RECV";
+      case EventType.SEND_EVENT: return "SEND";
+      case EventType.READ_EVENT: return "READ";
+      case EventType.WRITE_EVENT: return "WRITE";
+      case EventType.SHUTDOWN: return "SHUTDOWN";
+      default: return String.valueOf(eventType);
+    }
+  }
+
+  private static class SlowCallback {
+    SlowCallback(String handlerClass, int eventType, long nanos, long timeMillis) {
+      this.handlerClass = handlerClass;
+      this.eventType = eventType;
+      this.nanos = nanos;
+      this.timeMillis = timeMillis;
+    }
+
+    final String handlerClass;
+    final int eventType;
+    final long nanos;
+    final long timeMillis;
+  }
+
+  private final int index;
+  private final LongSupplier epollNum;
+  private final SlowCallback[] slowCallbacks;
+  private volatile long slowThreshold = 0;
+
+  private long loopNum;
+  private long busyPollNum;
+  private long idlePollNum;
+  private long waitNanos;
+  private long dispatchNum;
+  private long dispatchNanos;
+  private long loopDispatchNanos;
+  private long callbackNum;
+  private long callbackNanos;
+  private long externalNum;
+  private long externalNanos;
+  private long timerNanos;
+
+  private static final int SLOW_CALLBACK_NUM = 8;
+}
@@ -0,0 +1,73 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.metrics;
+
+import com.intel.hpnl.core.MemPool;
+
+public class MemPoolMetrics implements MemPoolMetricsMBean {
+  public MemPoolMetrics(MemPool pool) {
+    this.pool = pool;
+  }
+
+  public int getBufferSize() {
+    return pool.getBufferSize();
+  }
+
+  public int getTotalBufferNum() {
+    return pool.getTotalBufferNum();
+  }
+
+  public int getFreeBufferNum() {
+    return pool.getFreeBufferNum();
+  }
+
+  public int getInUseBufferNum() {
+    return pool.getInUseBufferNum();
+  }
+
+  public double getUtilization() {
+    int total = pool.getTotalBufferNum();
+    return total == 0 ? 0 : (double)pool.getInUseBufferNum()/total;
+  }
+
+  public long getAllocatedBytes() {
+    return pool.getAllocatedBytes();
+  }
+
+  public long getMemoryBudget() {
+    return pool.getMemoryBudget();
+  }
+
+  public long getGrowNum() {
+    return pool.getGrowNum();
+  }
+
+  public long getGrowFailNum() {
+    return pool.getGrowFailNum();
+  }
+
+  public long getEvictedBufferNum() {
+    return pool.getEvictedBufferNum();
+  }
+
+  public int getSlabNum() {
+    return pool.getSlabNum();
+  }
+
+  private final MemPool pool;
+}
@@ -0,0 +1,65 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Live view of the registered RMA buffers of one service.
+public class RmaRegistryMetrics implements RmaRegistryMetricsMBean {
+  public void register(long size) {
+    registerNum.incrementAndGet();
+    registeredBufferNum.incrementAndGet();
+    registeredBytes.addAndGet(size);
+  }
+
+  public void registerFailed() {
+    registerFailNum.incrementAndGet();
+  }
+
+  public void unregister(long size) {
+    unregisterNum.incrementAndGet();
+    registeredBufferNum.decrementAndGet();
+    registeredBytes.addAndGet(-size);
+  }
+
+  public long getRegisteredBufferNum() {
+    return registeredBufferNum.get();
+  }
+
+  public long getRegisteredBytes() {
+    return registeredBytes.get();
+  }
+
+  public long getRegisterNum() {
+    return registerNum.get();
+  }
+
+  public long getRegisterFailNum() {
+    return registerFailNum.get();
+  }
+
+  public long getUnregisterNum() {
+    return unregisterNum.get();
+  }
+
+  private final AtomicLong registeredBufferNum = new AtomicLong(0);
+  private final AtomicLong registeredBytes = new AtomicLong(0);
+  private final AtomicLong registerNum = new AtomicLong(0);
+  private final AtomicLong registerFailNum = new AtomicLong(0);
+  private final AtomicLong unregisterNum = new AtomicLong(0);
+}
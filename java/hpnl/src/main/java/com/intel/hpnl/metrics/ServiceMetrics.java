@@ -0,0 +1,74 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.metrics;
+
+// Counters shared by all connections of a service, striped by worker index.
+public class ServiceMetrics {
+  public ServiceMetrics(int workerNum) {
+    this.workerNum = workerNum;
+    this.recvMsgNum = new StripedCounter(workerNum);
+    this.recvBytes = new StripedCounter(workerNum);
+    this.sendMsgNum = new StripedCounter(workerNum);
+    this.sendBytes = new StripedCounter(workerNum);
+    this.sendCompletionNum = new StripedCounter(workerNum);
+    this.readCompletionNum = new StripedCounter(workerNum);
+    this.connectedNum = new StripedCounter(workerNum);
+    this.controlFrameNum = new StripedCounter(workerNum);
+    this.sendStarvationNum = new StripedCounter(workerNum);
+    this.failedOpNum = new StripedCounter(workerNum);
+    this.keepaliveTimeoutNum = new StripedCounter(workerNum);
+    this.strayCompletionNum = new StripedCounter(workerNum);
+    this.externalEventNum = new StripedCounter(workerNum);
+    this.loopNum = new StripedCounter(workerNum);
+    this.sendLatency = new StripedHistogram(workerNum);
+    this.readLatency = new StripedHistogram(workerNum);
+    this.writeLatency = new StripedHistogram(workerNum);
+    this.connectLatency = new LatencyHistogram();
+  }
+
+  public int getWorkerNum() {
+    return workerNum;
+  }
+
+  public final StripedCounter recvMsgNum;
+  public final StripedCounter recvBytes;
+  public final StripedCounter sendMsgNum;
+  public final StripedCounter sendBytes;
+  public final StripedCounter sendCompletionNum;
+  public final StripedCounter readCompletionNum;
+  public final StripedCounter connectedNum;
+  public final StripedCounter controlFrameNum;
+  // a send found no free send buffer and was handed back to the worker queue
+  public final StripedCounter sendStarvationNum;
+  // an operation was rejected for good, when reposted or when its frame did not fit
+  public final StripedCounter failedOpNum;
+  // a connection stayed silent past its keepalive timeout and was reaped
+  public final StripedCounter keepaliveTimeoutNum;
+  // a send completion for a buffer that was not in flight
+  public final StripedCounter strayCompletionNum;
+  public final StripedCounter externalEventNum;
+  public final StripedCounter loopNum;
+  // post to completion, measured on the worker
+  public final StripedHistogram sendLatency;
+  public final StripedHistogram readLatency;
+  public final StripedHistogram writeLatency;
+  // client connects, recorded on the eq thread completing them
+  public final LatencyHistogram connectLatency;
+
+  private final int workerNum;
+}
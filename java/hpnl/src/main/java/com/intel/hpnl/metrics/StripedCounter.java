@@ -0,0 +1,57 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// One counter split into per-worker stripes, each on its own cache lines.
+// A stripe must only be written by its worker thread, which makes an
+// increment a plain load and an ordered store instead of a locked add.
+public class StripedCounter {
+  public StripedCounter(int stripeNum) {
+    this.stripeNum = stripeNum;
+    this.counts = new AtomicLongArray((stripeNum+1)*PAD);
+  }
+
+  public void increment(int stripe) {
+    add(stripe, 1);
+  }
+
+  public void add(int stripe, long delta) {
+    int i = (stripe+1)*PAD;
+    counts.lazySet(i, counts.get(i)+delta);
+  }
+
+  public long get(int stripe) {
+    return counts.get((stripe+1)*PAD);
+  }
+
+  public long sum() {
+    long sum = 0;
+    for (int i = 0; i < stripeNum; i++) {
+      sum += get(i);
+    }
+    return sum;
+  }
+
+  private final int stripeNum;
+  private final AtomicLongArray counts;
+
+  // 128 bytes, so the adjacent line prefetcher does not pull in a neighbour
+  private static final int PAD = 16;
+}
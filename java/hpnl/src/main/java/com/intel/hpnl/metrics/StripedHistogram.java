@@ -0,0 +1,54 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.metrics;
+
+// One LatencyHistogram per worker, merged when read.
+public class StripedHistogram {
+  public StripedHistogram(int stripeNum) {
+    this.stripes = new LatencyHistogram[stripeNum];
+    for (int i = 0; i < stripeNum; i++) {
+      this.stripes[i] = new LatencyHistogram();
+    }
+  }
+
+  public void record(int stripe, long nanos) {
+    stripes[stripe].record(nanos);
+  }
+
+  public LatencyHistogram get(int stripe) {
+    return stripes[stripe];
+  }
+
+  public LatencyHistogram.Snapshot snapshot() {
+    LatencyHistogram.Snapshot sum = stripes[0].snapshot();
+    for (int i = 1; i < stripes.length; i++) {
+      sum = sum.add(stripes[i].snapshot());
+    }
+    return sum;
+  }
+
+  public synchronized LatencyHistogram.Snapshot intervalSnapshot() {
+    LatencyHistogram.Snapshot current = snapshot();
+    LatencyHistogram.Snapshot interval = lastSnapshot == null ? current : current.minus(lastSnapshot);
+    lastSnapshot = current;
+    return interval;
+  }
+
+  private final LatencyHistogram[] stripes;
+  private LatencyHistogram.Snapshot lastSnapshot = null;
+}
@@ -0,0 +1,118 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.metrics;
+
+import com.intel.hpnl.core.CqService;
+
+// Aggregates of everything one worker thread handled.
+public class WorkerMetrics implements WorkerMetricsMBean {
+  public WorkerMetrics(CqService cqService, ServiceMetrics service, int index) {
+    this.cqService = cqService;
+    this.service = service;
+    this.index = index;
+  }
+
+  public int getWorkerIndex() {
+    return index;
+  }
+
+  public long getRecvMsgNum() {
+    return service.recvMsgNum.get(index);
+  }
+
+  public long getRecvBytes() {
+    return service.recvBytes.get(index);
+  }
+
+  public long getSendMsgNum() {
+    return service.sendMsgNum.get(index);
+  }
+
+  public long getSendBytes() {
+    return service.sendBytes.get(index);
+  }
+
+  public long getSendCompletionNum() {
+    return service.sendCompletionNum.get(index);
+  }
+
+  public long getReadCompletionNum() {
+    return service.readCompletionNum.get(index);
+  }
+
+  public String getSendLatency() {
+    return service.sendLatency.get(index).snapshot().toString();
+  }
+
+  public String getReadLatency() {
+    return service.readLatency.get(index).snapshot().toString();
+  }
+
+  public String getWriteLatency() {
+    return service.writeLatency.get(index).snapshot().toString();
+  }
+
+  public long getConnectedNum() {
+    return service.connectedNum.get(index);
+  }
+
+  public long getControlFrameNum() {
+    return service.controlFrameNum.get(index);
+  }
+
+  public long getSendStarvationNum() {
+    return service.sendStarvationNum.get(index);
+  }
+
+  public long getFailedOpNum() {
+    return service.failedOpNum.get(index);
+  }
+
+  public long getStrayCompletionNum() {
+    return service.strayCompletionNum.get(index);
+  }
+
+  public long getKeepaliveTimeoutNum() {
+    return service.keepaliveTimeoutNum.get(index);
+  }
+
+  public long getExternalEventNum() {
+    return service.externalEventNum.get(index);
+  }
+
+  public long getLoopNum() {
+    return service.loopNum.get(index);
+  }
+
+  public int getExternalEventQueueDepth() {
+    return cqService.getExternalEventNum(index);
+  }
+
+  public String getLoopProfile() {
+    LoopProfiler profiler = cqService.getLoopProfiler(index);
+    return profiler == null ? "" : profiler.dump();
+  }
+
+  public int getPendingTimerNum() {
+    return cqService.getTimingWheel(index).getPendingNum();
+  }
+
+  private final CqService cqService;
+  private final ServiceMetrics service;
+  private final int index;
+}
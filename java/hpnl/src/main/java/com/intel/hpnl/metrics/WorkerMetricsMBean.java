@@ -0,0 +1,42 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.metrics;
+
+public interface WorkerMetricsMBean {
+  public int getWorkerIndex();
+  public long getRecvMsgNum();
+  public long getRecvBytes();
+  public long getSendMsgNum();
+  public long getSendBytes();
+  public long getSendCompletionNum();
+  public long getReadCompletionNum();
+  public String getSendLatency();
+  public String getReadLatency();
+  public String getWriteLatency();
+  public long getConnectedNum();
+  public long getControlFrameNum();
+  public long getSendStarvationNum();
+  public long getFailedOpNum();
+  public long getKeepaliveTimeoutNum();
+  public long getStrayCompletionNum();
+  public long getExternalEventNum();
+  public long getLoopNum();
+  public int getExternalEventQueueDepth();
+  public int getPendingTimerNum();
+  public String getLoopProfile();
+}
@@ -0,0 +1,286 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.rpc;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.intel.hpnl.core.ExternalHandler;
+import com.intel.hpnl.core.HpnlBuffer;
+import com.intel.hpnl.core.PeerHandle;
+import com.intel.hpnl.core.RdmConnection;
+import com.intel.hpnl.core.RdmHandler;
+import com.intel.hpnl.core.RdmService;
+import com.intel.hpnl.core.TimingWheel;
+import com.intel.hpnl.metrics.StripedHistogram;
+
+// Request/response matching over RdmService, install it as the recv callback.
+// Frames use the same seq layout as RpcService. Pending calls of a shard are
+// only touched by that shard's RdmThread, other threads hand off to it.
+public class RdmRpcService implements RdmHandler {
+  public RdmRpcService(RdmService rdmService) {
+    this(rdmService, new TimingWheel(RpcService.DEFAULT_TICK_MILLIS, RpcService.DEFAULT_WHEEL_SIZE));
+    this.timerThread = RpcService.startTimer(this.timingWheel, "hpnl-rdm-rpc-timer");
+  }
+
+  // caller is responsible for advancing the wheel
+  public RdmRpcService(RdmService rdmService, TimingWheel timingWheel) {
+    int workerNum = rdmService.getWorkerNum();
+    this.rdmService = rdmService;
+    this.timingWheel = timingWheel;
+    this.methods = new ConcurrentHashMap<Integer, MethodEntry>();
+    this.pendingCalls = new ArrayList<Map<Long, PendingCall>>(workerNum);
+    this.nextCallIds = new long[workerNum];
+    this.roundTripLatency = new StripedHistogram(workerNum);
+    for (int i = 0; i < workerNum; i++) {
+      this.pendingCalls.add(new HashMap<Long, PendingCall>());
+    }
+  }
+
+  public void register(int methodId, RdmRpcMethod method) {
+    register(methodId, method, null);
+  }
+
+  // executor == null runs the method inline on the RdmThread
+  public void register(int methodId, RdmRpcMethod method, Executor executor) {
+    if (methodId < 0 || methodId > RpcService.MAX_METHOD_ID) {
+      throw new IllegalArgumentException("invalid method id " + methodId);
+    }
+    methods.put(methodId, new MethodEntry(method, executor));
+  }
+
+  public void setDefaultHandler(RdmHandler defaultHandler) {
+    this.defaultHandler = defaultHandler;
+  }
+
+  public CompletableFuture<ByteBuffer> call(RdmConnection con, PeerHandle peer, int methodId,
+      ByteBuffer request, long timeoutMillis) {
+    CompletableFuture<ByteBuffer> future = new CompletableFuture<ByteBuffer>();
+    call(con, peer, methodId, request, timeoutMillis, new RpcCallback() {
+      public void onResponse(ByteBuffer response) {
+        future.complete(response);
+      }
+      public void onError(RpcException e) {
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
+  // peer == null calls the peer the connection was created for
+  public void call(RdmConnection con, PeerHandle peer, int methodId, ByteBuffer request,
+      long timeoutMillis, RpcCallback callback) {
+    if (methodId < 0 || methodId > RpcService.MAX_METHOD_ID) {
+      callback.onError(new RpcException("invalid method id " + methodId));
+      return;
+    }
+    int index = con.getIndex();
+    if (Thread.currentThread().getId() == rdmService.getThreadId(index)) {
+      doCall(con, peer, methodId, request, timeoutMillis, callback);
+      return;
+    }
+    ByteBuffer copy = ByteBuffer.allocateDirect(request.remaining());
+    copy.put(request.slice());
+    copy.flip();
+    rdmService.addExternalEvent(index, new ExternalHandler() {
+      public void handle() {
+        doCall(con, peer, methodId, copy, timeoutMillis, callback);
+      }
+    });
+  }
+
+  private void doCall(RdmConnection con, PeerHandle peer, int methodId, ByteBuffer request,
+      long timeoutMillis, RpcCallback callback) {
+    int index = con.getIndex();
+    long callId = nextCallIds[index]++ & RpcService.CALL_ID_MASK;
+    PendingCall call = new PendingCall(peer, callback);
+    pendingCalls.get(index).put(callId, call);
+    if (timeoutMillis > 0) {
+      call.timeout = timingWheel.schedule(new Runnable() {
+        public void run() {
+          rdmService.addExternalEvent(index, new ExternalHandler() {
+            public void handle() {
+              if (pendingCalls.get(index).remove(callId, call)) {
+                timeoutNum.incrementAndGet();
+                callback.onError(new RpcException("call " + callId + " timed out after " + timeoutMillis + " ms"));
+              }
+            }
+          });
+        }
+      }, timeoutMillis);
+    }
+    long seq = ((long)methodId << RpcService.METHOD_ID_SHIFT) | callId;
+    if (peer == null) {
+      con.send(request, RpcService.REQUEST, seq);
+    } else {
+      con.sendTo(request, RpcService.REQUEST, seq, peer);
+    }
+  }
+
+  public void handle(RdmConnection con, int bufferId, int blockBufferSize) {
+    HpnlBuffer buffer = con.getRecvBuffer(bufferId);
+    ByteBuffer payload = buffer.get(blockBufferSize);
+    byte type = buffer.getType();
+    long seq = buffer.getSeq();
+    if (type == RpcService.RESPONSE || type == RpcService.ERROR) {
+      complete(con, peerOf(con, buffer), seq & RpcService.CALL_ID_MASK, payload, type == RpcService.ERROR);
+    } else if (type == RpcService.REQUEST) {
+      handleRequest(con, peerOf(con, buffer), payload, seq);
+    } else if (defaultHandler != null) {
+      defaultHandler.handle(con, bufferId, blockBufferSize);
+    }
+  }
+
+  private PeerHandle peerOf(RdmConnection con, HpnlBuffer buffer) {
+    PeerHandle peer = buffer.getPeer();
+    if (peer == null) {
+      // name carrying frame, resolved once and cached by the connection. An
+      // id frame from an unknown sender has no name and stays unresolved.
+      peer = con.resolvePeer(buffer.getName());
+    }
+    return peer;
+  }
+
+  private void complete(RdmConnection con, PeerHandle peer, long callId, ByteBuffer response, boolean error) {
+    Map<Long, PendingCall> calls = pendingCalls.get(con.getIndex());
+    PendingCall call = calls.get(callId);
+    // a reply is only matched by the peer the call was sent to
+    if (call == null || (call.peer != null && call.peer != peer)) {
+      return;
+    }
+    calls.remove(callId);
+    if (call.timeout != null) {
+      call.timeout.cancel();
+    }
+    roundTripLatency.record(con.getIndex(), System.nanoTime()-call.startNanos);
+    ByteBuffer copy = ByteBuffer.allocate(response.remaining());
+    copy.put(response);
+    copy.flip();
+    if (error) {
+      call.callback.onError(new RpcException(RpcService.decodeError(copy)));
+    } else {
+      call.callback.onResponse(copy);
+    }
+  }
+
+  private void handleRequest(RdmConnection con, PeerHandle peer, ByteBuffer payload, long seq) {
+    int methodId = (int)(seq >>> RpcService.METHOD_ID_SHIFT);
+    MethodEntry entry = methods.get(methodId);
+    if (entry == null) {
+      reply(con, peer, RpcService.encodeError("unknown method " + methodId), RpcService.ERROR, seq);
+      return;
+    }
+    if (entry.executor == null) {
+      invoke(con, peer, entry.method, payload, seq);
+      return;
+    }
+    // recv buffer goes back to the provider once the callback returns
+    ByteBuffer request = ByteBuffer.allocate(payload.remaining());
+    request.put(payload);
+    request.flip();
+    entry.executor.execute(new Runnable() {
+      public void run() {
+        invoke(con, peer, entry.method, request, seq);
+      }
+    });
+  }
+
+  private void invoke(RdmConnection con, PeerHandle peer, RdmRpcMethod method, ByteBuffer request, long seq) {
+    ByteBuffer response;
+    try {
+      response = method.handle(con, peer, request);
+    } catch (Exception e) {
+      reply(con, peer, RpcService.encodeError(String.valueOf(e.getMessage())), RpcService.ERROR, seq);
+      return;
+    }
+    reply(con, peer, response == null ? RpcService.EMPTY : response.duplicate(), RpcService.RESPONSE, seq);
+  }
+
+  private void reply(RdmConnection con, PeerHandle peer, ByteBuffer response, byte type, long seq) {
+    if (peer == null) {
+      // the requester's address isn't known, it will see the call time out
+      droppedReplyNum.incrementAndGet();
+      return;
+    }
+    con.sendTo(response, type, seq, peer);
+  }
+
+  public int getPendingCallNum(int index) {
+    return pendingCalls.get(index).size();
+  }
+
+  public StripedHistogram getRoundTripLatency() {
+    return roundTripLatency;
+  }
+
+  public long getTimeoutNum() {
+    return timeoutNum.get();
+  }
+
+  public long getDroppedReplyNum() {
+    return droppedReplyNum.get();
+  }
+
+  public void shutdown() {
+    if (timerThread != null) {
+      timerThread.interrupt();
+    }
+  }
+
+  private static class PendingCall {
+    PendingCall(PeerHandle peer, RpcCallback callback) {
+      this.peer = peer;
+      this.callback = callback;
+      this.startNanos = System.nanoTime();
+    }
+
+    PeerHandle peer;
+    RpcCallback callback;
+    long startNanos;
+    TimingWheel.Timeout timeout;
+  }
+
+  private static class MethodEntry {
+    MethodEntry(RdmRpcMethod method, Executor executor) {
+      this.method = method;
+      this.executor = executor;
+    }
+
+    RdmRpcMethod method;
+    Executor executor;
+  }
+
+  private RdmService rdmService;
+  private TimingWheel timingWheel;
+  private Thread timerThread;
+  private ConcurrentHashMap<Integer, MethodEntry> methods;
+  // indexed by shard, only accessed from the shard's RdmThread
+  private List<Map<Long, PendingCall>> pendingCalls;
+  private long[] nextCallIds;
+  private AtomicLong timeoutNum = new AtomicLong(0);
+  private AtomicLong droppedReplyNum = new AtomicLong(0);
+  private StripedHistogram roundTripLatency;
+  private RdmHandler defaultHandler = null;
+}
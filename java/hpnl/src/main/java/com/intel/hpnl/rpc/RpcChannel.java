@@ -0,0 +1,196 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.rpc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.intel.hpnl.core.Connection;
+import com.intel.hpnl.core.TimingWheel;
+import com.intel.hpnl.metrics.LatencyHistogram;
+
+public class RpcChannel {
+  public RpcChannel(Connection con, TimingWheel timingWheel, int slotNum) {
+    int size = 1;
+    while (size < slotNum) {
+      size <<= 1;
+    }
+    this.con = con;
+    this.timingWheel = timingWheel;
+    this.slots = new AtomicReferenceArray<PendingCall>(size);
+    this.slotMask = size-1;
+    this.overflowCalls = new ConcurrentHashMap<Long, PendingCall>();
+  }
+
+  public CompletableFuture<ByteBuffer> call(int methodId, ByteBuffer request, long timeoutMillis) {
+    CompletableFuture<ByteBuffer> future = new CompletableFuture<ByteBuffer>();
+    call(methodId, request, timeoutMillis, new RpcCallback() {
+      public void onResponse(ByteBuffer response) {
+        future.complete(response);
+      }
+      public void onError(RpcException e) {
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
+  public void call(int methodId, ByteBuffer request, long timeoutMillis, RpcCallback callback) {
+    if (methodId < 0 || methodId > RpcService.MAX_METHOD_ID) {
+      callback.onError(new RpcException("invalid method id " + methodId));
+      return;
+    }
+    if (closed) {
+      callback.onError(new RpcException("channel closed"));
+      return;
+    }
+    long callId = nextCallId.getAndIncrement() & RpcService.CALL_ID_MASK;
+    PendingCall call = new PendingCall(callId, callback);
+    addCall(call);
+    if (timeoutMillis > 0) {
+      Runnable expire = new Runnable() {
+        public void run() {
+          if (removeCall(callId) == call) {
+            timeoutNum.incrementAndGet();
+            call.callback.onError(new RpcException("call " + callId + " timed out after " + timeoutMillis + " ms"));
+          }
+        }
+      };
+      call.timeout = timingWheel != null ? timingWheel.schedule(expire, timeoutMillis) : con.schedule(expire, timeoutMillis);
+    }
+    int res = con.send(request, RpcService.REQUEST, ((long)methodId << RpcService.METHOD_ID_SHIFT) | callId);
+    if (res != 0 && removeCall(callId) == call) {
+      call.cancelTimeout();
+      call.callback.onError(new RpcException("send failed with " + res));
+    }
+  }
+
+  void complete(long callId, ByteBuffer response, boolean error) {
+    PendingCall call = removeCall(callId);
+    if (call == null) {
+      // already timed out or the channel was closed
+      return;
+    }
+    call.cancelTimeout();
+    // completions come in on the connection's worker, a single writer
+    roundTripLatency.record(System.nanoTime()-call.startNanos);
+    ByteBuffer copy = ByteBuffer.allocate(response.remaining());
+    copy.put(response);
+    copy.flip();
+    if (error) {
+      call.callback.onError(new RpcException(RpcService.decodeError(copy)));
+    } else {
+      call.callback.onResponse(copy);
+    }
+  }
+
+  public void close() {
+    closed = true;
+    for (int i = 0; i < slots.length(); i++) {
+      PendingCall call = slots.get(i);
+      if (call != null && slots.compareAndSet(i, call, null)) {
+        failClosed(call);
+      }
+    }
+    for (Long callId : overflowCalls.keySet()) {
+      PendingCall call = overflowCalls.remove(callId);
+      if (call != null) {
+        failClosed(call);
+      }
+    }
+  }
+
+  private void failClosed(PendingCall call) {
+    pendingCallNum.decrementAndGet();
+    call.cancelTimeout();
+    call.callback.onError(new RpcException("channel closed"));
+  }
+
+  private void addCall(PendingCall call) {
+    pendingCallNum.incrementAndGet();
+    // a slot still held by a slow call pushes the new one to the overflow map
+    if (!slots.compareAndSet((int)(call.callId & slotMask), null, call)) {
+      overflowCalls.put(call.callId, call);
+    }
+  }
+
+  private PendingCall removeCall(long callId) {
+    int slot = (int)(callId & slotMask);
+    PendingCall call = slots.get(slot);
+    if (call != null && call.callId == callId && slots.compareAndSet(slot, call, null)) {
+      pendingCallNum.decrementAndGet();
+      return call;
+    }
+    call = overflowCalls.remove(callId);
+    if (call != null) {
+      pendingCallNum.decrementAndGet();
+    }
+    return call;
+  }
+
+  public Connection getConnection() {
+    return con;
+  }
+
+  public int getPendingCallNum() {
+    return pendingCallNum.get();
+  }
+
+  public LatencyHistogram getRoundTripLatency() {
+    return roundTripLatency;
+  }
+
+  public long getTimeoutNum() {
+    return timeoutNum.get();
+  }
+
+  private static class PendingCall {
+    PendingCall(long callId, RpcCallback callback) {
+      this.callId = callId;
+      this.callback = callback;
+      this.startNanos = System.nanoTime();
+    }
+
+    void cancelTimeout() {
+      TimingWheel.Timeout timeout = this.timeout;
+      if (timeout != null) {
+        timeout.cancel();
+      }
+    }
+
+    long callId;
+    RpcCallback callback;
+    long startNanos;
+    volatile TimingWheel.Timeout timeout;
+  }
+
+  private Connection con;
+  private TimingWheel timingWheel;
+  private AtomicReferenceArray<PendingCall> slots;
+  private int slotMask;
+  private ConcurrentHashMap<Long, PendingCall> overflowCalls;
+  private AtomicLong nextCallId = new AtomicLong(0);
+  private AtomicInteger pendingCallNum = new AtomicInteger(0);
+  private AtomicLong timeoutNum = new AtomicLong(0);
+  private volatile boolean closed = false;
+  private LatencyHistogram roundTripLatency = new LatencyHistogram();
+}
@@ -0,0 +1,203 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.rpc;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import com.intel.hpnl.core.Connection;
+import com.intel.hpnl.core.Handler;
+import com.intel.hpnl.core.HpnlBuffer;
+import com.intel.hpnl.core.TimingWheel;
+
+// Request/response matching on top of Connection, install it as the recv
+// callback. The seq header carries the method id in its top 16 bits and the
+// correlation id in the low 48 bits, responses echo the request seq.
+public class RpcService implements Handler {
+  // deadlines run on the CqThread owning each connection
+  public RpcService() {
+    this(null);
+  }
+
+  // opt-in dedicated timer thread driving a wheel of its own, stop it with shutdown()
+  public RpcService(long tickMillis, int wheelSize) {
+    this(new TimingWheel(tickMillis, wheelSize));
+    this.timerThread = startTimer(this.timingWheel, "hpnl-rpc-timer");
+  }
+
+  // caller is responsible for advancing the wheel, null schedules deadlines
+  // on the CqThread owning each connection
+  public RpcService(TimingWheel timingWheel) {
+    this.timingWheel = timingWheel;
+    this.methods = new ConcurrentHashMap<Integer, MethodEntry>();
+    this.channels = new ConcurrentHashMap<Connection, RpcChannel>();
+  }
+
+  public void register(int methodId, RpcMethod method) {
+    register(methodId, method, null);
+  }
+
+  // executor == null runs the method inline on the CqThread
+  public void register(int methodId, RpcMethod method, Executor executor) {
+    if (methodId < 0 || methodId > MAX_METHOD_ID) {
+      throw new IllegalArgumentException("invalid method id " + methodId);
+    }
+    methods.put(methodId, new MethodEntry(method, executor));
+  }
+
+  public RpcChannel getChannel(Connection con) {
+    RpcChannel channel = channels.get(con);
+    if (channel == null) {
+      channel = channels.computeIfAbsent(con, c -> new RpcChannel(c, timingWheel, slotNum));
+    }
+    return channel;
+  }
+
+  // fails every pending call of the connection, call it from the shutdown callback
+  public void closeChannel(Connection con) {
+    RpcChannel channel = channels.remove(con);
+    if (channel != null) {
+      channel.close();
+    }
+  }
+
+  public void setSlotNum(int slotNum) {
+    this.slotNum = slotNum;
+  }
+
+  public void setDefaultHandler(Handler defaultHandler) {
+    this.defaultHandler = defaultHandler;
+  }
+
+  public TimingWheel getTimingWheel() {
+    return timingWheel;
+  }
+
+  public void shutdown() {
+    if (timerThread != null) {
+      timerThread.interrupt();
+    }
+  }
+
+  public void handle(Connection con, int bufferId, int blockBufferSize) {
+    HpnlBuffer buffer = con.getRecvBuffer(bufferId);
+    ByteBuffer payload = buffer.get(blockBufferSize);
+    byte type = buffer.getType();
+    long seq = buffer.getSeq();
+    if (type == RESPONSE || type == ERROR) {
+      RpcChannel channel = channels.get(con);
+      if (channel != null) {
+        channel.complete(seq & CALL_ID_MASK, payload, type == ERROR);
+      }
+    } else if (type == REQUEST) {
+      handleRequest(con, payload, seq);
+    } else if (defaultHandler != null) {
+      defaultHandler.handle(con, bufferId, blockBufferSize);
+    }
+  }
+
+  private void handleRequest(Connection con, ByteBuffer payload, long seq) {
+    int methodId = (int)(seq >>> METHOD_ID_SHIFT);
+    MethodEntry entry = methods.get(methodId);
+    if (entry == null) {
+      con.send(encodeError("unknown method " + methodId), ERROR, seq);
+      return;
+    }
+    if (entry.executor == null) {
+      invoke(con, entry.method, payload, seq);
+      return;
+    }
+    // recv buffer goes back to the provider once the callback returns
+    ByteBuffer request = ByteBuffer.allocate(payload.remaining());
+    request.put(payload);
+    request.flip();
+    entry.executor.execute(new Runnable() {
+      public void run() {
+        invoke(con, entry.method, request, seq);
+      }
+    });
+  }
+
+  private void invoke(Connection con, RpcMethod method, ByteBuffer request, long seq) {
+    ByteBuffer response;
+    try {
+      response = method.handle(con, request);
+    } catch (Exception e) {
+      con.send(encodeError(String.valueOf(e.getMessage())), ERROR, seq);
+      return;
+    }
+    con.send(response == null ? EMPTY : response.duplicate(), RESPONSE, seq);
+  }
+
+  static Thread startTimer(TimingWheel timingWheel, String name) {
+    Thread timerThread = new Thread(new Runnable() {
+      public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+          timingWheel.advance(System.currentTimeMillis());
+          try {
+            Thread.sleep(timingWheel.getTickMillis());
+          } catch (InterruptedException e) {
+            break;
+          }
+        }
+      }
+    }, name);
+    timerThread.setDaemon(true);
+    timerThread.start();
+    return timerThread;
+  }
+
+  static ByteBuffer encodeError(String message) {
+    return ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8));
+  }
+
+  static String decodeError(ByteBuffer buffer) {
+    return StandardCharsets.UTF_8.decode(buffer.duplicate()).toString();
+  }
+
+  private static class MethodEntry {
+    MethodEntry(RpcMethod method, Executor executor) {
+      this.method = method;
+      this.executor = executor;
+    }
+
+    RpcMethod method;
+    Executor executor;
+  }
+
+  private TimingWheel timingWheel;
+  private Thread timerThread;
+  private ConcurrentHashMap<Integer, MethodEntry> methods;
+  private ConcurrentHashMap<Connection, RpcChannel> channels;
+  private Handler defaultHandler = null;
+  private int slotNum = 4096;
+
+  public static final byte REQUEST = 0x70;
+  public static final byte RESPONSE = 0x71;
+  public static final byte ERROR = 0x72;
+
+  static final int METHOD_ID_SHIFT = 48;
+  static final int MAX_METHOD_ID = 0xffff;
+  static final long CALL_ID_MASK = (1L << METHOD_ID_SHIFT)-1;
+
+  static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+  static final long DEFAULT_TICK_MILLIS = 10;
+  static final int DEFAULT_WHEEL_SIZE = 512;
+}
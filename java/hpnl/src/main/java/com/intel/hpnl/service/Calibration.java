@@ -0,0 +1,90 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+
+package com.intel.hpnl.service;
+
+import java.util.Arrays;
+
+// Settings recommended by Calibrator, with the probe results behind them.
+public class Calibration {
+  Calibration(int workerNum, int bufferNum, int bufferSize, int poolBufferNum, int[] affinities, String report) {
+    this.workerNum = workerNum;
+    this.bufferNum = bufferNum;
+    this.bufferSize = bufferSize;
+    this.poolBufferNum = poolBufferNum;
+    this.affinities = affinities;
+    this.report = report;
+  }
+
+  // the worker and buffer number are constructor arguments of a Service
+  public Server newServer() {
+    Server server = new Server(workerNum, bufferNum);
+    apply(server);
+    return server;
+  }
+
+  public Client newClient() {
+    Client client = new Client(workerNum, bufferNum);
+    apply(client);
+    return client;
+  }
+
+  // for a service built with getWorkerNum() and getBufferNum(), before start()
+  public void apply(Service service) {
+    service.setAffinities(affinities);
+    service.initBufferPool(poolBufferNum, bufferSize, poolBufferNum);
+  }
+
+  public int getWorkerNum() {
+    return workerNum;
+  }
+
+  public int getBufferNum() {
+    return bufferNum;
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  public int getPoolBufferNum() {
+    return poolBufferNum;
+  }
+
+  // null to leave the workers unpinned
+  public int[] getAffinities() {
+    return affinities;
+  }
+
+  // every candidate probed and why the chosen one won
+  public String getReport() {
+    return report + "recommended: " + this + "\n";
+  }
+
+  public String toString() {
+    return "workers " + workerNum + ", buffers " + bufferNum + " x " + bufferSize + " bytes, pool " +
+        poolBufferNum + " buffers, affinities " + Arrays.toString(affinities);
+  }
+
+  private final int workerNum;
+  private final int bufferNum;
+  private final int bufferSize;
+  private final int poolBufferNum;
+  private final int[] affinities;
+  private final String report;
+}
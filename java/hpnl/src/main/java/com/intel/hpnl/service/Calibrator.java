@@ -0,0 +1,228 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+
+package com.intel.hpnl.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.intel.hpnl.bench.BenchmarkResult;
+import com.intel.hpnl.bench.LoopbackBenchmark;
+
+// Picks worker number, buffer number, buffer size and affinities for the
+// expected traffic by probing them over loopback on this host and provider.
+// The settings are probed one after the other. Each time only candidates
+// whose p99 latency is within the tolerance of the lowest one are ranked,
+// keeping the cheapest whose throughput is within the tolerance of the best
+// ranked one. Cheaper means fewer workers, less pinned memory, no pinning.
+public class Calibrator {
+  // messageSize and window (outstanding messages per connection) as the
+  // application will use them
+  public Calibrator(int messageSize, int connectionNum, int window) {
+    this.messageSize = messageSize;
+    this.connectionNum = connectionNum;
+    this.window = window;
+    this.maxWorkerNum = Math.max(1, Runtime.getRuntime().availableProcessors()/2);
+  }
+
+  public void setAddress(String addr, int port) {
+    this.addr = addr;
+    this.port = port;
+  }
+
+  public void setProbeDuration(long warmupMillis, long durationMillis) {
+    this.warmupMillis = warmupMillis;
+    this.durationMillis = durationMillis;
+  }
+
+  // relative, 0.05 is 5%
+  public void setTolerance(double throughputTolerance, double latencyTolerance) {
+    this.throughputTolerance = throughputTolerance;
+    this.latencyTolerance = latencyTolerance;
+  }
+
+  public void setMaxWorkerNum(int maxWorkerNum) {
+    this.maxWorkerNum = maxWorkerNum;
+  }
+
+  // also probe workers pinned to cores, needs twice the workers in cores
+  public void setProbePinning(boolean probePinning) {
+    this.probePinning = probePinning;
+  }
+
+  public Calibration calibrate() {
+    StringBuilder report = new StringBuilder();
+    report.append(String.format("calibrating for %d bytes messages, %d connections, window %d\n",
+        messageSize, connectionNum, window));
+
+    int bufferSize = nextPowerOfTwo(messageSize+FRAME_OVERHEAD);
+    int bufferNum = Math.max(window*2, MIN_BUFFER_NUM);
+
+    List<int[]> workerCandidates = new ArrayList<>();
+    for (int workerNum = 1; workerNum <= maxWorkerNum; workerNum *= 2) {
+      workerCandidates.add(new int[]{workerNum, bufferNum, bufferSize});
+    }
+    int chosen = choose("worker number", workerCandidates, 0, null, report);
+    int workerNum = chosen < 0 ? 1 : workerCandidates.get(chosen)[0];
+
+    // a connection needs a buffer per outstanding message
+    List<int[]> bufferNumCandidates = new ArrayList<>();
+    for (int num = Math.max(window, MIN_BUFFER_NUM/2); num <= Math.max(window*4, MIN_BUFFER_NUM*2); num *= 2) {
+      bufferNumCandidates.add(new int[]{workerNum, num, bufferSize});
+    }
+    chosen = choose("buffer number", bufferNumCandidates, 1, null, report);
+    bufferNum = chosen < 0 ? bufferNum : bufferNumCandidates.get(chosen)[1];
+
+    List<int[]> bufferSizeCandidates = new ArrayList<>();
+    for (int size = bufferSize; size <= bufferSize*4 && size <= MAX_BUFFER_SIZE; size *= 2) {
+      bufferSizeCandidates.add(new int[]{workerNum, bufferNum, size});
+    }
+    chosen = choose("buffer size", bufferSizeCandidates, 2, null, report);
+    bufferSize = chosen < 0 ? bufferSize : bufferSizeCandidates.get(chosen)[2];
+
+    int[] affinities = null;
+    int cpuNum = Runtime.getRuntime().availableProcessors();
+    if (!probePinning) {
+      report.append("affinities: not probed, workers are left unpinned\n");
+    } else if (cpuNum < workerNum*2) {
+      report.append(String.format("affinities: %d cores are too few to pin %d server and %d client workers apart, left unpinned\n",
+          cpuNum, workerNum, workerNum));
+    } else {
+      int[] pinned = new int[workerNum];
+      for (int i = 0; i < workerNum; i++) {
+        pinned[i] = i;
+      }
+      List<int[]> pinCandidates = new ArrayList<>();
+      pinCandidates.add(new int[]{workerNum, bufferNum, bufferSize});
+      pinCandidates.add(new int[]{workerNum, bufferNum, bufferSize});
+      chosen = choose("affinities", pinCandidates, -1, pinned, report);
+      affinities = chosen == 1 ? pinned : null;
+    }
+
+    // the pool backs the send and recv buffers of every connection
+    return new Calibration(workerNum, bufferNum, bufferSize, bufferNum*2*connectionNum, affinities, report.toString());
+  }
+
+  // Candidates are {workerNum, bufferNum, bufferSize} from cheapest to most
+  // expensive. With pinned set the second candidate runs pinned. Returns the
+  // index of the chosen one, -1 if every probe failed.
+  private int choose(String setting, List<int[]> candidates, int shown, int[] pinned, StringBuilder report) {
+    List<BenchmarkResult> results = new ArrayList<>();
+    double bestOpsPerSec = 0;
+    long bestP99 = Long.MAX_VALUE;
+    for (int i = 0; i < candidates.size(); i++) {
+      int[] candidate = candidates.get(i);
+      BenchmarkResult result = probe(candidate, pinned != null && i == 1 ? pinned : null);
+      results.add(result);
+      String name = describe(candidates, i, shown);
+      if (result == null) {
+        report.append(String.format("%s %s: probe failed\n", setting, name));
+        continue;
+      }
+      report.append(String.format("%s %s: %.0f ops/s, p99 %.1f us\n",
+          setting, name, result.getOpsPerSec(), result.getP99()/1000.0));
+      bestOpsPerSec = Math.max(bestOpsPerSec, result.getOpsPerSec());
+      bestP99 = Math.min(bestP99, result.getP99());
+    }
+    if (bestP99 == Long.MAX_VALUE) {
+      report.append(String.format("  -> %s: every probe failed, keeping the default\n", setting));
+      return -1;
+    }
+    // the lowest p99 candidate is always in bound, so one always qualifies
+    double boundedOpsPerSec = 0;
+    for (BenchmarkResult result : results) {
+      if (inLatencyBound(result, bestP99)) {
+        boundedOpsPerSec = Math.max(boundedOpsPerSec, result.getOpsPerSec());
+      }
+    }
+    if (boundedOpsPerSec < bestOpsPerSec*(1-throughputTolerance)) {
+      report.append(String.format("  %s: faster candidates up to %.0f ops/s exceed %.0f%% of p99 %.1f us\n",
+          setting, bestOpsPerSec, latencyTolerance*100, bestP99/1000.0));
+    }
+    int chosen = -1;
+    for (int i = 0; i < candidates.size() && chosen < 0; i++) {
+      BenchmarkResult result = results.get(i);
+      if (inLatencyBound(result, bestP99) && result.getOpsPerSec() >= boundedOpsPerSec*(1-throughputTolerance)) {
+        chosen = i;
+      }
+    }
+    report.append(String.format("  -> %s %s, the cheapest within %.0f%% of p99 %.1f us and %.0f%% of %.0f ops/s\n",
+        setting, describe(candidates, chosen, shown), latencyTolerance*100, bestP99/1000.0,
+        throughputTolerance*100, boundedOpsPerSec));
+    return chosen;
+  }
+
+  private boolean inLatencyBound(BenchmarkResult result, long bestP99) {
+    return result != null && result.getP99() <= bestP99*(1+latencyTolerance);
+  }
+
+  private String describe(List<int[]> candidates, int index, int shown) {
+    if (shown < 0) {
+      return index == 0 ? "unpinned" : "pinned";
+    }
+    return String.valueOf(candidates.get(index)[shown]);
+  }
+
+  private BenchmarkResult probe(int[] candidate, int[] pinned) {
+    LoopbackBenchmark benchmark = new LoopbackBenchmark(LoopbackBenchmark.MSG, messageSize,
+        candidate[0], connectionNum, window);
+    benchmark.setAddress(addr, String.valueOf(port+probeNum++));
+    benchmark.setDuration(warmupMillis, durationMillis);
+    benchmark.setBuffers(candidate[1], candidate[2]);
+    if (pinned != null) {
+      int[] clientPinned = new int[pinned.length];
+      for (int i = 0; i < pinned.length; i++) {
+        clientPinned[i] = pinned[i]+pinned.length;
+      }
+      benchmark.setAffinities(pinned);
+      benchmark.setClientAffinities(clientPinned);
+    }
+    try {
+      return benchmark.run();
+    } catch (RuntimeException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  private static int nextPowerOfTwo(int value) {
+    int power = 1;
+    while (power < value) {
+      power <<= 1;
+    }
+    return power;
+  }
+
+  private final int messageSize;
+  private final int connectionNum;
+  private final int window;
+  private int maxWorkerNum;
+  private String addr = "127.0.0.1";
+  private int port = 12345;
+  private long warmupMillis = 200;
+  private long durationMillis = 500;
+  private double throughputTolerance = 0.05;
+  private double latencyTolerance = 0.10;
+  private boolean probePinning = false;
+  private int probeNum = 0;
+
+  // metadata of the largest frame
+  private static final int FRAME_OVERHEAD = 128;
+  private static final int MIN_BUFFER_NUM = 32;
+  private static final int MAX_BUFFER_SIZE = 4*1024*1024;
+}
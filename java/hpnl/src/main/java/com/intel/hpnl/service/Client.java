@@ -17,6 +17,8 @@
 
 package com.intel.hpnl.service;
 
+import java.util.concurrent.CompletableFuture;
+
 import com.intel.hpnl.core.Connection;
 
 public class Client extends Service {
@@ -27,4 +29,9 @@ public class Client extends Service {
   public Connection connect(String ip, String port, int timeout) {
     return this.eqService.connect(ip, port, timeout);
   }
+
+  // completes with null if the connect can't be started, see EqService.connectAsync
+  public CompletableFuture<Connection> connectAsync(String ip, String port) {
+    return this.eqService.connectAsync(ip, port);
+  }
 }
@@ -0,0 +1,277 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.service;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.intel.hpnl.core.AckHandler;
+import com.intel.hpnl.core.Connection;
+import com.intel.hpnl.core.Handler;
+
+// Keeps a client connection alive across link failures. Every message is
+// copied and kept until the peer acknowledges it, and whatever is still
+// unacknowledged is replayed in order on the next connection, so delivery is
+// at-least-once; receivers can drop duplicates with HpnlBuffer.getMsgId().
+public class ResilientConnection {
+  public ResilientConnection(Client client, String addr, String port) {
+    this.client = client;
+    this.addr = addr;
+    this.port = port;
+    this.outstanding = new ArrayDeque<Outstanding>();
+    this.ackHandler = new AckHandler() {
+      public void handle(Connection con, long msgId) {
+        ack(msgId);
+      }
+    };
+  }
+
+  public void setBackoff(long baseMillis, long maxMillis) {
+    this.backoffBaseMillis = baseMillis;
+    this.backoffMaxMillis = maxMillis;
+  }
+
+  public void setMaxOutstanding(int maxOutstanding) {
+    this.maxOutstanding = maxOutstanding;
+  }
+
+  public void setConnectTimeout(long connectTimeoutMillis) {
+    this.connectTimeoutMillis = connectTimeoutMillis;
+  }
+
+  // tries once in the caller, then keeps retrying in the background
+  public boolean connect() {
+    if (adopt(client.connect(addr, port, (int)connectTimeoutMillis))) {
+      return true;
+    }
+    scheduleReconnect();
+    return false;
+  }
+
+  // returns false if too many messages are waiting for an ack
+  public boolean send(ByteBuffer buffer, byte type, long seq) {
+    if (buffer.remaining() > client.getMaxReliablePayload()) {
+      // it would never be acknowledged and hold back every later message
+      throw new IllegalArgumentException("message of " + buffer.remaining() +
+          " bytes exceeds " + client.getMaxReliablePayload() + " bytes");
+    }
+    ByteBuffer payload = ByteBuffer.allocate(buffer.remaining());
+    payload.put(buffer.duplicate());
+    payload.flip();
+    synchronized (this) {
+      if (closed || outstanding.size() >= maxOutstanding) {
+        return false;
+      }
+      Outstanding msg = new Outstanding(nextMsgId++, type, seq, payload);
+      outstanding.addLast(msg);
+      if (con != null) {
+        con.sendReliable(msg.payload.duplicate(), msg.type, msg.seq, msg.msgId);
+        msg.sent = true;
+      }
+    }
+    return true;
+  }
+
+  public void close() {
+    Connection cur;
+    synchronized (this) {
+      closed = true;
+      if (reconnectFuture != null) {
+        reconnectFuture.cancel(false);
+      }
+      cur = con;
+      con = null;
+    }
+    if (cur != null) {
+      cur.shutdown();
+    }
+  }
+
+  public synchronized Connection getConnection() {
+    return con;
+  }
+
+  public synchronized boolean isConnected() {
+    return con != null;
+  }
+
+  public synchronized int getOutstandingNum() {
+    return outstanding.size();
+  }
+
+  public synchronized long getReconnectNum() {
+    return reconnectNum;
+  }
+
+  public synchronized long getReplayNum() {
+    return replayNum;
+  }
+
+  // connects without blocking the reconnect thread, so a dead peer doesn't
+  // hold back reconnects of other ResilientConnections
+  private void reconnect() {
+    CompletableFuture<Connection> future = client.connectAsync(addr, port);
+    ScheduledFuture<?> timeout = null;
+    if (connectTimeoutMillis > 0) {
+      timeout = RECONNECT_EXECUTOR.schedule(new Runnable() {
+        public void run() {
+          future.cancel(false);
+        }
+      }, connectTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    ScheduledFuture<?> connectTimeout = timeout;
+    future.whenCompleteAsync((newCon, e) -> {
+      if (connectTimeout != null) {
+        connectTimeout.cancel(false);
+      }
+      if (!adopt(newCon)) {
+        scheduleReconnect();
+      }
+    }, RECONNECT_EXECUTOR);
+  }
+
+  private boolean adopt(Connection newCon) {
+    if (newCon == null) {
+      return false;
+    }
+    newCon.setAckCallback(ackHandler);
+    Handler prevShutdownCallback = newCon.getShutdownCallback();
+    newCon.setShutdownCallback(new Handler() {
+      public void handle(Connection c, int bufferId, int blockBufferSize) {
+        linkDown(c);
+        if (prevShutdownCallback != null) {
+          prevShutdownCallback.handle(c, bufferId, blockBufferSize);
+        }
+      }
+    });
+    boolean discard = false;
+    synchronized (this) {
+      if (closed) {
+        discard = true;
+      } else {
+        if (everConnected) {
+          reconnectNum++;
+        }
+        everConnected = true;
+        attempt = 0;
+        con = newCon;
+        // the worker handles these in order, ahead of any later send
+        for (Outstanding msg : outstanding) {
+          con.sendReliable(msg.payload.duplicate(), msg.type, msg.seq, msg.msgId);
+          if (msg.sent) {
+            replayNum++;
+          }
+          msg.sent = true;
+        }
+      }
+    }
+    if (discard) {
+      newCon.shutdown();
+      return false;
+    }
+    // a drop before the shutdown callback was installed went unnoticed
+    if (!newCon.isConnected()) {
+      linkDown(newCon);
+    }
+    return true;
+  }
+
+  private void linkDown(Connection c) {
+    synchronized (this) {
+      if (c != con) {
+        return;
+      }
+      con = null;
+      if (closed) {
+        return;
+      }
+    }
+    scheduleReconnect();
+  }
+
+  private synchronized void scheduleReconnect() {
+    if (closed) {
+      return;
+    }
+    // full jitter spreads out clients that lost the same server at once
+    long ceiling = Math.min(backoffMaxMillis, backoffBaseMillis << Math.min(attempt, 30));
+    long delay = ThreadLocalRandom.current().nextLong(ceiling+1);
+    attempt++;
+    reconnectFuture = RECONNECT_EXECUTOR.schedule(new Runnable() {
+      public void run() {
+        reconnect();
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  private synchronized void ack(long msgId) {
+    while (!outstanding.isEmpty() && outstanding.peekFirst().msgId <= msgId) {
+      outstanding.pollFirst();
+    }
+  }
+
+  private static class Outstanding {
+    Outstanding(long msgId, byte type, long seq, ByteBuffer payload) {
+      this.msgId = msgId;
+      this.type = type;
+      this.seq = seq;
+      this.payload = payload;
+    }
+
+    final long msgId;
+    final byte type;
+    final long seq;
+    final ByteBuffer payload;
+    boolean sent = false;
+  }
+
+  private final Client client;
+  private final String addr;
+  private final String port;
+  private final ArrayDeque<Outstanding> outstanding;
+  private final AckHandler ackHandler;
+  private Connection con = null;
+  private ScheduledFuture<?> reconnectFuture = null;
+  private boolean closed = false;
+  private boolean everConnected = false;
+  private int attempt = 0;
+  private long nextMsgId = 0;
+  private long reconnectNum = 0;
+  private long replayNum = 0;
+  private int maxOutstanding = 4096;
+  private long backoffBaseMillis = 100;
+  private long backoffMaxMillis = 30000;
+  private long connectTimeoutMillis = 3000;
+
+  // one thread for all reconnects, connects complete asynchronously so it never blocks
+  private static final ScheduledExecutorService RECONNECT_EXECUTOR =
+    Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "hpnl-reconnect");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+}
@@ -20,8 +20,10 @@ package com.intel.hpnl.service;
 import java.nio.ByteBuffer;
 import com.intel.hpnl.core.EqService;
 import com.intel.hpnl.core.CqService;
+import com.intel.hpnl.core.DrainReport;
 import com.intel.hpnl.core.HpnlBuffer;
 import com.intel.hpnl.core.Handler;
+import com.intel.hpnl.metrics.ServiceMetrics;
 
 public abstract class Service {
   public Service(int workNbr, int bufferNbr, boolean isServer) {
@@ -37,6 +39,43 @@ public abstract class Service {
     this.eqService.initBufferPool(bufferNbr, bufferSize, nextBufferNbr);
   }
 
+  public void initSlabBufferPool(int bufferNbr, int bufferSize, int nextBufferNbr, boolean hugePage) {
+    this.eqService.initSlabBufferPool(bufferNbr, bufferSize, nextBufferNbr, hugePage);
+  }
+
+  public void setMemoryBudget(long memoryBudget) {
+    this.eqService.setMemoryBudget(memoryBudget);
+  }
+
+  public void setBufferEviction(int highWatermark, long idleMillis) {
+    this.eqService.setBufferEviction(highWatermark, idleMillis);
+  }
+
+  public void setSendSignalInterval(int sendSignalInterval) {
+    this.eqService.setSendSignalInterval(sendSignalInterval);
+  }
+
+  public void setKeepalive(long intervalMillis, long timeoutMillis) {
+    this.eqService.setKeepalive(intervalMillis, timeoutMillis);
+  }
+
+  // publish metrics as MBeans, call after the buffer pool is initialized
+  public void enableJmx(String serviceName) {
+    this.eqService.enableJmx(serviceName);
+  }
+
+  public void setLeakDetection(int sampleInterval, long thresholdMillis) {
+    this.eqService.setLeakDetection(sampleInterval, thresholdMillis);
+  }
+
+  public void setLoopProfiling(boolean enabled) {
+    this.cqService.setLoopProfiling(enabled);
+  }
+
+  public String dumpLoopProfiles() {
+    return this.cqService.dumpLoopProfiles();
+  }
+
   public void setAffinities(int[] affinities) {
     this.cqService.setAffinities(affinities);
   }
@@ -52,6 +91,32 @@ public abstract class Service {
     this.eqService.join();
   }
 
+  // Drains in-flight work for up to timeoutMillis before tearing down
+  // connections, workers and buffer pools, in that order. The report tells
+  // whether the drain timed out and how many operations were dropped.
+  public DrainReport shutdown(long timeoutMillis) {
+    DrainReport report = this.eqService.drain(timeoutMillis);
+    this.cqService.shutdown();
+    this.cqService.join();
+    this.eqService.shutdown();
+    this.eqService.join();
+    return report;
+  }
+
+  // counters and latency histograms of all connections of this service
+  public ServiceMetrics getMetrics() {
+    return this.eqService.getMetrics();
+  }
+
+  // largest message a ResilientConnection or Connection.sendReliable can carry
+  public int getMaxReliablePayload() {
+    return this.eqService.getMaxReliablePayload();
+  }
+
+  public DrainReport getDrainReport() {
+    return this.eqService.getDrainReport();
+  }
+
   public void join() {
     this.cqService.join();
     this.eqService.join();
@@ -73,10 +138,18 @@ public abstract class Service {
     this.eqService.setReadCallback(callback);
   }
 
+  public void setWriteCallback(Handler callback) {
+    this.eqService.setWriteCallback(callback);
+  }
+
   public void setShutdownCallback(Handler callback) {
     this.eqService.setShutdownCallback(callback);
   }
 
+  public void setErrorCallback(Handler callback) {
+    this.eqService.setErrorCallback(callback);
+  }
+
   public HpnlBuffer regRmaBuffer(ByteBuffer byteBuffer, int bufferSize) {
     return this.eqService.regRmaBuffer(byteBuffer, bufferSize);
   }
@@ -23,6 +23,8 @@ import picocli.CommandLine;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Command;
 
+import com.intel.hpnl.service.Calibration;
+import com.intel.hpnl.service.Calibrator;
 import com.intel.hpnl.service.Client;
 import com.intel.hpnl.core.Connection;
 
@@ -53,7 +55,21 @@ public class ClientTest implements Runnable {
   @Option(names = {"-f", "--affinity"}, required = false, split = ",",  description = "HPNL thread affinity")
   int[] affinities = null;
 
+  @Option(names = {"-c", "--signal_interval"}, required = false, description = "request a send completion every N sends, 0 for explicit requests only")
+  int signalInterval = 1;
+
+  @Option(names = {"-C", "--calibrate"}, required = false, description = "probe worker and buffer settings over loopback first, overrides -w, -n, -s and -f")
+  boolean calibrate = false;
+
   public void run() {
+    if (calibrate) {
+      Calibration calibration = new Calibrator(msgSize, 1, 1).calibrate();
+      System.out.println(calibration.getReport());
+      workNbr = calibration.getWorkerNum();
+      bufferNbr = calibration.getBufferNum();
+      bufferSize = calibration.getBufferSize();
+      affinities = calibration.getAffinities();
+    }
     ByteBuffer byteBufferTmp = ByteBuffer.allocate(msgSize);
     for (int i = 0; i < msgSize; i++) {
       byteBufferTmp.put((byte)0);
@@ -62,6 +78,7 @@ public class ClientTest implements Runnable {
 
     Client client = new Client(workNbr, bufferNbr);
     client.setAffinities(affinities);
+    client.setSendSignalInterval(signalInterval);
 
     RecvCallback recvCallback = new RecvCallback(false, interval, msgSize);
     ShutdownCallback shutdownCallback = new ShutdownCallback();
@@ -22,6 +22,7 @@ import java.nio.ByteBuffer;
 import com.intel.hpnl.core.Handler;
 import com.intel.hpnl.core.HpnlBuffer;
 import com.intel.hpnl.core.Connection;
+import com.intel.hpnl.metrics.LatencyHistogram;
 
 public class RecvCallback implements Handler {
   public RecvCallback(boolean is_server, int interval, int msgSize) {
@@ -32,20 +33,24 @@ public class RecvCallback implements Handler {
   public void handle(Connection con, int bufferId, int blockBufferSize) {
     if (!is_server) {
       count++;
+      long now = System.nanoTime();
       if (count == 1) {
         startTime = System.currentTimeMillis();
         endTime = startTime;
       } else {
+        // one message in flight, so the gap between replies is a round trip
+        roundTrip.record(now-lastRecvNanos);
         endTime = System.currentTimeMillis();
         if ((total_time = endTime-startTime) >= interval*1000) {
-          latency = total_time*1000/(float)count;
           throughput = count*msgSize/1024/1024/(total_time/1000);
-          System.out.println(msgSize + " bytes message, latency " + latency + " us");
+          System.out.println(msgSize + " bytes message, round trip " + roundTrip.intervalSnapshot());
+          System.out.println(msgSize + " bytes message, send completion " + con.getMetrics().getSendLatencyHistogram().intervalSnapshot());
           System.out.println(msgSize + " bytes message, throughput " + throughput + " MB/s");
           System.out.println("************************************************************");
           count = 0;
         }
       }
+      lastRecvNanos = now;
     }
     HpnlBuffer recvBuffer = con.getRecvBuffer(bufferId);
     ByteBuffer recvByteBuffer = recvBuffer.get(blockBufferSize);
@@ -56,7 +61,8 @@ public class RecvCallback implements Handler {
   private long startTime;
   private long endTime;
   private float total_time = 0;
-  private float latency = 0;
+  private long lastRecvNanos;
+  private LatencyHistogram roundTrip = new LatencyHistogram();
   private float throughput = 0;
 
   private boolean is_server = false;
@@ -21,6 +21,8 @@ import picocli.CommandLine;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Command;
 
+import com.intel.hpnl.service.Calibration;
+import com.intel.hpnl.service.Calibrator;
 import com.intel.hpnl.service.Server;
 
 @Command(mixinStandardHelpOptions = true, version = "auto help demo - picocli 3.0")
@@ -50,9 +52,24 @@ public class ServerTest implements Runnable {
   @Option(names = {"-f", "--affinity"}, required = false, split = ",", description = "HPNL thread affinity")
   int[] affinities = null;
 
+  @Option(names = {"-c", "--signal_interval"}, required = false, description = "request a send completion every N sends, 0 for explicit requests only")
+  int signalInterval = 1;
+
+  @Option(names = {"-C", "--calibrate"}, required = false, description = "probe worker and buffer settings over loopback first, overrides -w, -n, -s and -f")
+  boolean calibrate = false;
+
   public void run() {
+    if (calibrate) {
+      Calibration calibration = new Calibrator(msgSize, 1, 1).calibrate();
+      System.out.println(calibration.getReport());
+      workNbr = calibration.getWorkerNum();
+      bufferNbr = calibration.getBufferNum();
+      bufferSize = calibration.getBufferSize();
+      affinities = calibration.getAffinities();
+    }
     Server server = new Server(workNbr, bufferNbr);
     server.setAffinities(affinities);
+    server.setSendSignalInterval(signalInterval);
 
     RecvCallback recvCallback = new RecvCallback(true, interval, msgSize);
     server.setRecvCallback(recvCallback);
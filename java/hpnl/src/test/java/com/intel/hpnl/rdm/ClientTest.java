@@ -61,7 +61,9 @@ public class ClientTest implements Runnable {
     }
     byteBufferTmp.flip();
 
-    RdmService service = new RdmService(bufferNbr, false).init();
+    RdmService service = new RdmService(workNbr, bufferNbr, false);
+    service.setAffinities(affinities);
+    service = service.init();
     assert(service != null) ;
     RecvCallback recvCallback = new RecvCallback(false, interval, msgSize);
     service.setRecvCallback(recvCallback);
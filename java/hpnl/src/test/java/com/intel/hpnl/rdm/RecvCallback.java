@@ -21,6 +21,7 @@ import java.nio.ByteBuffer;
 
 import com.intel.hpnl.core.RdmHandler;
 import com.intel.hpnl.core.HpnlBuffer;
+import com.intel.hpnl.core.PeerHandle;
 import com.intel.hpnl.core.RdmConnection;
 
 public class RecvCallback implements RdmHandler {
@@ -50,7 +51,11 @@ public class RecvCallback implements RdmHandler {
     HpnlBuffer recvBuffer = con.getRecvBuffer(bufferId);
     assert(recvBuffer != null);
     ByteBuffer recvByteBuffer = recvBuffer.get(blockBufferSize);
-    con.sendTo(recvByteBuffer, (byte)0, 10, recvBuffer.getName());
+    PeerHandle peer = recvBuffer.getPeer();
+    if (peer == null) {
+      peer = con.resolvePeer(recvBuffer.getName());
+    }
+    con.sendTo(recvByteBuffer, (byte)0, 10, peer);
   }
   private long count = 0;
   private long startTime;
@@ -51,7 +51,9 @@ public class ServerTest implements Runnable {
   int[] affinities = null;
 
   public void run() {
-    RdmService service = new RdmService(bufferNbr, true).init();
+    RdmService service = new RdmService(workNbr, bufferNbr, true);
+    service.setAffinities(affinities);
+    service = service.init();
     assert(service != null);
     
     RecvCallback recvCallback = new RecvCallback(true, interval, msgSize);
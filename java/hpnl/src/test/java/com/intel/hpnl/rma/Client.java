@@ -28,6 +28,7 @@ public class Client {
   public static void main(String args[]) {
     final int BUFFER_SIZE = 65536;
     final int BUFFER_NUM = 32;
+    final String addr = args.length > 0 ? args[0] : "127.0.0.1";
 
     ByteBuffer byteBufferTmp = ByteBuffer.allocate(4096);
     byteBufferTmp.putChar('a');
@@ -50,7 +51,7 @@ public class Client {
     eqService.initBufferPool(BUFFER_NUM, BUFFER_SIZE, BUFFER_NUM);
 
     cqService.start();
-    Connection con = eqService.connect("172.168.2.106", "123456", 0);
+    Connection con = eqService.connect(addr, "123456", 0);
     assert(con != null);
     System.out.println("connected, start to remote read.");
     
@@ -24,6 +24,7 @@ public class Server {
   public static void main(String args[]) {
     final int BUFFER_SIZE = 65536;
     final int BUFFER_NUM = 128;
+    final String addr = args.length > 0 ? args[0] : "127.0.0.1";
 
     EqService eqService = new EqService(1, BUFFER_NUM, true).init();
     CqService cqService = new CqService(eqService).init();
@@ -35,7 +36,7 @@ public class Server {
     eqService.initBufferPool(BUFFER_NUM, BUFFER_SIZE, BUFFER_NUM);
 
     cqService.start();
-    eqService.listen("172.168.2.106", "123456");
+    eqService.listen(addr, "123456");
 
     cqService.join();
     eqService.shutdown();
@@ -0,0 +1,126 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.rpc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import picocli.CommandLine;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Command;
+
+import com.intel.hpnl.core.Connection;
+import com.intel.hpnl.core.Handler;
+import com.intel.hpnl.service.Client;
+
+@Command(mixinStandardHelpOptions = true, version = "auto help demo - picocli 3.0")
+public class ClientTest implements Runnable {
+
+  @Option(names = {"-a", "--address"}, required = true, description = "server address")
+  String addr = "localhost";
+
+  @Option(names = {"-p", "--port"}, required = false, description = "server port")
+  String port = "123456";
+
+  @Option(names = {"-s", "--buffer_size"}, required = false, description = "buffer size")
+  int bufferSize = 65536;
+
+  @Option(names = {"-n", "--buffer_number"}, required = false, description = "buffer number")
+  int bufferNbr = 32;
+
+  @Option(names = {"-m", "--message_size"}, required = false, description = "request size")
+  int msgSize = 4096;
+
+  @Option(names = {"-w", "--worker_number"}, required = false, description = "worker numbers")
+  int workNbr = 1;
+
+  @Option(names = {"-c", "--calls"}, required = false, description = "total calls")
+  int callNum = 100000;
+
+  @Option(names = {"-d", "--depth"}, required = false, description = "calls in flight")
+  int depth = 64;
+
+  @Option(names = {"-t", "--timeout"}, required = false, description = "per call timeout in ms")
+  long timeoutMillis = 1000;
+
+  @Option(names = {"-o", "--offload"}, required = false, description = "call the executor backed method")
+  boolean offload = false;
+
+  public void run() {
+    ByteBuffer request = ByteBuffer.allocateDirect(msgSize);
+    for (int i = 0; i < msgSize; i++) {
+      request.put((byte)0);
+    }
+    request.flip();
+
+    Client client = new Client(workNbr, bufferNbr);
+    RpcService rpcService = new RpcService();
+    client.setRecvCallback(rpcService);
+    client.setShutdownCallback(new Handler() {
+      public void handle(Connection con, int bufferId, int blockBufferSize) {
+        rpcService.closeChannel(con);
+      }
+    });
+    client.initBufferPool(bufferNbr, bufferSize, bufferNbr);
+    client.start();
+
+    Connection con = client.connect(addr, port, 0);
+    assert(con != null);
+    RpcChannel channel = rpcService.getChannel(con);
+    int methodId = offload ? ServerTest.SLEEP_ECHO : ServerTest.ECHO;
+
+    CountDownLatch done = new CountDownLatch(callNum);
+    AtomicLong issued = new AtomicLong(0);
+    AtomicLong failed = new AtomicLong(0);
+    RpcCallback callback = new RpcCallback() {
+      public void onResponse(ByteBuffer response) {
+        next();
+      }
+      public void onError(RpcException e) {
+        failed.incrementAndGet();
+        next();
+      }
+      private void next() {
+        done.countDown();
+        if (issued.incrementAndGet() <= callNum) {
+          channel.call(methodId, request, timeoutMillis, this);
+        }
+      }
+    };
+    long startTime = System.nanoTime();
+    for (int i = 0; i < depth && issued.incrementAndGet() <= callNum; i++) {
+      channel.call(methodId, request, timeoutMillis, callback);
+    }
+    try {
+      done.await();
+    } catch (InterruptedException e) {
+      e.printStackTrace();
+    }
+    long elapsed = System.nanoTime()-startTime;
+    System.out.println(callNum + " calls, depth " + depth + ", " + failed.get() + " failed");
+    System.out.println("throughput " + callNum*1000000000L/elapsed + " calls/s, latency " + elapsed/1000/callNum*depth + " us");
+
+    rpcService.shutdown();
+    client.shutdown();
+  }
+
+  public static void main(String... args) {
+    CommandLine.run(new ClientTest(), args);
+  }
+}
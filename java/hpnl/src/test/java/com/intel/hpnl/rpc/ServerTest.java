@@ -0,0 +1,83 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.intel.hpnl.rpc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import picocli.CommandLine;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Command;
+
+import com.intel.hpnl.core.Connection;
+import com.intel.hpnl.service.Server;
+
+@Command(mixinStandardHelpOptions = true, version = "auto help demo - picocli 3.0")
+public class ServerTest implements Runnable {
+
+  @Option(names = {"-a", "--address"}, required = false, description = "server address")
+  String addr = "localhost";
+
+  @Option(names = {"-p", "--port"}, required = false, description = "server port")
+  String port = "123456";
+
+  @Option(names = {"-s", "--buffer_size"}, required = false, description = "buffer size")
+  int bufferSize = 65536;
+
+  @Option(names = {"-n", "--buffer_number"}, required = false, description = "buffer number")
+  int bufferNbr = 32;
+
+  @Option(names = {"-w", "--worker_number"}, required = false, description = "worker numbers")
+  int workNbr = 3;
+
+  @Option(names = {"-e", "--executor_threads"}, required = false, description = "threads running the offloaded method, 0 to run every method inline")
+  int executorThreads = 2;
+
+  public void run() {
+    Server server = new Server(workNbr, bufferNbr);
+    RpcService rpcService = new RpcService();
+    // method 1 echoes inline on the CqThread
+    rpcService.register(ECHO, new RpcMethod() {
+      public ByteBuffer handle(Connection con, ByteBuffer request) {
+        return request;
+      }
+    });
+    // method 2 simulates blocking work on an executor
+    ExecutorService executor = executorThreads > 0 ? Executors.newFixedThreadPool(executorThreads) : null;
+    rpcService.register(SLEEP_ECHO, new RpcMethod() {
+      public ByteBuffer handle(Connection con, ByteBuffer request) throws Exception {
+        Thread.sleep(1);
+        return request;
+      }
+    }, executor);
+    server.setRecvCallback(rpcService);
+
+    server.initBufferPool(bufferNbr, bufferSize, bufferNbr);
+    server.start();
+    server.listen(addr, port);
+    server.join();
+  }
+
+  public static void main(String... args) {
+    CommandLine.run(new ServerTest(), args);
+  }
+
+  static final int ECHO = 1;
+  static final int SLEEP_ECHO = 2;
+}
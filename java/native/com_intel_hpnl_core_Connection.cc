@@ -18,6 +18,7 @@
 #include "com_intel_hpnl_core_Connection.h"
 
 #include "core/ConnectionImpl.h"
+#include "core/MsgConnection.h"
 #include "core/MsgStack.h"
 
 static jfieldID _get_self_id(JNIEnv* env, jobject thisObj) {
@@ -45,9 +46,10 @@ JNIEXPORT void JNICALL Java_com_intel_hpnl_core_Connection_recv(JNIEnv* env,
 }
 
 JNIEXPORT int JNICALL Java_com_intel_hpnl_core_Connection_send(
-    JNIEnv* env, jobject thisObj, jint blockBufferSize, jint bufferId, jlong conPtr) {
+    JNIEnv* env, jobject thisObj, jint blockBufferSize, jint bufferId, jboolean signaled,
+    jlong conPtr) {
   ConnectionImpl* con = *(ConnectionImpl**)&conPtr;
-  return con->send(blockBufferSize, bufferId);
+  return con->send(blockBufferSize, bufferId, signaled);
 }
 
 JNIEXPORT int JNICALL Java_com_intel_hpnl_core_Connection_read(
@@ -57,6 +59,61 @@ JNIEXPORT int JNICALL Java_com_intel_hpnl_core_Connection_read(
   return con->read(bufferId, localOffset, len, remoteAddr, remoteMr);
 }
 
+JNIEXPORT int JNICALL Java_com_intel_hpnl_core_Connection_write(
+    JNIEnv* env, jobject thisObj, jint bufferId, jint localOffset, jlong len,
+    jlong remoteAddr, jlong remoteMr, jlong conPtr) {
+  ConnectionImpl* con = *(ConnectionImpl**)&conPtr;
+  return con->write(bufferId, localOffset, len, remoteAddr, remoteMr);
+}
+
+/*
+ * Class:     com_intel_hpnl_Connection
+ * Method:    get_pending_num
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_Connection_get_1pending_1num(
+    JNIEnv* env, jobject thisObj, jlong conPtr) {
+  MsgConnection* con = *(MsgConnection**)&conPtr;
+  return con->get_pending_num();
+}
+
+/*
+ * Class:     com_intel_hpnl_Connection
+ * Method:    get_max_pending_num
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_Connection_get_1max_1pending_1num(
+    JNIEnv* env, jobject thisObj, jlong conPtr) {
+  MsgConnection* con = *(MsgConnection**)&conPtr;
+  return con->get_max_pending_num();
+}
+
+/*
+ * Class:     com_intel_hpnl_Connection
+ * Method:    get_retry_num
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_com_intel_hpnl_core_Connection_get_1retry_1num(
+    JNIEnv* env, jobject thisObj, jlong conPtr) {
+  MsgConnection* con = *(MsgConnection**)&conPtr;
+  return con->get_retry_num();
+}
+
+/*
+ * Class:     com_intel_hpnl_core_Connection
+ * Method:    inject
+ * Signature: (Ljava/nio/ByteBuffer;IJ)I
+ */
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_Connection_inject(JNIEnv* env,
+                                                                 jobject thisObj,
+                                                                 jobject buffer,
+                                                                 jint bufferSize,
+                                                                 jlong conPtr) {
+  MsgConnection* con = *(MsgConnection**)&conPtr;
+  char* bytes = (char*)(*env).GetDirectBufferAddress(buffer);
+  return con->inject(bytes, bufferSize);
+}
+
 /*
  * Class:     com_intel_hpnl_Connection
  * Method:    init
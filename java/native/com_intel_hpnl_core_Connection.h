@@ -35,10 +35,10 @@ JNIEXPORT void JNICALL Java_com_intel_hpnl_core_Connection_recv
 /*
  * Class:     com_intel_hpnl_core_Connection
  * Method:    send
- * Signature: (IIJ)I
+ * Signature: (IIZJ)I
  */
 JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_Connection_send
-  (JNIEnv *, jobject, jint, jint, jlong);
+  (JNIEnv *, jobject, jint, jint, jboolean, jlong);
 
 /*
  * Class:     com_intel_hpnl_core_Connection
@@ -48,6 +48,14 @@ JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_Connection_send
 JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_Connection_read
   (JNIEnv *, jobject, jint, jint, jlong, jlong, jlong, jlong);
 
+/*
+ * Class:     com_intel_hpnl_core_Connection
+ * Method:    write
+ * Signature: (IIJJJJ)I
+ */
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_Connection_write
+  (JNIEnv *, jobject, jint, jint, jlong, jlong, jlong, jlong);
+
 /*
  * Class:     com_intel_hpnl_core_Connection
  * Method:    init
@@ -56,6 +64,38 @@ JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_Connection_read
 JNIEXPORT void JNICALL Java_com_intel_hpnl_core_Connection_init
   (JNIEnv *, jobject, jlong);
 
+/*
+ * Class:     com_intel_hpnl_core_Connection
+ * Method:    get_pending_num
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_Connection_get_1pending_1num
+  (JNIEnv *, jobject, jlong);
+
+/*
+ * Class:     com_intel_hpnl_core_Connection
+ * Method:    get_max_pending_num
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_Connection_get_1max_1pending_1num
+  (JNIEnv *, jobject, jlong);
+
+/*
+ * Class:     com_intel_hpnl_core_Connection
+ * Method:    get_retry_num
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_com_intel_hpnl_core_Connection_get_1retry_1num
+  (JNIEnv *, jobject, jlong);
+
+/*
+ * Class:     com_intel_hpnl_core_Connection
+ * Method:    inject
+ * Signature: (Ljava/nio/ByteBuffer;IJ)I
+ */
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_Connection_inject
+  (JNIEnv *, jobject, jobject, jint, jlong);
+
 /*
  * Class:     com_intel_hpnl_core_Connection
  * Method:    finalize
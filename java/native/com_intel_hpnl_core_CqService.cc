@@ -54,14 +54,15 @@ static void _set_self(JNIEnv* env, jobject thisObj, ExternalCqService* self) {
  * Signature: (I)I
  */
 JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_CqService_wait_1cq_1event(
-    JNIEnv* env, jobject thisObj, jint index, jlong cqServicePtr) {
+    JNIEnv* env, jobject thisObj, jint index, jint waitMillis, jlong cqServicePtr) {
   ExternalCqService* service = *(ExternalCqService**)&cqServicePtr;
   fid_eq* eq;
   int block_buffer_size = 0;
   int buffer_id = 0;
   MsgConnection* con = NULL;
   Chunk* ck = NULL;
-  int ret = service->wait_cq_event(index, &eq, &ck, &buffer_id, &block_buffer_size);
+  int ret =
+      service->wait_cq_event(index, &eq, &ck, &buffer_id, &block_buffer_size, waitMillis);
   if (ret <= 0) {
     return ret;
   }
@@ -79,6 +80,17 @@ JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_CqService_wait_1cq_1event(
   return ret;
 }
 
+/*
+ * Class:     com_intel_hpnl_core_CqService
+ * Method:    get_epoll_num
+ * Signature: (IJ)J
+ */
+JNIEXPORT jlong JNICALL Java_com_intel_hpnl_core_CqService_get_1epoll_1num(
+    JNIEnv* env, jobject thisObj, jint index, jlong cqServicePtr) {
+  ExternalCqService* service = *(ExternalCqService**)&cqServicePtr;
+  return service->get_epoll_num(index);
+}
+
 /*
  * Class:     com_intel_hpnl_core_CqService
  * Method:    init
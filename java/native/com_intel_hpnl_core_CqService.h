@@ -27,9 +27,17 @@ extern "C" {
 /*
  * Class:     com_intel_hpnl_core_CqService
  * Method:    wait_cq_event
- * Signature: (IJ)I
+ * Signature: (IIJ)I
  */
 JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_CqService_wait_1cq_1event
+  (JNIEnv *, jobject, jint, jint, jlong);
+
+/*
+ * Class:     com_intel_hpnl_core_CqService
+ * Method:    get_epoll_num
+ * Signature: (IJ)J
+ */
+JNIEXPORT jlong JNICALL Java_com_intel_hpnl_core_CqService_get_1epoll_1num
   (JNIEnv *, jobject, jint, jlong);
 
 /*
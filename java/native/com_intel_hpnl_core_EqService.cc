@@ -43,7 +43,7 @@ static jfieldID _get_self_id(JNIEnv* env, jobject thisObj) {
 
     handleEqCallback =
         (*env).GetMethodID(eqServiceClassTmp, "handleEqCallback", "(JII)V");
-    reallocBufferPool = (*env).GetMethodID(eqServiceClassTmp, "reallocBufferPool", "()V");
+    reallocBufferPool = (*env).GetMethodID(eqServiceClassTmp, "reallocBufferPool", "()Z");
     establishConnection =
         (*env).GetMethodID(eqServiceClassTmp, "establishConnection",
                            "(JJILjava/lang/String;ILjava/lang/String;I)V");
@@ -108,7 +108,9 @@ JNIEXPORT jlong JNICALL Java_com_intel_hpnl_core_EqService_native_1connect(
   const char* port = (*env).GetStringUTFChars(port_, 0);
   
   while (!service->is_buffer_enough()) {
-    (*env).CallVoidMethod(thisObj, reallocBufferPool);
+    if (!(*env).CallBooleanMethod(thisObj, reallocBufferPool)) {
+      return -1;
+    }
   }
   fid_eq* new_eq = service->connect(ip, port);
   if (!new_eq) {
@@ -134,7 +136,11 @@ JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_EqService_wait_1eq_1event1(
   if (ret == ACCEPT_EVENT) {
     // accept new connection and register eq id
     while (!service->is_buffer_enough()) {
-      (*env).CallVoidMethod(thisObj, reallocBufferPool);
+      if (!(*env).CallBooleanMethod(thisObj, reallocBufferPool)) {
+        // buffer pool reaches its memory budget
+        service->reject(info);
+        return ret;
+      }
     }
     fid_eq* new_eq = service->accept(info);
     assert(new_eq != NULL);
@@ -233,6 +239,61 @@ JNIEXPORT void JNICALL Java_com_intel_hpnl_core_EqService_set_1buffer1(
   service->set_buffer((char*)bufferAddr, size, bufferId);
 }
 
+/*
+ * Class:     com_intel_hpnl_EqService
+ * Method:    alloc_slab
+ * Signature: (IIIZJ)Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_com_intel_hpnl_core_EqService_alloc_1slab1(
+    JNIEnv* env, jobject thisObj, jint bufferSize, jint bufferNum, jint firstBufferId,
+    jboolean hugePage, jlong eqServicePtr) {
+  ExternalEqService* service = *(ExternalEqService**)&eqServicePtr;
+  char* memory = service->alloc_slab(bufferSize, bufferNum, firstBufferId, hugePage);
+  if (!memory) {
+    return NULL;
+  }
+  return (*env).NewDirectByteBuffer(memory, (jlong)bufferSize * bufferNum);
+}
+
+/*
+ * Class:     com_intel_hpnl_EqService
+ * Method:    evict_buffer
+ * Signature: (IJJ)[I
+ */
+JNIEXPORT jintArray JNICALL Java_com_intel_hpnl_core_EqService_evict_1buffer1(
+    JNIEnv* env, jobject thisObj, jint keepBufferNum, jlong idleMillis, jlong eqServicePtr) {
+  ExternalEqService* service = *(ExternalEqService**)&eqServicePtr;
+  std::vector<int> ids;
+  service->evict_buffer(keepBufferNum, idleMillis, ids);
+  jintArray evicted = (*env).NewIntArray(ids.size());
+  if (!ids.empty()) {
+    (*env).SetIntArrayRegion(evicted, 0, ids.size(), ids.data());
+  }
+  return evicted;
+}
+
+/*
+ * Class:     com_intel_hpnl_EqService
+ * Method:    free_buffer_num
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_EqService_free_1buffer_1num1(
+    JNIEnv* env, jobject thisObj, jlong eqServicePtr) {
+  ExternalEqService* service = *(ExternalEqService**)&eqServicePtr;
+  return service->free_buffer_num();
+}
+
+/*
+ * Class:     com_intel_hpnl_EqService
+ * Method:    set_selective_completion
+ * Signature: (ZJ)V
+ */
+JNIEXPORT void JNICALL Java_com_intel_hpnl_core_EqService_set_1selective_1completion1(
+    JNIEnv* env, jobject thisObj, jboolean selectiveCompletion, jlong eqServicePtr) {
+  ExternalEqService* service = *(ExternalEqService**)&eqServicePtr;
+  service->set_selective_completion(selectiveCompletion);
+}
+
 /*
  * Class:     com_intel_hpnl_EqService
  * Method:    reg_rma_buffer
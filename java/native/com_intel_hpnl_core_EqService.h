@@ -72,6 +72,38 @@ JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_EqService_delete_1eq_1event1
 JNIEXPORT void JNICALL Java_com_intel_hpnl_core_EqService_set_1buffer1
   (JNIEnv *, jobject, jobject, jlong, jint, jlong);
 
+/*
+ * Class:     com_intel_hpnl_core_EqService
+ * Method:    alloc_slab1
+ * Signature: (IIIZJ)Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_com_intel_hpnl_core_EqService_alloc_1slab1
+  (JNIEnv *, jobject, jint, jint, jint, jboolean, jlong);
+
+/*
+ * Class:     com_intel_hpnl_core_EqService
+ * Method:    evict_buffer1
+ * Signature: (IJJ)[I
+ */
+JNIEXPORT jintArray JNICALL Java_com_intel_hpnl_core_EqService_evict_1buffer1
+  (JNIEnv *, jobject, jint, jlong, jlong);
+
+/*
+ * Class:     com_intel_hpnl_core_EqService
+ * Method:    free_buffer_num1
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_EqService_free_1buffer_1num1
+  (JNIEnv *, jobject, jlong);
+
+/*
+ * Class:     com_intel_hpnl_core_EqService
+ * Method:    set_selective_completion1
+ * Signature: (ZJ)V
+ */
+JNIEXPORT void JNICALL Java_com_intel_hpnl_core_EqService_set_1selective_1completion1
+  (JNIEnv *, jobject, jboolean, jlong);
+
 /*
  * Class:     com_intel_hpnl_core_EqService
  * Method:    reg_rma_buffer
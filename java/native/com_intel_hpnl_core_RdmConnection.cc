@@ -80,6 +80,50 @@ JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_RdmConnection_sendTo(
   return res;
 }
 
+/*
+ * Class:     com_intel_hpnl_core_RdmConnection
+ * Method:    resolve_peer
+ * Signature: (Ljava/nio/ByteBuffer;J)J
+ */
+JNIEXPORT jlong JNICALL Java_com_intel_hpnl_core_RdmConnection_resolve_1peer(
+    JNIEnv* env, jobject obj, jobject peerName, jlong nativeHandle) {
+  RdmConnection* con = *(RdmConnection**)&nativeHandle;
+  jbyte* bytes = (jbyte*)(*env).GetDirectBufferAddress(peerName);
+  fi_addr_t addr = con->resolve_peer((char*)bytes);
+  if (addr == FI_ADDR_NOTAVAIL) {
+    return -1;
+  }
+  return addr;
+}
+
+/*
+ * Class:     com_intel_hpnl_core_RdmConnection
+ * Method:    sendToPeer
+ * Signature: (IIJJ)I
+ */
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_RdmConnection_sendToPeer(
+    JNIEnv* env, jobject obj, jint blockBufferSize, jint bufferId, jlong peerAddress,
+    jlong nativeHandle) {
+  RdmConnection* con = *(RdmConnection**)&nativeHandle;
+  int res = con->sendToPeer(blockBufferSize, bufferId, (fi_addr_t)peerAddress);
+  return res;
+}
+
+/*
+ * Class:     com_intel_hpnl_core_RdmConnection
+ * Method:    sendToAll
+ * Signature: (II[JIJ)I
+ */
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_RdmConnection_sendToAll(
+    JNIEnv* env, jobject obj, jint blockBufferSize, jint bufferId, jlongArray peerAddresses,
+    jint peerNum, jlong nativeHandle) {
+  RdmConnection* con = *(RdmConnection**)&nativeHandle;
+  std::vector<fi_addr_t> peer_addrs(peerNum);
+  (*env).GetLongArrayRegion(peerAddresses, 0, peerNum, (jlong*)peer_addrs.data());
+  int res = con->sendToAll(blockBufferSize, bufferId, peer_addrs.data(), peerNum);
+  return res;
+}
+
 JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_RdmConnection_sendBuf(
     JNIEnv* env, jobject obj, jobject buffer, jint bufferSize, jlong nativeHandle) {
   RdmConnection* con = *(RdmConnection**)&nativeHandle;
@@ -64,6 +64,30 @@ JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_RdmConnection_send
 JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_RdmConnection_sendTo
   (JNIEnv *, jobject, jint, jint, jobject, jlong);
 
+/*
+ * Class:     com_intel_hpnl_core_RdmConnection
+ * Method:    resolve_peer
+ * Signature: (Ljava/nio/ByteBuffer;J)J
+ */
+JNIEXPORT jlong JNICALL Java_com_intel_hpnl_core_RdmConnection_resolve_1peer
+  (JNIEnv *, jobject, jobject, jlong);
+
+/*
+ * Class:     com_intel_hpnl_core_RdmConnection
+ * Method:    sendToPeer
+ * Signature: (IIJJ)I
+ */
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_RdmConnection_sendToPeer
+  (JNIEnv *, jobject, jint, jint, jlong, jlong);
+
+/*
+ * Class:     com_intel_hpnl_core_RdmConnection
+ * Method:    sendToAll
+ * Signature: (II[JIJ)I
+ */
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_RdmConnection_sendToAll
+  (JNIEnv *, jobject, jint, jint, jlongArray, jint, jlong);
+
 /*
  * Class:     com_intel_hpnl_core_RdmConnection
  * Method:    sendBuf
@@ -34,10 +34,10 @@ static jfieldID _get_self_id(JNIEnv* env, jobject thisObj) {
     jclass serviceClassTmp;
     serviceClassTmp = env->FindClass("com/intel/hpnl/core/RdmService");
 
-    handleCallback = (*env).GetMethodID(serviceClassTmp, "handleCallback", "(JIII)V");
-    reallocBufferPool = (*env).GetMethodID(serviceClassTmp, "reallocBufferPool", "()V");
+    handleCallback = (*env).GetMethodID(serviceClassTmp, "handleCallback", "(JIIIJ)V");
+    reallocBufferPool = (*env).GetMethodID(serviceClassTmp, "reallocBufferPool", "()Z");
     establishConnection =
-        (*env).GetMethodID(serviceClassTmp, "establishConnection", "(J)V");
+        (*env).GetMethodID(serviceClassTmp, "establishConnection", "(JI)V");
     pushSendBuffer = (*env).GetMethodID(serviceClassTmp, "pushSendBuffer", "(JI)V");
 
     fidSelfPtr = env->GetFieldID(serviceClassTmp, "nativeHandle", "J");
@@ -57,9 +57,10 @@ static void _set_self(JNIEnv* env, jobject thisObj, ExternalRdmService* self) {
 }
 
 JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_RdmService_init(JNIEnv* env, jobject obj,
+                                                                jint worker_num,
                                                                 jint buffer_num,
                                                                 jboolean is_server) {
-  ExternalRdmService* service = new ExternalRdmService(buffer_num, is_server);
+  ExternalRdmService* service = new ExternalRdmService(worker_num, buffer_num, is_server);
   int res = service->init();
   _set_self(env, obj, service);
   return res;
@@ -71,14 +72,16 @@ JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_RdmService_listen(
   const char* ip = (*env).GetStringUTFChars(ip_, 0);
   const char* port = (*env).GetStringUTFChars(port_, 0);
   while (!service->is_buffer_enough()) {
-    (*env).CallVoidMethod(obj, reallocBufferPool);
+    if (!(*env).CallBooleanMethod(obj, reallocBufferPool)) {
+      return -1;
+    }
   }
   RdmConnection* con = service->listen(ip, port);
   if (!con) {
     return -1;
   }
 
-  (*env).CallVoidMethod(obj, establishConnection, *(jlong*)&con);
+  (*env).CallVoidMethod(obj, establishConnection, *(jlong*)&con, con->get_cq_index());
 
   std::vector<Chunk*> send_buffer = con->get_send_chunk();
   if (!send_buffer.empty()) {
@@ -97,13 +100,15 @@ JNIEXPORT jlong JNICALL Java_com_intel_hpnl_core_RdmService_get_1con(
   const char* ip = (*env).GetStringUTFChars(ip_, 0);
   const char* port = (*env).GetStringUTFChars(port_, 0);
   while (!service->is_buffer_enough()) {
-    (*env).CallVoidMethod(obj, reallocBufferPool);
+    if (!(*env).CallBooleanMethod(obj, reallocBufferPool)) {
+      return -1;
+    }
   }
   RdmConnection* con = (RdmConnection*)service->get_con(ip, port);
   if (!con) {
     return -1;
   }
-  (*env).CallVoidMethod(obj, establishConnection, *(jlong*)&con);
+  (*env).CallVoidMethod(obj, establishConnection, *(jlong*)&con, con->get_cq_index());
 
   std::vector<Chunk*> send_buffer = con->get_send_chunk();
   int chunks_size = send_buffer.size();
@@ -114,19 +119,24 @@ JNIEXPORT jlong JNICALL Java_com_intel_hpnl_core_RdmService_get_1con(
 }
 
 JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_RdmService_wait_1event(
-    JNIEnv* env, jobject obj, jlong nativeHandle) {
+    JNIEnv* env, jobject obj, jint index, jlong nativeHandle) {
   ExternalRdmService* service = *(ExternalRdmService**)&nativeHandle;
   Chunk* ck = nullptr;
   int block_buffer_size = 0;
-  int ret = service->wait_event(&ck, &block_buffer_size);
+  int ret = service->wait_event(index, &ck, &block_buffer_size);
   if (ret == 0) {
     return 0;
   } else if (ret == CLOSE_EVENT) {
     return -1;
+  } else if (!ck) {
+    // completion of sendBuf/sendBufTo, nothing to hand back
+    return ret;
   } else {
     RdmConnection* con = (RdmConnection*)ck->con;
+    // sender address of a received frame, used to validate its peer id
+    fi_addr_t src_addr = ret == RECV_EVENT ? ck->peer_addr : FI_ADDR_NOTAVAIL;
     (*env).CallVoidMethod(obj, handleCallback, *(jlong*)&con, ret, ck->buffer_id,
-                          block_buffer_size);
+                          block_buffer_size, *(jlong*)&src_addr);
     if (ret == RECV_EVENT) {
       con->activate_recv_chunk(ck);
     }
@@ -134,6 +144,12 @@ JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_RdmService_wait_1event(
   }
 }
 
+JNIEXPORT void JNICALL Java_com_intel_hpnl_core_RdmService_wakeup(
+    JNIEnv* env, jobject obj, jint index, jlong nativeHandle) {
+  ExternalRdmService* service = *(ExternalRdmService**)&nativeHandle;
+  service->wakeup(index);
+}
+
 JNIEXPORT void JNICALL Java_com_intel_hpnl_core_RdmService_set_1buffer1(
     JNIEnv* env, jobject obj, jobject buffer, jlong size, jint bufferId,
     jlong nativeHandle) {
@@ -143,6 +159,50 @@ JNIEXPORT void JNICALL Java_com_intel_hpnl_core_RdmService_set_1buffer1(
   service->set_buffer((char*)bufferAddr, size, bufferId);
 }
 
+/*
+ * Class:     com_intel_hpnl_core_RdmService
+ * Method:    alloc_slab1
+ * Signature: (IIIZJ)Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_com_intel_hpnl_core_RdmService_alloc_1slab1(
+    JNIEnv* env, jobject obj, jint bufferSize, jint bufferNum, jint firstBufferId,
+    jboolean hugePage, jlong nativeHandle) {
+  ExternalRdmService* service = *(ExternalRdmService**)&nativeHandle;
+  char* memory = service->alloc_slab(bufferSize, bufferNum, firstBufferId, hugePage);
+  if (!memory) {
+    return NULL;
+  }
+  return (*env).NewDirectByteBuffer(memory, (jlong)bufferSize * bufferNum);
+}
+
+/*
+ * Class:     com_intel_hpnl_core_RdmService
+ * Method:    evict_buffer1
+ * Signature: (IJJ)[I
+ */
+JNIEXPORT jintArray JNICALL Java_com_intel_hpnl_core_RdmService_evict_1buffer1(
+    JNIEnv* env, jobject obj, jint keepBufferNum, jlong idleMillis, jlong nativeHandle) {
+  ExternalRdmService* service = *(ExternalRdmService**)&nativeHandle;
+  std::vector<int> ids;
+  service->evict_buffer(keepBufferNum, idleMillis, ids);
+  jintArray evicted = (*env).NewIntArray(ids.size());
+  if (!ids.empty()) {
+    (*env).SetIntArrayRegion(evicted, 0, ids.size(), ids.data());
+  }
+  return evicted;
+}
+
+/*
+ * Class:     com_intel_hpnl_core_RdmService
+ * Method:    free_buffer_num1
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_RdmService_free_1buffer_1num1(
+    JNIEnv* env, jobject obj, jlong nativeHandle) {
+  ExternalRdmService* service = *(ExternalRdmService**)&nativeHandle;
+  return service->free_buffer_num();
+}
+
 /*
  * Class:     com_intel_hpnl_core_RdmService
  * Method:    free
@@ -27,10 +27,10 @@ extern "C" {
 /*
  * Class:     com_intel_hpnl_core_RdmService
  * Method:    init
- * Signature: (IZ)I
+ * Signature: (IIZ)I
  */
 JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_RdmService_init
-  (JNIEnv *, jobject, jint, jboolean);
+  (JNIEnv *, jobject, jint, jint, jboolean);
 
 /*
  * Class:     com_intel_hpnl_core_RdmService
@@ -51,10 +51,18 @@ JNIEXPORT jlong JNICALL Java_com_intel_hpnl_core_RdmService_get_1con
 /*
  * Class:     com_intel_hpnl_core_RdmService
  * Method:    wait_event
- * Signature: (J)I
+ * Signature: (IJ)I
  */
 JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_RdmService_wait_1event
-  (JNIEnv *, jobject, jlong);
+  (JNIEnv *, jobject, jint, jlong);
+
+/*
+ * Class:     com_intel_hpnl_core_RdmService
+ * Method:    wakeup
+ * Signature: (IJ)V
+ */
+JNIEXPORT void JNICALL Java_com_intel_hpnl_core_RdmService_wakeup
+  (JNIEnv *, jobject, jint, jlong);
 
 /*
  * Class:     com_intel_hpnl_core_RdmService
@@ -64,6 +72,30 @@ JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_RdmService_wait_1event
 JNIEXPORT void JNICALL Java_com_intel_hpnl_core_RdmService_set_1buffer1
   (JNIEnv *, jobject, jobject, jlong, jint, jlong);
 
+/*
+ * Class:     com_intel_hpnl_core_RdmService
+ * Method:    alloc_slab1
+ * Signature: (IIIZJ)Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_com_intel_hpnl_core_RdmService_alloc_1slab1
+  (JNIEnv *, jobject, jint, jint, jint, jboolean, jlong);
+
+/*
+ * Class:     com_intel_hpnl_core_RdmService
+ * Method:    evict_buffer1
+ * Signature: (IJJ)[I
+ */
+JNIEXPORT jintArray JNICALL Java_com_intel_hpnl_core_RdmService_evict_1buffer1
+  (JNIEnv *, jobject, jint, jlong, jlong);
+
+/*
+ * Class:     com_intel_hpnl_core_RdmService
+ * Method:    free_buffer_num1
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_intel_hpnl_core_RdmService_free_1buffer_1num1
+  (JNIEnv *, jobject, jlong);
+
 /*
  * Class:     com_intel_hpnl_core_RdmService
  * Method:    free
@@ -15,9 +15,23 @@
 // specific language governing permissions and limitations
 // under the License.
 
+#include <rdma/fi_domain.h>
+#include <sys/mman.h>
+
+#include <algorithm>
+#include <chrono>
+#include <set>
+
 #include "HPNL/ChunkMgr.h"
+#include "HPNL/Common.h"
 #include "HPNL/Connection.h"
 
+static uint64_t now_ms() {
+  return std::chrono::duration_cast<std::chrono::milliseconds>(
+             std::chrono::steady_clock::now().time_since_epoch())
+      .count();
+}
+
 ExternalChunkMgr::ExternalChunkMgr() : buffer_num(0), buffer_size(0), buffer_id(0) {}
 
 ExternalChunkMgr::ExternalChunkMgr(int buffer_num_, uint64_t buffer_size_) : buffer_num(buffer_num_), buffer_size(buffer_size_), buffer_id(0) {
@@ -33,11 +47,20 @@ ExternalChunkMgr::ExternalChunkMgr(int buffer_num_, uint64_t buffer_size_) : buf
 
 ExternalChunkMgr::~ExternalChunkMgr() {
   for (auto buf : buf_map) {
-    std::free(buf.second->buffer);
+    if (!buf.second->ptr) {
+      if (buf.second->mr) {
+        fi_close(&buf.second->mr->fid);
+      }
+      std::free(buf.second->buffer);
+    }
     delete buf.second;
     buf.second = nullptr;
   }
   buf_map.clear();
+  for (auto slab : slabs) {
+    free_slab(slab);
+  }
+  slabs.clear();
 }
 
 Chunk* ExternalChunkMgr::get(int id) {
@@ -60,6 +83,7 @@ void ExternalChunkMgr::reclaim(Chunk* ck, Connection* con) {
   std::lock_guard<std::mutex> l(mtx);
   if (!buf_map.count(ck->buffer_id))
     buf_map[ck->buffer_id] = ck;
+  ck->free_time = now_ms();
   bufs.push_back(ck);
   if (con) {
     con->remove_used_chunk(ck);
@@ -71,6 +95,130 @@ int ExternalChunkMgr::free_size() {
   return bufs.size();
 }
 
+char* ExternalChunkMgr::alloc_slab(fid_domain* domain, int buffer_size, int buffer_num,
+                                   int first_buffer_id, bool huge_page) {
+  uint64_t size = (uint64_t)buffer_size * buffer_num;
+  uint64_t alignment = huge_page ? HUGE_PAGE_SIZE : 4096;
+  auto slab = new Slab();
+  slab->size = (size + alignment - 1) / alignment * alignment;
+#ifdef __linux__
+  if (huge_page) {
+    void* memory = mmap(nullptr, slab->size, PROT_READ | PROT_WRITE,
+                        MAP_PRIVATE | MAP_ANONYMOUS | MAP_HUGETLB, -1, 0);
+    if (memory != MAP_FAILED) {
+      slab->memory = (char*)memory;
+      slab->mapped = true;
+    }
+  }
+#endif
+  if (!slab->memory) {
+    void* memory = nullptr;
+    if (posix_memalign(&memory, alignment, slab->size)) {
+      perror("posix_memalign");
+      delete slab;
+      return nullptr;
+    }
+    slab->memory = (char*)memory;
+#ifdef __linux__
+    // no reserved huge pages, let transparent huge pages back the slab
+    if (huge_page) {
+      madvise(slab->memory, slab->size, MADV_HUGEPAGE);
+    }
+#endif
+  }
+  if (domain) {
+    if (fi_mr_reg(domain, slab->memory, slab->size,
+                  FI_REMOTE_READ | FI_REMOTE_WRITE | FI_SEND | FI_RECV, 0, 0, 0, &slab->mr,
+                  nullptr)) {
+      perror("fi_mr_reg");
+      free_slab(slab);
+      return nullptr;
+    }
+  }
+  slab->buffer_num = buffer_num;
+  {
+    std::lock_guard<std::mutex> l(mtx);
+    slabs.push_back(slab);
+  }
+  for (int i = 0; i < buffer_num; i++) {
+    auto ck = new Chunk();
+    ck->buffer = slab->memory + (uint64_t)i * buffer_size;
+    ck->capacity = buffer_size;
+    ck->buffer_id = first_buffer_id + i;
+    ck->mr = slab->mr;
+    ck->ptr = slab;
+    ck->ctx.internal[4] = ck;
+    this->reclaim(ck, nullptr);
+  }
+  return slab->memory;
+}
+
+int ExternalChunkMgr::evict(int keep_num, uint64_t idle_ms, std::vector<int>& ids) {
+  std::lock_guard<std::mutex> l(mtx);
+  int excess = (int)bufs.size() - keep_num;
+  if (excess <= 0) {
+    return 0;
+  }
+  uint64_t now = now_ms();
+  std::map<Slab*, int> idle_slab_chunks;
+  for (auto ck : bufs) {
+    if (ck->ptr && now - ck->free_time >= idle_ms) {
+      idle_slab_chunks[(Slab*)ck->ptr]++;
+    }
+  }
+  std::set<Slab*> evicted_slabs;
+  for (auto slab : idle_slab_chunks) {
+    if (slab.second == slab.first->buffer_num && slab.second <= excess) {
+      evicted_slabs.insert(slab.first);
+      excess -= slab.second;
+    }
+  }
+  // bufs is used as a stack, so the chunks idle for the longest time come first
+  std::set<Chunk*> evicted_chunks;
+  for (auto ck : bufs) {
+    if (ck->ptr) {
+      if (evicted_slabs.count((Slab*)ck->ptr)) {
+        evicted_chunks.insert(ck);
+      }
+    } else if (excess > 0 && now - ck->free_time >= idle_ms) {
+      evicted_chunks.insert(ck);
+      excess--;
+    }
+  }
+  if (evicted_chunks.empty()) {
+    return 0;
+  }
+  bufs.erase(std::remove_if(bufs.begin(), bufs.end(),
+                            [&](Chunk* ck) { return evicted_chunks.count(ck) > 0; }),
+             bufs.end());
+  for (auto ck : evicted_chunks) {
+    ids.push_back(ck->buffer_id);
+    buf_map.erase(ck->buffer_id);
+    // buffer memory of single chunk is owned by the caller of set_buffer
+    if (!ck->ptr && ck->mr) {
+      fi_close(&ck->mr->fid);
+    }
+    delete ck;
+  }
+  for (auto slab : evicted_slabs) {
+    slabs.erase(std::find(slabs.begin(), slabs.end(), slab));
+    free_slab(slab);
+  }
+  return evicted_chunks.size();
+}
+
+void ExternalChunkMgr::free_slab(Slab* slab) {
+  if (slab->mr) {
+    fi_close(&slab->mr->fid);
+  }
+  if (slab->mapped) {
+    munmap(slab->memory, slab->size);
+  } else {
+    std::free(slab->memory);
+  }
+  delete slab;
+}
+
 uint32_t ExternalChunkMgr::get_id() {
   return buffer_id++;
 }
@@ -34,6 +34,7 @@ class ConnectionImpl : public Connection {
 
   /// only used by RDM by java binding
   virtual int send(int buffer_size, int id) { return -1; }
+  virtual int send(int buffer_size, int id, bool signaled) { return send(buffer_size, id); }
   virtual int sendTo(int buffer_size, int buffer_id, const char* peer_address) { return -1; }
   virtual int sendBuf(const char* buffer, int buffer_size) { return -1; }
   virtual int sendBufTo(const char* buffer, int buffer_size, const char* peer_address) { return -1; }
@@ -42,6 +43,10 @@ class ConnectionImpl : public Connection {
            uint64_t remote_buffer_address, uint64_t remote_buffer_rkey) {
     return -1;
   }
+  virtual int write(int local_buffer_id, int local_buffer_offset, uint64_t local_buffer_length,
+           uint64_t remote_buffer_address, uint64_t remote_buffer_rkey) {
+    return -1;
+  }
  protected:
   std::map<int, Chunk*> used_chunks;
 };
@@ -42,6 +42,9 @@ MsgConnection::MsgConnection(MsgStack* stack_, fid_fabric* fabric_, fi_info* inf
   status = IDLE;
   dest_port = 0;
   src_port = 0;
+  selective_completion = stack->is_selective_completion();
+  max_pending_num = 0;
+  retry_num = 0;
   recv_callback = nullptr;
   send_callback = nullptr;
   read_callback = nullptr;
@@ -49,6 +52,7 @@ MsgConnection::MsgConnection(MsgStack* stack_, fid_fabric* fabric_, fi_info* inf
 }
 
 MsgConnection::~MsgConnection() {
+  stack->unpark(this);
   for (auto ck : used_chunks) {
     chunk_mgr->reclaim(ck.second, this);
   }
@@ -95,7 +99,14 @@ int MsgConnection::init() {
     goto free_eq;
   }
 
-  if (fi_ep_bind(ep, &conCq->fid, FI_TRANSMIT | FI_RECV)) {
+  if (selective_completion) {
+    // receive completions are always needed, only transmit side is selective
+    if (fi_ep_bind(ep, &conCq->fid, FI_TRANSMIT | FI_SELECTIVE_COMPLETION) ||
+        fi_ep_bind(ep, &conCq->fid, FI_RECV)) {
+      perror("fi_ep_bind");
+      goto free_eq;
+    }
+  } else if (fi_ep_bind(ep, &conCq->fid, FI_TRANSMIT | FI_RECV)) {
     perror("fi_ep_bind");
     goto free_eq;
   }
@@ -106,7 +117,7 @@ int MsgConnection::init() {
     if (!ck) {
       return -1;
     }
-    if (external_ervice) {
+    if (external_ervice && !ck->mr) {
       fid_mr* mr = nullptr;
       if (fi_mr_reg(domain, ck->buffer, ck->capacity,
                     FI_REMOTE_READ | FI_REMOTE_WRITE | FI_SEND | FI_RECV, 0, 0, 0, &mr,
@@ -128,15 +139,17 @@ int MsgConnection::init() {
       if (!ck) {
         return -1;
       }
-      fid_mr* mr = nullptr;
-      if (fi_mr_reg(domain, ck->buffer, ck->capacity,
-                    FI_REMOTE_READ | FI_REMOTE_WRITE | FI_SEND | FI_RECV, 0, 0, 0, &mr,
-                    NULL)) {
-        perror("fi_mr_reg");
-        return -1;
+      if (!ck->mr) {
+        fid_mr* mr = nullptr;
+        if (fi_mr_reg(domain, ck->buffer, ck->capacity,
+                      FI_REMOTE_READ | FI_REMOTE_WRITE | FI_SEND | FI_RECV, 0, 0, 0, &mr,
+                      NULL)) {
+          perror("fi_mr_reg");
+          return -1;
+        }
+        ck->mr = mr;
+        mr = nullptr;
       }
-      ck->mr = mr;
-      mr = nullptr;
       ck->con = this;
       send_chunks.push_back(ck);
     }
@@ -160,45 +173,137 @@ free_ep:
 
 int MsgConnection::send(Chunk* ck) {
   ck->con = this;
-  int res = fi_send(ep, ck->buffer, (size_t)ck->size, fi_mr_desc((fid_mr*)ck->mr), 0, ck);
-  if (res != 0 && res != -11) {
-    perror("fi_send");
-  }
-  return res;
+  return post({PENDING_SEND, ck, true, 0, 0, 0, 0});
 }
 
-int MsgConnection::send(int buffer_size, int id) {
+int MsgConnection::send(int buffer_size, int id) { return send(buffer_size, id, true); }
+
+int MsgConnection::send(int buffer_size, int id, bool signaled) {
   Chunk* ck = chunk_mgr->get(id);
-  ck->size = buffer_size;
   if (ck == nullptr) return -1;
+  ck->size = buffer_size;
   ck->con = this;
-  int res = fi_send(ep, ck->buffer, (size_t)ck->size, fi_mr_desc((fid_mr*)ck->mr), 0, ck);
-  if (res != 0 && res != -11) {
-    perror("fi_send");
-  }
-  return res;
+  return post({PENDING_SEND, ck, signaled, 0, 0, 0, 0});
 }
 
 int MsgConnection::read(Chunk* ck, int local_offset, uint64_t len, uint64_t remote_addr,
                         uint64_t remote_key) {
   ck->con = this;
-  int res = fi_read(ep, (char*)ck->buffer + local_offset, len,
-                    fi_mr_desc((fid_mr*)ck->mr), 0, remote_addr, remote_key, ck);
+  return post({PENDING_READ, ck, true, local_offset, len, remote_addr, remote_key});
+}
 
-  if (res != 0 && res != -11) {
-    perror("fi_read");
-  }
-  return res;
+int MsgConnection::read(int local_buffer_id, int local_offset, uint64_t len,
+                        uint64_t remote_addr, uint64_t remote_key) {
+  Chunk* ck = stack->get_rma_chunk(local_buffer_id);
+  if (ck == nullptr) return -1;
+  return read(ck, local_offset, len, remote_addr, remote_key);
 }
 
 int MsgConnection::write(Chunk* ck, int local_offset, uint64_t len, uint64_t remote_addr,
                         uint64_t remote_key) {
   ck->con = this;
-  int res = fi_write(ep, (char*)ck->buffer + local_offset, len,
-                    fi_mr_desc((fid_mr*)ck->mr), 0, remote_addr, remote_key, ck);
+  return post({PENDING_WRITE, ck, true, local_offset, len, remote_addr, remote_key});
+}
+
+int MsgConnection::write(int local_buffer_id, int local_offset, uint64_t len,
+                         uint64_t remote_addr, uint64_t remote_key) {
+  Chunk* ck = stack->get_rma_chunk(local_buffer_id);
+  if (ck == nullptr) return -1;
+  return write(ck, local_offset, len, remote_addr, remote_key);
+}
+
+int MsgConnection::post(const PendingOp& op) {
+  {
+    std::lock_guard<std::mutex> l(pending_mtx);
+    // keep posting order behind the operations already parked
+    int res = pending_ops.empty() ? post_op(op) : -FI_EAGAIN;
+    if (res != -FI_EAGAIN) {
+      return res;
+    }
+    pending_ops.push_back(op);
+    if ((int)pending_ops.size() > max_pending_num) {
+      max_pending_num = pending_ops.size();
+    }
+    if (pending_ops.size() > 1) {
+      return 0;
+    }
+  }
+  // not under pending_mtx, flush_parked locks the stack first
+  stack->park(this);
+  return 0;
+}
+
+int MsgConnection::post_op(const PendingOp& op) {
+  Chunk* ck = op.ck;
+  int res;
+  if (op.type == PENDING_SEND) {
+    if (selective_completion) {
+      iovec iov = {ck->buffer, (size_t)ck->size};
+      void* desc = fi_mr_desc((fid_mr*)ck->mr);
+      fi_msg msg = {&iov, &desc, 1, 0, ck, 0};
+      res = fi_sendmsg(ep, &msg, op.signaled ? FI_COMPLETION : 0);
+    } else {
+      res = fi_send(ep, ck->buffer, (size_t)ck->size, fi_mr_desc((fid_mr*)ck->mr), 0, ck);
+    }
+    if (res != 0 && res != -FI_EAGAIN) {
+      perror("fi_send");
+    }
+    return res;
+  }
+  char* buffer = (char*)ck->buffer + op.local_offset;
+  if (selective_completion) {
+    iovec iov = {buffer, op.len};
+    void* desc = fi_mr_desc((fid_mr*)ck->mr);
+    fi_rma_iov rma_iov = {op.remote_addr, op.len, op.remote_key};
+    fi_msg_rma msg = {&iov, &desc, 1, 0, &rma_iov, 1, ck, 0};
+    if (op.type == PENDING_READ) {
+      res = fi_readmsg(ep, &msg, FI_COMPLETION);
+    } else {
+      res = fi_writemsg(ep, &msg, FI_COMPLETION);
+    }
+  } else if (op.type == PENDING_READ) {
+    res = fi_read(ep, buffer, op.len, fi_mr_desc((fid_mr*)ck->mr), 0, op.remote_addr,
+                  op.remote_key, ck);
+  } else {
+    res = fi_write(ep, buffer, op.len, fi_mr_desc((fid_mr*)ck->mr), 0, op.remote_addr,
+                   op.remote_key, ck);
+  }
+  if (res != 0 && res != -FI_EAGAIN) {
+    perror(op.type == PENDING_READ ? "fi_read" : "fi_write");
+  }
+  return res;
+}
+
+int MsgConnection::flush_pending(std::deque<PendingOp>& failed) {
+  std::lock_guard<std::mutex> l(pending_mtx);
+  while (!pending_ops.empty()) {
+    retry_num++;
+    int res = post_op(pending_ops.front());
+    if (res == -FI_EAGAIN) {
+      break;
+    }
+    // never retry a failed operation, its owner still has to get the chunk back
+    if (res != 0) {
+      failed.push_back(pending_ops.front());
+    }
+    pending_ops.pop_front();
+  }
+  return pending_ops.size();
+}
+
+int MsgConnection::get_pending_num() {
+  std::lock_guard<std::mutex> l(pending_mtx);
+  return pending_ops.size();
+}
+
+int MsgConnection::get_max_pending_num() { return max_pending_num; }
+
+uint64_t MsgConnection::get_retry_num() { return retry_num; }
 
-  if (res != 0 && res != -11) {
-    perror("fi_read");
+int MsgConnection::inject(const char* buffer, int buffer_size) {
+  int res = fi_inject(ep, buffer, buffer_size, 0);
+  if (res != 0 && res != -FI_EAGAIN) {
+    perror("fi_inject");
   }
   return res;
 }
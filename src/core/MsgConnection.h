@@ -25,8 +25,10 @@
 #include <rdma/fi_domain.h>
 #include <rdma/fi_endpoint.h>
 #include <rdma/fi_rma.h>
+#include <sys/uio.h>
 
 #include <condition_variable>
+#include <deque>
 #include <memory>
 #include <mutex>
 #include <unordered_map>
@@ -38,6 +40,19 @@
 
 enum ConStatus { IDLE = 0, CONNECT_REQ, ACCEPT_REQ, CONNECTED, SHUTDOWN_REQ, DOWN };
 
+enum PendingOpType { PENDING_SEND = 0, PENDING_READ, PENDING_WRITE };
+
+/// Operation parked because the provider returned -FI_EAGAIN
+struct PendingOp {
+  PendingOpType type;
+  Chunk* ck;
+  bool signaled;
+  int local_offset;
+  uint64_t len;
+  uint64_t remote_addr;
+  uint64_t remote_key;
+};
+
 class MsgStack;
 
 class MsgConnection : public ConnectionImpl {
@@ -53,6 +68,19 @@ class MsgConnection : public ConnectionImpl {
 
   /// for java binding
   int send(int, int) override;
+  int send(int, int, bool) override;
+  int read(int, int, uint64_t, uint64_t, uint64_t) override;
+  int write(int, int, uint64_t, uint64_t, uint64_t) override;
+  /// Copy a tiny message straight to the provider, no buffer and no completion
+  int inject(const char*, int);
+
+  /// Repost parked operations in order until the provider pushes back again,
+  /// operations failing for good are moved to failed
+  /// \return the number of operations still parked
+  int flush_pending(std::deque<PendingOp>& failed);
+  int get_pending_num();
+  int get_max_pending_num();
+  uint64_t get_retry_num();
 
   int shutdown() override;
   int connect();
@@ -114,6 +142,15 @@ class MsgConnection : public ConnectionImpl {
   Callback* shutdown_callback;
   // for Java interface
   std::vector<Chunk*> send_chunks;
+
+  int post(const PendingOp&);
+  int post_op(const PendingOp&);
+  bool selective_completion;
+
+  std::mutex pending_mtx;
+  std::deque<PendingOp> pending_ops;
+  int max_pending_num;
+  uint64_t retry_num;
 };
 
 #endif
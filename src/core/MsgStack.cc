@@ -27,6 +27,7 @@ MsgStack::MsgStack(int worker_num_, int buffer_num_, bool is_server_,
       buffer_num(buffer_num_),
       is_server(is_server_),
       external_service(external_service_),
+      selective_completion(false),
       fabric(nullptr),
       domain(nullptr),
       hints(nullptr),
@@ -38,10 +39,7 @@ MsgStack::MsgStack(int worker_num_, int buffer_num_, bool is_server_,
       initialized(false) {}
 
 MsgStack::~MsgStack() {
-  for (auto iter : conMap) {
-    delete iter.second;
-  }
-  conMap.clear();
+  close_connections();
   for (auto iter : rmaChunkMap) {
     if (iter.second) {
       iter.second->buffer = nullptr;
@@ -293,6 +291,79 @@ fid_eq* MsgStack::accept(void* info_, ChunkMgr* buf_mgr) {
   return con->get_eq();
 }
 
+void MsgStack::set_selective_completion(bool selective_completion_) {
+  selective_completion = selective_completion_;
+}
+
+bool MsgStack::is_selective_completion() { return selective_completion; }
+
+void MsgStack::park(MsgConnection* con) {
+  std::lock_guard<std::mutex> l(park_mtx);
+  if (parked_cons[con->get_cq_index()].insert(con).second) {
+    parked_num[con->get_cq_index()]++;
+  }
+}
+
+void MsgStack::unpark(MsgConnection* con) {
+  std::lock_guard<std::mutex> l(park_mtx);
+  int cq_index = con->get_cq_index();
+  if (parked_cons[cq_index].erase(con)) {
+    parked_num[cq_index]--;
+  }
+  auto& failed = failed_ops[cq_index];
+  for (auto iter = failed.begin(); iter != failed.end();) {
+    if (iter->ck->con == con) {
+      iter = failed.erase(iter);
+      failed_num[cq_index]--;
+    } else {
+      iter++;
+    }
+  }
+}
+
+void MsgStack::flush_parked(int cq_index) {
+  if (parked_num[cq_index] == 0) {
+    return;
+  }
+  std::lock_guard<std::mutex> l(park_mtx);
+  auto& cons = parked_cons[cq_index];
+  auto& failed = failed_ops[cq_index];
+  size_t failed_size = failed.size();
+  for (auto iter = cons.begin(); iter != cons.end();) {
+    if ((*iter)->flush_pending(failed) == 0) {
+      iter = cons.erase(iter);
+      parked_num[cq_index]--;
+    } else {
+      iter++;
+    }
+  }
+  failed_num[cq_index] += (int)(failed.size() - failed_size);
+}
+
+bool MsgStack::pop_failed(int cq_index, PendingOp* op) {
+  if (failed_num[cq_index] == 0) {
+    return false;
+  }
+  std::lock_guard<std::mutex> l(park_mtx);
+  auto& failed = failed_ops[cq_index];
+  if (failed.empty()) {
+    return false;
+  }
+  *op = failed.front();
+  failed.pop_front();
+  failed_num[cq_index]--;
+  return true;
+}
+
+void MsgStack::reject(void* info_) {
+  if (!initialized || !info_) return;
+  auto info_tmp = (fi_info*)info_;
+  if (fi_reject(pep, info_tmp->handle, nullptr, 0)) {
+    perror("fi_reject");
+  }
+  fi_freeinfo(info_tmp);
+}
+
 Chunk* MsgStack::reg_rma_buffer(char* buffer, uint64_t buffer_size, int buffer_id) {
   if (!initialized || !buffer || buffer_size <= 0) return nullptr;
   auto* ck = new Chunk();
@@ -337,6 +408,13 @@ void MsgStack::reap(void* con_id) {
   conMap.erase(iter);
 }
 
+void MsgStack::close_connections() {
+  for (auto iter : conMap) {
+    delete iter.second;
+  }
+  conMap.clear();
+}
+
 MsgConnection* MsgStack::get_connection(fid* id) {
   if (conMap.find(id) != conMap.end()) {
     return conMap[id];
@@ -23,16 +23,17 @@
 #include <rdma/fi_endpoint.h>
 #include <rdma/fi_cm.h>
 
+#include <atomic>
 #include <map>
+#include <set>
 #include <assert.h>
 #include <mutex>
 
 #include "HPNL/ChunkMgr.h"
 #include "HPNL/Common.h"
+#include "core/MsgConnection.h"
 #include "core/Stack.h"
 
-class MsgConnection;
-
 class MsgStack : public Stack {
   public:
     MsgStack(int, int, bool, bool);
@@ -46,6 +47,7 @@ class MsgStack : public Stack {
     int listen();
     fid_eq* connect(const char*, const char*, ChunkMgr*);
     fid_eq* accept(void*, ChunkMgr*);
+    void reject(void*);
 
     // thread safe
     Chunk* reg_rma_buffer(char*, uint64_t, int);
@@ -53,16 +55,34 @@ class MsgStack : public Stack {
     Chunk* get_rma_chunk(int);
 
     void reap(void*);
+    /// Delete every connection, returning their chunks to the chunk manager
+    void close_connections();
     MsgConnection* get_connection(fid* id);
     fid_fabric* get_fabric();
     fid_cq** get_cqs();
 
     fid_domain* get_domain() override;
+
+    /// Only sends posted with FI_COMPLETION generate a completion, must be
+    /// set before any connection is created
+    void set_selective_completion(bool);
+    bool is_selective_completion();
+
+    /// Connections holding operations parked on -FI_EAGAIN, reposted by the
+    /// worker that owns their completion queue
+    void park(MsgConnection*);
+    void unpark(MsgConnection*);
+    void flush_parked(int);
+    /// Parked operations that failed for good when reposted, completed by
+    /// the worker that owns their completion queue
+    /// \return false when there is none left
+    bool pop_failed(int, PendingOp*);
   private:
     int worker_num;
     int buffer_num;
     bool is_server;
     bool external_service;
+    bool selective_completion;
     uint64_t seq_num;
     fid_fabric *fabric;
     fid_domain *domain;
@@ -77,6 +97,12 @@ class MsgStack : public Stack {
 
     std::map<int, Chunk*> rmaChunkMap;
     std::mutex mtx;
+
+    std::set<MsgConnection*> parked_cons[MAX_WORKERS];
+    std::atomic<int> parked_num[MAX_WORKERS]{};
+    std::deque<PendingOp> failed_ops[MAX_WORKERS];
+    std::atomic<int> failed_num[MAX_WORKERS]{};
+    std::mutex park_mtx;
     
     bool initialized;
 };
@@ -24,12 +24,14 @@
 
 RdmConnection::RdmConnection(const char* ip_, const char* port_, fi_info* info_,
                              fid_domain* domain_, fid_cq* cq_, ChunkMgr* buf_mgr_,
-                             int buffer_num_, bool is_server_, bool external_service_)
+                             int buffer_num_, bool is_server_, bool external_service_,
+                             int cq_index_)
     : ip(ip_),
       port(port_),
       info(info_),
       domain(domain_),
       conCq(cq_),
+      cq_index(cq_index_),
       chunk_mgr(buf_mgr_),
       buffer_num(buffer_num_),
       is_server(is_server_),
@@ -67,7 +69,7 @@ int RdmConnection::init() {
   if (!is_server) {
     fi_info* hints = fi_allocinfo();
     hints->ep_attr->type = FI_EP_RDM;
-    hints->caps = FI_MSG;
+    hints->caps = FI_MSG | FI_SOURCE;
     hints->mode = FI_CONTEXT;
 #ifdef PSM2
     hints->fabric_attr->prov_name = strdup("psm2");
@@ -162,12 +164,8 @@ int RdmConnection::send(Chunk* ck) {
 
 int RdmConnection::send(int buffer_size, int buffer_id) {
   Chunk* ck = send_chunks_map[buffer_id];
-  char tmp[32];
-  size_t tmp_len = 32;
-  fi_av_straddr(av, info->dest_addr, tmp, &tmp_len);
-
   ck->con = this;
-  ck->peer_addr = address_map[tmp];
+  ck->peer_addr = get_addr((const char*)info->dest_addr);
   ck->ctx.internal[4] = ck;
 
   iovec msg_iov;
@@ -190,10 +188,7 @@ int RdmConnection::sendBuf(const char* buffer, int buffer_size) {
   auto* ctx = (fi_context2*)std::malloc(sizeof(fi_context2));
   ctx->internal[4] = nullptr;
 
-  char tmp[32];
-  size_t tmp_len = 32;
-  fi_av_straddr(av, info->dest_addr, tmp, &tmp_len);
-  int res = fi_send(ep, buffer, buffer_size, nullptr, address_map[tmp], ctx);
+  int res = fi_send(ep, buffer, buffer_size, nullptr, get_addr((const char*)info->dest_addr), ctx);
   if (res != 0 && res != -11) {
     perror("fi_send");
   }
@@ -202,19 +197,7 @@ int RdmConnection::sendBuf(const char* buffer, int buffer_size) {
 
 int RdmConnection::sendTo(int buffer_size, int buffer_id, const char* peer_name) {
   Chunk* ck = send_chunks_map[buffer_id];
-  char tmp[32];
-  size_t tmp_len = 32;
-  fi_av_straddr(av, peer_name, tmp, &tmp_len);
-
-  std::map<std::string, fi_addr_t>::const_iterator iter = address_map.find(tmp);
-  if (iter == address_map.end()) {
-    fi_addr_t addr;
-    assert(fi_av_insert(av, peer_name, 1, &addr, 0, nullptr) == 1);
-    address_map.insert(std::pair<std::string, fi_addr_t>(tmp, addr));
-    ck->peer_addr = addr;
-  } else {
-    ck->peer_addr = address_map[tmp];
-  }
+  ck->peer_addr = get_addr(peer_name);
   ck->ctx.internal[4] = ck;
   ck->con = this;
 
@@ -238,25 +221,100 @@ int RdmConnection::sendBufTo(const char* buffer, int buffer_size, const char* pe
   auto* ctx = (fi_context2*)std::malloc(sizeof(fi_context2));
   ctx->internal[4] = nullptr;
 
+  int res = fi_send(ep, buffer, buffer_size, nullptr, get_addr(peer_name), ctx);
+  if (res != 0 && res != -11) {
+    perror("fi_send");
+  }
+  return res;
+}
+
+fi_addr_t RdmConnection::resolve_peer(const char* peer_name) { return get_addr(peer_name); }
+
+int RdmConnection::sendToPeer(int buffer_size, int buffer_id, fi_addr_t peer_addr) {
+  Chunk* ck = send_chunks_map[buffer_id];
+  ck->peer_addr = peer_addr;
+  ck->ctx.internal[4] = ck;
+  ck->con = this;
+
+  iovec msg_iov;
+  msg_iov.iov_base = ck->buffer;
+  msg_iov.iov_len = buffer_size;
+  fi_msg msg;
+  msg.msg_iov = &msg_iov;
+  msg.desc = NULL;
+  msg.iov_count = 1;
+  msg.addr = ck->peer_addr;
+  msg.context = &ck->ctx;
+  int res = fi_sendmsg(ep, &msg, FI_INJECT_COMPLETE);
+  if (res != 0 && res != -11) {
+    perror("fi_sendmsg");
+  }
+  return res;
+}
+
+int RdmConnection::sendToAll(int buffer_size, int buffer_id, const fi_addr_t* peer_addrs,
+                             int peer_num) {
+  Chunk* ck = send_chunks_map[buffer_id];
+  ck->ctx.internal[4] = ck;
+  ck->con = this;
+
+  auto* fanout = new FanoutSend();
+  fanout->ck = ck;
+  fanout->pending = peer_num;
+  fanout->failed = 0;
+
+  iovec msg_iov;
+  msg_iov.iov_base = ck->buffer;
+  msg_iov.iov_len = buffer_size;
+  fi_msg msg;
+  msg.msg_iov = &msg_iov;
+  msg.desc = NULL;
+  msg.iov_count = 1;
+  int posted = 0;
+  int res = 0;
+  for (; posted < peer_num; posted++) {
+    auto* fanout_ctx = new FanoutContext();
+    fanout_ctx->ctx.internal[4] = ck;
+    fanout_ctx->fanout = fanout;
+    msg.addr = peer_addrs[posted];
+    msg.context = &fanout_ctx->ctx;
+    res = fi_sendmsg(ep, &msg, FI_INJECT_COMPLETE);
+    if (res != 0) {
+      if (res != -11) {
+        perror("fi_sendmsg");
+      }
+      delete fanout_ctx;
+      break;
+    }
+  }
+  /// peers not posted are accounted as failed
+  fanout->failed = peer_num - posted;
+  fanout->pending = posted;
+  if (posted == 0) {
+    delete fanout;
+    /// nothing posted, report why so the caller can tell -FI_EAGAIN apart
+    return res;
+  }
+  return posted;
+}
+
+fi_addr_t RdmConnection::get_addr(const char* peer_name) {
   char tmp[32];
   size_t tmp_len = 32;
-
   fi_av_straddr(av, peer_name, tmp, &tmp_len);
-  fi_addr_t peer_addr;
+
+  std::lock_guard<std::mutex> lk(addr_mtx);
   std::map<std::string, fi_addr_t>::const_iterator iter = address_map.find(tmp);
-  if (iter == address_map.end()) {
-    fi_addr_t addr;
-    assert(fi_av_insert(av, peer_name, 1, &addr, 0, nullptr) == 1);
-    address_map.insert(std::pair<std::string, fi_addr_t>(tmp, addr));
-    peer_addr = addr;
-  } else {
-    peer_addr = address_map[tmp];
+  if (iter != address_map.end()) {
+    return iter->second;
   }
-  int res = fi_send(ep, buffer, buffer_size, nullptr, peer_addr, ctx);
-  if (res != 0 && res != -11) {
-    perror("fi_send");
+  fi_addr_t addr;
+  if (fi_av_insert(av, peer_name, 1, &addr, 0, nullptr) != 1) {
+    perror("fi_av_insert");
+    return FI_ADDR_NOTAVAIL;
   }
-  return res;
+  address_map.insert(std::pair<std::string, fi_addr_t>(tmp, addr));
+  return addr;
 }
 
 char* RdmConnection::get_peer_name() { return (char*)info->dest_addr; }
@@ -278,19 +336,7 @@ void RdmConnection::encode_(Chunk* ck, void* buffer, int buffer_size, char* peer
   memcpy((char*)(ck->buffer) + local_name_len, buffer, buffer_size);
   ck->size = buffer_size + local_name_len;
 
-  char tmp[32];
-  size_t tmp_len = 32;
-  fi_av_straddr(av, peer_name, tmp, &tmp_len);
-
-  std::map<std::string, fi_addr_t>::const_iterator iter = address_map.find(tmp);
-  if (iter == address_map.end()) {
-    fi_addr_t address;
-    assert(fi_av_insert(av, peer_name, 1, &address, 0, nullptr) == 1);
-    address_map.insert(std::pair<std::string, fi_addr_t>(tmp, address));
-    ck->peer_addr = address;
-  } else {
-    ck->peer_addr = address_map[tmp];
-  }
+  ck->peer_addr = get_addr(peer_name);
 }
 
 void RdmConnection::decode_(Chunk* ck, void* buffer, int* buffer_size, char* peer_name) {
@@ -315,6 +361,8 @@ int RdmConnection::activate_recv_chunk(Chunk* ck) {
 
 std::vector<Chunk*> RdmConnection::get_send_chunk() { return send_chunks; }
 
+int RdmConnection::get_cq_index() { return cq_index; }
+
 void RdmConnection::set_recv_callback(Callback* callback) { recv_callback = callback; }
 
 void RdmConnection::set_send_callback(Callback* callback) { send_callback = callback; }
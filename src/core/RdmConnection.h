@@ -33,10 +33,23 @@
 #include "HPNL/ChunkMgr.h"
 #include "core/ConnectionImpl.h"
 
+/// One chunk posted to several peers, the chunk goes back after the last completion
+struct FanoutSend {
+  Chunk* ck;
+  int pending;
+  int failed;
+};
+
+/// Per-peer libfabric context of a fan-out send, ctx.internal[4] still points to the chunk
+struct FanoutContext {
+  fi_context2 ctx;
+  FanoutSend* fanout;
+};
+
 class RdmConnection : public ConnectionImpl {
  public:
   RdmConnection(const char*, const char*, fi_info*, fid_domain*, fid_cq*, ChunkMgr*, int,
-                bool, bool);
+                bool, bool, int cq_index = 0);
   ~RdmConnection() override;
 
   int init() override;
@@ -47,6 +60,12 @@ class RdmConnection : public ConnectionImpl {
   int sendBuf(const char*, int) override;
   int sendTo(int, int, const char*) override;
   int sendBufTo(const char*, int, const char*) override;
+  /// resolve and cache a peer address once, sendToPeer then skips name handling
+  fi_addr_t resolve_peer(const char*);
+  int sendToPeer(int, int, fi_addr_t);
+  /// post one chunk to every peer, return the number of peers posted or the
+  /// error of the first post when none is
+  int sendToAll(int, int, const fi_addr_t*, int);
 
   int read(Chunk*, int, uint64_t, uint64_t, uint64_t) override { return -1; } /// not supported
   int write(Chunk*, int, uint64_t, uint64_t, uint64_t) override { return -1; } /// not supported
@@ -56,6 +75,7 @@ class RdmConnection : public ConnectionImpl {
   int get_local_name_length();
   int activate_recv_chunk(Chunk* ck = nullptr) override;
   std::vector<Chunk*> get_send_chunk();
+  int get_cq_index();
 
   void set_recv_callback(Callback*) override;
   void set_send_callback(Callback*) override;
@@ -66,6 +86,8 @@ class RdmConnection : public ConnectionImpl {
   void decode_(Chunk* ck, void* buffer, int* buffer_length, char* peer_name) override;
 
  private:
+  fi_addr_t get_addr(const char*);
+
   const char* ip;
   const char* port;
 
@@ -74,6 +96,7 @@ class RdmConnection : public ConnectionImpl {
   fid_ep* ep;
   fid_av* av;
   fid_cq* conCq;
+  int cq_index;
 
   int buffer_num;
   bool is_server;
@@ -82,6 +105,7 @@ class RdmConnection : public ConnectionImpl {
   char local_name[64];
   size_t local_name_len = 64;
   std::map<std::string, fi_addr_t> address_map;
+  std::mutex addr_mtx;
 
   std::vector<Chunk*> send_chunks;
   std::unordered_map<int, Chunk*> send_chunks_map;
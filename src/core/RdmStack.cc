@@ -21,15 +21,17 @@
 #include <stdio.h>
 #include <iostream>
 
-RdmStack::RdmStack(int buffer_num_, bool is_server_, bool external_service_)
-    : buffer_num(buffer_num_),
+RdmStack::RdmStack(int buffer_num_, bool is_server_, bool external_service_,
+                   int worker_num_)
+    : worker_num(worker_num_),
+      seq_num(0),
+      buffer_num(buffer_num_),
       is_server(is_server_),
       external_service(external_service_),
       domain(nullptr),
       fabric(nullptr),
       info(nullptr),
       server_info(nullptr),
-      cq(nullptr),
       server_con(nullptr),
       initialized(false) {}
 
@@ -38,9 +40,11 @@ RdmStack::~RdmStack() {
     delete con;
     con = nullptr;
   }
-  if (cq) {
-    fi_close(&cq->fid);
-    cq = nullptr;
+  for (int i = 0; i < worker_num; i++) {
+    if (cqs[i]) {
+      fi_close(&cqs[i]->fid);
+      cqs[i] = nullptr;
+    }
   }
   if (info) {
     fi_freeinfo(info);
@@ -63,7 +67,7 @@ RdmStack::~RdmStack() {
 int RdmStack::init() {
   fi_info* hints = fi_allocinfo();
   hints->ep_attr->type = FI_EP_RDM;
-  hints->caps = FI_MSG;
+  hints->caps = FI_MSG | FI_SOURCE;
   hints->mode = FI_CONTEXT;
 #ifdef PSM2
   hints->fabric_attr->prov_name = strdup("psm2");
@@ -99,9 +103,11 @@ int RdmStack::init() {
                                .wait_cond = FI_CQ_COND_NONE,
                                .wait_set = nullptr};
 
-  if (fi_cq_open(domain, &cq_attr, &cq, nullptr)) {
-    perror("fi_cq_open");
-    return -1;
+  for (int i = 0; i < worker_num; i++) {
+    if (fi_cq_open(domain, &cq_attr, &cqs[i], nullptr)) {
+      perror("fi_cq_open");
+      return -1;
+    }
   }
   initialized = true;
   return 0;
@@ -111,7 +117,7 @@ void* RdmStack::bind(const char* ip, const char* port, ChunkMgr* buf_mgr) {
   if (!initialized || !ip || !port || !buf_mgr) return nullptr;
   fi_info* hints = fi_allocinfo();
   hints->ep_attr->type = FI_EP_RDM;
-  hints->caps = FI_MSG;
+  hints->caps = FI_MSG | FI_SOURCE;
   hints->mode = FI_CONTEXT;
 #ifdef PSM2
   hints->fabric_attr->prov_name = strdup("psm2");
@@ -128,8 +134,10 @@ void* RdmStack::bind(const char* ip, const char* port, ChunkMgr* buf_mgr) {
     return nullptr;
   }
   fi_freeinfo(hints);
-  server_con = new RdmConnection(ip, port, server_info, domain, cq, buf_mgr, buffer_num,
-                                 true, external_service);
+  std::lock_guard<std::mutex> lk(mtx);
+  int index = seq_num++ % worker_num;
+  server_con = new RdmConnection(ip, port, server_info, domain, cqs[index], buf_mgr,
+                                 buffer_num, true, external_service, index);
   server_con->init();
   cons.push_back(server_con);
   return server_con;
@@ -138,8 +146,9 @@ void* RdmStack::bind(const char* ip, const char* port, ChunkMgr* buf_mgr) {
 RdmConnection* RdmStack::get_con(const char* ip, const char* port, ChunkMgr* buf_mgr) {
   if (!initialized || !ip || !port || !buf_mgr) return nullptr;
   std::lock_guard<std::mutex> lk(mtx);
-  RdmConnection* con = new RdmConnection(ip, port, nullptr, domain, cq, buf_mgr,
-                                         buffer_num, false, external_service);
+  int index = seq_num++ % worker_num;
+  RdmConnection* con = new RdmConnection(ip, port, nullptr, domain, cqs[index], buf_mgr,
+                                         buffer_num, false, external_service, index);
   con->init();
   cons.push_back(con);
   return con;
@@ -147,6 +156,10 @@ RdmConnection* RdmStack::get_con(const char* ip, const char* port, ChunkMgr* buf
 
 fid_fabric* RdmStack::get_fabric() { return fabric; }
 
-fid_cq* RdmStack::get_cq() { return cq; }
+fid_cq* RdmStack::get_cq() { return cqs[0]; }
+
+fid_cq* RdmStack::get_cq(int index) { return cqs[index]; }
+
+int RdmStack::get_worker_num() { return worker_num; }
 
 fid_domain* RdmStack::get_domain() { return nullptr; }
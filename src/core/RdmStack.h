@@ -28,13 +28,16 @@
 #include <vector>
 
 #include "HPNL/ChunkMgr.h"
+#include "HPNL/Common.h"
 #include "core/Stack.h"
 
 class RdmConnection;
 
 class RdmStack : public Stack {
  public:
-  RdmStack(int, bool, bool);
+  /// Every connection gets its own endpoint, bound to one of the worker_num
+  /// completion queues in round robin
+  RdmStack(int, bool, bool, int worker_num = 1);
   ~RdmStack() override;
   int init() override;
   void* bind(const char*, const char*, ChunkMgr*) override;
@@ -42,6 +45,8 @@ class RdmStack : public Stack {
   RdmConnection* get_con(const char*, const char*, ChunkMgr*);
   fid_fabric* get_fabric();
   fid_cq* get_cq();
+  fid_cq* get_cq(int);
+  int get_worker_num();
 
   fid_domain* get_domain() override;
 
@@ -50,7 +55,9 @@ class RdmStack : public Stack {
   fi_info* server_info;
   fid_fabric* fabric;
   fid_domain* domain;
-  fid_cq* cq;
+  fid_cq* cqs[MAX_WORKERS]{};
+  int worker_num;
+  uint64_t seq_num;
   int buffer_num;
   bool is_server;
   bool external_service;
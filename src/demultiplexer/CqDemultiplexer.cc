@@ -55,6 +55,16 @@ int CqDemultiplexer::init() {
 }
 
 int CqDemultiplexer::wait_event() {
+  // repost operations pushed back by the provider since the last round
+  stack->flush_parked(work_num);
+  PendingOp op;
+  while (stack->pop_failed(work_num, &op)) {
+    // a failed send still returns its chunk through the send callback
+    auto* con = (MsgConnection*)op.ck->con;
+    if (op.type == PENDING_SEND && con->get_send_callback()) {
+      (*con->get_send_callback())(&op.ck->buffer_id, nullptr);
+    }
+  }
   struct fid* fids[1];
   fids[0] = &cq->fid;
 #ifdef __linux__
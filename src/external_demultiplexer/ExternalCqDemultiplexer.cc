@@ -54,14 +54,15 @@ int ExternalCqDemultiplexer::init() {
 }
 
 int ExternalCqDemultiplexer::wait_event(fid_eq** eq, Chunk** ck, int* buffer_id,
-                                        int* block_buffer_size) {
+                                        int* block_buffer_size, int timeout) {
   struct fid* fids[1];
   fids[0] = &cq->fid;
   int ret = 0;
 #ifdef __linux__
   if (end - start >= 200) {
     if (fi_trywait(fabric, fids, 1) == FI_SUCCESS) {
-      int epoll_ret = epoll_wait(epfd, &event, 1, 200);
+      epoll_num.store(epoll_num.load(std::memory_order_relaxed) + 1, std::memory_order_relaxed);
+      int epoll_ret = epoll_wait(epfd, &event, 1, timeout);
       if (epoll_ret > 0) {
         assert(event.data.ptr == (void*)&cq->fid);
       } else if (epoll_ret < 0) {
@@ -24,6 +24,8 @@
 #include <rdma/fi_cm.h>
 #include <unistd.h>
 
+#include <atomic>
+
 #include "HPNL/ChunkMgr.h"
 
 class MsgStack;
@@ -33,13 +35,16 @@ class ExternalCqDemultiplexer {
   ExternalCqDemultiplexer(MsgStack*, fid_cq*);
   ~ExternalCqDemultiplexer();
   int init();
-  int wait_event(fid_eq**, Chunk**, int*, int*);
+  int wait_event(fid_eq**, Chunk**, int*, int*, int timeout = 200);
+  /// Number of times the worker went from busy polling to sleeping in epoll
+  uint64_t get_epoll_num() { return epoll_num.load(std::memory_order_relaxed); }
 
  private:
   MsgStack* stack;
   fid_cq* cq;
   uint64_t start;
   uint64_t end;
+  std::atomic<uint64_t> epoll_num{0};
 #ifdef __linux__
   fid_fabric* fabric;
   struct epoll_event event;
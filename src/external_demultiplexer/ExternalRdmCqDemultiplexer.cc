@@ -25,17 +25,17 @@
 #include "demultiplexer/EventType.h"
 #include "external_demultiplexer/ExternalRdmCqDemultiplexer.h"
 
-ExternalRdmCqDemultiplexer::ExternalRdmCqDemultiplexer(RdmStack* stack_)
-    : stack(stack_), start(0), end(0) {}
+ExternalRdmCqDemultiplexer::ExternalRdmCqDemultiplexer(RdmStack* stack_, fid_cq* cq_)
+    : stack(stack_), cq(cq_), start(0), end(0) {}
 
 ExternalRdmCqDemultiplexer::~ExternalRdmCqDemultiplexer() {
 #ifdef __linux__
+  close(wakeup_fd);
   close(epfd);
 #endif
 }
 
 int ExternalRdmCqDemultiplexer::init() {
-  cq = stack->get_cq();
 #ifdef __linux__
   fabric = stack->get_fabric();
   epfd = epoll_create1(0);
@@ -52,10 +52,25 @@ int ExternalRdmCqDemultiplexer::init() {
     std::cout << "epoll add error." << std::endl;
     return -1;
   }
+  wakeup_fd = eventfd(0, EFD_NONBLOCK);
+  struct epoll_event wakeup_event;
+  memset((void*)&wakeup_event, 0, sizeof wakeup_event);
+  wakeup_event.events = EPOLLIN;
+  wakeup_event.data.ptr = &wakeup_fd;
+  if (wakeup_fd == -1 || epoll_ctl(epfd, EPOLL_CTL_ADD, wakeup_fd, &wakeup_event)) {
+    std::cout << "epoll add error." << std::endl;
+    return -1;
+  }
 #endif
   return 0;
 }
 
+void ExternalRdmCqDemultiplexer::wakeup() {
+#ifdef __linux__
+  eventfd_write(wakeup_fd, 1);
+#endif
+}
+
 int ExternalRdmCqDemultiplexer::wait_event(Chunk** ck, int* block_buffer_size) {
   struct fid* fids[1];
   fids[0] = &cq->fid;
@@ -64,19 +79,27 @@ int ExternalRdmCqDemultiplexer::wait_event(Chunk** ck, int* block_buffer_size) {
   if (end - start >= 2000000) {
     if (fi_trywait(fabric, fids, 1) == FI_SUCCESS) {
       int epoll_ret = epoll_wait(epfd, &event, 1, 2000);
-      if (event.data.ptr != (void*)&cq->fid) {
-        std::cout << "Epoll wait error." << std::endl;
-      }
       if (epoll_ret <= 0) {
         return 0;
       }
+      if (event.data.ptr == (void*)&wakeup_fd) {
+        eventfd_t value;
+        eventfd_read(wakeup_fd, &value);
+        start = std::chrono::high_resolution_clock::now().time_since_epoch() /
+                std::chrono::microseconds(1);
+        return 0;
+      }
+      if (event.data.ptr != (void*)&cq->fid) {
+        std::cout << "Epoll wait error." << std::endl;
+      }
     }
     start = std::chrono::high_resolution_clock::now().time_since_epoch() /
             std::chrono::microseconds(1);
   }
 #endif
   fi_cq_msg_entry entry;
-  ret = fi_cq_read(cq, &entry, 1);
+  fi_addr_t src_addr = FI_ADDR_NOTAVAIL;
+  ret = fi_cq_readfrom(cq, &entry, 1, &src_addr);
   if (ret < 0 && ret != -FI_EAGAIN) {
     fi_cq_err_entry err_entry{};
     int err_res = fi_cq_readerr(cq, &err_entry, entry.flags);
@@ -86,23 +109,21 @@ int ExternalRdmCqDemultiplexer::wait_event(Chunk** ck, int* block_buffer_size) {
       const char* err_str =
           fi_cq_strerror(cq, err_entry.prov_errno, err_entry.err_data, nullptr, 0);
       std::cerr << "fi_cq_read: " << err_str << std::endl;
+      if ((err_entry.flags & FI_SEND) && err_entry.op_context) {
+        return complete_send((fi_context2*)err_entry.op_context, true, ck, block_buffer_size);
+      }
     }
   } else if (ret > 0) {
     end = start;
     if (entry.flags & FI_RECV) {
       fi_context2* ctx = (fi_context2*)entry.op_context;
       *ck = (Chunk*)ctx->internal[4];
+      (*ck)->peer_addr = src_addr;
       *block_buffer_size = entry.len;
       return RECV_EVENT;
     } else if (entry.flags & FI_SEND) {
-      fi_context2* ctx = (fi_context2*)entry.op_context;
-      if (ctx->internal[4] == NULL) {
-        std::free(ctx);
-      } else {
-        *ck = (Chunk*)ctx->internal[4];
-      }
       //((RdmConnection *) (*ck)->con)->delete_chunk_in_flight(*ck);
-      return SEND_EVENT;
+      return complete_send((fi_context2*)entry.op_context, false, ck, block_buffer_size);
     } else if (entry.flags & FI_READ) {
       return READ_EVENT;
     } else if (entry.flags & FI_WRITE) {
@@ -115,3 +136,33 @@ int ExternalRdmCqDemultiplexer::wait_event(Chunk** ck, int* block_buffer_size) {
         std::chrono::microseconds(1);
   return 0;
 }
+
+int ExternalRdmCqDemultiplexer::complete_send(fi_context2* ctx, bool failed, Chunk** ck,
+                                              int* block_buffer_size) {
+  if (ctx->internal[4] == NULL) {
+    std::free(ctx);
+    return SEND_EVENT;
+  }
+  Chunk* chunk = (Chunk*)ctx->internal[4];
+  if (ctx == &chunk->ctx) {
+    if (failed) {
+      return 0;
+    }
+    *ck = chunk;
+    return SEND_EVENT;
+  }
+  /// one peer of a fan-out send, only the last completion hands the chunk back
+  FanoutContext* fanout_ctx = (FanoutContext*)ctx;
+  FanoutSend* fanout = fanout_ctx->fanout;
+  delete fanout_ctx;
+  if (failed) {
+    fanout->failed++;
+  }
+  if (--fanout->pending > 0) {
+    return 0;
+  }
+  *ck = chunk;
+  *block_buffer_size = fanout->failed;
+  delete fanout;
+  return SEND_EVENT;
+}
@@ -20,6 +20,7 @@
 
 #ifdef __linux__
 #include <sys/epoll.h>
+#include <sys/eventfd.h>
 #endif
 #include <rdma/fabric.h>
 #include <rdma/fi_domain.h>
@@ -31,12 +32,16 @@ class RdmStack;
 
 class ExternalRdmCqDemultiplexer {
  public:
-  ExternalRdmCqDemultiplexer(RdmStack*);
+  ExternalRdmCqDemultiplexer(RdmStack*, fid_cq*);
   ~ExternalRdmCqDemultiplexer();
   int init();
   int wait_event(Chunk**, int*);
+  /// Interrupt a wait_event blocked on an idle completion queue
+  void wakeup();
 
  private:
+  int complete_send(fi_context2*, bool, Chunk**, int*);
+
   RdmStack* stack;
   fid_cq* cq;
   uint64_t start;
@@ -44,6 +49,7 @@ class ExternalRdmCqDemultiplexer {
 #ifdef __linux__
   int epfd;
   int fd;
+  int wakeup_fd;
   struct epoll_event event;
   fid_fabric* fabric;
 #endif
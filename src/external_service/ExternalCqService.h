@@ -24,6 +24,7 @@
 #include "HPNL/Connection.h"
 #include "core/MsgConnection.h"
 #include "core/MsgStack.h"
+#include "demultiplexer/EventType.h"
 #include "external_demultiplexer/ExternalCqDemultiplexer.h"
 #include "external_service/ExternalEqService.h"
 
@@ -52,10 +53,31 @@ class ExternalCqService {
     }
     return 0;
   }
+  /// timeout bounds how long an idle worker blocks, in milliseconds
   int wait_cq_event(int num, fid_eq** eq, Chunk** ck, int* buffer_id,
-                    int* block_buffer_size) {
-    return cq_demultiplexer[num]->wait_event(eq, ck, buffer_id, block_buffer_size);
+                    int* block_buffer_size, int timeout = 200) {
+    int ret =
+        cq_demultiplexer[num]->wait_event(eq, ck, buffer_id, block_buffer_size, timeout);
+    // completions free up provider queue space, repost what was pushed back
+    stack->flush_parked(num);
+    PendingOp op;
+    if (ret == 0 && stack->pop_failed(num, &op)) {
+      // hand the chunk back as an error completion of the failed operation
+      *ck = op.ck;
+      *buffer_id = op.ck->buffer_id;
+      *eq = ((MsgConnection*)op.ck->con)->get_eq();
+      *block_buffer_size = 0;
+      if (op.type == PENDING_SEND) {
+        ret = ERROR_EVENT | SEND_EVENT;
+      } else if (op.type == PENDING_READ) {
+        ret = ERROR_EVENT | READ_EVENT;
+      } else {
+        ret = ERROR_EVENT | WRITE_EVENT;
+      }
+    }
+    return ret;
   }
+  uint64_t get_epoll_num(int num) { return cq_demultiplexer[num]->get_epoll_num(); }
   Connection* get_connection(fid_eq* eq) { return stack->get_connection(&eq->fid); }
 
  private:
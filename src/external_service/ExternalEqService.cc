@@ -30,6 +30,15 @@ ExternalEqService::ExternalEqService(int worker_num_, int buffer_num_, bool is_s
 }
 
 ExternalEqService::~ExternalEqService() {
+  // connections return their chunks to chkMgr, and chkMgr closes slab memory
+  // regions, which needs the domain still open
+  if (stack) {
+    stack->close_connections();
+  }
+  if (chkMgr) {
+    delete chkMgr;
+    chkMgr = nullptr;
+  }
   if (stack) {
     delete stack;
     stack = nullptr;
@@ -38,10 +47,6 @@ ExternalEqService::~ExternalEqService() {
     delete eq_demultiplexer;
     eq_demultiplexer = nullptr;
   }
-  if (chkMgr) {
-    delete chkMgr;
-    chkMgr = nullptr;
-  }
 }
 
 int ExternalEqService::init() {
@@ -73,6 +78,10 @@ fid_eq* ExternalEqService::accept(fi_info* info) {
   return eq;
 }
 
+void ExternalEqService::reject(fi_info* info) {
+  stack->reject(info);
+}
+
 fid_eq* ExternalEqService::connect(const char* ip, const char* port) {
   fid_eq* eq = nullptr;
   if (is_server) {
@@ -110,6 +119,16 @@ void ExternalEqService::set_buffer(char* buffer, uint64_t size, int buffer_id) {
   chkMgr->reclaim(ck, nullptr);
 }
 
+char* ExternalEqService::alloc_slab(int buffer_size, int buffer_num, int first_buffer_id,
+                                    bool huge_page) {
+  return chkMgr->alloc_slab(stack->get_domain(), buffer_size, buffer_num, first_buffer_id,
+                            huge_page);
+}
+
+int ExternalEqService::evict_buffer(int keep_num, uint64_t idle_ms, std::vector<int>& ids) {
+  return chkMgr->evict(keep_num, idle_ms, ids);
+}
+
 int ExternalEqService::wait_eq_event(fi_info** info, fid_eq** eq, MsgConnection** con) {
   int ret = eq_demultiplexer->wait_event(info, eq, con);
   return ret;
@@ -128,6 +147,12 @@ int ExternalEqService::get_worker_num() { return worker_num; }
 
 int ExternalEqService::is_buffer_enough() { return chkMgr->free_size() >= 2*buffer_num; }
 
+int ExternalEqService::free_buffer_num() { return chkMgr->free_size(); }
+
+void ExternalEqService::set_selective_completion(bool selective_completion) {
+  stack->set_selective_completion(selective_completion);
+}
+
 int ExternalEqService::add_eq_event(fid_eq* eq) {
   eq_demultiplexer->add_event(eq);
   return 0;
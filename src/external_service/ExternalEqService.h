@@ -19,6 +19,7 @@
 #define EXTERNALSERVICE_H
 
 #include <map>
+#include <vector>
 
 #include <rdma/fi_domain.h>
 #include "HPNL/ChunkMgr.h"
@@ -39,10 +40,13 @@ class ExternalEqService {
   int init();
   fid_eq* connect(const char*, const char*);
   fid_eq* accept(fi_info*);
+  void reject(fi_info*);
   Chunk* reg_rma_buffer(char*, uint64_t, int);
   void unreg_rma_buffer(int);
   Chunk* get_rma_buffer(int);
   void set_buffer(char*, uint64_t, int);
+  char* alloc_slab(int, int, int, bool);
+  int evict_buffer(int, uint64_t, std::vector<int>&);
 
   int wait_eq_event(fi_info**, fid_eq**, MsgConnection**);
   int add_eq_event(fid_eq*);
@@ -53,6 +57,8 @@ class ExternalEqService {
   MsgStack* get_stack();
   int get_worker_num();
   int is_buffer_enough();
+  int free_buffer_num();
+  void set_selective_completion(bool);
  private:
   MsgStack* stack;
 
@@ -22,25 +22,37 @@
 #include "core/RdmStack.h"
 #include "external_demultiplexer/ExternalRdmCqDemultiplexer.h"
 
-ExternalRdmService::ExternalRdmService(int buffer_num, bool is_server) {
+ExternalRdmService::ExternalRdmService(int worker_num, int buffer_num, bool is_server) {
   this->stack = nullptr;
-  this->demultiplexer = nullptr;
+  this->worker_num = worker_num;
   this->buffer_num = buffer_num;
   this->is_server = is_server;
   this->bufMgr = new ExternalChunkMgr();
 }
 
 ExternalRdmService::~ExternalRdmService() {
+  // init() rejects a worker_num above MAX_WORKERS without clamping it
+  for (int i = 0; i < this->worker_num && i < MAX_WORKERS; i++) {
+    delete this->demultiplexer[i];
+  }
   delete this->stack;
-  delete this->demultiplexer;
   delete this->bufMgr;
 }
 
 int ExternalRdmService::init() {
-  this->stack = new RdmStack(this->buffer_num, this->is_server, true);
-  this->stack->init();
-  this->demultiplexer = new ExternalRdmCqDemultiplexer(stack);
-  this->demultiplexer->init();
+  if (this->worker_num < 1 || this->worker_num > MAX_WORKERS) {
+    return -1;
+  }
+  this->stack = new RdmStack(this->buffer_num, this->is_server, true, this->worker_num);
+  if (this->stack->init()) {
+    return -1;
+  }
+  for (int i = 0; i < this->worker_num; i++) {
+    this->demultiplexer[i] = new ExternalRdmCqDemultiplexer(stack, stack->get_cq(i));
+    if (this->demultiplexer[i]->init()) {
+      return -1;
+    }
+  }
   return 0;
 }
 
@@ -53,10 +65,14 @@ RdmConnection* ExternalRdmService::get_con(const char* ip, const char* port) {
   return (RdmConnection*)con;
 }
 
-int ExternalRdmService::wait_event(Chunk** ck, int* block_buffer_size) {
-  return this->demultiplexer->wait_event(ck, block_buffer_size);
+int ExternalRdmService::wait_event(int index, Chunk** ck, int* block_buffer_size) {
+  return this->demultiplexer[index]->wait_event(ck, block_buffer_size);
 }
 
+void ExternalRdmService::wakeup(int index) { this->demultiplexer[index]->wakeup(); }
+
+int ExternalRdmService::get_worker_num() { return this->worker_num; }
+
 void ExternalRdmService::set_buffer(char* buffer, uint64_t size, int buffer_id) {
   Chunk* ck = new Chunk();
   ck->buffer = buffer;
@@ -66,4 +82,16 @@ void ExternalRdmService::set_buffer(char* buffer, uint64_t size, int buffer_id)
   bufMgr->reclaim(ck, nullptr);
 }
 
+char* ExternalRdmService::alloc_slab(int buffer_size, int buffer_num, int first_buffer_id,
+                                     bool huge_page) {
+  // rdm endpoint doesn't require local memory registration
+  return bufMgr->alloc_slab(nullptr, buffer_size, buffer_num, first_buffer_id, huge_page);
+}
+
 int ExternalRdmService::is_buffer_enough() { return bufMgr->free_size() >= 2*buffer_num; }
+
+int ExternalRdmService::evict_buffer(int keep_num, uint64_t idle_ms, std::vector<int>& ids) {
+  return bufMgr->evict(keep_num, idle_ms, ids);
+}
+
+int ExternalRdmService::free_buffer_num() { return bufMgr->free_size(); }
@@ -20,15 +20,19 @@
 
 #include <stdint.h>
 
+#include <vector>
+
+#include "HPNL/Common.h"
+
 class RdmStack;
 class RdmConnection;
-class ChunkMgr;
+class ExternalChunkMgr;
 class Chunk;
 class ExternalRdmCqDemultiplexer;
 
 class ExternalRdmService {
  public:
-  ExternalRdmService(int, bool);
+  ExternalRdmService(int, int, bool);
   ~ExternalRdmService();
   ExternalRdmService(ExternalRdmService& service) = delete;
   ExternalRdmService& operator=(const ExternalRdmService& service) = delete;
@@ -36,16 +40,22 @@ class ExternalRdmService {
   int init();
   RdmConnection* listen(const char*, const char*);
   RdmConnection* get_con(const char*, const char*);
-  int wait_event(Chunk**, int*);
+  int wait_event(int, Chunk**, int*);
+  void wakeup(int);
+  int get_worker_num();
 
   void set_buffer(char*, uint64_t, int);
+  char* alloc_slab(int, int, int, bool);
+  int evict_buffer(int, uint64_t, std::vector<int>&);
   int is_buffer_enough();
+  int free_buffer_num();
  private:
   RdmStack* stack;
-  ExternalRdmCqDemultiplexer* demultiplexer;
+  ExternalRdmCqDemultiplexer* demultiplexer[MAX_WORKERS]{};
+  int worker_num;
   int buffer_num;
   bool is_server;
-  ChunkMgr* bufMgr;
+  ExternalChunkMgr* bufMgr;
 };
 
 #endif
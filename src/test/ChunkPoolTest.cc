@@ -31,3 +31,40 @@ TEST_CASE("chunk pool") {
   }
   delete cp;
 }
+
+TEST_CASE("external chunk manager slab") {
+  int buffer_num = 32;
+  int buffer_size = 4096;
+  auto mgr = new ExternalChunkMgr();
+  char* memory = mgr->alloc_slab(nullptr, buffer_size, buffer_num, 100, false);
+  REQUIRE(memory != nullptr);
+  REQUIRE(mgr->free_size() == buffer_num);
+  for (int i = 0; i < buffer_num; i++) {
+    auto ck = mgr->get(100 + i);
+    REQUIRE(ck != nullptr);
+    REQUIRE(ck->buffer == memory + i * buffer_size);
+    REQUIRE(ck->capacity == buffer_size);
+  }
+  delete mgr;
+}
+
+TEST_CASE("external chunk manager eviction") {
+  int buffer_num = 16;
+  auto mgr = new ExternalChunkMgr();
+  REQUIRE(mgr->alloc_slab(nullptr, 4096, buffer_num, 0, false) != nullptr);
+  REQUIRE(mgr->alloc_slab(nullptr, 4096, buffer_num, buffer_num, false) != nullptr);
+  std::vector<int> ids;
+  SECTION("keep free chunks below watermark") {
+    REQUIRE(mgr->evict(buffer_num * 2, 0, ids) == 0);
+    REQUIRE(ids.empty());
+  }
+  SECTION("evict whole idle slab only") {
+    REQUIRE(mgr->evict(buffer_num, 0, ids) == buffer_num);
+    REQUIRE(ids.size() == buffer_num);
+    REQUIRE(mgr->free_size() == buffer_num);
+  }
+  SECTION("skip recently used chunks") {
+    REQUIRE(mgr->evict(0, 60000, ids) == 0);
+  }
+  delete mgr;
+}